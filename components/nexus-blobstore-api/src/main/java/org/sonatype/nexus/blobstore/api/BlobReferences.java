@@ -0,0 +1,32 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.api;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Collects the blobs which components outside a blob store refer to, so consistency checks can find blobs nothing
+ * uses any more.
+ *
+ * @since 3.0
+ */
+public interface BlobReferences
+{
+  /**
+   * Returns a membership test of the blobs of the named store referenced right now. The test may report blobs as
+   * referenced which are not, but never the reverse, so it is safe to reclaim blobs it rejects.
+   *
+   * @param expectedBlobs approximate number of blobs in the store, used to size the test
+   */
+  Predicate<BlobId> collect(String blobStoreName, long expectedBlobs);
+}
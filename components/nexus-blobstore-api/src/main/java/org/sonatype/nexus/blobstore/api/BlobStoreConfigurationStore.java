@@ -34,6 +34,13 @@ public interface BlobStoreConfigurationStore
    */
   void create(BlobStoreConfiguration configuration);
 
+  /**
+   * Persist changes to an existing BlobStoreConfiguration.
+   *
+   * @since 3.0
+   */
+  void update(BlobStoreConfiguration configuration);
+
   /**
    * Delete an existing BlobStoreConfiguration.
    */
@@ -31,6 +31,8 @@ public class BlobMetadata
 
   private BlobMetrics metrics;
 
+  private boolean sharedContent;
+
   public BlobMetadata(final BlobState blobState, final Map<String, String> headers) {
     this.blobState = checkNotNull(blobState);
     this.headers = checkNotNull(headers);
@@ -60,12 +62,25 @@ public class BlobMetadata
     return metrics;
   }
 
+  /**
+   * Whether the content is stored once per distinct SHA1 and shared with other blobs, rather than in a file of its
+   * own. Recorded per blob so content stays locatable when the store's deduplication setting changes.
+   */
+  public boolean isSharedContent() {
+    return sharedContent;
+  }
+
+  public void setSharedContent(final boolean sharedContent) {
+    this.sharedContent = sharedContent;
+  }
+
   @Override
   public String toString() {
     return getClass().getSimpleName() + "{" +
         "blobState=" + blobState +
         ", headers=" + headers +
         ", metrics=" + metrics +
+        ", sharedContent=" + sharedContent +
         '}';
   }
 }
@@ -12,6 +12,8 @@
  */
 package org.sonatype.nexus.blobstore.file;
 
+import java.util.Collection;
+
 import javax.annotation.Nullable;
 
 import org.sonatype.nexus.blobstore.api.BlobId;
@@ -32,10 +34,23 @@ public interface BlobMetadataStore
   @Nullable
   BlobMetadata get(BlobId key);
 
+  /**
+   * Replaces the metadata. When the blob starts referring to {@link BlobMetadata#isSharedContent() shared content},
+   * the reference count of that content is incremented in the same commit.
+   */
   void update(BlobId blobId, BlobMetadata metadata);
 
+  /**
+   * Deletes the metadata, releasing its reference to shared content in the same commit.
+   */
   void delete(BlobId blobId);
 
+  /**
+   * Deletes the metadata of all given blobs, committing them together with the release of their references to
+   * shared content. Blob-ids without metadata are ignored, so an interrupted batch can simply be deleted again.
+   */
+  void deleteAll(Collection<BlobId> blobIds);
+
   /**
    * Returns iterable with all blob-ids in the given state.
    *
@@ -47,5 +62,10 @@ public interface BlobMetadataStore
 
   long getTotalSize();
 
+  /**
+   * Returns the number of blobs sharing the content with the given SHA1 hash.
+   */
+  long getReferenceCount(String sha1);
+
   void compact();
 }
@@ -0,0 +1,69 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+/**
+ * Progress of a {@link FileBlobStore} compaction.
+ *
+ * @since 3.0
+ */
+public class CompactionResult
+{
+  private final long blobCount;
+
+  private final long bytesReclaimed;
+
+  private final long elapsedMillis;
+
+  public CompactionResult(final long blobCount, final long bytesReclaimed, final long elapsedMillis) {
+    this.blobCount = blobCount;
+    this.bytesReclaimed = bytesReclaimed;
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  /**
+   * Number of blobs whose content and metadata have been deleted.
+   */
+  public long getBlobCount() {
+    return blobCount;
+  }
+
+  /**
+   * Bytes of content files deleted. Shared content only counts once its last reference is gone.
+   */
+  public long getBytesReclaimed() {
+    return bytesReclaimed;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public double getBlobsPerSecond() {
+    return elapsedMillis > 0 ? blobCount * 1000.0 / elapsedMillis : 0;
+  }
+
+  CompactionResult plus(final long blobs, final long bytes, final long elapsedMillis) {
+    return new CompactionResult(blobCount + blobs, bytesReclaimed + bytes, elapsedMillis);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" +
+        "blobCount=" + blobCount +
+        ", bytesReclaimed=" + bytesReclaimed +
+        ", elapsedMillis=" + elapsedMillis +
+        ", blobsPerSecond=" + String.format("%.1f", getBlobsPerSecond()) +
+        '}';
+  }
+}
@@ -15,12 +15,29 @@ package org.sonatype.nexus.blobstore.file;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -34,22 +51,35 @@ import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
 import org.sonatype.nexus.blobstore.api.BlobStoreException;
 import org.sonatype.nexus.blobstore.api.BlobStoreListener;
 import org.sonatype.nexus.blobstore.api.BlobStoreMetrics;
+import org.sonatype.nexus.blobstore.api.FileChannelBlob;
 import org.sonatype.nexus.blobstore.file.FileOperations.StreamMetrics;
 import org.sonatype.nexus.common.collect.AutoClosableIterable;
+import org.sonatype.nexus.common.collect.NestedAttributesMap;
 import org.sonatype.nexus.common.io.DirSupport;
 import org.sonatype.sisu.goodies.lifecycle.LifecycleSupport;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.joda.time.DateTime;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * A {@link BlobStore} that stores its content on the file system, and metadata in a {@link BlobMetadataStore}.
  *
+ * When configured with {@link #DEDUPLICATE_KEY} each distinct content is stored only once, addressed by its SHA1
+ * hash and reference-counted in the {@link BlobMetadataStore}. Each blob records whether its content is shared, so
+ * the setting can be changed at any time and only affects blobs created afterwards.
+ *
  * @since 3.0
  */
 @Named(FileBlobStore.TYPE)
@@ -65,11 +95,43 @@ public class FileBlobStore
 
   private static final String PATH_KEY = "path";
 
+  public static final String DEDUPLICATE_KEY = "deduplicate";
+
+  /**
+   * Number of {@link ShardedBlobMetadataStore} shards; when absent the single-file {@link MapdbBlobMetadataStore}
+   * is used. Metadata is not migrated, so this can not be changed once the store has been started.
+   */
+  public static final String METADATA_SHARDS_KEY = "metadataShards";
+
+  /**
+   * Layout of unshared content files, see {@link LocationStrategies}; when absent the injected
+   * {@link LocationStrategy} is used.
+   */
+  public static final String LAYOUT_KEY = "layout";
+
+  /**
+   * Layout content is being migrated from; reads fall back to it until the migration completes.
+   */
+  public static final String PREVIOUS_LAYOUT_KEY = "previousLayout";
+
+  /**
+   * Directory, relative to the content root, holding content-addressed files when deduplicating.
+   */
+  static final String SHARED_CONTENT_DIRECTORY = "sha1";
+
+  /**
+   * Number of blobs whose metadata {@link #compact()} removes together.
+   */
+  public static final int DEFAULT_COMPACTION_BATCH_SIZE = 1000;
+
   private Path root;
 
   private BlobMetadataStore metadataStore;
 
-  private final LocationStrategy locationStrategy;
+  private volatile LocationStrategy locationStrategy;
+
+  @Nullable
+  private volatile LocationStrategy previousLocationStrategy;
 
   private final FileOperations fileOperations;
 
@@ -77,6 +139,20 @@ public class FileBlobStore
 
   private BlobStoreConfiguration blobStoreConfiguration;
 
+  private boolean deduplicate;
+
+  /**
+   * Guards the reference count and presence of shared content files, keyed by SHA1, and moves of unshared content
+   * files during layout migration, keyed by blob-id.
+   */
+  private final Striped<Lock> sharedContentLocks = Striped.lazyWeakLock(64);
+
+  /**
+   * Held shared by creates from resolving the content path until the content is in place, so a layout migration can
+   * wait for creates which resolved their path under the previous layout.
+   */
+  private final ReadWriteLock createLock = new ReentrantReadWriteLock();
+
   @Inject
   public FileBlobStore(final LocationStrategy locationStrategy,
                        final FileOperations fileOperations)
@@ -94,6 +170,8 @@ public class FileBlobStore
     this.root = checkNotNull(root);
     this.metadataStore = checkNotNull(metadataStore);
     this.blobStoreConfiguration = checkNotNull(configuration);
+    this.deduplicate = isDeduplicate(configuration);
+    configureLayout(configuration);
   }
 
   @Override
@@ -117,14 +195,135 @@ public class FileBlobStore
     return listener;
   }
 
+  Path getContentRoot() {
+    return root;
+  }
+
+  BlobMetadataStore getMetadataStore() {
+    return metadataStore;
+  }
+
+  FileOperations getFileOperations() {
+    return fileOperations;
+  }
+
+  boolean isDeduplicate() {
+    return deduplicate;
+  }
+
+  Lock sharedContentLock(final String sha1) {
+    return sharedContentLocks.get(sha1);
+  }
+
+  /**
+   * Returns a scanner cross-checking this store's content files against its metadata.
+   */
+  public IntegrityScanner integrityScanner() {
+    return new IntegrityScanner(this);
+  }
+
   /**
    * Returns path for blob-id content file relative to root directory.
    */
-  private Path pathFor(final BlobId id) {
+  Path pathFor(final BlobId id) {
     String location = locationStrategy.location(id);
     return root.resolve(location + BLOB_CONTENT_SUFFIX);
   }
 
+  /**
+   * Returns path of existing unshared content, which stays at its previous location until a layout migration has
+   * moved it.
+   */
+  Path locate(final BlobId id) {
+    Path path = pathFor(id);
+    LocationStrategy previous = previousLocationStrategy;
+    if (previous != null && !fileOperations.exists(path)) {
+      Path previousPath = root.resolve(previous.location(id) + BLOB_CONTENT_SUFFIX);
+      if (fileOperations.exists(previousPath)) {
+        return previousPath;
+      }
+    }
+    return path;
+  }
+
+  /**
+   * Returns path for shared content with the given SHA1 hash.
+   */
+  Path sharedPathFor(final String sha1) {
+    return root.resolve(SHARED_CONTENT_DIRECTORY)
+        .resolve(sha1.substring(0, 2))
+        .resolve(sha1.substring(2, 4))
+        .resolve(sha1 + BLOB_CONTENT_SUFFIX);
+  }
+
+  /**
+   * Returns path of the content file currently backing the blob, as recorded by its metadata.
+   */
+  Path contentPathFor(final BlobId id, final BlobMetadata metadata) {
+    if (metadata.isSharedContent()) {
+      return sharedPathFor(metadata.getMetrics().getSHA1Hash());
+    }
+    return locate(id);
+  }
+
+  /**
+   * Moves freshly written content to its shared location, or discards it when identical content is already stored,
+   * and stores the metadata, whose reference to the shared content is counted in the same commit.
+   */
+  private void share(final Path path, final BlobId blobId, final BlobMetadata metadata) throws IOException {
+    final String sha1 = metadata.getMetrics().getSHA1Hash();
+    final Path sharedPath = sharedPathFor(sha1);
+    final Lock lock = sharedContentLocks.get(sha1);
+    lock.lock();
+    try {
+      boolean moved = false;
+      if (fileOperations.exists(sharedPath)) {
+        log.debug("Content {} already stored at {}", sha1, sharedPath);
+        fileOperations.delete(path);
+      }
+      else {
+        fileOperations.move(path, sharedPath);
+        moved = true;
+      }
+      try {
+        metadataStore.update(blobId, metadata);
+      }
+      catch (RuntimeException e) {
+        // nothing refers to content moved in by this blob, leave the blob to be reclaimed as never completed
+        if (moved && metadataStore.getReferenceCount(sha1) == 0) {
+          fileOperations.delete(sharedPath);
+        }
+        throw e;
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Deletes the metadata of a blob with shared content, releasing its reference in the same commit, and deletes the
+   * content file when no other blob refers to it.
+   *
+   * @return {@code true} if the content is still referenced or the file existed before deletion
+   */
+  private boolean deleteShared(final BlobId blobId, final String sha1) throws IOException {
+    final Lock lock = sharedContentLocks.get(sha1);
+    lock.lock();
+    try {
+      metadataStore.delete(blobId);
+      long remaining = metadataStore.getReferenceCount(sha1);
+      if (remaining > 0) {
+        log.debug("Content {} still referenced by {} blobs", sha1, remaining);
+        return true;
+      }
+      return fileOperations.delete(sharedPathFor(sha1));
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
   @Override
   public Blob create(final InputStream blobData, final Map<String, String> headers) {
     checkNotNull(blobData);
@@ -135,32 +334,44 @@ public class FileBlobStore
 
     BlobId blobId = null;
 
+    createLock.readLock().lock();
     try {
       // If the storing of bytes fails, we record a reminder to clean up afterwards
       final BlobMetadata metadata = new BlobMetadata(BlobState.CREATING, headers);
       blobId = metadataStore.add(metadata);
 
-      final Path path = pathFor(blobId);
+      Path path = pathFor(blobId);
       log.debug("Writing blob {} to {}", blobId, path);
 
       final StreamMetrics streamMetrics = fileOperations.create(path, blobData);
+      final boolean shared = deduplicate;
+      final Path contentPath = shared ? sharedPathFor(streamMetrics.getSHA1()) : path;
       final BlobMetrics metrics = new BlobMetrics(new DateTime(), streamMetrics.getSHA1(), streamMetrics.getSize());
-      final FileBlob blob = new FileBlob(blobId, headers, path, metrics);
+      final FileBlob blob = new FileBlob(blobId, headers, contentPath, metrics);
 
       if (listener != null) {
-        listener.blobCreated(blob, "Blob: " + blobId + " written to: " + path);
+        listener.blobCreated(blob, "Blob: " + blobId + " written to: " + contentPath);
       }
 
       metadata.setMetrics(metrics);
+      metadata.setSharedContent(shared);
       // Storing the content went fine, so we can now unmark this for deletion
       metadata.setBlobState(BlobState.ALIVE);
-      metadataStore.update(blobId, metadata);
+      if (shared) {
+        share(path, blobId, metadata);
+      }
+      else {
+        metadataStore.update(blobId, metadata);
+      }
 
       return blob;
     }
     catch (IOException e) {
       throw new BlobStoreException(e, blobId);
     }
+    finally {
+      createLock.readLock().unlock();
+    }
   }
 
   @Nullable
@@ -179,7 +390,8 @@ public class FileBlobStore
       return null;
     }
 
-    final FileBlob blob = new FileBlob(blobId, metadata.getHeaders(), pathFor(blobId), metadata.getMetrics());
+    final FileBlob blob = new FileBlob(blobId, metadata.getHeaders(), contentPathFor(blobId, metadata),
+        metadata.getMetrics());
 
     log.debug("Accessing blob {}", blobId);
     if (listener != null) {
@@ -219,8 +431,15 @@ public class FileBlobStore
     }
 
     try {
-      final Path path = pathFor(blobId);
-      final boolean blobDeleted = fileOperations.delete(path);
+      final Path path = contentPathFor(blobId, metadata);
+      final boolean blobDeleted;
+      if (metadata.isSharedContent()) {
+        blobDeleted = deleteShared(blobId, metadata.getMetrics().getSHA1Hash());
+      }
+      else {
+        blobDeleted = deleteUnshared(blobId);
+        metadataStore.delete(blobId);
+      }
 
       if (!blobDeleted) {
         log.error("Deleting blob {} : content file was missing", blobId);
@@ -232,8 +451,6 @@ public class FileBlobStore
         listener.blobDeleted(blobId, "Path: " + path);
       }
 
-      metadataStore.delete(blobId);
-
       return blobDeleted;
     }
     catch (IOException e) {
@@ -270,24 +487,404 @@ public class FileBlobStore
 
   @Override
   public void compact() {
-    log.debug("Compacting");
+    compact(1, 0, DEFAULT_COMPACTION_BATCH_SIZE, null);
+  }
+
+  /**
+   * Hard-deletes blobs marked for deletion in batches of {@code batchSize}. Content files are deleted by
+   * {@code threads} threads, throttled to {@code maxBytesPerSecond} of content (0 for no limit), and the metadata
+   * of each batch is removed together.
+   *
+   * Each committed batch leaves the {@link BlobState#MARKED_FOR_DELETION} state, which is the checkpoint: a run that
+   * is interrupted, by failure or by the monitor, resumes from the remaining blobs when compacting again.
+   */
+  public CompactionResult compact(final int threads, final long maxBytesPerSecond, final int batchSize,
+                                  @Nullable final CompactionMonitor monitor)
+  {
+    checkArgument(threads > 0, "Threads must be positive: %s", threads);
+    checkArgument(maxBytesPerSecond >= 0, "Max bytes per second must not be negative: %s", maxBytesPerSecond);
+    checkArgument(batchSize > 0, "Batch size must be positive: %s", batchSize);
+
+    log.debug("Compacting with {} threads, batch size {}, max bytes per second {}", threads, batchSize,
+        maxBytesPerSecond);
 
+    final RateLimiter rateLimiter = maxBytesPerSecond > 0 ? RateLimiter.create(maxBytesPerSecond) : null;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setNameFormat("blobstore-compact-%d").setDaemon(true).build());
+    final Set<BlobId> failed = Sets.newHashSet();
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+
+    CompactionResult result = new CompactionResult(0, 0, 0);
     try {
-      int count = 0;
-      try (AutoClosableIterable<BlobId> iter = metadataStore.findWithState(BlobState.MARKED_FOR_DELETION)) {
-        for (BlobId blobId : iter) {
-          deleteHard(blobId);
-          count++;
+      List<BlobId> batch;
+      while (!(batch = nextMarkedForDeletion(batchSize, failed)).isEmpty()) {
+        long bytes = purge(batch, executor, rateLimiter, failed);
+        result = result.plus(batch.size(), bytes, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        log.debug("Compacted {}", result);
+        if (monitor != null) {
+          monitor.batchCompacted(result);
+        }
+      }
+
+      if (result.getBlobCount() > 0) {
+        metadataStore.compact();
+      }
+      if (!failed.isEmpty()) {
+        log.warn("Failed to delete {} blobs, they remain marked for deletion", failed.size());
+      }
+
+      log.info("Compacted {}", result);
+      return result;
+    }
+    catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns up to {@code limit} blobs marked for deletion, skipping those which could not be deleted. Iterating a
+   * fresh snapshot per batch keeps snapshots short-lived and picks up blobs deleted since compaction started.
+   */
+  private List<BlobId> nextMarkedForDeletion(final int limit, final Set<BlobId> skipped) throws Exception {
+    List<BlobId> batch = Lists.newArrayListWithCapacity(limit);
+    try (AutoClosableIterable<BlobId> iter = metadataStore.findWithState(BlobState.MARKED_FOR_DELETION)) {
+      for (BlobId blobId : iter) {
+        if (!skipped.contains(blobId)) {
+          batch.add(blobId);
+          if (batch.size() == limit) {
+            break;
+          }
+        }
+      }
+    }
+    return batch;
+  }
+
+  /**
+   * Deletes a batch of blobs, removing failed ones from the batch, and returns the bytes reclaimed.
+   *
+   * Unshared content is deleted before the metadata, so retrying a partially deleted batch only finds files already
+   * gone. References to shared content are released together with the metadata and unreferenced shared content is
+   * deleted afterwards, so a retry can never release a reference twice; at worst an interruption leaves unreferenced
+   * content behind.
+   */
+  private long purge(final List<BlobId> batch, final ExecutorService executor,
+                     @Nullable final RateLimiter rateLimiter, final Set<BlobId> failed)
+      throws InterruptedException
+  {
+    List<Callable<Purged>> deletions = Lists.newArrayListWithCapacity(batch.size());
+    for (final BlobId blobId : batch) {
+      deletions.add(new Callable<Purged>()
+      {
+        @Override
+        public Purged call() throws Exception {
+          return purgeContent(blobId, rateLimiter);
+        }
+      });
+    }
+
+    List<Future<Purged>> results = executor.invokeAll(deletions);
+    long bytes = 0;
+    final Map<String, Long> sharedSizes = Maps.newHashMap();
+    for (int i = 0; i < results.size(); i++) {
+      try {
+        Purged purged = results.get(i).get();
+        bytes += purged.bytes;
+        if (purged.sha1 != null) {
+          sharedSizes.put(purged.sha1, purged.size);
+        }
+      }
+      catch (ExecutionException e) {
+        log.warn("Failed to delete blob {}", batch.get(i), e.getCause());
+        failed.add(batch.get(i));
+      }
+    }
+    batch.removeAll(failed);
+
+    metadataStore.deleteAll(batch);
+
+    if (sharedSizes.isEmpty()) {
+      return bytes;
+    }
+
+    List<Callable<Long>> releases = Lists.newArrayList();
+    for (final String sha1 : sharedSizes.keySet()) {
+      releases.add(new Callable<Long>()
+      {
+        @Override
+        public Long call() throws Exception {
+          return purgeSharedContent(sha1, sharedSizes.get(sha1), rateLimiter);
         }
+      });
+    }
+    for (Future<Long> released : executor.invokeAll(releases)) {
+      try {
+        bytes += released.get();
+      }
+      catch (ExecutionException e) {
+        log.warn("Failed to delete unreferenced shared content", e.getCause());
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Deletes the content file of a blob unless it is shared, in which case its hash is returned for release.
+   */
+  private Purged purgeContent(final BlobId blobId, @Nullable final RateLimiter rateLimiter) throws IOException {
+    BlobMetadata metadata = metadataStore.get(blobId);
+    if (metadata == null) {
+      return new Purged(null, 0, 0);
+    }
+
+    BlobMetrics metrics = metadata.getMetrics();
+    long size = metrics != null ? metrics.getContentSize() : 0;
+    Path path = contentPathFor(blobId, metadata);
+
+    if (listener != null) {
+      listener.blobDeleted(blobId, "Path: " + path);
+    }
+
+    if (metadata.isSharedContent()) {
+      return new Purged(metrics.getSHA1Hash(), size, 0);
+    }
+
+    throttle(rateLimiter, size);
+    if (!deleteUnshared(blobId)) {
+      log.debug("Deleting blob {} : content file was missing", blobId);
+      return new Purged(null, size, 0);
+    }
+    return new Purged(null, size, size);
+  }
+
+  /**
+   * Deletes shared content once its references have all been released, unless a new blob has shared it since.
+   */
+  private long purgeSharedContent(final String sha1, final long size, @Nullable final RateLimiter rateLimiter)
+      throws IOException
+  {
+    throttle(rateLimiter, size);
+
+    final Lock lock = sharedContentLocks.get(sha1);
+    lock.lock();
+    try {
+      if (metadataStore.getReferenceCount(sha1) > 0) {
+        log.debug("Content {} shared again during compaction", sha1);
+        return 0;
       }
+      return fileOperations.delete(sharedPathFor(sha1)) ? size : 0;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Deletes unshared content, guarded against a layout migration moving it meanwhile.
+   */
+  private boolean deleteUnshared(final BlobId blobId) throws IOException {
+    final Lock lock = sharedContentLocks.get(blobId);
+    lock.lock();
+    try {
+      return fileOperations.delete(locate(blobId));
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private static void throttle(@Nullable final RateLimiter rateLimiter, final long bytes) {
+    if (rateLimiter != null) {
+      rateLimiter.acquire((int) Math.max(1, Math.min(bytes, Integer.MAX_VALUE)));
+    }
+  }
+
+  /**
+   * Outcome of deleting the content of one blob.
+   */
+  private static class Purged
+  {
+    @Nullable
+    private final String sha1;
+
+    private final long size;
+
+    private final long bytes;
+
+    private Purged(@Nullable final String sha1, final long size, final long bytes) {
+      this.sha1 = sha1;
+      this.size = size;
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * Switches new content to the given layout, see {@link LocationStrategies}, while existing content is read from
+   * the current layout until {@link #migrateLayout} has moved it. The caller must persist the updated
+   * {@link #getBlobStoreConfiguration() configuration}.
+   *
+   * @return {@code false} if content is already laid out, or being migrated, to the given layout
+   */
+  public synchronized boolean startLayoutMigration(final String layout) {
+    checkNotNull(layout);
+
+    NestedAttributesMap attributes = blobStoreConfiguration.attributes(CONFIG_KEY);
+    String current = attributes.get(LAYOUT_KEY, String.class, LocationStrategies.VOLUME_CHAPTER);
+    if (current.equals(layout)) {
+      return false;
+    }
+    checkState(previousLocationStrategy == null, "Layout migration to %s in progress", current);
+
+    LocationStrategy target = LocationStrategies.create(layout);
+    attributes.set(PREVIOUS_LAYOUT_KEY, current);
+    attributes.set(LAYOUT_KEY, layout);
+    // fallback must be in place before new content goes to the new layout
+    previousLocationStrategy = locationStrategy;
+    locationStrategy = target;
+
+    log.info("Migrating layout from {} to {}", current, layout);
+    return true;
+  }
 
-      metadataStore.compact();
+  /**
+   * Moves unshared content from the previous layout to the current one using {@code threads} threads, then
+   * completes the migration, after which the caller must persist the updated {@link #getBlobStoreConfiguration()
+   * configuration}. An interrupted migration resumes from the content not yet moved.
+   *
+   * Blobs are found by state, so a blob changing state while the passes over the states run can be missed. The
+   * blobs are therefore scanned again until a pass moves nothing, and only then is the previous layout no longer
+   * looked at.
+   *
+   * @return number of content files moved
+   */
+  public long migrateLayout(final int threads, @Nullable final LayoutMigrationMonitor monitor) {
+    checkArgument(threads > 0, "Threads must be positive: %s", threads);
+    final LocationStrategy previous = previousLocationStrategy;
+    checkState(previous != null, "No layout migration in progress");
+
+    awaitCreates();
+
+    final AtomicLong moved = new AtomicLong();
+    final AtomicLong scanned = new AtomicLong();
+    int passes = 0;
+    long movedByPass;
+    do {
+      long before = moved.get();
+      migrationPass(threads, previous, monitor, scanned, moved);
+      movedByPass = moved.get() - before;
+      passes++;
+      log.debug("Layout migration pass {} moved {} content files", passes, movedByPass);
+    }
+    while (movedByPass > 0);
+    completeLayoutMigration();
 
-      log.debug("Deleted {} blobs", count);
+    log.info("Migrated layout: {} blobs scanned in {} passes, {} content files moved", scanned, passes, moved);
+    return moved.get();
+  }
+
+  /**
+   * Waits for creates in flight, which may have resolved their content path under the previous layout after the
+   * migration pass looked for it.
+   */
+  private void awaitCreates() {
+    createLock.writeLock().lock();
+    createLock.writeLock().unlock();
+  }
+
+  /**
+   * Moves the content of all blobs found in the previous layout.
+   */
+  private void migrationPass(final int threads,
+                             final LocationStrategy previous,
+                             @Nullable final LayoutMigrationMonitor monitor,
+                             final AtomicLong scanned,
+                             final AtomicLong moved)
+  {
+    final AtomicLong failed = new AtomicLong();
+    try {
+      ThreadPoolExecutor executor = boundedExecutor(threads, "blobstore-migrate-%d");
+      try {
+        for (BlobState state : new BlobState[]{BlobState.ALIVE, BlobState.MARKED_FOR_DELETION, BlobState.CREATING}) {
+          try (AutoClosableIterable<BlobId> iter = metadataStore.findWithState(state)) {
+            for (final BlobId blobId : iter) {
+              executor.execute(new Runnable()
+              {
+                @Override
+                public void run() {
+                  try {
+                    if (moveToCurrentLayout(blobId, previous)) {
+                      moved.incrementAndGet();
+                    }
+                  }
+                  catch (Exception e) {
+                    log.warn("Failed to move content of blob {}", blobId, e);
+                    failed.incrementAndGet();
+                  }
+                }
+              });
+              if (scanned.incrementAndGet() % 1000 == 0 && monitor != null) {
+                monitor.progress(scanned.get(), moved.get());
+              }
+            }
+          }
+        }
+      }
+      finally {
+        awaitTermination(executor);
+      }
     }
     catch (Exception e) {
       throw Throwables.propagate(e);
     }
+
+    checkState(failed.get() == 0, "Failed to move %s content files, layout migration remains in progress", failed);
+  }
+
+  private boolean moveToCurrentLayout(final BlobId blobId, final LocationStrategy previous) throws IOException {
+    Path source = root.resolve(previous.location(blobId) + BLOB_CONTENT_SUFFIX);
+    Path target = pathFor(blobId);
+    if (source.equals(target)) {
+      return false;
+    }
+
+    final Lock lock = sharedContentLocks.get(blobId);
+    lock.lock();
+    try {
+      if (!fileOperations.exists(source)) {
+        return false;
+      }
+      fileOperations.move(source, target);
+      return true;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private synchronized void completeLayoutMigration() {
+    blobStoreConfiguration.attributes(CONFIG_KEY).remove(PREVIOUS_LAYOUT_KEY);
+    previousLocationStrategy = null;
+  }
+
+  /**
+   * Returns an executor whose queue is bounded, making the submitting thread run tasks itself rather than buffer
+   * them, so walking millions of blobs stays within bounded memory.
+   */
+  static ThreadPoolExecutor boundedExecutor(final int threads, final String nameFormat) {
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(threads * 16),
+        new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build(),
+        new CallerRunsPolicy());
+  }
+
+  static void awaitTermination(final ThreadPoolExecutor executor) throws InterruptedException {
+    executor.shutdown();
+    while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+      // keep waiting, pending work is bounded by the queue
+    }
   }
 
   @Override
@@ -298,13 +895,21 @@ public class FileBlobStore
   @Override
   public void init(final BlobStoreConfiguration configuration) throws IOException {
     this.blobStoreConfiguration = configuration;
+    this.deduplicate = isDeduplicate(configuration);
+    configureLayout(configuration);
     Path blobDir = Paths.get(String.valueOf(configuration.attributes(CONFIG_KEY).require(PATH_KEY)));
     Path content = blobDir.resolve("content");
     File metadataFile = blobDir.resolve("metadata").toFile();
     DirSupport.mkdir(content);
     DirSupport.mkdir(metadataFile);
     this.root = content;
-    this.metadataStore = MapdbBlobMetadataStore.create(metadataFile);
+    int metadataShards = configuration.attributes(CONFIG_KEY).get(METADATA_SHARDS_KEY, Number.class, 0).intValue();
+    if (metadataShards > 0) {
+      this.metadataStore = ShardedBlobMetadataStore.create(metadataFile, metadataShards);
+    }
+    else {
+      this.metadataStore = MapdbBlobMetadataStore.create(metadataFile);
+    }
   }
 
   @Override
@@ -320,6 +925,19 @@ public class FileBlobStore
     }
   }
 
+  private void configureLayout(final BlobStoreConfiguration configuration) {
+    String layout = configuration.attributes(CONFIG_KEY).get(LAYOUT_KEY, String.class);
+    if (layout != null) {
+      this.locationStrategy = LocationStrategies.create(layout);
+    }
+    String previousLayout = configuration.attributes(CONFIG_KEY).get(PREVIOUS_LAYOUT_KEY, String.class);
+    this.previousLocationStrategy = previousLayout != null ? LocationStrategies.create(previousLayout) : null;
+  }
+
+  private static boolean isDeduplicate(final BlobStoreConfiguration configuration) {
+    return Boolean.TRUE.equals(configuration.attributes(CONFIG_KEY).get(DEDUPLICATE_KEY, Boolean.class, false));
+  }
+
   private String getPath(final Map<String, Map<String, Object>> attributes) {
     return (String) attributes.get("file").get("path");
   }
@@ -341,13 +959,13 @@ public class FileBlobStore
   }
 
   class FileBlob
-      implements Blob
+      implements FileChannelBlob
   {
     private final BlobId blobId;
 
     private final Map<String, String> headers;
 
-    private final Path contentPath;
+    private volatile Path contentPath;
 
     private final BlobMetrics metrics;
 
@@ -375,8 +993,21 @@ public class FileBlobStore
     @Override
     public InputStream getInputStream() {
       try {
-        checkExists(contentPath, blobId);
-        return fileOperations.openInputStream(contentPath);
+        Path path = contentPath();
+        checkExists(path, blobId);
+        return fileOperations.openInputStream(path);
+      }
+      catch (IOException e) {
+        throw new BlobStoreException(e, blobId);
+      }
+    }
+
+    @Override
+    public FileChannel openFileChannel() {
+      try {
+        Path path = contentPath();
+        checkExists(path, blobId);
+        return FileChannel.open(path, StandardOpenOption.READ);
       }
       catch (IOException e) {
         throw new BlobStoreException(e, blobId);
@@ -387,5 +1018,18 @@ public class FileBlobStore
     public BlobMetrics getMetrics() {
       return metrics;
     }
+
+    /**
+     * Returns the content path, following unshared content moved by a layout migration since the blob was read.
+     */
+    private Path contentPath() {
+      if (!fileOperations.exists(contentPath)) {
+        Path located = locate(blobId);
+        if (fileOperations.exists(located)) {
+          contentPath = located;
+        }
+      }
+      return contentPath;
+    }
   }
 }
@@ -53,6 +53,11 @@ public interface FileOperations
 
   boolean exists(Path path);
 
+  /**
+   * Atomically moves a file to the target path, creating its containing directories if necessary.
+   */
+  void move(Path source, Path target) throws IOException;
+
   InputStream openInputStream(Path path) throws IOException;
 
   /**
@@ -0,0 +1,61 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.nio.charset.StandardCharsets;
+
+import org.sonatype.nexus.blobstore.api.BlobId;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Stores blobs in a tree of {@code tiers} levels named by successive hex digits of a hash of the blob-id,
+ * {@code prefixLength} digits per level, giving {@code 16 ^ (tiers * prefixLength)} leaf directories.
+ *
+ * @since 3.0
+ */
+public class HexPrefixLocationStrategy
+    implements LocationStrategy
+{
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private final int tiers;
+
+  private final int prefixLength;
+
+  public HexPrefixLocationStrategy(final int tiers, final int prefixLength) {
+    checkArgument(tiers > 0, "Tiers must be positive: %s", tiers);
+    checkArgument(prefixLength > 0, "Prefix length must be positive: %s", prefixLength);
+    checkArgument(tiers * prefixLength <= 8, "At most 8 hex digits of prefix are supported");
+    this.tiers = tiers;
+    this.prefixLength = prefixLength;
+  }
+
+  @Override
+  public String location(final BlobId blobId) {
+    checkNotNull(blobId);
+
+    String id = blobId.asUniqueString();
+    String hex = HASH.hashString(id, StandardCharsets.UTF_8).toString();
+
+    StringBuilder location = new StringBuilder();
+    for (int i = 0; i < tiers; i++) {
+      location.append(hex, i * prefixLength, (i + 1) * prefixLength).append('/');
+    }
+    return location.append(LocationStrategies.escapeFilename(id)).toString();
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Findings of an {@link IntegrityScanner}, updated while the scan progresses.
+ *
+ * @since 3.0
+ */
+public class IntegrityReport
+{
+  final AtomicLong filesScanned = new AtomicLong();
+
+  final AtomicLong blobsScanned = new AtomicLong();
+
+  final AtomicLong orphanFiles = new AtomicLong();
+
+  final AtomicLong staleBlobs = new AtomicLong();
+
+  final AtomicLong unreferencedBlobs = new AtomicLong();
+
+  final AtomicLong missingContent = new AtomicLong();
+
+  final AtomicLong checksumMismatches = new AtomicLong();
+
+  final AtomicLong bytesVerified = new AtomicLong();
+
+  final AtomicLong reclaimed = new AtomicLong();
+
+  final AtomicLong bytesReclaimed = new AtomicLong();
+
+  final AtomicLong errors = new AtomicLong();
+
+  /**
+   * Content files visited.
+   */
+  public long getFilesScanned() {
+    return filesScanned.get();
+  }
+
+  /**
+   * Blob metadata entries visited.
+   */
+  public long getBlobsScanned() {
+    return blobsScanned.get();
+  }
+
+  /**
+   * Content files without metadata, or shared content files no blob refers to.
+   */
+  public long getOrphanFiles() {
+    return orphanFiles.get();
+  }
+
+  /**
+   * Blobs left in the {@link BlobState#CREATING} state by writes which never completed.
+   */
+  public long getStaleBlobs() {
+    return staleBlobs.get();
+  }
+
+  /**
+   * Live blobs nothing outside the store refers to.
+   */
+  public long getUnreferencedBlobs() {
+    return unreferencedBlobs.get();
+  }
+
+  /**
+   * Live blobs whose content file is missing; these are only reported.
+   */
+  public long getMissingContent() {
+    return missingContent.get();
+  }
+
+  /**
+   * Live blobs whose content no longer matches their recorded SHA1; these are only reported.
+   */
+  public long getChecksumMismatches() {
+    return checksumMismatches.get();
+  }
+
+  public long getBytesVerified() {
+    return bytesVerified.get();
+  }
+
+  /**
+   * Orphan files deleted plus stale and unreferenced blobs removed.
+   */
+  public long getReclaimed() {
+    return reclaimed.get();
+  }
+
+  public long getBytesReclaimed() {
+    return bytesReclaimed.get();
+  }
+
+  /**
+   * Files or blobs which could not be checked.
+   */
+  public long getErrors() {
+    return errors.get();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" +
+        "filesScanned=" + filesScanned +
+        ", blobsScanned=" + blobsScanned +
+        ", orphanFiles=" + orphanFiles +
+        ", staleBlobs=" + staleBlobs +
+        ", unreferencedBlobs=" + unreferencedBlobs +
+        ", missingContent=" + missingContent +
+        ", checksumMismatches=" + checksumMismatches +
+        ", bytesVerified=" + bytesVerified +
+        ", reclaimed=" + reclaimed +
+        ", bytesReclaimed=" + bytesReclaimed +
+        ", errors=" + errors +
+        '}';
+  }
+}
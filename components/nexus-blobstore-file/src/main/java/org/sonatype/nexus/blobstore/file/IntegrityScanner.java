@@ -0,0 +1,400 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobMetrics;
+import org.sonatype.nexus.blobstore.api.BlobReferences;
+import org.sonatype.nexus.blobstore.file.FileOperations.StreamMetrics;
+import org.sonatype.nexus.blobstore.file.internal.MetricsInputStream;
+import org.sonatype.nexus.common.collect.AutoClosableIterable;
+import org.sonatype.sisu.goodies.common.ComponentSupport;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.RateLimiter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.blobstore.file.FileBlobStore.BLOB_CONTENT_SUFFIX;
+import static org.sonatype.nexus.blobstore.file.FileBlobStore.SHARED_CONTENT_DIRECTORY;
+
+/**
+ * Cross-checks the content files of a {@link FileBlobStore} against its metadata, and optionally against the
+ * {@link BlobReferences} of its users, reporting and optionally reclaiming:
+ *
+ * <ul>
+ * <li>content files without metadata, or shared content no blob refers to</li>
+ * <li>blobs stuck in {@link BlobState#CREATING} by writes which never completed</li>
+ * <li>live blobs nothing refers to, which are marked for deletion and left to compaction</li>
+ * </ul>
+ *
+ * Missing content and checksum mismatches are only reported. Directories are walked one at a time in sorted order
+ * and metadata is streamed in blob-id order through a bounded queue, so memory stays bounded however large the
+ * store. Only files and blobs older than the grace period are considered, to leave in-flight writes alone.
+ *
+ * @since 3.0
+ */
+public class IntegrityScanner
+    extends ComponentSupport
+{
+  private static final int PROGRESS_INTERVAL = 1000;
+
+  private final FileBlobStore blobStore;
+
+  private final BlobMetadataStore metadataStore;
+
+  private final FileOperations fileOperations;
+
+  private int threads = 1;
+
+  private boolean reclaim;
+
+  private long gracePeriodMillis = TimeUnit.HOURS.toMillis(1);
+
+  private boolean verifyChecksums;
+
+  private long maxVerifyBytesPerSecond;
+
+  @Nullable
+  private Predicate<BlobId> referencedBlobs;
+
+  private long referencesCollectedAt;
+
+  @Nullable
+  private IntegrityMonitor monitor;
+
+  IntegrityScanner(final FileBlobStore blobStore) {
+    this.blobStore = checkNotNull(blobStore);
+    this.metadataStore = blobStore.getMetadataStore();
+    this.fileOperations = blobStore.getFileOperations();
+  }
+
+  public IntegrityScanner withThreads(final int threads) {
+    checkArgument(threads > 0, "Threads must be positive: %s", threads);
+    this.threads = threads;
+    return this;
+  }
+
+  /**
+   * Reclaims what the scan finds instead of only reporting it.
+   */
+  public IntegrityScanner withReclaim(final boolean reclaim) {
+    this.reclaim = reclaim;
+    return this;
+  }
+
+  public IntegrityScanner withGracePeriod(final long duration, final TimeUnit unit) {
+    checkArgument(duration >= 0, "Grace period must not be negative: %s", duration);
+    this.gracePeriodMillis = unit.toMillis(duration);
+    return this;
+  }
+
+  /**
+   * Re-reads the content of live blobs to verify their SHA1, throttled to {@code maxBytesPerSecond} (0 for no
+   * limit).
+   */
+  public IntegrityScanner withChecksumVerification(final boolean verify, final long maxBytesPerSecond) {
+    checkArgument(maxBytesPerSecond >= 0, "Max bytes per second must not be negative: %s", maxBytesPerSecond);
+    this.verifyChecksums = verify;
+    this.maxVerifyBytesPerSecond = maxBytesPerSecond;
+    return this;
+  }
+
+  /**
+   * Live blobs rejected by the given test, and created at least the grace period before the references were
+   * collected, are reported as unreferenced. Blobs created while or after the references were collected are never
+   * judged by them, however long the scan takes.
+   *
+   * @param collectedAt time in millis at which collecting the references started
+   */
+  public IntegrityScanner withReferencedBlobs(@Nullable final Predicate<BlobId> referencedBlobs,
+                                              final long collectedAt)
+  {
+    this.referencedBlobs = referencedBlobs;
+    this.referencesCollectedAt = collectedAt;
+    return this;
+  }
+
+  public IntegrityScanner withMonitor(@Nullable final IntegrityMonitor monitor) {
+    this.monitor = monitor;
+    return this;
+  }
+
+  public IntegrityReport scan() {
+    final IntegrityReport report = new IntegrityReport();
+    final long cutoff = System.currentTimeMillis() - gracePeriodMillis;
+    final long referencesCutoff = Math.min(cutoff, referencesCollectedAt - gracePeriodMillis);
+    final RateLimiter rateLimiter = maxVerifyBytesPerSecond > 0 ? RateLimiter.create(maxVerifyBytesPerSecond) : null;
+
+    // highest blob-id known to have been added before the cutoff; blobs still CREATING below it are stale
+    final AtomicReference<BlobId> staleHighWater = new AtomicReference<>();
+
+    log.info("Scanning {}{}", blobStore.getContentRoot(), reclaim ? ", reclaiming orphans" : "");
+    try {
+      ThreadPoolExecutor executor = FileBlobStore.boundedExecutor(threads, "blobstore-scan-%d");
+      try {
+        walk(blobStore.getContentRoot(), executor, cutoff, report);
+      }
+      finally {
+        FileBlobStore.awaitTermination(executor);
+      }
+      progress(report);
+
+      executor = FileBlobStore.boundedExecutor(threads, "blobstore-scan-%d");
+      try (AutoClosableIterable<BlobId> iter = metadataStore.findWithState(BlobState.ALIVE)) {
+        for (final BlobId blobId : iter) {
+          executor.execute(new Runnable()
+          {
+            @Override
+            public void run() {
+              checkAlive(blobId, cutoff, referencesCutoff, rateLimiter, staleHighWater, report);
+            }
+          });
+          if (report.blobsScanned.incrementAndGet() % PROGRESS_INTERVAL == 0) {
+            progress(report);
+          }
+        }
+      }
+      finally {
+        FileBlobStore.awaitTermination(executor);
+      }
+      progress(report);
+
+      try (AutoClosableIterable<BlobId> iter = metadataStore.findWithState(BlobState.CREATING)) {
+        for (BlobId blobId : iter) {
+          checkCreating(blobId, cutoff, staleHighWater.get(), report);
+          if (report.blobsScanned.incrementAndGet() % PROGRESS_INTERVAL == 0) {
+            progress(report);
+          }
+        }
+      }
+
+      log.info("Scanned {}: {}", blobStore.getContentRoot(), report);
+      return report;
+    }
+    catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private void progress(final IntegrityReport report) {
+    log.debug("Progress: {}", report);
+    if (monitor != null) {
+      monitor.progress(report);
+    }
+  }
+
+  /**
+   * Visits the files below the directory depth-first, listing one directory at a time in sorted order.
+   */
+  private void walk(final Path directory, final ThreadPoolExecutor executor, final long cutoff,
+                    final IntegrityReport report) throws IOException
+  {
+    List<Path> children = Lists.newArrayList();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path child : stream) {
+        children.add(child);
+      }
+    }
+    Collections.sort(children);
+
+    final boolean shared = directory.startsWith(blobStore.getContentRoot().resolve(SHARED_CONTENT_DIRECTORY));
+    for (final Path child : children) {
+      if (Files.isDirectory(child)) {
+        walk(child, executor, cutoff, report);
+        progress(report);
+      }
+      else if (child.getFileName().toString().endsWith(BLOB_CONTENT_SUFFIX)) {
+        executor.execute(new Runnable()
+        {
+          @Override
+          public void run() {
+            checkFile(child, shared, cutoff, report);
+          }
+        });
+      }
+    }
+  }
+
+  private void checkFile(final Path path, final boolean shared, final long cutoff, final IntegrityReport report) {
+    report.filesScanned.incrementAndGet();
+    try {
+      if (Files.getLastModifiedTime(path).toMillis() >= cutoff) {
+        return;
+      }
+      String name = path.getFileName().toString();
+      name = name.substring(0, name.length() - BLOB_CONTENT_SUFFIX.length());
+      if (shared) {
+        checkSharedFile(path, name, report);
+      }
+      else if (metadataStore.get(new BlobId(name)) == null) {
+        log.info("Orphan content file: {}", path);
+        report.orphanFiles.incrementAndGet();
+        if (reclaim && deleteFile(path, report)) {
+          report.reclaimed.incrementAndGet();
+        }
+      }
+    }
+    catch (Exception e) {
+      log.warn("Failed to check content file {}", path, e);
+      report.errors.incrementAndGet();
+    }
+  }
+
+  private void checkSharedFile(final Path path, final String sha1, final IntegrityReport report)
+      throws IOException
+  {
+    if (metadataStore.getReferenceCount(sha1) > 0) {
+      return;
+    }
+    log.info("Unreferenced shared content file: {}", path);
+    report.orphanFiles.incrementAndGet();
+    if (reclaim) {
+      // re-check under the lock, as a new blob could share the content meanwhile
+      Lock lock = blobStore.sharedContentLock(sha1);
+      lock.lock();
+      try {
+        if (metadataStore.getReferenceCount(sha1) == 0 && deleteFile(path, report)) {
+          report.reclaimed.incrementAndGet();
+        }
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private boolean deleteFile(final Path path, final IntegrityReport report) throws IOException {
+    long size = Files.size(path);
+    if (fileOperations.delete(path)) {
+      report.bytesReclaimed.addAndGet(size);
+      return true;
+    }
+    return false;
+  }
+
+  private void checkAlive(final BlobId blobId, final long cutoff, final long referencesCutoff,
+                          @Nullable final RateLimiter rateLimiter, final AtomicReference<BlobId> staleHighWater,
+                          final IntegrityReport report)
+  {
+    try {
+      BlobMetadata metadata = metadataStore.get(blobId);
+      if (metadata == null || !metadata.isAlive() || metadata.getMetrics() == null) {
+        return;
+      }
+      BlobMetrics metrics = metadata.getMetrics();
+      boolean old = metrics.getCreationTime() != null && metrics.getCreationTime().getMillis() < cutoff;
+      if (old) {
+        raise(staleHighWater, blobId);
+      }
+
+      Path path = blobStore.contentPathFor(blobId, metadata);
+      if (!fileOperations.exists(path)) {
+        log.warn("Missing content of blob {}: {}", blobId, path);
+        report.missingContent.incrementAndGet();
+      }
+      else if (verifyChecksums) {
+        verify(blobId, path, metrics, rateLimiter, report);
+      }
+
+      if (referencedBlobs != null && metrics.getCreationTime() != null
+          && metrics.getCreationTime().getMillis() < referencesCutoff && !referencedBlobs.apply(blobId)) {
+        log.info("Unreferenced blob: {}", blobId);
+        report.unreferencedBlobs.incrementAndGet();
+        if (reclaim && blobStore.delete(blobId)) {
+          report.reclaimed.incrementAndGet();
+        }
+      }
+    }
+    catch (Exception e) {
+      log.warn("Failed to check blob {}", blobId, e);
+      report.errors.incrementAndGet();
+    }
+  }
+
+  private void verify(final BlobId blobId, final Path path, final BlobMetrics metrics,
+                      @Nullable final RateLimiter rateLimiter, final IntegrityReport report) throws IOException
+  {
+    if (rateLimiter != null) {
+      rateLimiter.acquire((int) Math.max(1, Math.min(metrics.getContentSize(), Integer.MAX_VALUE)));
+    }
+    StreamMetrics actual;
+    try (MetricsInputStream in = new MetricsInputStream(fileOperations.openInputStream(path))) {
+      report.bytesVerified.addAndGet(ByteStreams.copy(in, ByteStreams.nullOutputStream()));
+      actual = in.getMetrics();
+    }
+    if (!actual.getSHA1().equals(metrics.getSHA1Hash())) {
+      log.error("Checksum mismatch of blob {}: expected {} but content at {} has {}", blobId,
+          metrics.getSHA1Hash(), path, actual.getSHA1());
+      report.checksumMismatches.incrementAndGet();
+    }
+  }
+
+  private static void raise(final AtomicReference<BlobId> highWater, final BlobId blobId) {
+    BlobId current;
+    do {
+      current = highWater.get();
+      if (current != null && current.compareTo(blobId) >= 0) {
+        return;
+      }
+    }
+    while (!highWater.compareAndSet(current, blobId));
+  }
+
+  /**
+   * A blob still being created is stale once a blob added after it completed before the cutoff, or once its
+   * partially written content is older than the cutoff.
+   */
+  private void checkCreating(final BlobId blobId, final long cutoff, @Nullable final BlobId staleHighWater,
+                             final IntegrityReport report)
+  {
+    try {
+      Path path = blobStore.locate(blobId);
+      boolean exists = fileOperations.exists(path);
+      boolean stale = (staleHighWater != null && blobId.compareTo(staleHighWater) < 0)
+          || (exists && Files.getLastModifiedTime(path).toMillis() < cutoff);
+      if (!stale) {
+        return;
+      }
+      log.info("Stale blob left creating: {}", blobId);
+      report.staleBlobs.incrementAndGet();
+      if (reclaim) {
+        if (exists) {
+          deleteFile(path, report);
+        }
+        metadataStore.delete(blobId);
+        report.reclaimed.incrementAndGet();
+      }
+    }
+    catch (Exception e) {
+      log.warn("Failed to check blob {}", blobId, e);
+      report.errors.incrementAndGet();
+    }
+  }
+}
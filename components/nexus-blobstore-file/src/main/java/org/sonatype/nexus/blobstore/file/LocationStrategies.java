@@ -0,0 +1,66 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Splitter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Creates {@link LocationStrategy} instances from the layout specifications stored in blob store configuration.
+ *
+ * <ul>
+ * <li>{@code volume-chapter}: {@link VolumeChapterLocationStrategy}, the default</li>
+ * <li>{@code modulo:<tiers>:<modulo>}: {@link ModuloLocationStrategy}, e.g. {@code modulo:2:256}</li>
+ * <li>{@code hex:<tiers>:<prefixLength>}: {@link HexPrefixLocationStrategy}, e.g. {@code hex:3:2}</li>
+ * </ul>
+ *
+ * @since 3.0
+ */
+public class LocationStrategies
+{
+  public static final String VOLUME_CHAPTER = "volume-chapter";
+
+  private static final Pattern UNSAFE_TOKENS = Pattern.compile("[.\\\\:/]");
+
+  private LocationStrategies() {
+    // no instances
+  }
+
+  public static LocationStrategy create(final String spec) {
+    checkNotNull(spec);
+
+    List<String> parts = Splitter.on(':').trimResults().splitToList(spec);
+    switch (parts.get(0)) {
+      case VOLUME_CHAPTER:
+        checkArgument(parts.size() == 1, "Invalid layout: %s", spec);
+        return new VolumeChapterLocationStrategy();
+      case "modulo":
+        checkArgument(parts.size() == 3, "Invalid layout, expected modulo:<tiers>:<modulo>: %s", spec);
+        return new ModuloLocationStrategy(Integer.parseInt(parts.get(1)), Integer.parseInt(parts.get(2)));
+      case "hex":
+        checkArgument(parts.size() == 3, "Invalid layout, expected hex:<tiers>:<prefixLength>: %s", spec);
+        return new HexPrefixLocationStrategy(Integer.parseInt(parts.get(1)), Integer.parseInt(parts.get(2)));
+      default:
+        throw new IllegalArgumentException("Unknown layout: " + spec);
+    }
+  }
+
+  static String escapeFilename(final String value) {
+    return UNSAFE_TOKENS.matcher(value).replaceAll("-");
+  }
+}
@@ -17,9 +17,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableSet;
@@ -66,7 +65,7 @@ public class MapdbBlobMetadataStore
 
   private MapdbBlobMetadataStore(final File directory) {
     checkNotNull(directory);
-    this.file = new File(directory, directory.getName() + ".db");
+    this.file = databaseFile(directory);
     log.debug("File: {}", file);
   }
 
@@ -82,6 +81,13 @@ public class MapdbBlobMetadataStore
         new Class[]{BlobMetadataStore.class}, new OsgiCompatibleClassloaderAdvice(inner));
   }
 
+  /**
+   * Returns the primary database file of metadata stored in the given directory.
+   */
+  static File databaseFile(final File directory) {
+    return new File(directory, directory.getName() + ".db");
+  }
+
   /**
    * Returns the primary database file.  MapDB has additional files which are based on this filename.
    */
@@ -92,6 +98,9 @@ public class MapdbBlobMetadataStore
   @Override
   protected void doStart() throws Exception {
     DirSupport.mkdir(file.getParentFile());
+    // opening sharded metadata here would silently lose every blob
+    checkState(!ShardedBlobMetadataStore.shardCountFile(file.getParentFile()).exists(),
+        "Metadata in %s is sharded, it can only be opened with its shard count", file.getParentFile());
     this.database = DBMaker.newFileDB(file)
         .checksumEnable()
         .makeTxMaker();
@@ -111,6 +120,10 @@ public class MapdbBlobMetadataStore
     return db.getHashMap("entries");
   }
 
+  private HTreeMap<String, Long> references(final DB db) {
+    return db.getHashMap("references");
+  }
+
   private NavigableSet<BlobId> states(final DB db, final BlobState state) {
     return db.getTreeSet("state_" + state.name());
   }
@@ -121,7 +134,10 @@ public class MapdbBlobMetadataStore
   static class MetadataRecord
       implements Externalizable
   {
-    private final static int FORMAT_VERSION = 1;
+    /**
+     * Version 2 added the shared content flag, absent from version 1 records whose content is never shared.
+     */
+    private final static int FORMAT_VERSION = 2;
 
     private BlobState state;
 
@@ -135,6 +151,8 @@ public class MapdbBlobMetadataStore
 
     private Long size;
 
+    private boolean shared;
+
     @Override
     public boolean equals(final Object o) {
       if (this == o) {
@@ -161,12 +179,15 @@ public class MapdbBlobMetadataStore
       if (!Objects.equals(sha1, that.sha1)) {
         return false;
       }
+      if (shared != that.shared) {
+        return false;
+      }
       return true;
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(state, headers, metrics, created, sha1, size);
+      return Objects.hash(state, headers, metrics, created, sha1, size, shared);
     }
 
     public MetadataRecord(final BlobMetadata source) {
@@ -185,6 +206,7 @@ public class MapdbBlobMetadataStore
         this.sha1 = null;
         this.size = null;
       }
+      this.shared = source.isSharedContent();
     }
 
     /**
@@ -195,6 +217,27 @@ public class MapdbBlobMetadataStore
     {
     }
 
+    BlobState getState() {
+      return state;
+    }
+
+    /**
+     * Returns the SHA1 of the shared content this record refers to, or {@code null} if its content is unshared.
+     */
+    @Nullable
+    String getSharedSha1() {
+      return shared ? sha1 : null;
+    }
+
+    BlobMetadata toBlobMetadata() {
+      BlobMetadata target = new BlobMetadata(state, Maps.newHashMap(headers));
+      if (metrics) {
+        target.setMetrics(new BlobMetrics(created, sha1, size));
+      }
+      target.setSharedContent(shared);
+      return target;
+    }
+
     @Override
     public String toString() {
       return getClass().getSimpleName() + "{" +
@@ -204,6 +247,7 @@ public class MapdbBlobMetadataStore
           ", created=" + created +
           ", sha1='" + sha1 + '\'' +
           ", size=" + size +
+          ", shared=" + shared +
           '}';
     }
 
@@ -227,12 +271,14 @@ public class MapdbBlobMetadataStore
         writeNullableString(out, sha1);
         writeNullableLong(out, size);
       }
+
+      out.writeBoolean(shared);
     }
 
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
       final int version = in.readInt();
-      checkState(version == 1, "Version must be 1.");
+      checkState(version == 1 || version == FORMAT_VERSION, "Version must be 1 or %s.", FORMAT_VERSION);
 
       state = BlobState.values()[in.readInt()];
 
@@ -251,6 +297,8 @@ public class MapdbBlobMetadataStore
         sha1 = readNullableString(in);
         size = readNullableLong(in);
       }
+
+      shared = version >= 2 && in.readBoolean();
     }
   }
 
@@ -259,11 +307,7 @@ public class MapdbBlobMetadataStore
   }
 
   private BlobMetadata convert(final MetadataRecord source) {
-    BlobMetadata target = new BlobMetadata(source.state, Maps.newHashMap(source.headers));
-    if (source.metrics) {
-      target.setMetrics(new BlobMetrics(source.created, source.sha1, source.size));
-    }
-    return target;
+    return source.toBlobMetadata();
   }
 
   /**
@@ -293,6 +337,7 @@ public class MapdbBlobMetadataStore
 
         // track state
         states(db, record.state).add(id);
+        updateReferences(references(db), null, record);
 
         return id;
       }
@@ -339,6 +384,7 @@ public class MapdbBlobMetadataStore
         // replace state
         states(db, prev.state).remove(id);
         states(db, record.state).add(id);
+        updateReferences(references(db), prev, record);
       }
     });
   }
@@ -359,6 +405,31 @@ public class MapdbBlobMetadataStore
 
         // remove state
         states(db, prev.state).remove(id);
+        updateReferences(references(db), prev, null);
+      }
+    });
+  }
+
+  @Override
+  public void deleteAll(final Collection<BlobId> ids) {
+    checkNotNull(ids);
+    ensureStarted();
+
+    log.trace("Delete all: {}", ids);
+
+    database.execute(new TxBlock()
+    {
+      @Override
+      public void tx(final DB db) throws TxRollbackException {
+        HTreeMap<BlobId, MetadataRecord> entries = entries(db);
+        HTreeMap<String, Long> references = references(db);
+        for (BlobId id : ids) {
+          MetadataRecord prev = entries.remove(id);
+          if (prev != null) {
+            states(db, prev.state).remove(id);
+            updateReferences(references, prev, null);
+          }
+        }
       }
     });
   }
@@ -435,6 +506,48 @@ public class MapdbBlobMetadataStore
     return bytes;
   }
 
+  /**
+   * Moves the reference of a blob from the shared content of its previous record to that of its new record, either
+   * of which may be absent or unshared.
+   */
+  static void updateReferences(final Map<String, Long> references, @Nullable final MetadataRecord prev,
+                               @Nullable final MetadataRecord record)
+  {
+    String released = prev != null ? prev.getSharedSha1() : null;
+    String added = record != null ? record.getSharedSha1() : null;
+    if (Objects.equals(released, added)) {
+      return;
+    }
+    if (added != null) {
+      Long count = references.get(added);
+      references.put(added, count == null ? 1 : count + 1);
+    }
+    if (released != null) {
+      Long count = references.get(released);
+      if (count != null && count > 1) {
+        references.put(released, count - 1);
+      }
+      else {
+        references.remove(released);
+      }
+    }
+  }
+
+  @Override
+  public long getReferenceCount(final String sha1) {
+    checkNotNull(sha1);
+    ensureStarted();
+
+    DB db = database.makeTx();
+    try {
+      Long count = references(db).get(sha1);
+      return count != null ? count : 0;
+    }
+    finally {
+      db.close();
+    }
+  }
+
   @Override
   public void compact() {
     ensureStarted();
@@ -448,28 +561,4 @@ public class MapdbBlobMetadataStore
       }
     });
   }
-
-  /**
-   * An invocation handler that ensures the context classloader is set up correctly for OSGi before MapDB attempts to
-   * use it to resolve classes for serialized/externalized objects.
-   */
-  private static class OsgiCompatibleClassloaderAdvice
-      implements InvocationHandler
-  {
-    private final BlobMetadataStore inner;
-
-    private OsgiCompatibleClassloaderAdvice(final BlobMetadataStore inner) {this.inner = inner;}
-
-    @Override
-    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-      ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
-      try {
-        Thread.currentThread().setContextClassLoader(MapdbBlobMetadataStore.class.getClassLoader());
-        return method.invoke(inner, args);
-      }
-      finally {
-        Thread.currentThread().setContextClassLoader(originalClassLoader);
-      }
-    }
-  }
 }
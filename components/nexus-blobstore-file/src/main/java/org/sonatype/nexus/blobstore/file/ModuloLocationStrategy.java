@@ -0,0 +1,64 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.nio.charset.StandardCharsets;
+
+import org.sonatype.nexus.blobstore.api.BlobId;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Stores blobs in a tree of {@code tiers} levels, each with {@code modulo} directories chosen by a hash of the
+ * blob-id, giving {@code modulo ^ tiers} leaf directories.
+ *
+ * @since 3.0
+ */
+public class ModuloLocationStrategy
+    implements LocationStrategy
+{
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private final int tiers;
+
+  private final int modulo;
+
+  private final String format;
+
+  public ModuloLocationStrategy(final int tiers, final int modulo) {
+    checkArgument(tiers > 0 && tiers <= 4, "Tiers must be between 1 and 4: %s", tiers);
+    checkArgument(modulo > 1 && modulo <= 4096, "Modulo must be between 2 and 4096: %s", modulo);
+    this.tiers = tiers;
+    this.modulo = modulo;
+    this.format = "%0" + String.valueOf(modulo - 1).length() + "d/";
+  }
+
+  @Override
+  public String location(final BlobId blobId) {
+    checkNotNull(blobId);
+
+    String id = blobId.asUniqueString();
+    long hash = HASH.hashString(id, StandardCharsets.UTF_8).asLong();
+
+    StringBuilder location = new StringBuilder();
+    for (int i = 0; i < tiers; i++) {
+      location.append(String.format(format, (int) ((hash & Long.MAX_VALUE) % modulo)));
+      hash = Long.rotateRight(hash, 16);
+    }
+    return location.append(LocationStrategies.escapeFilename(id)).toString();
+  }
+}
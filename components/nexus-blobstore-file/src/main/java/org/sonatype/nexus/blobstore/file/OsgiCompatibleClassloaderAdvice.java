@@ -0,0 +1,46 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An invocation handler that ensures the context classloader is set up correctly for OSGi before MapDB attempts to
+ * use it to resolve classes for serialized/externalized objects.
+ *
+ * @since 3.0
+ */
+class OsgiCompatibleClassloaderAdvice
+    implements InvocationHandler
+{
+  private final BlobMetadataStore inner;
+
+  OsgiCompatibleClassloaderAdvice(final BlobMetadataStore inner) {
+    this.inner = checkNotNull(inner);
+  }
+
+  @Override
+  public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+    ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+    try {
+      Thread.currentThread().setContextClassLoader(OsgiCompatibleClassloaderAdvice.class.getClassLoader());
+      return method.invoke(inner, args);
+    }
+    finally {
+      Thread.currentThread().setContextClassLoader(originalClassLoader);
+    }
+  }
+}
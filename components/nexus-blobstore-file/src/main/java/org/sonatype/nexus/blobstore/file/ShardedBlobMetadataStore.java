@@ -0,0 +1,639 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.file.MapdbBlobMetadataStore.MetadataRecord;
+import org.sonatype.nexus.common.collect.AutoClosableIterable;
+import org.sonatype.nexus.common.io.DirSupport;
+import org.sonatype.sisu.goodies.lifecycle.LifecycleSupport;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.SettableFuture;
+import org.mapdb.Atomic;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.HTreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * {@link BlobMetadataStore} which spreads metadata across several MapDB shards keyed by blob-id.
+ *
+ * Each shard has a single writer thread which applies every queued mutation and then commits them together,
+ * so the state transitions of concurrent writers share one fsync rather than serializing on a global transaction.
+ * Callers block until the commit containing their mutation has completed. Reads wait for a batch being applied to
+ * be committed or rolled back, so they only ever observe committed state.
+ *
+ * References to shared content are counted in the shard of the referring blob, so they are committed together with
+ * its metadata; the reference count of a SHA1 is the sum over all shards.
+ *
+ * @since 3.0
+ */
+public class ShardedBlobMetadataStore
+    extends LifecycleSupport
+    implements BlobMetadataStore
+{
+  /**
+   * Upper bound of mutations grouped into a single commit.
+   */
+  private static final int MAX_BATCH_SIZE = 1024;
+
+  /**
+   * Upper bound callers wait for the commit containing their mutation.
+   */
+  private static final long COMMIT_TIMEOUT_MINUTES = 5;
+
+  private final File directory;
+
+  private final Shard[] shards;
+
+  private final AtomicLong idSequence = new AtomicLong();
+
+  private ShardedBlobMetadataStore(final File directory, final int shardCount) {
+    this.directory = checkNotNull(directory);
+    checkArgument(shardCount > 0, "Shard count must be positive: %s", shardCount);
+    this.shards = new Shard[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new Shard(new File(directory, String.format("%s-%02d.db", directory.getName(), i)));
+    }
+    log.debug("Directory: {}, shards: {}", directory, shardCount);
+  }
+
+  /**
+   * Creates a store with the given number of shards, wrapped to ensure MapDB resolves classes with the right
+   * classloader under OSGi.
+   *
+   * @see MapdbBlobMetadataStore#create(File)
+   */
+  public static BlobMetadataStore create(final File directory, final int shardCount) {
+    final ShardedBlobMetadataStore inner = new ShardedBlobMetadataStore(directory, shardCount);
+
+    return (BlobMetadataStore) Proxy.newProxyInstance(BlobMetadataStore.class.getClassLoader(),
+        new Class[]{BlobMetadataStore.class}, new OsgiCompatibleClassloaderAdvice(inner));
+  }
+
+  /**
+   * Returns the file recording how many shards the metadata in the given directory is spread across.
+   */
+  static File shardCountFile(final File directory) {
+    return new File(directory, directory.getName() + ".shards");
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    DirSupport.mkdir(directory);
+    checkShardCount();
+    long lastId = 0;
+    for (Shard shard : shards) {
+      shard.start();
+      lastId = Math.max(lastId, idHighWater(shard.db).get());
+    }
+    idSequence.set(lastId);
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    for (Shard shard : shards) {
+      shard.stop();
+    }
+  }
+
+  /**
+   * Blob-ids are assigned to shards by the shard count, so metadata written unsharded or with another shard count
+   * would silently appear to be missing. There is no migration between layouts, so refuse to open such metadata.
+   */
+  private void checkShardCount() throws IOException {
+    checkState(!MapdbBlobMetadataStore.databaseFile(directory).exists(),
+        "Metadata in %s is not sharded, it can not be opened with %s shards", directory, shards.length);
+    File countFile = shardCountFile(directory);
+    if (countFile.exists()) {
+      int count = Integer.parseInt(Files.toString(countFile, Charsets.UTF_8).trim());
+      checkState(count == shards.length,
+          "Metadata in %s is spread across %s shards, it can not be opened with %s shards", directory, count,
+          shards.length);
+    }
+    else {
+      Files.write(String.valueOf(shards.length), countFile, Charsets.UTF_8);
+    }
+  }
+
+  private Atomic.Long idHighWater(final DB db) {
+    return db.getAtomicLong("id_high_water");
+  }
+
+  private HTreeMap<BlobId, MetadataRecord> entries(final DB db) {
+    return db.getHashMap("entries");
+  }
+
+  private HTreeMap<String, Long> references(final DB db) {
+    return db.getHashMap("references");
+  }
+
+  private NavigableSet<BlobId> states(final DB db, final BlobState state) {
+    return db.getTreeSet("state_" + state.name());
+  }
+
+  private Shard shardFor(final Object key) {
+    return shards[(key.hashCode() & Integer.MAX_VALUE) % shards.length];
+  }
+
+  @Override
+  public BlobId add(final BlobMetadata metadata) {
+    checkNotNull(metadata);
+    ensureStarted();
+
+    final long sequence = idSequence.incrementAndGet();
+    final BlobId id = new BlobId(String.format("%016x", sequence));
+    final MetadataRecord record = new MetadataRecord(metadata);
+    log.trace("Add: {}={}", id, record);
+
+    return shardFor(id).execute(new Mutation<BlobId>()
+    {
+      @Override
+      BlobId apply(final DB db) {
+        HTreeMap<BlobId, MetadataRecord> entries = entries(db);
+        checkState(!entries.containsKey(id), "Duplicate blob-id: %s", id);
+        entries.put(id, record);
+        states(db, record.getState()).add(id);
+        MapdbBlobMetadataStore.updateReferences(references(db), null, record);
+
+        Atomic.Long highWater = idHighWater(db);
+        if (highWater.get() < sequence) {
+          highWater.set(sequence);
+        }
+        return id;
+      }
+    });
+  }
+
+  @Nullable
+  @Override
+  public BlobMetadata get(final BlobId id) {
+    checkNotNull(id);
+    ensureStarted();
+
+    log.trace("Get: {}", id);
+
+    Shard shard = shardFor(id);
+    shard.readLock();
+    try {
+      MetadataRecord record = entries(shard.db).get(id);
+      return record != null ? record.toBlobMetadata() : null;
+    }
+    finally {
+      shard.readUnlock();
+    }
+  }
+
+  @Override
+  public void update(final BlobId id, final BlobMetadata metadata) {
+    checkNotNull(id);
+    checkNotNull(metadata);
+    ensureStarted();
+
+    final MetadataRecord record = new MetadataRecord(metadata);
+    log.trace("Update: {}={}", id, record);
+
+    shardFor(id).execute(new Mutation<Void>()
+    {
+      @Override
+      Void apply(final DB db) {
+        HTreeMap<BlobId, MetadataRecord> entries = entries(db);
+        MetadataRecord prev = entries.get(id);
+        checkState(prev != null, "Can not update non-existent blob-id: %s", id);
+        entries.put(id, record);
+
+        // replace state
+        states(db, prev.getState()).remove(id);
+        states(db, record.getState()).add(id);
+        MapdbBlobMetadataStore.updateReferences(references(db), prev, record);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void delete(final BlobId id) {
+    checkNotNull(id);
+    ensureStarted();
+
+    log.trace("Delete: {}", id);
+
+    shardFor(id).execute(new Mutation<Void>()
+    {
+      @Override
+      Void apply(final DB db) {
+        MetadataRecord prev = entries(db).remove(id);
+        checkState(prev != null, "Can not delete non-existent blob-id: %s", id);
+
+        // remove state
+        states(db, prev.getState()).remove(id);
+        MapdbBlobMetadataStore.updateReferences(references(db), prev, null);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void deleteAll(final Collection<BlobId> ids) {
+    checkNotNull(ids);
+    ensureStarted();
+
+    log.trace("Delete all: {}", ids);
+
+    List<Future<Void>> pending = Lists.newArrayList();
+    for (Entry<Shard, Collection<BlobId>> entry : groupByShard(ids).entrySet()) {
+      final Collection<BlobId> shardIds = entry.getValue();
+      pending.add(entry.getKey().submit(new Mutation<Void>()
+      {
+        @Override
+        Void apply(final DB db) {
+          HTreeMap<BlobId, MetadataRecord> entries = entries(db);
+          HTreeMap<String, Long> references = references(db);
+          for (BlobId id : shardIds) {
+            MetadataRecord prev = entries.remove(id);
+            if (prev != null) {
+              states(db, prev.getState()).remove(id);
+              MapdbBlobMetadataStore.updateReferences(references, prev, null);
+            }
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> future : pending) {
+      await(future);
+    }
+  }
+
+  @Override
+  public AutoClosableIterable<BlobId> findWithState(final BlobState state) {
+    checkNotNull(state);
+    ensureStarted();
+
+    log.trace("Find with state: {}", state);
+
+    final List<DB> snapshots = Lists.newArrayListWithCapacity(shards.length);
+    final List<Iterable<BlobId>> sets = Lists.newArrayListWithCapacity(shards.length);
+    for (Shard shard : shards) {
+      shard.readLock();
+      try {
+        DB snapshot = shard.db.snapshot();
+        snapshots.add(snapshot);
+        sets.add(states(snapshot, state));
+      }
+      finally {
+        shard.readUnlock();
+      }
+    }
+
+    return new AutoClosableIterable<BlobId>()
+    {
+      @Override
+      public Iterator<BlobId> iterator() {
+        return Iterables.concat(sets).iterator();
+      }
+
+      @Override
+      public void close() throws Exception {
+        for (DB snapshot : snapshots) {
+          snapshot.close();
+        }
+      }
+    };
+  }
+
+  @Override
+  public long getBlobCount() {
+    ensureStarted();
+
+    long count = 0;
+    for (Shard shard : shards) {
+      shard.readLock();
+      try {
+        count += entries(shard.db).sizeLong();
+      }
+      finally {
+        shard.readUnlock();
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public long getTotalSize() {
+    ensureStarted();
+
+    // sum all file bytes in the database root
+    long bytes = 0;
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        bytes += file.length();
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public long getReferenceCount(final String sha1) {
+    checkNotNull(sha1);
+    ensureStarted();
+
+    long total = 0;
+    for (Shard shard : shards) {
+      shard.readLock();
+      try {
+        Long count = references(shard.db).get(sha1);
+        if (count != null) {
+          total += count;
+        }
+      }
+      finally {
+        shard.readUnlock();
+      }
+    }
+    return total;
+  }
+
+  private <K> Map<Shard, Collection<K>> groupByShard(final Collection<K> keys) {
+    ListMultimap<Shard, K> grouped = ArrayListMultimap.create();
+    for (K key : keys) {
+      grouped.put(shardFor(key), key);
+    }
+    return grouped.asMap();
+  }
+
+  private static <T> T await(final Future<T> future) {
+    try {
+      return future.get(COMMIT_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+    }
+    catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    catch (TimeoutException e) {
+      throw new IllegalStateException("Timed out waiting for metadata commit", e);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Override
+  public void compact() {
+    ensureStarted();
+
+    for (Shard shard : shards) {
+      shard.execute(new Mutation<Void>()
+      {
+        @Override
+        Void apply(final DB db) {
+          log.trace("Compacting");
+          db.compact();
+          return null;
+        }
+      });
+    }
+  }
+
+  /**
+   * A change applied by a shard's writer thread, completed once the batch containing it has been committed.
+   */
+  private abstract static class Mutation<T>
+  {
+    private final SettableFuture<T> future = SettableFuture.create();
+
+    private T result;
+
+    abstract T apply(DB db);
+  }
+
+  /**
+   * A single MapDB file and the writer thread which group-commits its mutations.
+   */
+  private class Shard
+      implements Runnable
+  {
+    private final File file;
+
+    private final BlockingQueue<Mutation<?>> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Guards {@link #running} so no mutation can be queued once the writer has been told to stop.
+     */
+    private final Object queueLock = new Object();
+
+    /**
+     * Held exclusively by the writer while applying and committing a batch, and shared by readers.
+     */
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+
+    private volatile DB db;
+
+    private volatile boolean running;
+
+    private Thread writer;
+
+    private Shard(final File file) {
+      this.file = file;
+    }
+
+    private void start() {
+      db = DBMaker.newFileDB(file)
+          .checksumEnable()
+          .snapshotEnable()
+          .make();
+      running = true;
+      writer = new Thread(this, "blob-metadata-writer-" + file.getName());
+      writer.setDaemon(true);
+      writer.start();
+    }
+
+    private void stop() throws InterruptedException {
+      synchronized (queueLock) {
+        running = false;
+      }
+      writer.join();
+      writer = null;
+      // the writer drains the queue before exiting, unless it was interrupted
+      failQueued();
+      db.close();
+      db = null;
+    }
+
+    private void readLock() {
+      commitLock.readLock().lock();
+    }
+
+    private void readUnlock() {
+      commitLock.readLock().unlock();
+    }
+
+    private <T> T execute(final Mutation<T> mutation) {
+      return await(submit(mutation));
+    }
+
+    /**
+     * Queues the mutation without waiting for it, so callers can spread a batch over several shards.
+     */
+    private <T> Future<T> submit(final Mutation<T> mutation) {
+      synchronized (queueLock) {
+        checkState(running, "Shard is not running: %s", file);
+        queue.add(mutation);
+      }
+      return mutation.future;
+    }
+
+    @Override
+    public void run() {
+      Thread.currentThread().setContextClassLoader(ShardedBlobMetadataStore.class.getClassLoader());
+
+      List<Mutation<?>> batch = Lists.newArrayListWithCapacity(MAX_BATCH_SIZE);
+      while (running || !queue.isEmpty()) {
+        try {
+          Mutation<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+          if (first == null) {
+            continue;
+          }
+          batch.add(first);
+          queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+          commit(batch);
+        }
+        catch (InterruptedException e) {
+          log.debug("Writer interrupted: {}", file);
+          break;
+        }
+        catch (RuntimeException e) {
+          log.warn("Failed to process {} mutations for {}", batch.size(), file, e);
+          for (Mutation<?> mutation : batch) {
+            mutation.future.setException(e);
+          }
+        }
+        finally {
+          batch.clear();
+        }
+      }
+
+      // anything still queued can never be committed
+      failQueued();
+    }
+
+    private void failQueued() {
+      Mutation<?> mutation;
+      while ((mutation = queue.poll()) != null) {
+        mutation.future.setException(new IllegalStateException("Shard stopped: " + file));
+      }
+    }
+
+    /**
+     * Applies every mutation in the batch then commits once. A mutation rejected partway through by its own checks
+     * fails alone: the batch is rolled back, discarding its partial changes, and the remaining mutations re-applied.
+     * A failed commit fails the whole batch.
+     */
+    private void commit(final List<Mutation<?>> batch) {
+      log.trace("Committing {} mutations to {}", batch.size(), file);
+
+      commitLock.writeLock().lock();
+      try {
+        List<Mutation<?>> applied = batch;
+        boolean rejected;
+        do {
+          List<Mutation<?>> pending = applied;
+          applied = Lists.newArrayListWithCapacity(pending.size());
+          rejected = false;
+          for (Mutation<?> mutation : pending) {
+            if (apply(mutation)) {
+              applied.add(mutation);
+            }
+            else {
+              rejected = true;
+            }
+          }
+          if (rejected) {
+            db.rollback();
+          }
+        }
+        while (rejected && !applied.isEmpty());
+
+        if (applied.isEmpty()) {
+          return;
+        }
+
+        try {
+          db.commit();
+        }
+        catch (Exception e) {
+          log.warn("Failed to commit {} mutations to {}", applied.size(), file, e);
+          db.rollback();
+          for (Mutation<?> mutation : applied) {
+            mutation.future.setException(e);
+          }
+          return;
+        }
+
+        for (Mutation<?> mutation : applied) {
+          complete(mutation);
+        }
+      }
+      finally {
+        commitLock.writeLock().unlock();
+      }
+    }
+
+    private <T> boolean apply(final Mutation<T> mutation) {
+      try {
+        mutation.result = mutation.apply(db);
+        return true;
+      }
+      catch (Exception e) {
+        mutation.future.setException(e);
+        return false;
+      }
+    }
+
+    private <T> void complete(final Mutation<T> mutation) {
+      mutation.future.set(mutation.result);
+    }
+  }
+}
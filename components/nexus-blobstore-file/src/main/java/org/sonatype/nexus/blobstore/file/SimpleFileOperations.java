@@ -17,6 +17,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 
 import javax.inject.Named;
@@ -71,6 +72,18 @@ public class SimpleFileOperations
     return Files.exists(path);
   }
 
+  @Override
+  public void move(final Path source, final Path target) throws IOException {
+    checkNotNull(source);
+    checkNotNull(target);
+
+    Path dir = target.getParent();
+    checkNotNull(dir, "Null parent for path: %s", target);
+    DirSupport.mkdir(dir);
+
+    Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+  }
+
   @Override
   public InputStream openInputStream(final Path path) throws IOException {
     checkNotNull(path);
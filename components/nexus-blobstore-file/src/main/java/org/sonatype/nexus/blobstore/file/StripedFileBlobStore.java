@@ -0,0 +1,495 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobMetrics;
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.blobstore.api.BlobStoreListener;
+import org.sonatype.nexus.blobstore.api.BlobStoreMetrics;
+import org.sonatype.nexus.blobstore.api.FileChannelBlob;
+import org.sonatype.nexus.common.collect.AutoClosableIterable;
+import org.sonatype.nexus.common.collect.NestedAttributesMap;
+import org.sonatype.sisu.goodies.lifecycle.LifecycleSupport;
+
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link BlobStore} striping blobs across several {@link FileBlobStore} volumes, each normally on its own disk,
+ * so throughput and capacity grow by adding disks.
+ *
+ * Every volume keeps its own content and metadata, so reads and writes of different volumes proceed in parallel.
+ * New blobs are placed on a volume chosen at random, weighted by its free space; the volume is encoded in the
+ * blob-id, so reads go straight to it. Volumes are identified by their position in {@link #PATHS_KEY}, so paths
+ * may only be appended.
+ *
+ * @since 3.0
+ */
+@Named(StripedFileBlobStore.TYPE)
+public class StripedFileBlobStore
+    extends LifecycleSupport
+    implements BlobStore
+{
+  public static final String TYPE = "Striped";
+
+  private static final String CONFIG_KEY = "striped";
+
+  /**
+   * Comma-separated volume root directories.
+   */
+  public static final String PATHS_KEY = "paths";
+
+  /**
+   * Prefix of the attributes holding each volume's {@link FileBlobStore} configuration. Options given in
+   * {@link #CONFIG_KEY} apply to volumes which do not override them.
+   */
+  private static final String VOLUME_KEY_PREFIX = "volume-";
+
+  private static final String VOLUME_SEPARATOR = "-";
+
+  private static final long FREE_SPACE_REFRESH_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private final LocationStrategy locationStrategy;
+
+  private final FileOperations fileOperations;
+
+  private BlobStoreConfiguration blobStoreConfiguration;
+
+  private List<FileBlobStore> volumes;
+
+  private volatile BlobStoreListener listener;
+
+  private volatile long[] freeSpace;
+
+  private volatile long freeSpaceRefreshed;
+
+  @Inject
+  public StripedFileBlobStore(final LocationStrategy locationStrategy,
+                              final FileOperations fileOperations)
+  {
+    this.locationStrategy = checkNotNull(locationStrategy);
+    this.fileOperations = checkNotNull(fileOperations);
+  }
+
+  @Override
+  public void init(final BlobStoreConfiguration configuration) throws Exception {
+    this.blobStoreConfiguration = checkNotNull(configuration);
+
+    NestedAttributesMap defaults = configuration.attributes(CONFIG_KEY);
+    List<String> paths = Splitter.on(',').trimResults().omitEmptyStrings()
+        .splitToList(String.valueOf(defaults.require(PATHS_KEY)));
+    checkArgument(!paths.isEmpty(), "At least one volume path is required");
+
+    List<FileBlobStore> volumes = Lists.newArrayListWithCapacity(paths.size());
+    for (int i = 0; i < paths.size(); i++) {
+      FileBlobStore volume = new FileBlobStore(locationStrategy, fileOperations);
+      volume.init(volumeConfiguration(configuration, i, paths.get(i)));
+      volumes.add(volume);
+    }
+    this.volumes = ImmutableList.copyOf(volumes);
+  }
+
+  /**
+   * Returns the configuration of a volume, backed by the attributes of this store so changes a volume makes, such
+   * as migrating its layout, are persisted along with this store's configuration.
+   */
+  private BlobStoreConfiguration volumeConfiguration(final BlobStoreConfiguration configuration, final int index,
+                                                     final String path)
+  {
+    NestedAttributesMap defaults = configuration.attributes(CONFIG_KEY);
+    NestedAttributesMap attributes = configuration.attributes(VOLUME_KEY_PREFIX + index);
+    attributes.set("path", path);
+    for (String key : new String[]{
+        FileBlobStore.DEDUPLICATE_KEY, FileBlobStore.METADATA_SHARDS_KEY, FileBlobStore.LAYOUT_KEY}) {
+      if (!attributes.contains(key) && defaults.contains(key)) {
+        attributes.set(key, defaults.get(key));
+      }
+    }
+
+    BlobStoreConfiguration volumeConfiguration = new BlobStoreConfiguration();
+    volumeConfiguration.setName(configuration.getName() + VOLUME_SEPARATOR + index);
+    volumeConfiguration.setType(FileBlobStore.TYPE);
+    Map<String, Map<String, Object>> volumeAttributes = Maps.newHashMap();
+    volumeAttributes.put("file", attributes.backing());
+    volumeConfiguration.setAttributes(volumeAttributes);
+    return volumeConfiguration;
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    for (FileBlobStore volume : volumes) {
+      volume.start();
+    }
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    for (FileBlobStore volume : volumes) {
+      volume.stop();
+    }
+  }
+
+  /**
+   * Returns the volumes, in the order of their paths.
+   */
+  public List<FileBlobStore> getVolumes() {
+    return volumes;
+  }
+
+  /**
+   * Returns the id this store uses for a blob of the given volume.
+   */
+  public BlobId toStripedId(final int volume, final BlobId blobId) {
+    return new BlobId(volume + VOLUME_SEPARATOR + blobId.asUniqueString());
+  }
+
+  @Override
+  public void setBlobStoreListener(@Nullable final BlobStoreListener listener) {
+    this.listener = listener;
+    for (int i = 0; i < volumes.size(); i++) {
+      volumes.get(i).setBlobStoreListener(listener != null ? new VolumeListener(i, listener) : null);
+    }
+  }
+
+  @Nullable
+  @Override
+  public BlobStoreListener getBlobStoreListener() {
+    return listener;
+  }
+
+  @Override
+  public Blob create(final InputStream blobData, final Map<String, String> headers) {
+    int index = selectVolume();
+    return new StripedBlob(index, volumes.get(index).create(blobData, headers));
+  }
+
+  /**
+   * Picks a volume at random, weighted by free space, so fuller disks receive fewer new blobs.
+   */
+  private int selectVolume() {
+    long[] free = freeSpace();
+    long total = 0;
+    for (long space : free) {
+      total += space;
+    }
+    if (total <= 0) {
+      return ThreadLocalRandom.current().nextInt(free.length);
+    }
+    long target = ThreadLocalRandom.current().nextLong(total);
+    for (int i = 0; i < free.length; i++) {
+      target -= free[i];
+      if (target < 0) {
+        return i;
+      }
+    }
+    return free.length - 1;
+  }
+
+  /**
+   * Returns the free space of each volume, refreshed periodically rather than queried for every blob.
+   */
+  private long[] freeSpace() {
+    long[] free = freeSpace;
+    long now = System.currentTimeMillis();
+    if (free == null || now - freeSpaceRefreshed > FREE_SPACE_REFRESH_MILLIS) {
+      free = new long[volumes.size()];
+      for (int i = 0; i < free.length; i++) {
+        try {
+          free[i] = Math.max(0, volumes.get(i).getMetrics().getAvailableSpace());
+        }
+        catch (Exception e) {
+          log.warn("Failed to determine free space of volume {}", i, e);
+        }
+      }
+      freeSpace = free;
+      freeSpaceRefreshed = now;
+    }
+    return free;
+  }
+
+  @Nullable
+  @Override
+  public Blob get(final BlobId blobId) {
+    checkNotNull(blobId);
+    VolumeBlobId volumeBlobId = parse(blobId);
+    if (volumeBlobId == null) {
+      return null;
+    }
+    Blob blob = volumes.get(volumeBlobId.volume).get(volumeBlobId.blobId);
+    return blob != null ? new StripedBlob(volumeBlobId.volume, blob) : null;
+  }
+
+  @Override
+  public boolean delete(final BlobId blobId) {
+    checkNotNull(blobId);
+    VolumeBlobId volumeBlobId = parse(blobId);
+    return volumeBlobId != null && volumes.get(volumeBlobId.volume).delete(volumeBlobId.blobId);
+  }
+
+  @Override
+  public boolean deleteHard(final BlobId blobId) {
+    checkNotNull(blobId);
+    VolumeBlobId volumeBlobId = parse(blobId);
+    return volumeBlobId != null && volumes.get(volumeBlobId.volume).deleteHard(volumeBlobId.blobId);
+  }
+
+  @Nullable
+  private VolumeBlobId parse(final BlobId blobId) {
+    String id = blobId.asUniqueString();
+    int separator = id.indexOf(VOLUME_SEPARATOR);
+    if (separator > 0) {
+      try {
+        int volume = Integer.parseInt(id.substring(0, separator));
+        if (volume >= 0 && volume < volumes.size()) {
+          return new VolumeBlobId(volume, new BlobId(id.substring(separator + 1)));
+        }
+      }
+      catch (NumberFormatException e) {
+        // fall through
+      }
+    }
+    log.debug("Attempt to access blob {} of no volume", blobId);
+    return null;
+  }
+
+  @Override
+  public BlobStoreMetrics getMetrics() {
+    return new BlobStoreMetrics()
+    {
+      @Override
+      public long getBlobCount() {
+        long count = 0;
+        for (FileBlobStore volume : volumes) {
+          count += volume.getMetrics().getBlobCount();
+        }
+        return count;
+      }
+
+      @Override
+      public long getTotalSize() {
+        long size = 0;
+        for (FileBlobStore volume : volumes) {
+          size += volume.getMetrics().getTotalSize();
+        }
+        return size;
+      }
+
+      @Override
+      public long getAvailableSpace() {
+        long space = 0;
+        for (FileBlobStore volume : volumes) {
+          space += volume.getMetrics().getAvailableSpace();
+        }
+        return space;
+      }
+    };
+  }
+
+  /**
+   * Compacts all volumes in parallel, as each is on its own disk.
+   */
+  @Override
+  public void compact() {
+    ExecutorService executor = Executors.newFixedThreadPool(volumes.size());
+    try {
+      List<Future<Void>> compactions = Lists.newArrayList();
+      for (final FileBlobStore volume : volumes) {
+        compactions.add(executor.submit(new Callable<Void>()
+        {
+          @Override
+          public Void call() {
+            volume.compact();
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> compaction : compactions) {
+        compaction.get();
+      }
+    }
+    catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Override
+  public BlobStoreConfiguration getBlobStoreConfiguration() {
+    return blobStoreConfiguration;
+  }
+
+  @Override
+  public AutoClosableIterable<BlobId> iterator() {
+    final List<AutoClosableIterable<BlobId>> iterables = Lists.newArrayListWithCapacity(volumes.size());
+    final List<Iterable<BlobId>> striped = Lists.newArrayListWithCapacity(volumes.size());
+    for (int i = 0; i < volumes.size(); i++) {
+      final int volume = i;
+      AutoClosableIterable<BlobId> iterable = volumes.get(i).iterator();
+      iterables.add(iterable);
+      striped.add(Iterables.transform(iterable, new Function<BlobId, BlobId>()
+      {
+        @Override
+        public BlobId apply(final BlobId blobId) {
+          return toStripedId(volume, blobId);
+        }
+      }));
+    }
+
+    return new AutoClosableIterable<BlobId>()
+    {
+      @Override
+      public Iterator<BlobId> iterator() {
+        return Iterables.concat(striped).iterator();
+      }
+
+      @Override
+      public void close() throws Exception {
+        for (AutoClosableIterable<BlobId> iterable : iterables) {
+          iterable.close();
+        }
+      }
+    };
+  }
+
+  public static BlobStoreConfiguration configure(final String name, final String... paths) {
+    BlobStoreConfiguration configuration = new BlobStoreConfiguration();
+    configuration.setName(name);
+    configuration.setType(StripedFileBlobStore.TYPE);
+    configuration.attributes(CONFIG_KEY).set(PATHS_KEY, Joiner.on(',').join(paths));
+    return configuration;
+  }
+
+  private static class VolumeBlobId
+  {
+    private final int volume;
+
+    private final BlobId blobId;
+
+    private VolumeBlobId(final int volume, final BlobId blobId) {
+      this.volume = volume;
+      this.blobId = blobId;
+    }
+  }
+
+  /**
+   * A blob of a volume, identified by its striped id.
+   */
+  private class StripedBlob
+      implements FileChannelBlob
+  {
+    private final BlobId blobId;
+
+    private final Blob blob;
+
+    private StripedBlob(final int volume, final Blob blob) {
+      this.blobId = toStripedId(volume, blob.getId());
+      this.blob = blob;
+    }
+
+    @Override
+    public BlobId getId() {
+      return blobId;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+      return blob.getHeaders();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return blob.getInputStream();
+    }
+
+    @Override
+    public FileChannel openFileChannel() {
+      return ((FileChannelBlob) blob).openFileChannel();
+    }
+
+    @Override
+    public BlobMetrics getMetrics() {
+      return blob.getMetrics();
+    }
+  }
+
+  /**
+   * Relays events of a volume with striped ids.
+   */
+  private class VolumeListener
+      implements BlobStoreListener
+  {
+    private final int volume;
+
+    private final BlobStoreListener delegate;
+
+    private VolumeListener(final int volume, final BlobStoreListener delegate) {
+      this.volume = volume;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void blobCreated(final Blob blob, @Nullable final String message) {
+      delegate.blobCreated(new StripedBlob(volume, blob), message);
+    }
+
+    @Override
+    public void blobAccessed(final Blob blob, @Nullable final String message) {
+      delegate.blobAccessed(new StripedBlob(volume, blob), message);
+    }
+
+    @Override
+    public void blobDeleteRequested(final BlobId blobId, @Nullable final String message) {
+      delegate.blobDeleteRequested(toStripedId(volume, blobId), message);
+    }
+
+    @Override
+    public void blobDeleted(final BlobId blobId, @Nullable final String message) {
+      delegate.blobDeleted(toStripedId(volume, blobId), message);
+    }
+  }
+}
@@ -0,0 +1,284 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.NavigableSet;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.common.collect.AutoClosableIterable;
+import org.sonatype.nexus.common.io.DirSupport;
+import org.sonatype.sisu.goodies.lifecycle.LifecycleSupport;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import org.mapdb.Atomic;
+import org.mapdb.BTreeMap;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Fun;
+import org.mapdb.TxBlock;
+import org.mapdb.TxMaker;
+import org.mapdb.TxRollbackException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * MapDB index of the tier holding each blob of a {@link TieredBlobStore}, and the id of the blob within that tier.
+ * Only strings are stored, so no classloader advice is needed.
+ *
+ * @since 3.0
+ */
+class TierIndex
+    extends LifecycleSupport
+{
+  enum Tier
+  {
+    HOT, COLD
+  }
+
+  /**
+   * The tier holding a blob, and the blob's id there.
+   */
+  static class Location
+  {
+    private final Tier tier;
+
+    private final BlobId blobId;
+
+    Location(final Tier tier, final BlobId blobId) {
+      this.tier = checkNotNull(tier);
+      this.blobId = checkNotNull(blobId);
+    }
+
+    Tier getTier() {
+      return tier;
+    }
+
+    BlobId getBlobId() {
+      return blobId;
+    }
+
+    private String encode() {
+      return tier.name() + ':' + blobId.asUniqueString();
+    }
+
+    @Nullable
+    private static Location decode(@Nullable final String value) {
+      if (value == null) {
+        return null;
+      }
+      int separator = value.indexOf(':');
+      return new Location(Tier.valueOf(value.substring(0, separator)), new BlobId(value.substring(separator + 1)));
+    }
+
+    @Override
+    public String toString() {
+      return encode();
+    }
+  }
+
+  private final File file;
+
+  private TxMaker database;
+
+  TierIndex(final File directory) {
+    checkNotNull(directory);
+    this.file = new File(directory, directory.getName() + ".db");
+    log.debug("File: {}", file);
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    DirSupport.mkdir(file.getParentFile());
+    this.database = DBMaker.newFileDB(file)
+        .checksumEnable()
+        .makeTxMaker();
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    database.close();
+    database = null;
+  }
+
+  private Atomic.Long idSequence(final DB db) {
+    return db.getAtomicLong("id_sequence");
+  }
+
+  private BTreeMap<String, String> locations(final DB db) {
+    return db.getTreeMap("locations");
+  }
+
+  private NavigableSet<String> hot(final DB db) {
+    return db.getTreeSet("hot");
+  }
+
+  private void track(final DB db, final String id, @Nullable final Location previous, @Nullable final Location next) {
+    if (previous != null && previous.tier == Tier.HOT) {
+      hot(db).remove(id);
+    }
+    if (next != null && next.tier == Tier.HOT) {
+      hot(db).add(id);
+    }
+  }
+
+  /**
+   * Adds the location of a new blob, and returns the id it's now known by.
+   */
+  BlobId add(final Location location) {
+    checkNotNull(location);
+    ensureStarted();
+
+    return database.execute(new Fun.Function1<BlobId, DB>()
+    {
+      @Override
+      public BlobId run(final DB db) {
+        String id = String.format("%016x", idSequence(db).incrementAndGet());
+        log.trace("Add: {}={}", id, location);
+        locations(db).put(id, location.encode());
+        track(db, id, null, location);
+        return new BlobId(id);
+      }
+    });
+  }
+
+  @Nullable
+  Location get(final BlobId blobId) {
+    checkNotNull(blobId);
+    ensureStarted();
+
+    DB db = database.makeTx();
+    try {
+      return Location.decode(locations(db).get(blobId.asUniqueString()));
+    }
+    finally {
+      db.close();
+    }
+  }
+
+  /**
+   * Moves the blob to a new location if it's still at the expected one, returning whether it was moved.
+   */
+  boolean move(final BlobId blobId, final Location expected, final Location location) {
+    checkNotNull(blobId);
+    checkNotNull(expected);
+    checkNotNull(location);
+    ensureStarted();
+
+    return database.execute(new Fun.Function1<Boolean, DB>()
+    {
+      @Override
+      public Boolean run(final DB db) {
+        String id = blobId.asUniqueString();
+        if (!locations(db).replace(id, expected.encode(), location.encode())) {
+          return false;
+        }
+        log.trace("Move: {}={}", id, location);
+        track(db, id, expected, location);
+        return true;
+      }
+    });
+  }
+
+  /**
+   * Removes the blob, returning its last location, or {@code null} if it was unknown.
+   */
+  @Nullable
+  Location remove(final BlobId blobId) {
+    checkNotNull(blobId);
+    ensureStarted();
+
+    return database.execute(new Fun.Function1<Location, DB>()
+    {
+      @Override
+      public Location run(final DB db) {
+        String id = blobId.asUniqueString();
+        Location previous = Location.decode(locations(db).remove(id));
+        log.trace("Remove: {}={}", id, previous);
+        track(db, id, previous, null);
+        return previous;
+      }
+    });
+  }
+
+  long size() {
+    ensureStarted();
+
+    DB db = database.makeTx();
+    try {
+      return locations(db).sizeLong();
+    }
+    finally {
+      db.close();
+    }
+  }
+
+  /**
+   * Returns all blob-ids.
+   *
+   * @return Iterable handle must be closed when finished using it.
+   */
+  AutoClosableIterable<BlobId> all() {
+    ensureStarted();
+    final DB db = database.makeTx().snapshot();
+    return ids(db, locations(db).keySet());
+  }
+
+  /**
+   * Returns the blob-ids held by the hot tier.
+   *
+   * @return Iterable handle must be closed when finished using it.
+   */
+  AutoClosableIterable<BlobId> hot() {
+    ensureStarted();
+    final DB db = database.makeTx().snapshot();
+    return ids(db, hot(db));
+  }
+
+  private AutoClosableIterable<BlobId> ids(final DB db, final Iterable<String> ids) {
+    return new AutoClosableIterable<BlobId>()
+    {
+      @Override
+      public Iterator<BlobId> iterator() {
+        return Iterators.transform(ids.iterator(), new Function<String, BlobId>()
+        {
+          @Override
+          public BlobId apply(final String id) {
+            return new BlobId(id);
+          }
+        });
+      }
+
+      @Override
+      public void close() throws Exception {
+        db.close();
+      }
+    };
+  }
+
+  void compact() {
+    ensureStarted();
+
+    database.execute(new TxBlock()
+    {
+      @Override
+      public void tx(final DB db) throws TxRollbackException {
+        db.compact();
+      }
+    });
+  }
+}
@@ -0,0 +1,590 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobMetrics;
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.blobstore.api.BlobStoreListener;
+import org.sonatype.nexus.blobstore.api.BlobStoreMetrics;
+import org.sonatype.nexus.blobstore.api.FileChannelBlob;
+import org.sonatype.nexus.blobstore.file.TierIndex.Location;
+import org.sonatype.nexus.blobstore.file.TierIndex.Tier;
+import org.sonatype.nexus.common.collect.AutoClosableIterable;
+import org.sonatype.nexus.common.collect.NestedAttributesMap;
+import org.sonatype.sisu.goodies.lifecycle.LifecycleSupport;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link BlobStore} keeping recently used blobs on a fast hot tier and the long tail on a larger, slower cold tier,
+ * each a {@link FileBlobStore}.
+ *
+ * New blobs are written to the hot tier. Once the hot tier holds more than {@link #HOT_CAPACITY_KEY} megabytes, the
+ * least recently used blobs are demoted to the cold tier in the background, and blobs read from the cold tier are
+ * promoted back. Blobs keep their id while moving between tiers; a {@link TierIndex} records where each one is.
+ *
+ * @since 3.0
+ */
+@Named(TieredBlobStore.TYPE)
+public class TieredBlobStore
+    extends LifecycleSupport
+    implements BlobStore
+{
+  public static final String TYPE = "Tiered";
+
+  private static final String CONFIG_KEY = "tiered";
+
+  /**
+   * Directory of the tier index.
+   */
+  public static final String PATH_KEY = "path";
+
+  public static final String HOT_PATH_KEY = "hotPath";
+
+  public static final String COLD_PATH_KEY = "coldPath";
+
+  /**
+   * Size in megabytes the hot tier is demoted down to.
+   */
+  public static final String HOT_CAPACITY_KEY = "hotCapacityMegabytes";
+
+  private static final int MOVE_QUEUE_SIZE = 1024;
+
+  /**
+   * Delay before demotion is retried after a failed move, doubled on each consecutive failure.
+   */
+  private static final long DEMOTION_BACKOFF_MILLIS = 1000L;
+
+  private static final long MAX_DEMOTION_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private final LocationStrategy locationStrategy;
+
+  private final FileOperations fileOperations;
+
+  private final Striped<Lock> locks = Striped.lock(64);
+
+  /**
+   * Blobs held by the hot tier and their sizes, least recently used first.
+   */
+  private final LinkedHashMap<BlobId, Long> recentlyUsed = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final Set<BlobId> promoting = Sets.newConcurrentHashSet();
+
+  private final AtomicBoolean demotionScheduled = new AtomicBoolean();
+
+  /**
+   * Consecutive failed demotions, only accessed by the mover thread.
+   */
+  private int demotionFailures;
+
+  /**
+   * Time before which no demotion is attempted, following a failed move.
+   */
+  private volatile long demotionRetryTime;
+
+  private BlobStoreConfiguration blobStoreConfiguration;
+
+  private TierIndex index;
+
+  private FileBlobStore hot;
+
+  private FileBlobStore cold;
+
+  private long hotCapacity;
+
+  private long hotSize;
+
+  private ThreadPoolExecutor mover;
+
+  private volatile BlobStoreListener listener;
+
+  @Inject
+  public TieredBlobStore(final LocationStrategy locationStrategy,
+                         final FileOperations fileOperations)
+  {
+    this.locationStrategy = checkNotNull(locationStrategy);
+    this.fileOperations = checkNotNull(fileOperations);
+  }
+
+  @Override
+  public void init(final BlobStoreConfiguration configuration) throws Exception {
+    this.blobStoreConfiguration = checkNotNull(configuration);
+
+    NestedAttributesMap attributes = configuration.attributes(CONFIG_KEY);
+    this.hotCapacity = attributes.require(HOT_CAPACITY_KEY, Number.class).longValue() * 1024L * 1024L;
+    checkArgument(hotCapacity > 0, "Hot tier capacity must be positive: %s", hotCapacity);
+
+    this.index = new TierIndex(new File(String.valueOf(attributes.require(PATH_KEY)), "index"));
+    this.hot = new FileBlobStore(locationStrategy, fileOperations);
+    hot.init(FileBlobStore.configure(configuration.getName() + "-hot",
+        String.valueOf(attributes.require(HOT_PATH_KEY))));
+    this.cold = new FileBlobStore(locationStrategy, fileOperations);
+    cold.init(FileBlobStore.configure(configuration.getName() + "-cold",
+        String.valueOf(attributes.require(COLD_PATH_KEY))));
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    index.start();
+    hot.start();
+    cold.start();
+
+    try (AutoClosableIterable<BlobId> blobIds = index.hot()) {
+      for (BlobId blobId : blobIds) {
+        Location location = index.get(blobId);
+        Blob blob = location != null ? hot.get(location.getBlobId()) : null;
+        if (blob != null) {
+          used(blobId, blob.getMetrics().getContentSize());
+        }
+      }
+    }
+
+    mover = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MOVE_QUEUE_SIZE),
+        new ThreadFactoryBuilder().setNameFormat("tiered-blobstore-" + blobStoreConfiguration.getName())
+            .setDaemon(true).build());
+    scheduleDemotion();
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    mover.shutdownNow();
+    FileBlobStore.awaitTermination(mover);
+    mover = null;
+
+    cold.stop();
+    hot.stop();
+    index.stop();
+
+    synchronized (recentlyUsed) {
+      recentlyUsed.clear();
+      hotSize = 0;
+    }
+  }
+
+  @Override
+  public void setBlobStoreListener(@Nullable final BlobStoreListener listener) {
+    this.listener = listener;
+  }
+
+  @Nullable
+  @Override
+  public BlobStoreListener getBlobStoreListener() {
+    return listener;
+  }
+
+  @Override
+  public Blob create(final InputStream blobData, final Map<String, String> headers) {
+    Blob blob = hot.create(blobData, headers);
+    BlobId blobId = index.add(new Location(Tier.HOT, blob.getId()));
+    used(blobId, blob.getMetrics().getContentSize());
+    scheduleDemotion();
+
+    TieredBlob tieredBlob = new TieredBlob(blobId, blob);
+    if (listener != null) {
+      listener.blobCreated(tieredBlob, "Created in hot tier as " + blob.getId());
+    }
+    return tieredBlob;
+  }
+
+  @Nullable
+  @Override
+  public Blob get(final BlobId blobId) {
+    checkNotNull(blobId);
+
+    Location location = index.get(blobId);
+    if (location == null) {
+      log.debug("Attempt to access non-existent blob {}", blobId);
+      return null;
+    }
+
+    Blob blob = tier(location).get(location.getBlobId());
+    if (blob == null) {
+      log.debug("Blob {} is missing from the {} tier", blobId, location.getTier());
+      return null;
+    }
+
+    if (location.getTier() == Tier.HOT) {
+      touch(blobId);
+    }
+    else {
+      schedulePromotion(blobId);
+    }
+
+    TieredBlob tieredBlob = new TieredBlob(blobId, blob);
+    if (listener != null) {
+      listener.blobAccessed(tieredBlob, "Accessed in " + location.getTier() + " tier as " + location.getBlobId());
+    }
+    return tieredBlob;
+  }
+
+  @Override
+  public boolean delete(final BlobId blobId) {
+    return delete(blobId, false);
+  }
+
+  @Override
+  public boolean deleteHard(final BlobId blobId) {
+    return delete(blobId, true);
+  }
+
+  private boolean delete(final BlobId blobId, final boolean hard) {
+    checkNotNull(blobId);
+
+    Lock lock = locks.get(blobId);
+    lock.lock();
+    try {
+      Location location = index.remove(blobId);
+      if (location == null) {
+        log.debug("Attempt to delete non-existent blob {}", blobId);
+        return false;
+      }
+      if (location.getTier() == Tier.HOT) {
+        unused(blobId);
+      }
+
+      FileBlobStore tier = tier(location);
+      boolean deleted = hard ? tier.deleteHard(location.getBlobId()) : tier.delete(location.getBlobId());
+      if (listener != null) {
+        if (hard) {
+          listener.blobDeleted(blobId, "Deleted from " + location.getTier() + " tier as " + location.getBlobId());
+        }
+        else {
+          listener.blobDeleteRequested(blobId,
+              "Deleted from " + location.getTier() + " tier as " + location.getBlobId());
+        }
+      }
+      return deleted;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private FileBlobStore tier(final Location location) {
+    return location.getTier() == Tier.HOT ? hot : cold;
+  }
+
+  @Override
+  public BlobStoreMetrics getMetrics() {
+    return new BlobStoreMetrics()
+    {
+      @Override
+      public long getBlobCount() {
+        return index.size();
+      }
+
+      @Override
+      public long getTotalSize() {
+        return hot.getMetrics().getTotalSize() + cold.getMetrics().getTotalSize();
+      }
+
+      /**
+       * Every blob ends up in the cold tier, so its free space bounds the store.
+       */
+      @Override
+      public long getAvailableSpace() {
+        return cold.getMetrics().getAvailableSpace();
+      }
+    };
+  }
+
+  @Override
+  public void compact() {
+    hot.compact();
+    cold.compact();
+    index.compact();
+  }
+
+  @Override
+  public BlobStoreConfiguration getBlobStoreConfiguration() {
+    return blobStoreConfiguration;
+  }
+
+  @Override
+  public AutoClosableIterable<BlobId> iterator() {
+    return index.all();
+  }
+
+  /**
+   * Returns the tier currently holding the blob, or {@code null} if it does not exist.
+   */
+  @VisibleForTesting
+  @Nullable
+  String tierOf(final BlobId blobId) {
+    Location location = index.get(blobId);
+    return location != null ? location.getTier().name() : null;
+  }
+
+  /**
+   * Waits for pending promotions and demotions.
+   */
+  @VisibleForTesting
+  void awaitMoves() throws InterruptedException {
+    while (mover.getActiveCount() > 0 || !mover.getQueue().isEmpty()) {
+      Thread.sleep(10);
+    }
+  }
+
+  //
+  // Least recently used tracking
+  //
+
+  private void used(final BlobId blobId, final long size) {
+    synchronized (recentlyUsed) {
+      Long previous = recentlyUsed.put(blobId, size);
+      hotSize += size - (previous != null ? previous : 0);
+    }
+  }
+
+  private void touch(final BlobId blobId) {
+    synchronized (recentlyUsed) {
+      recentlyUsed.get(blobId);
+    }
+  }
+
+  private void unused(final BlobId blobId) {
+    synchronized (recentlyUsed) {
+      Long size = recentlyUsed.remove(blobId);
+      if (size != null) {
+        hotSize -= size;
+      }
+    }
+  }
+
+  /**
+   * Returns the least recently used blob of the hot tier while it's over capacity.
+   */
+  @Nullable
+  private BlobId nextDemotion() {
+    synchronized (recentlyUsed) {
+      if (hotSize <= hotCapacity) {
+        return null;
+      }
+      Iterator<Entry<BlobId, Long>> eldest = recentlyUsed.entrySet().iterator();
+      return eldest.hasNext() ? eldest.next().getKey() : null;
+    }
+  }
+
+  //
+  // Moving between tiers
+  //
+
+  private void scheduleDemotion() {
+    if (System.currentTimeMillis() < demotionRetryTime || nextDemotion() == null
+        || !demotionScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      mover.execute(new Runnable()
+      {
+        @Override
+        public void run() {
+          demotionScheduled.set(false);
+          BlobId blobId;
+          while (!Thread.currentThread().isInterrupted() && (blobId = nextDemotion()) != null) {
+            try {
+              if (!move(blobId, hot, Tier.HOT, cold, Tier.COLD)) {
+                // gone or moved meanwhile, stop tracking so it's not picked again
+                unused(blobId);
+              }
+              demotionFailures = 0;
+            }
+            catch (Exception e) {
+              backOffDemotion(blobId, e);
+              return;
+            }
+          }
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      // retried on the next write
+      demotionScheduled.set(false);
+    }
+  }
+
+  /**
+   * Keeps tracking a blob which failed to move, as most recently used so the blobs behind it are demoted first, and
+   * holds off demotion, which is retried by the first write after the backoff.
+   */
+  private void backOffDemotion(final BlobId blobId, final Exception failure) {
+    touch(blobId);
+    long backoff = Math.min(DEMOTION_BACKOFF_MILLIS << Math.min(demotionFailures, 20), MAX_DEMOTION_BACKOFF_MILLIS);
+    demotionFailures++;
+    demotionRetryTime = System.currentTimeMillis() + backoff;
+    log.warn("Failed to demote blob {}, retrying demotion in {} ms", blobId, backoff, failure);
+  }
+
+  /**
+   * Promotions are best effort; they are skipped while too many moves are pending.
+   */
+  private void schedulePromotion(final BlobId blobId) {
+    if (!promoting.add(blobId)) {
+      return;
+    }
+    try {
+      mover.execute(new Runnable()
+      {
+        @Override
+        public void run() {
+          try {
+            if (move(blobId, cold, Tier.COLD, hot, Tier.HOT)) {
+              scheduleDemotion();
+            }
+          }
+          catch (Exception e) {
+            log.warn("Failed to promote blob {}", blobId, e);
+          }
+          finally {
+            promoting.remove(blobId);
+          }
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      log.debug("Skipping promotion of blob {}", blobId);
+      promoting.remove(blobId);
+    }
+  }
+
+  /**
+   * Copies the blob to the target tier and marks the source copy for deletion; readers holding the source copy can
+   * finish reading it until the source tier is compacted.
+   *
+   * @return {@code false} if the blob is gone or no longer in the source tier
+   * @throws IOException if the blob could not be moved and remains in the source tier
+   */
+  private boolean move(final BlobId blobId,
+                       final FileBlobStore source, final Tier sourceTier,
+                       final FileBlobStore target, final Tier targetTier) throws IOException
+  {
+    Lock lock = locks.get(blobId);
+    lock.lock();
+    try {
+      Location location = index.get(blobId);
+      if (location == null || location.getTier() != sourceTier) {
+        return false;
+      }
+      Blob blob = source.get(location.getBlobId());
+      if (blob == null) {
+        return false;
+      }
+
+      Blob copy;
+      try (InputStream in = blob.getInputStream()) {
+        copy = target.create(in, blob.getHeaders());
+      }
+      if (!index.move(blobId, location, new Location(targetTier, copy.getId()))) {
+        target.deleteHard(copy.getId());
+        return false;
+      }
+      source.delete(location.getBlobId());
+
+      if (targetTier == Tier.HOT) {
+        used(blobId, copy.getMetrics().getContentSize());
+      }
+      else {
+        unused(blobId);
+      }
+      log.trace("Moved blob {} to {} tier as {}", blobId, targetTier, copy.getId());
+      return true;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public static BlobStoreConfiguration configure(final String name, final String path, final String hotPath,
+                                                 final String coldPath, final long hotCapacityMegabytes)
+  {
+    BlobStoreConfiguration configuration = new BlobStoreConfiguration();
+    configuration.setName(name);
+    configuration.setType(TieredBlobStore.TYPE);
+    NestedAttributesMap attributes = configuration.attributes(CONFIG_KEY);
+    attributes.set(PATH_KEY, path);
+    attributes.set(HOT_PATH_KEY, hotPath);
+    attributes.set(COLD_PATH_KEY, coldPath);
+    attributes.set(HOT_CAPACITY_KEY, hotCapacityMegabytes);
+    return configuration;
+  }
+
+  /**
+   * A blob of a tier, identified by its tiered id.
+   */
+  private static class TieredBlob
+      implements FileChannelBlob
+  {
+    private final BlobId blobId;
+
+    private final Blob blob;
+
+    private TieredBlob(final BlobId blobId, final Blob blob) {
+      this.blobId = blobId;
+      this.blob = blob;
+    }
+
+    @Override
+    public BlobId getId() {
+      return blobId;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+      return blob.getHeaders();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return blob.getInputStream();
+    }
+
+    @Override
+    public FileChannel openFileChannel() {
+      return ((FileChannelBlob) blob).openFileChannel();
+    }
+
+    @Override
+    public BlobMetrics getMetrics() {
+      return blob.getMetrics();
+    }
+  }
+}
@@ -13,10 +13,19 @@
 package org.sonatype.nexus.blobstore.file;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.sonatype.nexus.blobstore.api.Blob;
 import org.sonatype.nexus.blobstore.api.BlobMetrics;
@@ -24,7 +33,9 @@ import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
 import org.sonatype.nexus.blobstore.api.BlobStoreMetrics;
 import org.sonatype.sisu.litmus.testsupport.TestSupport;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
 import org.junit.After;
 import org.junit.Before;
@@ -33,8 +44,12 @@ import org.junit.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
 import static org.sonatype.nexus.blobstore.api.BlobStore.BLOB_NAME_HEADER;
 import static org.sonatype.nexus.blobstore.api.BlobStore.CREATED_BY_HEADER;
 
@@ -55,6 +70,8 @@ public class FileBlobStoreIT
 
   private FileBlobStore underTest;
 
+  private FileBlobStore deduplicating;
+
   @Before
   public void setUp() throws Exception {
     Path root = util.createTempDir().toPath();
@@ -65,11 +82,20 @@ public class FileBlobStoreIT
     this.underTest = new FileBlobStore(content, new VolumeChapterLocationStrategy(), new SimpleFileOperations(),
         metadataStore, new BlobStoreConfiguration());
     underTest.start();
+
+    Path dedupRoot = util.createTempDir().toPath();
+    BlobStoreConfiguration dedupConfiguration = new BlobStoreConfiguration();
+    dedupConfiguration.attributes("file").set(FileBlobStore.DEDUPLICATE_KEY, true);
+    this.deduplicating = new FileBlobStore(dedupRoot.resolve("content"), new VolumeChapterLocationStrategy(),
+        new SimpleFileOperations(), MapdbBlobMetadataStore.create(dedupRoot.resolve("metadata").toFile()),
+        dedupConfiguration);
+    deduplicating.start();
   }
 
   @After
   public void tearDown() throws Exception {
     underTest.stop();
+    deduplicating.stop();
   }
 
   @Test
@@ -120,6 +146,64 @@ public class FileBlobStoreIT
     }
   }
 
+  @Test
+  public void deduplicatedContentSurvivesUntilLastReferenceDeleted() throws Exception {
+    final byte[] content = new byte[TEST_DATA_LENGTH];
+    new Random().nextBytes(content);
+
+    final Blob first = deduplicating.create(new ByteArrayInputStream(content), TEST_HEADERS);
+    final Blob second = deduplicating.create(new ByteArrayInputStream(content), TEST_HEADERS);
+    assertThat(first.getId(), is(not(equalTo(second.getId()))));
+    assertThat(first.getMetrics().getSHA1Hash(), is(equalTo(second.getMetrics().getSHA1Hash())));
+
+    assertThat(deduplicating.deleteHard(first.getId()), is(true));
+    assertThat(deduplicating.get(first.getId()), is(nullValue()));
+
+    final Blob remaining = deduplicating.get(second.getId());
+    assertThat(extractContent(remaining), is(equalTo(content)));
+
+    assertThat(deduplicating.deleteHard(second.getId()), is(true));
+    assertThat(deduplicating.get(second.getId()), is(nullValue()));
+  }
+
+  @Test
+  public void togglingDeduplicationKeepsExistingContentReadable() throws Exception {
+    final byte[] content = new byte[TEST_DATA_LENGTH];
+    new Random().nextBytes(content);
+    final Path root = util.createTempDir().toPath();
+
+    FileBlobStore store = openStore(root, false);
+    final Blob unshared = store.create(new ByteArrayInputStream(content), TEST_HEADERS);
+    store.stop();
+
+    store = openStore(root, true);
+    final Blob shared = store.create(new ByteArrayInputStream(content), TEST_HEADERS);
+    assertThat(extractContent(store.get(unshared.getId())), is(equalTo(content)));
+    store.stop();
+
+    store = openStore(root, false);
+    try {
+      assertThat(extractContent(store.get(unshared.getId())), is(equalTo(content)));
+      assertThat(extractContent(store.get(shared.getId())), is(equalTo(content)));
+
+      assertThat(store.deleteHard(shared.getId()), is(true));
+      assertThat(store.getMetadataStore().getReferenceCount(shared.getMetrics().getSHA1Hash()), is(0L));
+      assertThat(extractContent(store.get(unshared.getId())), is(equalTo(content)));
+    }
+    finally {
+      store.stop();
+    }
+  }
+
+  private FileBlobStore openStore(final Path root, final boolean deduplicate) throws Exception {
+    BlobStoreConfiguration configuration = new BlobStoreConfiguration();
+    configuration.attributes("file").set(FileBlobStore.DEDUPLICATE_KEY, deduplicate);
+    FileBlobStore store = new FileBlobStore(root.resolve("content"), new VolumeChapterLocationStrategy(),
+        new SimpleFileOperations(), MapdbBlobMetadataStore.create(root.resolve("metadata").toFile()), configuration);
+    store.start();
+    return store;
+  }
+
   @Test
   public void hardDeletePreventsGetDespiteOpenStreams() throws Exception {
     final byte[] content = new byte[TEST_DATA_LENGTH];
@@ -138,4 +222,194 @@ public class FileBlobStoreIT
     final Blob newBlob = underTest.get(blob.getId());
     assertThat(newBlob, is(nullValue()));
   }
+
+  @Test
+  public void compactionResumesAfterInterruption() throws Exception {
+    final List<Blob> blobs = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      final byte[] content = new byte[TEST_DATA_LENGTH];
+      new Random().nextBytes(content);
+      Blob blob = underTest.create(new ByteArrayInputStream(content), TEST_HEADERS);
+      underTest.delete(blob.getId());
+      blobs.add(blob);
+    }
+
+    try {
+      underTest.compact(2, 0, 4, new CompactionMonitor()
+      {
+        @Override
+        public void batchCompacted(final CompactionResult progress) {
+          assertThat(progress.getBlobCount(), is(4L));
+          assertThat(progress.getBytesReclaimed(), is(4L * TEST_DATA_LENGTH));
+          throw new IllegalStateException("interrupted");
+        }
+      });
+      fail();
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+    assertThat(metadataStore.getBlobCount(), is(6L));
+
+    final CompactionResult result = underTest.compact(2, 0, 4, null);
+    assertThat(result.getBlobCount(), is(6L));
+    assertThat(result.getBytesReclaimed(), is(6L * TEST_DATA_LENGTH));
+    assertThat(metadataStore.getBlobCount(), is(0L));
+  }
+
+  @Test
+  public void compactionReleasesSharedContentOnceUnreferenced() throws Exception {
+    final byte[] content = new byte[TEST_DATA_LENGTH];
+    new Random().nextBytes(content);
+
+    final Blob first = deduplicating.create(new ByteArrayInputStream(content), TEST_HEADERS);
+    final Blob second = deduplicating.create(new ByteArrayInputStream(content), TEST_HEADERS);
+    final Blob third = deduplicating.create(new ByteArrayInputStream(content), TEST_HEADERS);
+
+    deduplicating.delete(first.getId());
+    deduplicating.delete(second.getId());
+    CompactionResult result = deduplicating.compact(2, 0, 1, null);
+    assertThat(result.getBlobCount(), is(2L));
+    assertThat(result.getBytesReclaimed(), is(0L));
+    assertThat(extractContent(deduplicating.get(third.getId())), is(equalTo(content)));
+
+    deduplicating.delete(third.getId());
+    result = deduplicating.compact(2, 1024 * 1024, 10, null);
+    assertThat(result.getBlobCount(), is(1L));
+    assertThat(result.getBytesReclaimed(), is((long) TEST_DATA_LENGTH));
+
+    final Blob recreated = deduplicating.create(new ByteArrayInputStream(content), TEST_HEADERS);
+    assertThat(deduplicating.get(recreated.getId()), is(notNullValue()));
+    assertThat(extractContent(deduplicating.get(recreated.getId())), is(equalTo(content)));
+  }
+
+  @Test
+  public void layoutMigrationKeepsContentReadable() throws Exception {
+    final List<Blob> blobs = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      blobs.add(underTest.create(new ByteArrayInputStream(("content-" + i).getBytes()), TEST_HEADERS));
+    }
+    final Blob looked = underTest.get(blobs.get(0).getId());
+
+    assertThat(underTest.startLayoutMigration("hex:2:2"), is(true));
+    assertThat(underTest.startLayoutMigration("hex:2:2"), is(false));
+
+    // old content is read from the previous layout, new content is written to the new one
+    assertThat(extractContent(underTest.get(blobs.get(1).getId())), is(equalTo("content-1".getBytes())));
+    final Blob created = underTest.create(new ByteArrayInputStream("created".getBytes()), TEST_HEADERS);
+    assertThat(Files.exists(underTest.pathFor(created.getId())), is(true));
+
+    assertThat(underTest.migrateLayout(2, null), is(5L));
+    assertThat(underTest.getBlobStoreConfiguration().attributes("file").contains(FileBlobStore.PREVIOUS_LAYOUT_KEY),
+        is(false));
+
+    for (int i = 0; i < blobs.size(); i++) {
+      assertThat(Files.exists(underTest.pathFor(blobs.get(i).getId())), is(true));
+      assertThat(extractContent(underTest.get(blobs.get(i).getId())), is(equalTo(("content-" + i).getBytes())));
+    }
+    // blobs looked up before the migration follow their content
+    assertThat(extractContent(looked), is(equalTo("content-0".getBytes())));
+    assertThat(extractContent(underTest.get(created.getId())), is(equalTo("created".getBytes())));
+  }
+
+  @Test
+  public void layoutMigrationWaitsForCreatesUnderPreviousLayout() throws Exception {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final InputStream slow = new FilterInputStream(new ByteArrayInputStream("slow".getBytes()))
+    {
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        writing.countDown();
+        try {
+          release.await();
+        }
+        catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        return super.read(b, off, len);
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      // content path of this create is resolved under the previous layout
+      Future<Blob> created = executor.submit(new Callable<Blob>()
+      {
+        @Override
+        public Blob call() throws Exception {
+          return underTest.create(slow, TEST_HEADERS);
+        }
+      });
+      writing.await();
+      assertThat(underTest.startLayoutMigration("hex:2:2"), is(true));
+      Future<Long> migrated = executor.submit(new Callable<Long>()
+      {
+        @Override
+        public Long call() throws Exception {
+          return underTest.migrateLayout(2, null);
+        }
+      });
+      Thread.sleep(200);
+      assertThat(migrated.isDone(), is(false));
+
+      release.countDown();
+      Blob blob = created.get();
+      assertThat(migrated.get(), is(1L));
+      assertThat(Files.exists(underTest.pathFor(blob.getId())), is(true));
+      assertThat(extractContent(underTest.get(blob.getId())), is(equalTo("slow".getBytes())));
+    }
+    finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void metadataIsNotReopenedWithAnotherShardCount() throws Exception {
+    final byte[] content = new byte[TEST_DATA_LENGTH];
+    new Random().nextBytes(content);
+    final Path sharded = util.createTempDir().toPath();
+
+    FileBlobStore store = openShardedStore(sharded, 2);
+    final Blob blob = store.create(new ByteArrayInputStream(content), TEST_HEADERS);
+    store.stop();
+
+    assertStartRefused(sharded, 4);
+    assertStartRefused(sharded, 0);
+
+    store = openShardedStore(sharded, 2);
+    try {
+      assertThat(extractContent(store.get(blob.getId())), is(equalTo(content)));
+    }
+    finally {
+      store.stop();
+    }
+
+    final Path unsharded = util.createTempDir().toPath();
+    openShardedStore(unsharded, 0).stop();
+    assertStartRefused(unsharded, 2);
+  }
+
+  /**
+   * Opens a store whose metadata is spread across the given number of shards, or kept unsharded if 0.
+   */
+  private FileBlobStore openShardedStore(final Path root, final int shards) throws Exception {
+    File metadata = root.resolve("metadata").toFile();
+    FileBlobStore store = new FileBlobStore(root.resolve("content"), new VolumeChapterLocationStrategy(),
+        new SimpleFileOperations(),
+        shards > 0 ? ShardedBlobMetadataStore.create(metadata, shards) : MapdbBlobMetadataStore.create(metadata),
+        new BlobStoreConfiguration());
+    store.start();
+    return store;
+  }
+
+  private void assertStartRefused(final Path root, final int shards) throws Exception {
+    try {
+      openShardedStore(root, shards).stop();
+      fail("Metadata must not be opened with " + shards + " shards");
+    }
+    catch (Exception e) {
+      assertThat(Throwables.getRootCause(e), instanceOf(IllegalStateException.class));
+    }
+  }
 }
@@ -0,0 +1,138 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.sonatype.nexus.blobstore.file.FileBlobStoreIT.TEST_HEADERS;
+
+/**
+ * {@link IntegrityScanner} integration tests.
+ */
+public class IntegrityScannerIT
+    extends TestSupport
+{
+  private BlobMetadataStore metadataStore;
+
+  private FileBlobStore blobStore;
+
+  private BlobId stale;
+
+  private Blob intact;
+
+  private Blob corrupt;
+
+  private Path orphan;
+
+  @Before
+  public void setUp() throws Exception {
+    Path root = util.createTempDir().toPath();
+    metadataStore = MapdbBlobMetadataStore.create(root.resolve("metadata").toFile());
+    blobStore = new FileBlobStore(root.resolve("content"), new VolumeChapterLocationStrategy(),
+        new SimpleFileOperations(), metadataStore, new BlobStoreConfiguration());
+    blobStore.start();
+
+    // a write which never completed, followed by writes which did
+    stale = metadataStore.add(new BlobMetadata(BlobState.CREATING, TEST_HEADERS));
+    intact = blobStore.create(new ByteArrayInputStream("intact".getBytes()), TEST_HEADERS);
+    corrupt = blobStore.create(new ByteArrayInputStream("corrupt".getBytes()), TEST_HEADERS);
+    Files.write(blobStore.pathFor(corrupt.getId()), "tampered".getBytes());
+
+    orphan = blobStore.pathFor(new BlobId("00000000000000ff"));
+    Files.createDirectories(orphan.getParent());
+    Files.write(orphan, "orphan".getBytes());
+    Files.setLastModifiedTime(orphan, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+
+    // let the completed writes fall behind the grace period
+    Thread.sleep(50);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    blobStore.stop();
+  }
+
+  @Test
+  public void reportsWithoutReclaiming() {
+    IntegrityReport report = blobStore.integrityScanner()
+        .withThreads(2)
+        .withGracePeriod(10, TimeUnit.MILLISECONDS)
+        .withChecksumVerification(true, 0)
+        .scan();
+
+    assertThat(report.getOrphanFiles(), is(1L));
+    assertThat(report.getStaleBlobs(), is(1L));
+    assertThat(report.getChecksumMismatches(), is(1L));
+    assertThat(report.getMissingContent(), is(0L));
+    assertThat(report.getReclaimed(), is(0L));
+
+    assertThat(Files.exists(orphan), is(true));
+    assertThat(metadataStore.get(stale), is(notNullValue()));
+  }
+
+  @Test
+  public void reclaimsOrphansAndUnreferencedBlobs() {
+    IntegrityReport report = blobStore.integrityScanner()
+        .withThreads(2)
+        .withGracePeriod(10, TimeUnit.MILLISECONDS)
+        .withReclaim(true)
+        .withReferencedBlobs(Predicates.equalTo(intact.getId()), System.currentTimeMillis())
+        .scan();
+
+    assertThat(report.getOrphanFiles(), is(1L));
+    assertThat(report.getStaleBlobs(), is(1L));
+    assertThat(report.getUnreferencedBlobs(), is(1L));
+    assertThat(report.getReclaimed(), is(3L));
+
+    assertThat(Files.exists(orphan), is(false));
+    assertThat(metadataStore.get(stale), is(nullValue()));
+    assertThat(blobStore.get(corrupt.getId()), is(nullValue()));
+    assertThat(blobStore.get(intact.getId()), is(notNullValue()));
+  }
+
+  @Test
+  public void blobsCreatedOnceReferencesWereCollectedAreNotUnreferenced() throws Exception {
+    long collectedAt = System.currentTimeMillis();
+    Blob created = blobStore.create(new ByteArrayInputStream("created".getBytes()), TEST_HEADERS);
+    // scan starts long after the references were collected, the new blob is past the grace period by then
+    Thread.sleep(50);
+
+    IntegrityReport report = blobStore.integrityScanner()
+        .withGracePeriod(10, TimeUnit.MILLISECONDS)
+        .withReclaim(true)
+        .withReferencedBlobs(Predicates.in(ImmutableSet.of(intact.getId(), corrupt.getId())), collectedAt)
+        .scan();
+
+    assertThat(report.getUnreferencedBlobs(), is(0L));
+    assertThat(blobStore.get(created.getId()), is(notNullValue()));
+  }
+}
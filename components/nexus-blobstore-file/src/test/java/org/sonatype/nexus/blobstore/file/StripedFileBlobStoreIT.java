@@ -0,0 +1,105 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.common.collect.AutoClosableIterable;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.sonatype.nexus.blobstore.file.FileBlobStoreIT.TEST_HEADERS;
+
+/**
+ * {@link StripedFileBlobStore} integration tests.
+ */
+public class StripedFileBlobStoreIT
+    extends TestSupport
+{
+  private StripedFileBlobStore blobStore;
+
+  @Before
+  public void setUp() throws Exception {
+    File root = util.createTempDir();
+    BlobStoreConfiguration configuration = StripedFileBlobStore.configure("striped",
+        new File(root, "disk0").getPath(), new File(root, "disk1").getPath());
+
+    blobStore = new StripedFileBlobStore(new VolumeChapterLocationStrategy(), new SimpleFileOperations());
+    blobStore.init(configuration);
+    blobStore.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    blobStore.stop();
+  }
+
+  @Test
+  public void blobsAreSpreadAcrossVolumesAndReadBack() throws Exception {
+    Set<BlobId> created = Sets.newHashSet();
+    for (int i = 0; i < 40; i++) {
+      byte[] content = ("content" + i).getBytes();
+      Blob blob = blobStore.create(new ByteArrayInputStream(content), TEST_HEADERS);
+      created.add(blob.getId());
+
+      Blob read = blobStore.get(blob.getId());
+      assertThat(read.getId(), is(blob.getId()));
+      assertThat(ByteStreams.toByteArray(read.getInputStream()), is(content));
+    }
+
+    List<FileBlobStore> volumes = blobStore.getVolumes();
+    assertThat(volumes.get(0).getMetrics().getBlobCount(), greaterThan(0L));
+    assertThat(volumes.get(1).getMetrics().getBlobCount(), greaterThan(0L));
+    assertThat(blobStore.getMetrics().getBlobCount(), is(40L));
+    assertThat(blobStore.getMetrics().getAvailableSpace(),
+        greaterThan(volumes.get(0).getMetrics().getAvailableSpace()));
+
+    try (AutoClosableIterable<BlobId> blobIds = blobStore.iterator()) {
+      assertThat(blobIds, containsInAnyOrder(created.toArray(new BlobId[created.size()])));
+    }
+  }
+
+  @Test
+  public void deletedBlobsAreCompactedOnTheirVolume() throws Exception {
+    Blob blob = blobStore.create(new ByteArrayInputStream("content".getBytes()), TEST_HEADERS);
+
+    assertThat(blobStore.delete(blob.getId()), is(true));
+    assertThat(blobStore.get(blob.getId()), is(nullValue()));
+
+    blobStore.compact();
+    assertThat(blobStore.getMetrics().getBlobCount(), is(0L));
+  }
+
+  @Test
+  public void unknownVolumesAreIgnored() {
+    assertThat(blobStore.get(new BlobId("7-0000000000000001")), is(nullValue()));
+    assertThat(blobStore.get(new BlobId("0000000000000001")), is(nullValue()));
+    assertThat(blobStore.deleteHard(new BlobId("x-0000000000000001")), is(false));
+  }
+}
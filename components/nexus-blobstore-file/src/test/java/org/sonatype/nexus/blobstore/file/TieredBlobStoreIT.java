@@ -0,0 +1,174 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.blobstore.file.FileOperations.StreamMetrics;
+import org.sonatype.nexus.common.collect.AutoClosableIterable;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.sonatype.nexus.blobstore.file.FileBlobStoreIT.TEST_HEADERS;
+
+/**
+ * {@link TieredBlobStore} integration tests.
+ */
+public class TieredBlobStoreIT
+    extends TestSupport
+{
+  private static final int BLOB_SIZE = 400 * 1024;
+
+  private BlobStoreConfiguration configuration;
+
+  private TieredBlobStore blobStore;
+
+  private Path coldRoot;
+
+  private final AtomicBoolean coldFailing = new AtomicBoolean();
+
+  @Before
+  public void setUp() throws Exception {
+    File root = util.createTempDir();
+    coldRoot = new File(root, "cold").toPath();
+    configuration = TieredBlobStore.configure("tiered", root.getPath(), new File(root, "hot").getPath(),
+        coldRoot.toString(), 1);
+    blobStore = newBlobStore();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    blobStore.stop();
+  }
+
+  private TieredBlobStore newBlobStore() throws Exception {
+    TieredBlobStore blobStore = new TieredBlobStore(new VolumeChapterLocationStrategy(), new SimpleFileOperations()
+    {
+      @Override
+      public StreamMetrics create(final Path path, final InputStream data) throws IOException {
+        if (coldFailing.get() && path.startsWith(coldRoot)) {
+          throw new IOException("Cold tier unavailable");
+        }
+        return super.create(path, data);
+      }
+    });
+    blobStore.init(configuration);
+    blobStore.start();
+    return blobStore;
+  }
+
+  private Blob create(final int seed) {
+    return blobStore.create(new ByteArrayInputStream(content(seed)), TEST_HEADERS);
+  }
+
+  private static byte[] content(final int seed) {
+    byte[] content = new byte[BLOB_SIZE];
+    Arrays.fill(content, (byte) seed);
+    return content;
+  }
+
+  @Test
+  public void leastRecentlyUsedBlobsAreDemotedAndPromotedOnRead() throws Exception {
+    Blob first = create(1);
+    Blob second = create(2);
+    Blob third = create(3);
+    blobStore.awaitMoves();
+
+    assertThat(blobStore.tierOf(first.getId()), is("COLD"));
+    assertThat(blobStore.tierOf(second.getId()), is("HOT"));
+    assertThat(blobStore.tierOf(third.getId()), is("HOT"));
+
+    Blob read = blobStore.get(first.getId());
+    assertThat(read.getId(), is(first.getId()));
+    assertThat(ByteStreams.toByteArray(read.getInputStream()), is(content(1)));
+    blobStore.awaitMoves();
+
+    assertThat(blobStore.tierOf(first.getId()), is("HOT"));
+    assertThat(blobStore.tierOf(second.getId()), is("COLD"));
+    assertThat(ByteStreams.toByteArray(blobStore.get(second.getId()).getInputStream()), is(content(2)));
+    assertThat(blobStore.getMetrics().getBlobCount(), is(3L));
+  }
+
+  @Test
+  public void blobsKeepTheirIdsAcrossRestarts() throws Exception {
+    Blob first = create(1);
+    Blob second = create(2);
+    Blob third = create(3);
+    blobStore.awaitMoves();
+
+    blobStore.stop();
+    blobStore = newBlobStore();
+
+    try (AutoClosableIterable<BlobId> blobIds = blobStore.iterator()) {
+      assertThat(blobIds, containsInAnyOrder(first.getId(), second.getId(), third.getId()));
+    }
+    assertThat(ByteStreams.toByteArray(blobStore.get(first.getId()).getInputStream()), is(content(1)));
+    assertThat(ByteStreams.toByteArray(blobStore.get(third.getId()).getInputStream()), is(content(3)));
+  }
+
+  @Test
+  public void deletedBlobsAreGoneFromBothTiers() throws Exception {
+    Blob first = create(1);
+    create(2);
+    create(3);
+    blobStore.awaitMoves();
+
+    assertThat(blobStore.delete(first.getId()), is(true));
+    assertThat(blobStore.get(first.getId()), is(nullValue()));
+    assertThat(blobStore.tierOf(first.getId()), is(nullValue()));
+    assertThat(blobStore.delete(first.getId()), is(false));
+
+    blobStore.compact();
+    assertThat(blobStore.getMetrics().getBlobCount(), is(2L));
+  }
+
+  @Test
+  public void blobsFailingToDemoteStayTrackedInHotTier() throws Exception {
+    coldFailing.set(true);
+    Blob first = create(1);
+    Blob second = create(2);
+    Blob third = create(3);
+    blobStore.awaitMoves();
+
+    assertThat(blobStore.tierOf(first.getId()), is("HOT"));
+    assertThat(ByteStreams.toByteArray(blobStore.get(first.getId()).getInputStream()), is(content(1)));
+
+    // demotion resumes with the first write after the backoff, the failed blob having been moved behind the others
+    coldFailing.set(false);
+    Thread.sleep(1500);
+    create(4);
+    blobStore.awaitMoves();
+
+    assertThat(blobStore.tierOf(second.getId()), is("COLD"));
+    assertThat(blobStore.tierOf(third.getId()), is("COLD"));
+    assertThat(blobStore.tierOf(first.getId()), is("HOT"));
+    assertThat(ByteStreams.toByteArray(blobStore.get(second.getId()).getInputStream()), is(content(2)));
+  }
+}
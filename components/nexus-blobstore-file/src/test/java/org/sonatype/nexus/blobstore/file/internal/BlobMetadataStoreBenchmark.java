@@ -0,0 +1,109 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file.internal;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.file.BlobMetadata;
+import org.sonatype.nexus.blobstore.file.BlobMetadataStore;
+import org.sonatype.nexus.blobstore.file.BlobState;
+import org.sonatype.nexus.blobstore.file.MapdbBlobMetadataStore;
+import org.sonatype.nexus.blobstore.file.ShardedBlobMetadataStore;
+import org.sonatype.nexus.common.io.DirSupport;
+
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark comparing {@link MapdbBlobMetadataStore} with {@link ShardedBlobMetadataStore} for the
+ * CREATING then ALIVE transitions {@code FileBlobStore.create} performs for every blob.
+ *
+ * Not run as part of the build; launch {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BlobMetadataStoreBenchmark
+{
+  private static final Map<String, String> HEADERS = ImmutableMap.of(
+      "BlobStore.blob-name", "benchmark",
+      "BlobStore.created-by", "benchmark"
+  );
+
+  @Param({"mapdb", "sharded"})
+  public String store;
+
+  @Param({"16"})
+  public int shards;
+
+  private File directory;
+
+  private BlobMetadataStore underTest;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("metadata-benchmark").toFile();
+    File metadata = new File(directory, "metadata");
+    if ("sharded".equals(store)) {
+      underTest = ShardedBlobMetadataStore.create(metadata, shards);
+    }
+    else {
+      underTest = MapdbBlobMetadataStore.create(metadata);
+    }
+    underTest.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    underTest.stop();
+    DirSupport.deleteIfExists(directory.toPath());
+  }
+
+  @Benchmark
+  public BlobId createBlob() {
+    BlobMetadata metadata = new BlobMetadata(BlobState.CREATING, HEADERS);
+    BlobId id = underTest.add(metadata);
+    metadata.setBlobState(BlobState.ALIVE);
+    underTest.update(id, metadata);
+    return id;
+  }
+
+  public static void main(final String[] args) throws Exception {
+    for (int threads : new int[]{1, 8, 64}) {
+      Options options = new OptionsBuilder()
+          .include(BlobMetadataStoreBenchmark.class.getSimpleName())
+          .threads(threads)
+          .forks(1)
+          .warmupIterations(3)
+          .measurementIterations(5)
+          .build();
+      new Runner(options).run();
+    }
+  }
+}
@@ -13,9 +13,11 @@
 package org.sonatype.nexus.blobstore.file.internal;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.List;
 
 import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobMetrics;
 import org.sonatype.nexus.blobstore.file.BlobMetadata;
 import org.sonatype.nexus.blobstore.file.BlobMetadataStore;
 import org.sonatype.nexus.blobstore.file.BlobState;
@@ -25,6 +27,7 @@ import org.sonatype.sisu.litmus.testsupport.TestSupport;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import org.joda.time.DateTime;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -32,6 +35,7 @@ import org.junit.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.is;
 
 /**
  * Tests for {@link MapdbBlobMetadataStore}.
@@ -142,6 +146,36 @@ public class MapdbBlobMetadataStoreTest
     underTest.compact();
   }
 
+  @Test
+  public void referenceCounting() throws Exception {
+    String sha1 = "2589766c6dac3402cab552602d457e7e8af12efd";
+
+    BlobId first = underTest.add(new BlobMetadata(BlobState.CREATING, ImmutableMap.of("foo", "bar")));
+    BlobId second = underTest.add(new BlobMetadata(BlobState.CREATING, ImmutableMap.of("foo", "bar")));
+    assertThat(underTest.getReferenceCount(sha1), is(0L));
+
+    underTest.update(first, sharedContent(BlobState.ALIVE, sha1));
+    underTest.update(second, sharedContent(BlobState.ALIVE, sha1));
+    assertThat(underTest.getReferenceCount(sha1), is(2L));
+    assertThat(underTest.get(first).isSharedContent(), is(true));
+
+    // a blob already referring to the content is not counted again
+    underTest.update(first, sharedContent(BlobState.MARKED_FOR_DELETION, sha1));
+    assertThat(underTest.getReferenceCount(sha1), is(2L));
+
+    underTest.delete(first);
+    assertThat(underTest.getReferenceCount(sha1), is(1L));
+    underTest.deleteAll(Collections.singletonList(second));
+    assertThat(underTest.getReferenceCount(sha1), is(0L));
+  }
+
+  private static BlobMetadata sharedContent(final BlobState state, final String sha1) {
+    BlobMetadata metadata = new BlobMetadata(state, ImmutableMap.of("foo", "bar"));
+    metadata.setMetrics(new BlobMetrics(new DateTime(), sha1, 1L));
+    metadata.setSharedContent(true);
+    return metadata;
+  }
+
   private void dumpStates() throws Exception {
     for (BlobState state : BlobState.values()) {
       log(state);
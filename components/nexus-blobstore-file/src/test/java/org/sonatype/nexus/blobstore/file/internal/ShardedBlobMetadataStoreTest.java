@@ -0,0 +1,225 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.blobstore.file.internal;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobMetrics;
+import org.sonatype.nexus.blobstore.file.BlobMetadata;
+import org.sonatype.nexus.blobstore.file.BlobMetadataStore;
+import org.sonatype.nexus.blobstore.file.BlobState;
+import org.sonatype.nexus.blobstore.file.ShardedBlobMetadataStore;
+import org.sonatype.nexus.common.collect.AutoClosableIterable;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Tests for {@link ShardedBlobMetadataStore}.
+ */
+public class ShardedBlobMetadataStoreTest
+  extends TestSupport
+{
+  private File dir;
+
+  private BlobMetadataStore underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    File root = util.createTempDir("databases");
+    dir = new File(root, "test");
+    this.underTest = ShardedBlobMetadataStore.create(dir, 4);
+    underTest.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (underTest != null) {
+      underTest.stop();
+    }
+  }
+
+  /**
+   * Helper to find states and close iterable.
+   */
+  private Iterable<BlobId> findWithState(final BlobState state) throws Exception {
+    List<BlobId> results = Lists.newArrayList();
+    try (AutoClosableIterable<BlobId> iter = underTest.findWithState(state)) {
+      for (BlobId id : iter) {
+        results.add(id);
+      }
+    }
+    return results;
+  }
+
+  @Test
+  public void stateTracking() throws Exception {
+    BlobMetadata md = new BlobMetadata(BlobState.CREATING, ImmutableMap.of("foo", "bar"));
+    BlobId id = underTest.add(md);
+    log("Added: {} -> {}", id, md);
+
+    assertThat(findWithState(BlobState.CREATING), contains(id));
+    assertThat(findWithState(BlobState.ALIVE), emptyIterable());
+
+    md.setBlobState(BlobState.ALIVE);
+    underTest.update(id, md);
+
+    assertThat(findWithState(BlobState.CREATING), emptyIterable());
+    assertThat(findWithState(BlobState.ALIVE), contains(id));
+    assertThat(underTest.get(id).getBlobState(), is(BlobState.ALIVE));
+
+    underTest.delete(id);
+
+    assertThat(findWithState(BlobState.ALIVE), emptyIterable());
+    assertThat(underTest.getBlobCount(), is(0L));
+  }
+
+  @Test
+  public void concurrentWritersAreAllCommitted() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<BlobId>> futures = Lists.newArrayList();
+      for (int i = 0; i < 200; i++) {
+        futures.add(executor.submit(new Callable<BlobId>()
+        {
+          @Override
+          public BlobId call() throws Exception {
+            BlobMetadata md = new BlobMetadata(BlobState.CREATING, ImmutableMap.of("foo", "bar"));
+            BlobId id = underTest.add(md);
+            md.setBlobState(BlobState.ALIVE);
+            underTest.update(id, md);
+            return id;
+          }
+        }));
+      }
+
+      Set<BlobId> ids = Sets.newHashSet();
+      for (Future<BlobId> future : futures) {
+        ids.add(future.get());
+      }
+      assertThat(ids.size(), is(200));
+      assertThat(findWithState(BlobState.ALIVE), containsInAnyOrder(ids.toArray(new BlobId[ids.size()])));
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void writersRacingStopAreCommittedOrFailWithoutHanging() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<List<BlobId>>> futures = Lists.newArrayList();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(new Callable<List<BlobId>>()
+        {
+          @Override
+          public List<BlobId> call() throws Exception {
+            List<BlobId> added = Lists.newArrayList();
+            try {
+              while (true) {
+                added.add(underTest.add(new BlobMetadata(BlobState.CREATING, ImmutableMap.of("foo", "bar"))));
+              }
+            }
+            catch (IllegalStateException e) {
+              return added;
+            }
+          }
+        }));
+      }
+
+      Thread.sleep(200);
+      underTest.stop();
+
+      List<BlobId> acknowledged = Lists.newArrayList();
+      for (Future<List<BlobId>> future : futures) {
+        acknowledged.addAll(future.get(30, TimeUnit.SECONDS));
+      }
+
+      underTest = ShardedBlobMetadataStore.create(dir, 4);
+      underTest.start();
+      for (BlobId id : acknowledged) {
+        assertThat(underTest.get(id), notNullValue());
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void idsAreNotReusedAfterRestart() throws Exception {
+    BlobId first = underTest.add(new BlobMetadata(BlobState.CREATING, ImmutableMap.of("foo", "bar")));
+    underTest.stop();
+
+    underTest = ShardedBlobMetadataStore.create(dir, 4);
+    underTest.start();
+
+    assertThat(underTest.get(first), notNullValue());
+    BlobId second = underTest.add(new BlobMetadata(BlobState.CREATING, ImmutableMap.of("foo", "bar")));
+    assertThat(second.compareTo(first), greaterThan(0));
+  }
+
+  @Test
+  public void referenceCounting() throws Exception {
+    String sha1 = "2589766c6dac3402cab552602d457e7e8af12efd";
+
+    BlobId first = underTest.add(new BlobMetadata(BlobState.CREATING, ImmutableMap.of("foo", "bar")));
+    BlobId second = underTest.add(new BlobMetadata(BlobState.CREATING, ImmutableMap.of("foo", "bar")));
+    assertThat(underTest.getReferenceCount(sha1), is(0L));
+
+    underTest.update(first, sharedContent(BlobState.ALIVE, sha1));
+    underTest.update(second, sharedContent(BlobState.ALIVE, sha1));
+    assertThat(underTest.getReferenceCount(sha1), is(2L));
+    assertThat(underTest.get(first).isSharedContent(), is(true));
+
+    // a blob already referring to the content is not counted again
+    underTest.update(first, sharedContent(BlobState.MARKED_FOR_DELETION, sha1));
+    assertThat(underTest.getReferenceCount(sha1), is(2L));
+
+    underTest.delete(first);
+    assertThat(underTest.getReferenceCount(sha1), is(1L));
+    underTest.deleteAll(Collections.singletonList(second));
+    assertThat(underTest.getReferenceCount(sha1), is(0L));
+  }
+
+  private static BlobMetadata sharedContent(final BlobState state, final String sha1) {
+    BlobMetadata metadata = new BlobMetadata(state, ImmutableMap.of("foo", "bar"));
+    metadata.setMetrics(new BlobMetrics(new DateTime(), sha1, 1L));
+    metadata.setSharedContent(true);
+    return metadata;
+  }
+}
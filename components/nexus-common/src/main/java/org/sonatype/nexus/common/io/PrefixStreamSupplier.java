@@ -0,0 +1,69 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.common.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import com.google.common.base.Supplier;
+import com.google.common.io.ByteStreams;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Buffers a bounded prefix of an InputStream in memory, so the leading bytes can be inspected (e.g. for content type
+ * detection) as often as needed before the complete stream is consumed exactly once. Unlike
+ * {@link TempStreamSupplier} the content is never spooled to disk.
+ *
+ * @since 3.0
+ */
+public class PrefixStreamSupplier
+    implements Supplier<InputStream>
+{
+  private final InputStream inputStream;
+
+  private final byte[] prefix;
+
+  private final int prefixLength;
+
+  private boolean consumed;
+
+  public PrefixStreamSupplier(final InputStream inputStream, final int prefixSize) throws IOException {
+    checkArgument(prefixSize > 0, "Prefix size must be positive: %s", prefixSize);
+    this.inputStream = checkNotNull(inputStream);
+    this.prefix = new byte[prefixSize];
+    this.prefixLength = ByteStreams.read(inputStream, prefix, 0, prefixSize);
+  }
+
+  /**
+   * Returns a new stream over the buffered prefix only.
+   */
+  @Override
+  public InputStream get() {
+    return new ByteArrayInputStream(prefix, 0, prefixLength);
+  }
+
+  /**
+   * Returns the complete content: the buffered prefix followed by the remainder of the original stream. May only be
+   * called once, closing the returned stream closes the original stream.
+   */
+  public synchronized InputStream complete() {
+    checkState(!consumed, "Complete stream has been opened already");
+    consumed = true;
+    return new SequenceInputStream(get(), inputStream);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.common.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.CharStreams;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PrefixStreamSupplierTest
+    extends TestSupport
+{
+  final String content = "foobar";
+
+  @Test
+  public void testPrefixThenComplete() throws Exception {
+    PrefixStreamSupplier underTest = new PrefixStreamSupplier(content(), 3);
+
+    try (InputStream i1 = underTest.get(); InputStream i2 = underTest.get()) {
+      assertThat(asString(i1), is("foo"));
+      assertThat(asString(i2), is("foo"));
+    }
+    try (InputStream complete = underTest.complete()) {
+      assertThat(asString(complete), is(content));
+    }
+  }
+
+  @Test
+  public void testPrefixLargerThanContent() throws Exception {
+    PrefixStreamSupplier underTest = new PrefixStreamSupplier(content(), 1024);
+
+    try (InputStream prefix = underTest.get()) {
+      assertThat(asString(prefix), is(content));
+    }
+    try (InputStream complete = underTest.complete()) {
+      assertThat(asString(complete), is(content));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCompleteOnlyOnce() throws Exception {
+    PrefixStreamSupplier underTest = new PrefixStreamSupplier(content(), 3);
+    underTest.complete();
+    underTest.complete();
+  }
+
+  private InputStream content() {
+    return new ByteArrayInputStream(content.getBytes());
+  }
+
+  private String asString(InputStream in) {
+    try (InputStreamReader reader = new InputStreamReader(in)) {
+      return CharStreams.toString(reader);
+    }
+    catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+}
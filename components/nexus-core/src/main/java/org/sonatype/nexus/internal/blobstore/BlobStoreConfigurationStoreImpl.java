@@ -83,6 +83,16 @@ public class BlobStoreConfigurationStoreImpl
     }
   }
 
+  @Override
+  @Guarded(by = STARTED)
+  public void update(final BlobStoreConfiguration configuration) {
+    checkNotNull(configuration);
+
+    try (ODatabaseDocumentTx db = openDb()) {
+      entityAdapter.edit(db, configuration);
+    }
+  }
+
   @Override
   @Guarded(by = STARTED)
   public void delete(final BlobStoreConfiguration configuration) {
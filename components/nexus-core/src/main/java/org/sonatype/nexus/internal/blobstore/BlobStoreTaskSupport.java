@@ -0,0 +1,74 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.internal.blobstore;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreManager;
+import org.sonatype.nexus.blobstore.file.FileBlobStore;
+import org.sonatype.nexus.blobstore.file.StripedFileBlobStore;
+import org.sonatype.nexus.scheduling.Cancelable;
+import org.sonatype.nexus.scheduling.TaskSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Support for tasks maintaining the blob store selected by {@link #BLOB_STORE_NAME_FIELD_ID}.
+ *
+ * @since 3.0
+ */
+public abstract class BlobStoreTaskSupport
+    extends TaskSupport
+    implements Cancelable
+{
+  public static final String BLOB_STORE_NAME_FIELD_ID = "blobStoreName";
+
+  protected final BlobStoreManager blobStoreManager;
+
+  protected BlobStoreTaskSupport(final BlobStoreManager blobStoreManager) {
+    this.blobStoreManager = checkNotNull(blobStoreManager);
+  }
+
+  public String getBlobStoreName() {
+    return getConfiguration().getString(BLOB_STORE_NAME_FIELD_ID);
+  }
+
+  /**
+   * Looks up the blob store without {@link BlobStoreManager#get(String)}, which creates missing stores.
+   */
+  protected BlobStore getBlobStore() {
+    String name = getBlobStoreName();
+    for (BlobStore blobStore : blobStoreManager.browse()) {
+      if (blobStore.getBlobStoreConfiguration().getName().equals(name)) {
+        return blobStore;
+      }
+    }
+    throw new IllegalStateException("Blob store not found: " + name);
+  }
+
+  /**
+   * Returns the {@link FileBlobStore}s holding the content of a blob store: the store itself, or the volumes of a
+   * {@link StripedFileBlobStore}. Other blob stores hold none.
+   */
+  protected List<FileBlobStore> getFileBlobStores(final BlobStore blobStore) {
+    if (blobStore instanceof FileBlobStore) {
+      return Collections.singletonList((FileBlobStore) blobStore);
+    }
+    if (blobStore instanceof StripedFileBlobStore) {
+      return ((StripedFileBlobStore) blobStore).getVolumes();
+    }
+    return Collections.emptyList();
+  }
+}
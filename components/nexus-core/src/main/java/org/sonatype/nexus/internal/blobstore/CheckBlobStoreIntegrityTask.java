@@ -0,0 +1,156 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.internal.blobstore;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobReferences;
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreManager;
+import org.sonatype.nexus.blobstore.file.FileBlobStore;
+import org.sonatype.nexus.blobstore.file.IntegrityMonitor;
+import org.sonatype.nexus.blobstore.file.IntegrityReport;
+import org.sonatype.nexus.blobstore.file.StripedFileBlobStore;
+import org.sonatype.nexus.scheduling.CancelableSupport;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Cross-checks a {@link FileBlobStore}'s content files against its metadata and the blobs referenced by
+ * {@link BlobReferences}, reporting and optionally reclaiming orphans. Each volume of a {@link StripedFileBlobStore}
+ * is checked in turn.
+ *
+ * @since 3.0
+ */
+@Named
+public class CheckBlobStoreIntegrityTask
+    extends BlobStoreTaskSupport
+{
+  private final List<BlobReferences> blobReferences;
+
+  @Inject
+  public CheckBlobStoreIntegrityTask(final BlobStoreManager blobStoreManager,
+                                     final List<BlobReferences> blobReferences)
+  {
+    super(blobStoreManager);
+    this.blobReferences = checkNotNull(blobReferences);
+  }
+
+  public int getThreads() {
+    return getConfiguration().getInteger(CheckBlobStoreIntegrityTaskDescriptor.THREADS_FIELD_ID,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  public boolean isReclaim() {
+    return getConfiguration().getBoolean(CheckBlobStoreIntegrityTaskDescriptor.RECLAIM_FIELD_ID, false);
+  }
+
+  public boolean isVerifyChecksums() {
+    return getConfiguration().getBoolean(CheckBlobStoreIntegrityTaskDescriptor.VERIFY_CHECKSUMS_FIELD_ID, false);
+  }
+
+  public int getMaxVerifyMegabytesPerSecond() {
+    return getConfiguration().getInteger(CheckBlobStoreIntegrityTaskDescriptor.MAX_VERIFY_MB_PER_SECOND_FIELD_ID, 0);
+  }
+
+  public int getGracePeriodHours() {
+    return getConfiguration().getInteger(CheckBlobStoreIntegrityTaskDescriptor.GRACE_PERIOD_FIELD_ID, 24);
+  }
+
+  @Override
+  protected List<IntegrityReport> execute() throws Exception {
+    BlobStore blobStore = getBlobStore();
+    List<FileBlobStore> fileBlobStores = getFileBlobStores(blobStore);
+    checkState(!fileBlobStores.isEmpty(), "Blob store %s can not be checked", getBlobStoreName());
+
+    // blobs created once collecting started may be missing from the references, whichever volume they are on
+    long collectedAt = System.currentTimeMillis();
+    Predicate<BlobId> referenced = collectReferencedBlobs(blobStore);
+    List<IntegrityReport> reports = Lists.newArrayListWithCapacity(fileBlobStores.size());
+    for (int i = 0; i < fileBlobStores.size(); i++) {
+      FileBlobStore fileBlobStore = fileBlobStores.get(i);
+      IntegrityReport report = fileBlobStore.integrityScanner()
+          .withThreads(getThreads())
+          .withReclaim(isReclaim())
+          .withGracePeriod(getGracePeriodHours(), TimeUnit.HOURS)
+          .withChecksumVerification(isVerifyChecksums(), getMaxVerifyMegabytesPerSecond() * 1024L * 1024L)
+          .withReferencedBlobs(volumeReferences(blobStore, i, referenced), collectedAt)
+          .withMonitor(new IntegrityMonitor()
+          {
+            @Override
+            public void progress(final IntegrityReport report) {
+              CancelableSupport.checkCancellation();
+            }
+          })
+          .scan();
+
+      log.info("Checked blob store {}: {}", fileBlobStore.getBlobStoreConfiguration().getName(), report);
+      reports.add(report);
+    }
+    return reports;
+  }
+
+  /**
+   * Translates the referenced blobs to the ids a volume of a {@link StripedFileBlobStore} uses internally.
+   */
+  @Nullable
+  private Predicate<BlobId> volumeReferences(final BlobStore blobStore, final int volume,
+                                             @Nullable final Predicate<BlobId> referenced)
+  {
+    if (referenced == null || !(blobStore instanceof StripedFileBlobStore)) {
+      return referenced;
+    }
+    final StripedFileBlobStore stripedBlobStore = (StripedFileBlobStore) blobStore;
+    return Predicates.compose(referenced, new Function<BlobId, BlobId>()
+    {
+      @Override
+      public BlobId apply(final BlobId blobId) {
+        return stripedBlobStore.toStripedId(volume, blobId);
+      }
+    });
+  }
+
+  /**
+   * Returns the blobs any user refers to, or {@code null} when no users are known, in which case no blob can be
+   * considered unreferenced.
+   */
+  @Nullable
+  private Predicate<BlobId> collectReferencedBlobs(final BlobStore blobStore) {
+    if (blobReferences.isEmpty()) {
+      return null;
+    }
+    long expectedBlobs = blobStore.getMetrics().getBlobCount();
+    Predicate<BlobId> referenced = Predicates.alwaysFalse();
+    for (BlobReferences references : blobReferences) {
+      referenced = Predicates.or(referenced, references.collect(getBlobStoreName(), expectedBlobs));
+    }
+    return referenced;
+  }
+
+  @Override
+  public String getMessage() {
+    return "Checking integrity of blob store " + getBlobStoreName();
+  }
+}
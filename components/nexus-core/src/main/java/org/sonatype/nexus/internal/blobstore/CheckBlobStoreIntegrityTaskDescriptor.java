@@ -0,0 +1,81 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.internal.blobstore;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.formfields.CheckboxFormField;
+import org.sonatype.nexus.formfields.ComboboxFormField;
+import org.sonatype.nexus.formfields.FormField;
+import org.sonatype.nexus.formfields.NumberTextFormField;
+import org.sonatype.nexus.scheduling.TaskDescriptorSupport;
+
+/**
+ * Task descriptor for {@link CheckBlobStoreIntegrityTask}.
+ *
+ * @since 3.0
+ */
+@Named
+@Singleton
+public class CheckBlobStoreIntegrityTaskDescriptor
+    extends TaskDescriptorSupport<CheckBlobStoreIntegrityTask>
+{
+  public static final String THREADS_FIELD_ID = "threads";
+
+  public static final String RECLAIM_FIELD_ID = "reclaim";
+
+  public static final String VERIFY_CHECKSUMS_FIELD_ID = "verifyChecksums";
+
+  public static final String MAX_VERIFY_MB_PER_SECOND_FIELD_ID = "maxVerifyMegabytesPerSecond";
+
+  public static final String GRACE_PERIOD_FIELD_ID = "gracePeriodHours";
+
+  public CheckBlobStoreIntegrityTaskDescriptor() {
+    super(CheckBlobStoreIntegrityTask.class, "Check blob store integrity",
+        new ComboboxFormField<String>(
+            BlobStoreTaskSupport.BLOB_STORE_NAME_FIELD_ID,
+            "Blob store",
+            "Select the blob store to check",
+            FormField.MANDATORY
+        ).withStoreApi("coreui_Blobstore.read").withIdMapping("name").withNameMapping("name"),
+        new CheckboxFormField(
+            RECLAIM_FIELD_ID,
+            "Reclaim orphans",
+            "Delete orphan files and stale blobs, and mark unreferenced blobs for deletion, instead of only reporting",
+            FormField.OPTIONAL
+        ).withInitialValue(false),
+        new NumberTextFormField(
+            GRACE_PERIOD_FIELD_ID,
+            "Grace period (hours)",
+            "Files and blobs younger than this are left alone, defaults to 24",
+            FormField.OPTIONAL),
+        new CheckboxFormField(
+            VERIFY_CHECKSUMS_FIELD_ID,
+            "Verify checksums",
+            "Re-read the content of every blob to verify its SHA1",
+            FormField.OPTIONAL
+        ).withInitialValue(false),
+        new NumberTextFormField(
+            MAX_VERIFY_MB_PER_SECOND_FIELD_ID,
+            "Max verification MB/s",
+            "Upper bound of content read per second to verify checksums, unlimited when empty or 0",
+            FormField.OPTIONAL),
+        new NumberTextFormField(
+            THREADS_FIELD_ID,
+            "Threads",
+            "Number of threads checking files and blobs, defaults to the number of processors",
+            FormField.OPTIONAL)
+    );
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.internal.blobstore;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreManager;
+import org.sonatype.nexus.blobstore.file.CompactionMonitor;
+import org.sonatype.nexus.blobstore.file.CompactionResult;
+import org.sonatype.nexus.blobstore.file.FileBlobStore;
+import org.sonatype.nexus.blobstore.file.StripedFileBlobStore;
+import org.sonatype.nexus.scheduling.CancelableSupport;
+
+import com.google.common.base.Stopwatch;
+
+/**
+ * Hard-deletes the blobs of a blob store which are marked for deletion. {@link FileBlobStore}s, and each volume of a
+ * {@link StripedFileBlobStore}, are compacted in parallel, throttled batches; a canceled or failed run resumes
+ * where it stopped the next time it runs.
+ *
+ * @since 3.0
+ */
+@Named
+public class CompactBlobStoreTask
+    extends BlobStoreTaskSupport
+{
+  @Inject
+  public CompactBlobStoreTask(final BlobStoreManager blobStoreManager) {
+    super(blobStoreManager);
+  }
+
+  public int getThreads() {
+    return getConfiguration().getInteger(CompactBlobStoreTaskDescriptor.THREADS_FIELD_ID,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  public int getMaxMegabytesPerSecond() {
+    return getConfiguration().getInteger(CompactBlobStoreTaskDescriptor.MAX_MB_PER_SECOND_FIELD_ID, 0);
+  }
+
+  public int getBatchSize() {
+    return getConfiguration().getInteger(CompactBlobStoreTaskDescriptor.BATCH_SIZE_FIELD_ID,
+        FileBlobStore.DEFAULT_COMPACTION_BATCH_SIZE);
+  }
+
+  @Override
+  protected CompactionResult execute() throws Exception {
+    BlobStore blobStore = getBlobStore();
+    List<FileBlobStore> fileBlobStores = getFileBlobStores(blobStore);
+
+    if (fileBlobStores.isEmpty()) {
+      blobStore.compact();
+      return null;
+    }
+
+    long blobCount = 0;
+    long bytesReclaimed = 0;
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    for (FileBlobStore fileBlobStore : fileBlobStores) {
+      CompactionResult result = fileBlobStore.compact(getThreads(), getMaxMegabytesPerSecond() * 1024L * 1024L,
+          getBatchSize(), new CompactionMonitor()
+          {
+            @Override
+            public void batchCompacted(final CompactionResult progress) {
+              log.info("Compacting {}: {} blobs deleted, {} bytes reclaimed, {} blobs/sec", getBlobStoreName(),
+                  progress.getBlobCount(), progress.getBytesReclaimed(),
+                  String.format("%.1f", progress.getBlobsPerSecond()));
+              CancelableSupport.checkCancellation();
+            }
+          });
+      blobCount += result.getBlobCount();
+      bytesReclaimed += result.getBytesReclaimed();
+    }
+    CompactionResult result = new CompactionResult(blobCount, bytesReclaimed,
+        stopwatch.elapsed(TimeUnit.MILLISECONDS));
+
+    log.info("Compacted {}: {} blobs deleted, {} bytes reclaimed in {} ms ({} blobs/sec)", getBlobStoreName(),
+        result.getBlobCount(), result.getBytesReclaimed(), result.getElapsedMillis(),
+        String.format("%.1f", result.getBlobsPerSecond()));
+    return result;
+  }
+
+  @Override
+  public String getMessage() {
+    return "Compacting blob store " + getBlobStoreName();
+  }
+}
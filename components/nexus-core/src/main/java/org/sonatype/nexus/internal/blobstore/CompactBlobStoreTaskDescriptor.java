@@ -0,0 +1,64 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.internal.blobstore;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.formfields.ComboboxFormField;
+import org.sonatype.nexus.formfields.FormField;
+import org.sonatype.nexus.formfields.NumberTextFormField;
+import org.sonatype.nexus.scheduling.TaskDescriptorSupport;
+
+/**
+ * Task descriptor for {@link CompactBlobStoreTask}.
+ *
+ * @since 3.0
+ */
+@Named
+@Singleton
+public class CompactBlobStoreTaskDescriptor
+    extends TaskDescriptorSupport<CompactBlobStoreTask>
+{
+  public static final String THREADS_FIELD_ID = "threads";
+
+  public static final String MAX_MB_PER_SECOND_FIELD_ID = "maxMegabytesPerSecond";
+
+  public static final String BATCH_SIZE_FIELD_ID = "batchSize";
+
+  public CompactBlobStoreTaskDescriptor() {
+    super(CompactBlobStoreTask.class, "Compact blob store",
+        new ComboboxFormField<String>(
+            BlobStoreTaskSupport.BLOB_STORE_NAME_FIELD_ID,
+            "Blob store",
+            "Select the blob store to compact",
+            FormField.MANDATORY
+        ).withStoreApi("coreui_Blobstore.read").withIdMapping("name").withNameMapping("name"),
+        new NumberTextFormField(
+            THREADS_FIELD_ID,
+            "Threads",
+            "Number of threads deleting content files, defaults to the number of processors",
+            FormField.OPTIONAL),
+        new NumberTextFormField(
+            MAX_MB_PER_SECOND_FIELD_ID,
+            "Max MB/s",
+            "Upper bound of content deleted per second, unlimited when empty or 0",
+            FormField.OPTIONAL),
+        new NumberTextFormField(
+            BATCH_SIZE_FIELD_ID,
+            "Batch size",
+            "Number of blobs whose metadata is removed together, defaults to 1000",
+            FormField.OPTIONAL)
+    );
+  }
+}
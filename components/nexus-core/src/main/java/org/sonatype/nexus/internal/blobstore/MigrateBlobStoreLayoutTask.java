@@ -0,0 +1,99 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.internal.blobstore;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfigurationStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreManager;
+import org.sonatype.nexus.blobstore.file.FileBlobStore;
+import org.sonatype.nexus.blobstore.file.LayoutMigrationMonitor;
+import org.sonatype.nexus.blobstore.file.LocationStrategies;
+import org.sonatype.nexus.blobstore.file.StripedFileBlobStore;
+import org.sonatype.nexus.scheduling.CancelableSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Moves the content of a {@link FileBlobStore} to a new {@link LocationStrategies layout} in the background. New
+ * content goes to the new layout as soon as the task starts, and reads fall back to the old layout until the content
+ * has been moved; a canceled or failed migration resumes the next time the task runs. The volumes of a
+ * {@link StripedFileBlobStore} are migrated together.
+ *
+ * @since 3.0
+ */
+@Named
+public class MigrateBlobStoreLayoutTask
+    extends BlobStoreTaskSupport
+{
+  private final BlobStoreConfigurationStore configurationStore;
+
+  @Inject
+  public MigrateBlobStoreLayoutTask(final BlobStoreManager blobStoreManager,
+                                    final BlobStoreConfigurationStore configurationStore)
+  {
+    super(blobStoreManager);
+    this.configurationStore = checkNotNull(configurationStore);
+  }
+
+  public String getLayout() {
+    return getConfiguration().getString(MigrateBlobStoreLayoutTaskDescriptor.LAYOUT_FIELD_ID);
+  }
+
+  public int getThreads() {
+    return getConfiguration().getInteger(MigrateBlobStoreLayoutTaskDescriptor.THREADS_FIELD_ID,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  @Override
+  protected Long execute() throws Exception {
+    BlobStore blobStore = getBlobStore();
+    List<FileBlobStore> fileBlobStores = getFileBlobStores(blobStore);
+    checkState(!fileBlobStores.isEmpty(), "Blob store %s has no configurable layout", getBlobStoreName());
+
+    boolean started = false;
+    for (FileBlobStore fileBlobStore : fileBlobStores) {
+      started |= fileBlobStore.startLayoutMigration(getLayout());
+    }
+    if (started) {
+      configurationStore.update(blobStore.getBlobStoreConfiguration());
+    }
+
+    long moved = 0;
+    for (FileBlobStore fileBlobStore : fileBlobStores) {
+      moved += fileBlobStore.migrateLayout(getThreads(), new LayoutMigrationMonitor()
+      {
+        @Override
+        public void progress(final long blobsScanned, final long filesMoved) {
+          log.info("Migrating layout of {}: {} blobs scanned, {} content files moved", getBlobStoreName(),
+              blobsScanned, filesMoved);
+          CancelableSupport.checkCancellation();
+        }
+      });
+      configurationStore.update(blobStore.getBlobStoreConfiguration());
+    }
+
+    log.info("Migrated layout of {} to {}: {} content files moved", getBlobStoreName(), getLayout(), moved);
+    return moved;
+  }
+
+  @Override
+  public String getMessage() {
+    return "Migrating layout of blob store " + getBlobStoreName() + " to " + getLayout();
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.internal.blobstore;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.formfields.ComboboxFormField;
+import org.sonatype.nexus.formfields.FormField;
+import org.sonatype.nexus.formfields.NumberTextFormField;
+import org.sonatype.nexus.formfields.StringTextFormField;
+import org.sonatype.nexus.scheduling.TaskDescriptorSupport;
+
+/**
+ * Task descriptor for {@link MigrateBlobStoreLayoutTask}.
+ *
+ * @since 3.0
+ */
+@Named
+@Singleton
+public class MigrateBlobStoreLayoutTaskDescriptor
+    extends TaskDescriptorSupport<MigrateBlobStoreLayoutTask>
+{
+  public static final String LAYOUT_FIELD_ID = "layout";
+
+  public static final String THREADS_FIELD_ID = "threads";
+
+  public MigrateBlobStoreLayoutTaskDescriptor() {
+    super(MigrateBlobStoreLayoutTask.class, "Migrate blob store layout",
+        new ComboboxFormField<String>(
+            BlobStoreTaskSupport.BLOB_STORE_NAME_FIELD_ID,
+            "Blob store",
+            "Select the blob store to migrate",
+            FormField.MANDATORY
+        ).withStoreApi("coreui_Blobstore.read").withIdMapping("name").withNameMapping("name"),
+        new StringTextFormField(
+            LAYOUT_FIELD_ID,
+            "Layout",
+            "Directory layout of content files: volume-chapter, modulo:<tiers>:<modulo> or hex:<tiers>:<digits>",
+            FormField.MANDATORY),
+        new NumberTextFormField(
+            THREADS_FIELD_ID,
+            "Threads",
+            "Number of threads moving content files, defaults to the number of processors",
+            FormField.OPTIONAL)
+    );
+  }
+}
@@ -74,6 +74,16 @@ class BlobStoreConfigurationStoreImplTest
     assert !underTest.list()
   }
 
+  @Test
+  void 'Can update an existing BlobStoreConfiguration'() {
+    BlobStoreConfiguration entity = createConfig()
+    entity.attributes('file').set('layout', 'hex:2:2')
+    underTest.update(entity)
+    List<BlobStoreConfiguration> list = underTest.list()
+    assert list.size() == 1
+    assert list[0].attributes == [file:[path:'bar', layout:'hex:2:2']]
+  }
+
   @Test
   void 'Names are unique'() {
     BlobStoreConfiguration entity = createConfig()
@@ -0,0 +1,53 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.contentcache;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.repository.Facet;
+import org.sonatype.nexus.repository.view.Content;
+
+/**
+ * In-memory cache of small, frequently served {@link Content}, keyed by request path.
+ *
+ * @since 3.0
+ */
+@Facet.Exposed
+public interface ContentCacheFacet
+    extends Facet
+{
+  /**
+   * Returns cached content for given path, or {@code null} if not cached.
+   */
+  @Nullable
+  Content get(String path);
+
+  /**
+   * Returns the current generation, to be passed to {@link #put(String, Content, long)}. The generation changes
+   * whenever an asset of the repository changes, so content read before the change is never cached after it.
+   */
+  long generation();
+
+  /**
+   * Caches content if it is eligible and the generation did not change since it was read. Returns the content to be
+   * served instead of passed in one: the in-memory copy when cached, otherwise the passed in content untouched.
+   */
+  Content put(String path, Content content, long generation) throws IOException;
+
+  /**
+   * Removes all entries from cache.
+   */
+  void invalidate();
+}
@@ -0,0 +1,419 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.contentcache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.inject.Named;
+import javax.validation.constraints.Min;
+
+import org.sonatype.nexus.common.stateguard.Guarded;
+import org.sonatype.nexus.repository.FacetSupport;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.repository.config.ConfigurationFacet;
+import org.sonatype.nexus.repository.storage.Asset;
+import org.sonatype.nexus.repository.storage.AssetDeletedEvent;
+import org.sonatype.nexus.repository.storage.AssetEvent;
+import org.sonatype.nexus.repository.storage.AssetUpdatedEvent;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Payload;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.io.ByteStreams;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.repository.FacetSupport.State.STARTED;
+
+/**
+ * Default {@link ContentCacheFacet} implementation, holding content bytes either on heap or in direct buffers.
+ *
+ * Only content carrying an {@link Asset} attribute is cached, as entries are invalidated by the {@link AssetEvent}s
+ * posted after storage transactions commit.
+ *
+ * @since 3.0
+ */
+@Named
+public class ContentCacheFacetImpl
+    extends FacetSupport
+    implements ContentCacheFacet
+{
+  @VisibleForTesting
+  static final String CONFIG_KEY = "contentCache";
+
+  @VisibleForTesting
+  static class Config
+  {
+    /**
+     * Off unless enabled per repository, as every enabled repository may keep up to {@link #maxSize} bytes in memory.
+     */
+    public boolean enabled = false;
+
+    /**
+     * Maximum size in bytes of a single cached content.
+     */
+    @Min(1)
+    public int maxEntrySize = 64 * 1024;
+
+    /**
+     * Maximum total size in bytes of cached content.
+     */
+    @Min(1)
+    public long maxSize = 32L * 1024 * 1024;
+
+    /**
+     * Keep cached bytes in direct buffers, outside of the java heap.
+     */
+    public boolean offHeap;
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "{" +
+          "enabled=" + enabled +
+          ", maxEntrySize=" + maxEntrySize +
+          ", maxSize=" + maxSize +
+          ", offHeap=" + offHeap +
+          '}';
+    }
+  }
+
+  private Config config;
+
+  private volatile Cache<String, CachedContent> cache;
+
+  /**
+   * Asset name to cached path, to invalidate entries on asset events.
+   */
+  private final ConcurrentMap<String, String> assetPaths = Maps.newConcurrentMap();
+
+  private final AtomicLong generation = new AtomicLong();
+
+  /**
+   * Bytes served from cache.
+   */
+  private final AtomicLong servedBytes = new AtomicLong();
+
+  @Override
+  protected void doValidate(final Configuration configuration) throws Exception {
+    facet(ConfigurationFacet.class).validateSection(configuration, CONFIG_KEY, Config.class);
+  }
+
+  @Override
+  protected void doConfigure(final Configuration configuration) throws Exception {
+    config = facet(ConfigurationFacet.class).readSection(configuration, CONFIG_KEY, Config.class);
+    log.debug("Config: {}", config);
+
+    // settings may have changed, always start over with an empty cache
+    maybeDestroyCache();
+    if (config.enabled) {
+      cache = newCache(config.maxSize);
+    }
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    MetricRegistry registry = SharedMetricRegistries.getOrCreate("nexus");
+    // gauges, unlike meters, can't be registered twice so replace those of a previous start
+    registry.remove(metricName("hit-ratio"));
+    registry.register(metricName("hit-ratio"), new RatioGauge()
+    {
+      @Override
+      protected Ratio getRatio() {
+        Cache<String, CachedContent> cache = ContentCacheFacetImpl.this.cache;
+        if (cache == null) {
+          return Ratio.of(0, 0);
+        }
+        CacheStats stats = cache.stats();
+        return Ratio.of(stats.hitCount(), stats.requestCount());
+      }
+    });
+    registry.remove(metricName("served-bytes"));
+    registry.register(metricName("served-bytes"), new Gauge<Long>()
+    {
+      @Override
+      public Long getValue() {
+        return servedBytes.get();
+      }
+    });
+  }
+
+  @Override
+  protected void doDelete() throws Exception {
+    MetricRegistry registry = SharedMetricRegistries.getOrCreate("nexus");
+    registry.remove(metricName("hit-ratio"));
+    registry.remove(metricName("served-bytes"));
+  }
+
+  @VisibleForTesting
+  String metricName(final String metric) {
+    return name(ContentCacheFacetImpl.class, getRepository().getName(), metric);
+  }
+
+  @Override
+  protected void doDestroy() throws Exception {
+    maybeDestroyCache();
+    config = null;
+  }
+
+  private Cache<String, CachedContent> newCache(final long maxSize) {
+    log.debug("Creating content-cache for: {}", getRepository());
+    return CacheBuilder.newBuilder()
+        .maximumWeight(maxSize)
+        .weigher(new Weigher<String, CachedContent>()
+        {
+          @Override
+          public int weigh(final String key, final CachedContent value) {
+            return value.buffer.capacity();
+          }
+        })
+        .removalListener(new RemovalListener<String, CachedContent>()
+        {
+          @Override
+          public void onRemoval(final RemovalNotification<String, CachedContent> notification) {
+            assetPaths.remove(notification.getValue().assetName, notification.getKey());
+          }
+        })
+        .recordStats()
+        .build();
+  }
+
+  private void maybeDestroyCache() {
+    Cache<String, CachedContent> cache = this.cache;
+    if (cache != null) {
+      log.debug("Destroying content-cache for: {}, {}", getRepository(), cache.stats());
+      this.cache = null;
+      cache.invalidateAll();
+    }
+  }
+
+  @Nullable
+  @Override
+  @Guarded(by = STARTED)
+  public Content get(final String path) {
+    checkNotNull(path);
+    Cache<String, CachedContent> cache = this.cache;
+    if (cache == null) {
+      return null;
+    }
+    CachedContent cached = cache.getIfPresent(path);
+    if (cached == null) {
+      return null;
+    }
+    servedBytes.addAndGet(cached.buffer.capacity());
+    return cached.toContent();
+  }
+
+  @Override
+  public long generation() {
+    return generation.get();
+  }
+
+  @Override
+  @Guarded(by = STARTED)
+  public Content put(final String path, final Content content, final long generation) throws IOException {
+    checkNotNull(path);
+    checkNotNull(content);
+    Cache<String, CachedContent> cache = this.cache;
+    Asset asset = content.getAttributes().get(Asset.class);
+    long size = content.getSize();
+    if (cache == null || asset == null || size < 0 || size > config.maxEntrySize) {
+      return content;
+    }
+
+    byte[] bytes;
+    try (InputStream in = content.openInputStream()) {
+      bytes = ByteStreams.toByteArray(in);
+    }
+    if (bytes.length != size) {
+      log.debug("Not caching {}, expected {} bytes but read {}", path, size, bytes.length);
+      return new CachedContent(ByteBuffer.wrap(bytes), content, asset.name()).toContent();
+    }
+
+    ByteBuffer buffer;
+    if (config.offHeap) {
+      buffer = ByteBuffer.allocateDirect(bytes.length);
+      buffer.put(bytes);
+      buffer.flip();
+    }
+    else {
+      buffer = ByteBuffer.wrap(bytes);
+    }
+    CachedContent cached = new CachedContent(buffer, content, asset.name());
+
+    if (this.generation.get() == generation) {
+      cache.put(path, cached);
+      assetPaths.put(cached.assetName, path);
+      // an asset changed meanwhile, the entry might be stale
+      if (this.generation.get() != generation) {
+        cache.invalidate(path);
+      }
+    }
+    return cached.toContent();
+  }
+
+  @Override
+  @Guarded(by = STARTED)
+  public void invalidate() {
+    Cache<String, CachedContent> cache = this.cache;
+    if (cache != null) {
+      log.debug("Removing all from content-cache of {}", getRepository());
+      generation.incrementAndGet();
+      cache.invalidateAll();
+    }
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final AssetUpdatedEvent event) {
+    maybeInvalidate(event);
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final AssetDeletedEvent event) {
+    maybeInvalidate(event);
+  }
+
+  private void maybeInvalidate(final AssetEvent event) {
+    Cache<String, CachedContent> cache = this.cache;
+    if (cache != null && getRepository().equals(event.getRepository())) {
+      generation.incrementAndGet();
+      String path = assetPaths.remove(event.getAsset().name());
+      if (path != null) {
+        log.trace("Removing {} from content-cache of {}", path, getRepository());
+        cache.invalidate(path);
+      }
+    }
+  }
+
+  /**
+   * Cached content bytes with attributes of the original {@link Content}.
+   */
+  private static class CachedContent
+  {
+    private final ByteBuffer buffer;
+
+    private final String contentType;
+
+    private final Map<String, Object> attributes;
+
+    private final String assetName;
+
+    private CachedContent(final ByteBuffer buffer, final Content content, final String assetName) {
+      this.buffer = buffer;
+      this.contentType = content.getContentType();
+      ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
+      for (Entry<String, Object> entry : content.getAttributes()) {
+        if (entry.getValue() != null) {
+          builder.put(entry);
+        }
+      }
+      this.attributes = builder.build();
+      this.assetName = assetName;
+    }
+
+    private Content toContent() {
+      Content content = new Content(new ByteBufferPayload(buffer.duplicate(), contentType));
+      for (Entry<String, Object> entry : attributes.entrySet()) {
+        content.getAttributes().set(entry.getKey(), entry.getValue());
+      }
+      return content;
+    }
+  }
+
+  /**
+   * Payload reading from a {@link ByteBuffer}, which is never modified.
+   */
+  private static class ByteBufferPayload
+      implements Payload
+  {
+    private final ByteBuffer buffer;
+
+    private final String contentType;
+
+    private ByteBufferPayload(final ByteBuffer buffer, @Nullable final String contentType) {
+      this.buffer = buffer;
+      this.contentType = contentType;
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      final ByteBuffer source = buffer.duplicate();
+      return new InputStream()
+      {
+        @Override
+        public int read() throws IOException {
+          return source.hasRemaining() ? source.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+          if (len == 0) {
+            return 0;
+          }
+          if (!source.hasRemaining()) {
+            return -1;
+          }
+          int count = Math.min(len, source.remaining());
+          source.get(b, off, count);
+          return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+          return source.remaining();
+        }
+      };
+    }
+
+    @Override
+    public long getSize() {
+      return buffer.remaining();
+    }
+
+    @Nullable
+    @Override
+    public String getContentType() {
+      return contentType;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "{" +
+          "size=" + getSize() +
+          ", contentType='" + contentType + '\'' +
+          '}';
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.contentcache;
+
+import javax.annotation.Nonnull;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.repository.http.HttpMethods;
+import org.sonatype.nexus.repository.http.HttpResponses;
+import org.sonatype.nexus.repository.http.HttpStatus;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.PayloadResponse;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.sisu.goodies.common.ComponentSupport;
+
+/**
+ * Handler serving GET and HEAD requests from the {@link ContentCacheFacet}, and caching successfully served
+ * {@link Content}.
+ *
+ * @since 3.0
+ */
+@Named
+@Singleton
+public class ContentCacheHandler
+    extends ComponentSupport
+    implements Handler
+{
+  @Nonnull
+  @Override
+  public Response handle(@Nonnull final Context context) throws Exception {
+    String action = context.getRequest().getAction();
+    if (!HttpMethods.GET.equals(action) && !HttpMethods.HEAD.equals(action)) {
+      return context.proceed();
+    }
+    ContentCacheFacet contentCache = context.getRepository().facet(ContentCacheFacet.class);
+    String path = context.getRequest().getPath();
+
+    Content cached = contentCache.get(path);
+    if (cached != null) {
+      log.trace("Found {} in content cache", path);
+      return HttpResponses.ok(cached);
+    }
+
+    long generation = contentCache.generation();
+    Response response = context.proceed();
+    if (HttpStatus.OK == response.getStatus().getCode() && response instanceof PayloadResponse) {
+      PayloadResponse payloadResponse = (PayloadResponse) response;
+      if (payloadResponse.getPayload() instanceof Content) {
+        payloadResponse.setPayload(contentCache.put(path, (Content) payloadResponse.getPayload(), generation));
+      }
+    }
+    return response;
+  }
+}
@@ -14,6 +14,9 @@
 package org.sonatype.nexus.repository.group;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.Nullable;
 
 import org.sonatype.nexus.repository.Facet;
 import org.sonatype.nexus.repository.Repository;
@@ -41,4 +44,34 @@ public interface GroupFacet
    * Return the full list of members, including the members of groups, but excluding groups.
    */
   List<Repository> leafMembers();
+
+  /**
+   * Returns the executor used to dispatch requests to members concurrently, or {@code null} if members should be
+   * dispatched to one at a time.
+   */
+  @Nullable
+  ExecutorService dispatchExecutor();
+
+  /**
+   * Returns the member which last served the given path, or {@code null} if the path has no remembered route.
+   */
+  @Nullable
+  Repository routeFor(String path);
+
+  /**
+   * Returns the current route generation, to be captured before dispatching to members whose response may be
+   * remembered with {@link #rememberRoute(String, Repository, long)}.
+   */
+  long routeGeneration();
+
+  /**
+   * Remembers that the given member served the given path, so later requests can be sent to it directly. Ignored if
+   * routes were invalidated since the given generation was captured with {@link #routeGeneration()}.
+   */
+  void rememberRoute(String path, Repository member, long generation);
+
+  /**
+   * Forgets the remembered route for the given path, if any.
+   */
+  void forgetRoute(String path);
 }
@@ -17,20 +17,39 @@ import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.validation.constraints.Min;
 
 import org.sonatype.nexus.common.stateguard.Guarded;
 import org.sonatype.nexus.repository.FacetSupport;
 import org.sonatype.nexus.repository.MissingFacetException;
 import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.RepositoryEvent;
 import org.sonatype.nexus.repository.config.Configuration;
 import org.sonatype.nexus.repository.config.ConfigurationFacet;
+import org.sonatype.nexus.repository.manager.RepositoryCreatedEvent;
+import org.sonatype.nexus.repository.manager.RepositoryDeletedEvent;
 import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.repository.manager.RepositoryUpdatedEvent;
+import org.sonatype.nexus.repository.storage.AssetEvent;
 
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -58,16 +77,66 @@ public class GroupFacetImpl
     @JsonDeserialize(as = LinkedHashSet.class) // retain order
     public Set<String> memberNames;
 
+    /**
+     * Query members concurrently, returning the first successful response in member order.
+     */
+    public boolean parallelDispatch = false;
+
+    /**
+     * Maximum number of remembered path to member routes, {@code 0} (the default) disables routing.
+     *
+     * A remembered route is tried ahead of member order, so content a higher priority member gains for the path is
+     * only served once the route is dropped. Routes are dropped on membership changes and on asset events of members
+     * naming the path, so routing suits formats whose asset names are request paths.
+     */
+    @Min(0)
+    public int routingCacheSize = 0;
+
     @Override
     public String toString() {
       return getClass().getSimpleName() + "{" +
           "memberNames=" + memberNames +
+          ", parallelDispatch=" + parallelDispatch +
+          ", routingCacheSize=" + routingCacheSize +
           '}';
     }
   }
 
+  /**
+   * Upper bound of concurrent member dispatches per group.
+   */
+  private static final int MAX_DISPATCH_THREADS = 16;
+
+  /**
+   * Upper bound of member dispatches waiting for a thread, beyond which requesting threads dispatch themselves.
+   */
+  private static final int MAX_QUEUED_DISPATCHES = MAX_DISPATCH_THREADS * 4;
+
   private Config config;
 
+  private ExecutorService dispatchExecutor;
+
+  /**
+   * Guards publication of {@link #members} and {@link #generation}.
+   */
+  private final Object membersLock = new Object();
+
+  /**
+   * Resolved members, lazily computed and discarded whenever membership or a member changes.
+   */
+  private volatile List<Repository> members;
+
+  /**
+   * Bumped whenever members or routes are invalidated, so lists and routes computed before are not published after.
+   */
+  private volatile long generation;
+
+  /**
+   * Path to member name routes, {@code null} when routing is disabled.
+   */
+  @Nullable
+  private volatile Cache<String, String> routes;
+
   @Inject
   public GroupFacetImpl(final RepositoryManager repositoryManager) {
     this.repositoryManager = checkNotNull(repositoryManager);
@@ -82,11 +151,54 @@ public class GroupFacetImpl
   protected void doConfigure(final Configuration configuration) throws Exception {
     config = facet(ConfigurationFacet.class).readSection(configuration, CONFIG_KEY, Config.class);
     log.debug("Config: {}", config);
+
+    invalidateMembers();
+    if (config.routingCacheSize > 0) {
+      routes = CacheBuilder.newBuilder().maximumSize(config.routingCacheSize).build();
+    }
+    else {
+      routes = null;
+    }
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    if (config.parallelDispatch) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+          MAX_DISPATCH_THREADS, MAX_DISPATCH_THREADS, 60L, TimeUnit.SECONDS,
+          new ArrayBlockingQueue<Runnable>(MAX_QUEUED_DISPATCHES),
+          new ThreadFactoryBuilder()
+              .setNameFormat("group-dispatch-" + getRepository().getName() + "-%d")
+              .setDaemon(true)
+              .build(),
+          new RejectedExecutionHandler()
+          {
+            @Override
+            public void rejectedExecution(final Runnable r, final ThreadPoolExecutor pool) {
+              // unlike CallerRunsPolicy also run once shut down, the requesting thread waits on the outcome
+              r.run();
+            }
+          }
+      );
+      executor.allowCoreThreadTimeOut(true);
+      dispatchExecutor = executor;
+    }
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    if (dispatchExecutor != null) {
+      // let in-flight member dispatches finish rather than interrupting them mid-fetch
+      dispatchExecutor.shutdown();
+      dispatchExecutor = null;
+    }
   }
 
   @Override
   protected void doDestroy() throws Exception {
     config = null;
+    members = null;
+    routes = null;
   }
 
   @Override
@@ -99,6 +211,28 @@ public class GroupFacetImpl
   @Override
   @Guarded(by = STARTED)
   public List<Repository> members() {
+    List<Repository> resolved = members;
+    if (resolved == null) {
+      final long resolving = generation;
+      resolved = resolveMembers();
+      synchronized (membersLock) {
+        // an invalidation raced the resolution, hand out the list but leave it to the next caller to resolve again
+        if (generation == resolving) {
+          members = resolved;
+        }
+      }
+    }
+    return resolved;
+  }
+
+  private void invalidateMembers() {
+    synchronized (membersLock) {
+      generation++;
+      members = null;
+    }
+  }
+
+  private List<Repository> resolveMembers() {
     final Repository repository = getRepository();
 
     List<Repository> members = new ArrayList<>(config.memberNames.size());
@@ -115,7 +249,124 @@ public class GroupFacetImpl
         members.add(member);
       }
     }
-    return members;
+    return ImmutableList.copyOf(members);
+  }
+
+  @Nullable
+  @Override
+  @Guarded(by = STARTED)
+  public ExecutorService dispatchExecutor() {
+    return dispatchExecutor;
+  }
+
+  @Nullable
+  @Override
+  @Guarded(by = STARTED)
+  public Repository routeFor(final String path) {
+    checkNotNull(path);
+    Cache<String, String> routes = this.routes;
+    if (routes == null) {
+      return null;
+    }
+    String name = routes.getIfPresent(routeKey(path));
+    if (name == null) {
+      return null;
+    }
+    for (Repository member : members()) {
+      if (member.getName().equals(name)) {
+        return member;
+      }
+    }
+    routes.invalidate(routeKey(path));
+    return null;
+  }
+
+  @Override
+  @Guarded(by = STARTED)
+  public long routeGeneration() {
+    return generation;
+  }
+
+  @Override
+  @Guarded(by = STARTED)
+  public void rememberRoute(final String path, final Repository member, final long generation) {
+    checkNotNull(path);
+    checkNotNull(member);
+    Cache<String, String> routes = this.routes;
+    if (routes != null) {
+      synchronized (membersLock) {
+        // the member served the path before an invalidation, which may have been about this very path
+        if (this.generation == generation) {
+          routes.put(routeKey(path), member.getName());
+        }
+      }
+    }
+  }
+
+  @Override
+  @Guarded(by = STARTED)
+  public void forgetRoute(final String path) {
+    checkNotNull(path);
+    Cache<String, String> routes = this.routes;
+    if (routes != null) {
+      routes.invalidate(routeKey(path));
+    }
+  }
+
+  /**
+   * Request paths start with a slash, asset names do not.
+   */
+  private static String routeKey(final String path) {
+    return path.startsWith("/") ? path.substring(1) : path;
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryCreatedEvent event) {
+    maybeInvalidateMembers(event);
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryUpdatedEvent event) {
+    maybeInvalidateMembers(event);
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryDeletedEvent event) {
+    maybeInvalidateMembers(event);
+  }
+
+  /**
+   * Drops the resolved members and all routes when a member is created, updated or deleted.
+   */
+  private void maybeInvalidateMembers(final RepositoryEvent event) {
+    if (config.memberNames.contains(event.getRepository().getName())) {
+      log.debug("Member {} changed, invalidating members and routes", event.getRepository().getName());
+      invalidateMembers();
+      Cache<String, String> routes = this.routes;
+      if (routes != null) {
+        routes.invalidateAll();
+      }
+    }
+  }
+
+  /**
+   * Drops the route for the path of an asset created, updated or deleted in a member, as a deletion may break the
+   * route and a creation in a higher priority member may supersede it. Asset events are posted once the storage
+   * transaction changing the asset committed.
+   */
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final AssetEvent event) {
+    Cache<String, String> routes = this.routes;
+    if (routes != null && config.memberNames.contains(event.getRepository().getName())) {
+      synchronized (membersLock) {
+        generation++;
+        routes.invalidate(routeKey(event.getAsset().name()));
+      }
+    }
   }
 
   @Override
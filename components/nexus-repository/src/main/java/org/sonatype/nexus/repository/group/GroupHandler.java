@@ -15,12 +15,19 @@ package org.sonatype.nexus.repository.group;
 
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.sonatype.nexus.repository.MissingFacetException;
 import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.http.HttpResponses;
 import org.sonatype.nexus.repository.http.HttpStatus;
@@ -31,8 +38,11 @@ import org.sonatype.nexus.repository.view.Response;
 import org.sonatype.nexus.repository.view.ViewFacet;
 import org.sonatype.sisu.goodies.common.ComponentSupport;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.subject.Subject;
 
 import static org.sonatype.nexus.repository.http.HttpMethods.GET;
 import static org.sonatype.nexus.repository.http.HttpMethods.HEAD;
@@ -49,11 +59,12 @@ public class GroupHandler
     implements Handler
 {
   /**
-   * Request-context state container for set of repositories already dispatched to.
+   * Request-context state container for set of repositories already dispatched to. Safe to share between the
+   * threads of a parallel dispatch.
    */
   protected static class DispatchedRepositories
   {
-    private final Set<String> dispatched = Sets.newHashSet();
+    private final Set<String> dispatched = Sets.newConcurrentHashSet();
 
     public void add(final Repository repository) {
       dispatched.add(repository.getName());
@@ -94,7 +105,25 @@ public class GroupHandler
       throws Exception
   {
     final GroupFacet groupFacet = context.getRepository().facet(GroupFacet.class);
-    return getFirst(context.getRequest(), groupFacet.members(), dispatched);
+    final Request request = context.getRequest();
+
+    // go straight to the member which last served this path, falling back to a full scan if it no longer does
+    final Repository routed = groupFacet.routeFor(request.getPath());
+    if (routed != null && !dispatched.contains(routed)) {
+      log.trace("Trying routed member: {}", routed);
+      dispatched.add(routed);
+      final Response response = routed.facet(ViewFacet.class).dispatch(request);
+      if (response.getStatus().isSuccessful()) {
+        return response;
+      }
+      groupFacet.forgetRoute(request.getPath());
+    }
+
+    final ExecutorService executor = groupFacet.dispatchExecutor();
+    if (executor != null) {
+      return getFirstParallel(request, groupFacet.members(), dispatched, executor, groupFacet);
+    }
+    return getFirst(request, groupFacet.members(), dispatched, groupFacet);
   }
 
   /**
@@ -106,6 +135,20 @@ public class GroupHandler
                               final @Nonnull DispatchedRepositories dispatched)
       throws Exception
   {
+    return getFirst(request, members, dispatched, null);
+  }
+
+  /**
+   * As {@link #getFirst(Request, List, DispatchedRepositories)}, remembering the member which responded with OK as
+   * the route for the request path when {@code routes} is given.
+   */
+  protected Response getFirst(final @Nonnull Request request,
+                              final @Nonnull List<Repository> members,
+                              final @Nonnull DispatchedRepositories dispatched,
+                              final @Nullable GroupFacet routes)
+      throws Exception
+  {
+    final long generation = routes != null ? routes.routeGeneration() : 0L;
     for (Repository member : members) {
       log.trace("Trying member: {}", member);
       // track repositories we have dispatched to, prevent circular dispatch for nested groups
@@ -118,12 +161,130 @@ public class GroupHandler
       final ViewFacet view = member.facet(ViewFacet.class);
       final Response response = view.dispatch(request);
       if (response.getStatus().isSuccessful()) {
+        if (routes != null) {
+          routes.rememberRoute(request.getPath(), member, generation);
+        }
         return response;
       }
     }
     return HttpResponses.notFound();
   }
 
+  /**
+   * Dispatches to leaf members concurrently and returns the first OK response in member order, or
+   * {@link HttpResponses#notFound()} if none of the members responded with OK. Members are otherwise treated as by
+   * {@link #getFirst(Request, List, DispatchedRepositories)}: a member counts as dispatched only once it is reached in
+   * member order, nested groups are dispatched to in place, and a member failing with an exception is skipped in favour
+   * of the next one, the first such exception being rethrown only if no member responded with OK. Outstanding
+   * dispatches to lower priority members are cancelled without interruption once a response is chosen.
+   */
+  protected Response getFirstParallel(final @Nonnull Request request,
+                                      final @Nonnull List<Repository> members,
+                                      final @Nonnull DispatchedRepositories dispatched,
+                                      final @Nonnull ExecutorService executor)
+      throws Exception
+  {
+    return getFirstParallel(request, members, dispatched, executor, null);
+  }
+
+  /**
+   * As {@link #getFirstParallel(Request, List, DispatchedRepositories, ExecutorService)}, remembering the member which
+   * responded with OK as the route for the request path when {@code routes} is given.
+   */
+  protected Response getFirstParallel(final @Nonnull Request request,
+                                      final @Nonnull List<Repository> members,
+                                      final @Nonnull DispatchedRepositories dispatched,
+                                      final @Nonnull ExecutorService executor,
+                                      final @Nullable GroupFacet routes)
+      throws Exception
+  {
+    final long generation = routes != null ? routes.routeGeneration() : 0L;
+
+    // member dispatch runs security checks, so workers must act as the requesting subject
+    final Subject subject = SecurityUtils.getSubject();
+
+    // nested groups track what they dispatched to in the request, so only leaf members can run ahead of member order
+    final Map<Repository, Future<Response>> futures = Maps.newHashMap();
+    for (final Repository member : members) {
+      if (dispatched.contains(member) || isGroup(member)) {
+        continue;
+      }
+      log.trace("Dispatching to member: {}", member);
+      futures.put(member, executor.submit(subject.associateWith(new Callable<Response>()
+      {
+        @Override
+        public Response call() throws Exception {
+          return member.facet(ViewFacet.class).dispatch(request);
+        }
+      })));
+    }
+
+    Exception failure = null;
+    try {
+      for (Repository member : members) {
+        log.trace("Trying member: {}", member);
+        // track repositories we have dispatched to, prevent circular dispatch for nested groups
+        if (dispatched.contains(member)) {
+          log.trace("Skipping already dispatched member: {}", member);
+          continue;
+        }
+        dispatched.add(member);
+
+        final Response response;
+        try {
+          final Future<Response> future = futures.get(member);
+          response = future != null ? getResponse(future) : member.facet(ViewFacet.class).dispatch(request);
+        }
+        catch (InterruptedException e) {
+          throw e;
+        }
+        catch (Exception e) {
+          log.debug("Member {} failed, trying next member", member, e);
+          if (failure == null) {
+            failure = e;
+          }
+          continue;
+        }
+        if (response.getStatus().isSuccessful()) {
+          if (routes != null) {
+            routes.rememberRoute(request.getPath(), member, generation);
+          }
+          return response;
+        }
+      }
+    }
+    finally {
+      // members may be in the middle of a remote fetch or storage transaction, let them complete undisturbed
+      for (Future<Response> future : futures.values()) {
+        future.cancel(false);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return HttpResponses.notFound();
+  }
+
+  private boolean isGroup(final Repository member) {
+    try {
+      member.facet(GroupFacet.class);
+      return true;
+    }
+    catch (MissingFacetException e) {
+      return false;
+    }
+  }
+
+  private Response getResponse(final Future<Response> future) throws Exception {
+    try {
+      return future.get();
+    }
+    catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
   /**
    * Returns all responses from all members as a linked map, where order is group member order.
    */
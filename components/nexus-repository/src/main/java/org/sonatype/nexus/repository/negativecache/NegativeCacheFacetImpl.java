@@ -39,7 +39,7 @@ import static org.sonatype.nexus.repository.FacetSupport.State.STARTED;
  *
  * @since 3.0
  */
-@Named("default")
+@Named("ehcache")
 public class NegativeCacheFacetImpl
     extends FacetSupport
     implements NegativeCacheFacet
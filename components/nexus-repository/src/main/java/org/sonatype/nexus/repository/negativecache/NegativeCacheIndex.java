@@ -0,0 +1,405 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.negativecache;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.repository.view.Status;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bounded, expiring index of negative cache entries.
+ *
+ * {@link PathNegativeCacheKey}s are held in a trie of interned path segments (each segment keeps its trailing
+ * {@code /}), so the entries below a directory key are exactly the subtree of its node and are found in O(depth)
+ * instead of by scanning all keys. Other keys are held in a plain map.
+ *
+ * The index lives on-heap: every entry is a {@link Node} with a slot in its parent's child map, so memory grows by
+ * roughly 200 bytes per entry (more for deep paths sharing no directories) and callers must size it accordingly.
+ *
+ * All entries are threaded on a single list in write order. As every entry has the same time-to-live this is also
+ * expiry order, so both expired and over-capacity entries are evicted from the head of the list.
+ *
+ * @since 3.0
+ */
+public class NegativeCacheIndex
+{
+  private static final Interner<String> segments = Interners.newWeakInterner();
+
+  private final int maxEntries;
+
+  private final long timeToLiveNanos;
+
+  private final Ticker ticker;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final Node root = new Node(null, null, null);
+
+  private final Map<NegativeCacheKey, Node> values = new HashMap<>();
+
+  /**
+   * Oldest entry, first to be evicted.
+   */
+  private Node head;
+
+  /**
+   * Newest entry.
+   */
+  private Node tail;
+
+  private int size;
+
+  private final AtomicLong hitCount = new AtomicLong();
+
+  private final AtomicLong missCount = new AtomicLong();
+
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  private final AtomicLong expirationCount = new AtomicLong();
+
+  NegativeCacheIndex(final int maxEntries, final long timeToLive, final TimeUnit unit, final Ticker ticker) {
+    checkArgument(maxEntries > 0, "maxEntries must be positive");
+    checkArgument(timeToLive > 0, "timeToLive must be positive");
+    this.maxEntries = maxEntries;
+    this.timeToLiveNanos = unit.toNanos(timeToLive);
+    this.ticker = checkNotNull(ticker);
+  }
+
+  /**
+   * Returns the cached status for key, or {@code null} if not present or expired.
+   */
+  @Nullable
+  public Status get(final NegativeCacheKey key) {
+    checkNotNull(key);
+    lock.readLock().lock();
+    try {
+      Node node = find(key);
+      if (node != null && node.status != null && !node.isExpired(ticker.read())) {
+        hitCount.incrementAndGet();
+        return node.status;
+      }
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+    missCount.incrementAndGet();
+    return null;
+  }
+
+  public void put(final NegativeCacheKey key, final Status status) {
+    checkNotNull(key);
+    checkNotNull(status);
+    lock.writeLock().lock();
+    try {
+      long now = ticker.read();
+      Node node = findOrCreate(key);
+      if (node.status != null) {
+        unlink(node);
+      }
+      else {
+        size++;
+      }
+      node.status = status;
+      node.expiresAt = now + timeToLiveNanos;
+      link(node);
+      evict(now);
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void invalidate(final NegativeCacheKey key) {
+    checkNotNull(key);
+    lock.writeLock().lock();
+    try {
+      Node node = find(key);
+      if (node != null && node.status != null) {
+        remove(node);
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Invalidates the key and, for directory {@link PathNegativeCacheKey}s, every entry below it.
+   */
+  public void invalidateSubset(final NegativeCacheKey key) {
+    checkNotNull(key);
+    if (!(key instanceof PathNegativeCacheKey) || !((PathNegativeCacheKey) key).getPath().endsWith("/")) {
+      invalidate(key);
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      Node node = find(key);
+      if (node == null) {
+        return;
+      }
+      if (node.children != null) {
+        Deque<Node> pending = new ArrayDeque<>(node.children.values());
+        while (!pending.isEmpty()) {
+          Node child = pending.pop();
+          if (child.status != null) {
+            unlink(child);
+            child.status = null;
+            size--;
+          }
+          if (child.children != null) {
+            pending.addAll(child.children.values());
+          }
+        }
+        node.children = null;
+      }
+      if (node.status != null) {
+        remove(node);
+      }
+      else {
+        prune(node);
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void invalidateAll() {
+    lock.writeLock().lock();
+    try {
+      root.children = null;
+      values.clear();
+      head = null;
+      tail = null;
+      size = 0;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Number of entries dropped to stay within the maximum number of entries.
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * Number of entries dropped because their time-to-live passed.
+   */
+  public long getExpirationCount() {
+    return expirationCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" +
+        "size=" + size() +
+        ", hits=" + hitCount +
+        ", misses=" + missCount +
+        ", evictions=" + evictionCount +
+        ", expirations=" + expirationCount +
+        '}';
+  }
+
+  //
+  // Internals, callers hold the lock
+  //
+
+  @Nullable
+  private Node find(final NegativeCacheKey key) {
+    if (!(key instanceof PathNegativeCacheKey)) {
+      return values.get(key);
+    }
+    String path = ((PathNegativeCacheKey) key).getPath();
+    Node node = root;
+    int start = 0;
+    while (start < path.length() && node != null) {
+      int end = segmentEnd(path, start);
+      node = node.children == null ? null : node.children.get(path.substring(start, end));
+      start = end;
+    }
+    return node;
+  }
+
+  private Node findOrCreate(final NegativeCacheKey key) {
+    if (!(key instanceof PathNegativeCacheKey)) {
+      Node node = values.get(key);
+      if (node == null) {
+        node = new Node(null, null, key);
+        values.put(key, node);
+      }
+      return node;
+    }
+    String path = ((PathNegativeCacheKey) key).getPath();
+    Node node = root;
+    int start = 0;
+    while (start < path.length()) {
+      int end = segmentEnd(path, start);
+      String segment = path.substring(start, end);
+      Node child = node.children == null ? null : node.children.get(segment);
+      if (child == null) {
+        child = new Node(node, segments.intern(segment), null);
+        if (node.children == null) {
+          node.children = new HashMap<>(4);
+        }
+        node.children.put(child.segment, child);
+      }
+      node = child;
+      start = end;
+    }
+    return node;
+  }
+
+  private static int segmentEnd(final String path, final int start) {
+    int slash = path.indexOf('/', start);
+    return slash == -1 ? path.length() : slash + 1;
+  }
+
+  private void evict(final long now) {
+    while (head != null) {
+      if (head.isExpired(now)) {
+        expirationCount.incrementAndGet();
+      }
+      else if (size > maxEntries) {
+        evictionCount.incrementAndGet();
+      }
+      else {
+        break;
+      }
+      remove(head);
+    }
+  }
+
+  private void remove(final Node node) {
+    unlink(node);
+    node.status = null;
+    size--;
+    prune(node);
+  }
+
+  /**
+   * Drops the node, and then its ancestors, while they hold neither an entry nor children.
+   */
+  private void prune(Node node) {
+    if (node.valueKey != null) {
+      values.remove(node.valueKey);
+      return;
+    }
+    while (node.parent != null && node.status == null && (node.children == null || node.children.isEmpty())) {
+      Node parent = node.parent;
+      parent.children.remove(node.segment);
+      node = parent;
+    }
+    if (node.children != null && node.children.isEmpty()) {
+      node.children = null;
+    }
+  }
+
+  private void link(final Node node) {
+    node.older = tail;
+    node.newer = null;
+    if (tail == null) {
+      head = node;
+    }
+    else {
+      tail.newer = node;
+    }
+    tail = node;
+  }
+
+  private void unlink(final Node node) {
+    if (node.older == null) {
+      head = node.newer;
+    }
+    else {
+      node.older.newer = node.newer;
+    }
+    if (node.newer == null) {
+      tail = node.older;
+    }
+    else {
+      node.newer.older = node.older;
+    }
+    node.older = null;
+    node.newer = null;
+  }
+
+  private static final class Node
+  {
+    private final Node parent;
+
+    private final String segment;
+
+    private final NegativeCacheKey valueKey;
+
+    private Map<String, Node> children;
+
+    private Status status;
+
+    private long expiresAt;
+
+    private Node older;
+
+    private Node newer;
+
+    private Node(@Nullable final Node parent,
+                 @Nullable final String segment,
+                 @Nullable final NegativeCacheKey valueKey)
+    {
+      this.parent = parent;
+      this.segment = segment;
+      this.valueKey = valueKey;
+    }
+
+    private boolean isExpired(final long now) {
+      return now - expiresAt >= 0;
+    }
+  }
+}
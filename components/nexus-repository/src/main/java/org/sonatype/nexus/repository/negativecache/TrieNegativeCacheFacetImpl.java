@@ -0,0 +1,288 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.negativecache;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.inject.Named;
+import javax.validation.constraints.Min;
+
+import org.sonatype.nexus.common.stateguard.Guarded;
+import org.sonatype.nexus.repository.FacetSupport;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.repository.config.ConfigurationFacet;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Status;
+import org.sonatype.sisu.goodies.common.Time;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.repository.FacetSupport.State.STARTED;
+
+/**
+ * {@link NegativeCacheIndex} based {@link NegativeCacheFacet} implementation, able to invalidate path subtrees without
+ * scanning all keys.
+ *
+ * @since 3.0
+ */
+@Named("default")
+public class TrieNegativeCacheFacetImpl
+    extends FacetSupport
+    implements NegativeCacheFacet
+{
+  @VisibleForTesting
+  static final String CONFIG_KEY = "negativeCache";
+
+  @VisibleForTesting
+  static class Config
+  {
+    public boolean enabled;
+
+    /**
+     * Time-to-live seconds.
+     */
+    @Min(1)
+    public int timeToLive = Time.hours(24).toSecondsI();
+
+    /**
+     * Maximum number of cached entries, oldest entries are evicted first.
+     *
+     * The index is held on-heap, each entry costing roughly 200 bytes (its trie node, the parent's child table slot
+     * and its status) plus the nodes of directories not shared with other entries. The default of 10000 entries,
+     * the same as the ehcache based implementation, keeps this to a few megabytes per repository; raise it only with
+     * the heap to match.
+     */
+    @Min(1)
+    public int maxEntries = 10000;
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "{" +
+          "enabled=" + enabled +
+          ", timeToLive=" + timeToLive +
+          ", maxEntries=" + maxEntries +
+          '}';
+    }
+  }
+
+  private Config config;
+
+  private volatile NegativeCacheIndex index;
+
+  /**
+   * Lookups answered from the index.
+   */
+  private Meter hits;
+
+  /**
+   * Lookups not answered from the index, including those made while it is disabled.
+   */
+  private Meter misses;
+
+  @Override
+  protected void doValidate(final Configuration configuration) throws Exception {
+    facet(ConfigurationFacet.class).validateSection(configuration, CONFIG_KEY, Config.class);
+  }
+
+  @Override
+  protected void doConfigure(final Configuration configuration) throws Exception {
+    config = facet(ConfigurationFacet.class).readSection(configuration, CONFIG_KEY, Config.class);
+    log.debug("Config: {}", config);
+  }
+
+  @Override
+  protected void doInit(final Configuration configuration) throws Exception {
+    super.doInit(configuration);
+
+    // create index if enabled
+    if (config.enabled) {
+      maybeCreateIndex();
+    }
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    MetricRegistry registry = SharedMetricRegistries.getOrCreate("nexus");
+    hits = registry.meter(metricName("hits"));
+    misses = registry.meter(metricName("misses"));
+    registerGauge(registry, "size", new Gauge<Integer>()
+    {
+      @Override
+      public Integer getValue() {
+        NegativeCacheIndex index = TrieNegativeCacheFacetImpl.this.index;
+        return index == null ? 0 : index.size();
+      }
+    });
+    registerGauge(registry, "evictions", new Gauge<Long>()
+    {
+      @Override
+      public Long getValue() {
+        NegativeCacheIndex index = TrieNegativeCacheFacetImpl.this.index;
+        return index == null ? 0 : index.getEvictionCount();
+      }
+    });
+    registerGauge(registry, "expirations", new Gauge<Long>()
+    {
+      @Override
+      public Long getValue() {
+        NegativeCacheIndex index = TrieNegativeCacheFacetImpl.this.index;
+        return index == null ? 0 : index.getExpirationCount();
+      }
+    });
+  }
+
+  /**
+   * Registers the gauge, replacing the one of a previous start as gauges, unlike meters, can't be registered twice.
+   */
+  private void registerGauge(final MetricRegistry registry, final String metric, final Gauge<?> gauge) {
+    registry.remove(metricName(metric));
+    registry.register(metricName(metric), gauge);
+  }
+
+  @Override
+  protected void doDelete() throws Exception {
+    MetricRegistry registry = SharedMetricRegistries.getOrCreate("nexus");
+    for (String metric : new String[]{"hits", "misses", "size", "evictions", "expirations"}) {
+      registry.remove(metricName(metric));
+    }
+  }
+
+  @VisibleForTesting
+  String metricName(final String metric) {
+    return name(TrieNegativeCacheFacetImpl.class, getRepository().getName(), metric);
+  }
+
+  @Override
+  protected void doUpdate(final Configuration configuration) throws Exception {
+    Config previous = config;
+    super.doUpdate(configuration);
+
+    // re-create index if enabled or index settings changed
+    if (config.enabled) {
+      if (config.timeToLive != previous.timeToLive || config.maxEntries != previous.maxEntries) {
+        maybeDestroyIndex();
+      }
+      maybeCreateIndex();
+    }
+    else {
+      // else destroy index if disabled
+      maybeDestroyIndex();
+    }
+  }
+
+  @Override
+  protected void doDestroy() throws Exception {
+    maybeDestroyIndex();
+    config = null;
+  }
+
+  private void maybeCreateIndex() {
+    if (index == null) {
+      log.debug("Creating negative-cache for: {}", getRepository());
+      index = newIndex(config.maxEntries, config.timeToLive);
+    }
+  }
+
+  @VisibleForTesting
+  NegativeCacheIndex newIndex(final int maxEntries, final int timeToLiveSeconds) {
+    return new NegativeCacheIndex(maxEntries, timeToLiveSeconds, TimeUnit.SECONDS, Ticker.systemTicker());
+  }
+
+  private void maybeDestroyIndex() {
+    if (index != null) {
+      log.debug("Destroying negative-cache for: {}, {}", getRepository(), index);
+      index = null;
+    }
+  }
+
+  @Override
+  @Guarded(by = STARTED)
+  public Status get(final NegativeCacheKey key) {
+    checkNotNull(key);
+    NegativeCacheIndex index = this.index;
+    Status status = index == null ? null : index.get(key);
+    if (status == null) {
+      misses.mark();
+    }
+    else {
+      hits.mark();
+    }
+    return status;
+  }
+
+  @Override
+  @Guarded(by = STARTED)
+  public void put(final NegativeCacheKey key, final Status status) {
+    checkNotNull(key);
+    checkNotNull(status);
+    NegativeCacheIndex index = this.index;
+    if (index != null) {
+      log.debug("Adding {}={} to negative-cache of {}", key, status, getRepository());
+      index.put(key, status);
+    }
+  }
+
+  @Override
+  @Guarded(by = STARTED)
+  public void invalidate(final NegativeCacheKey key) {
+    checkNotNull(key);
+    NegativeCacheIndex index = this.index;
+    if (index != null) {
+      log.debug("Removing {} from negative-cache of {}", key, getRepository());
+      index.invalidate(key);
+    }
+  }
+
+  @Override
+  @Guarded(by = STARTED)
+  public void invalidateSubset(final NegativeCacheKey key) {
+    checkNotNull(key);
+    NegativeCacheIndex index = this.index;
+    if (index != null) {
+      log.debug("Removing {} and children from negative-cache of {}", key, getRepository());
+      index.invalidateSubset(key);
+    }
+  }
+
+  @Override
+  @Guarded(by = STARTED)
+  public void invalidate() {
+    NegativeCacheIndex index = this.index;
+    if (index != null) {
+      log.debug("Removing all from negative-cache of {}", getRepository());
+      index.invalidateAll();
+    }
+  }
+
+  @Override
+  public NegativeCacheKey getCacheKey(final Context context) {
+    return new PathNegativeCacheKey(context.getRequest().getPath());
+  }
+
+  /**
+   * Returns the negative-cache index, {@code null} if disabled; its size and counts are also reported in the "nexus"
+   * metric registry.
+   */
+  @Nullable
+  public NegativeCacheIndex getIndex() {
+    return index;
+  }
+}
@@ -13,7 +13,11 @@
 package org.sonatype.nexus.repository.proxy;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -31,9 +35,15 @@ import org.sonatype.nexus.repository.view.Context;
 import org.sonatype.nexus.repository.view.Payload;
 import org.sonatype.nexus.repository.view.payloads.HttpEntityPayload;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
 import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.SettableFuture;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
@@ -45,6 +55,7 @@ import org.apache.http.client.utils.DateUtils;
 import org.apache.http.client.utils.HttpClientUtils;
 import org.joda.time.DateTime;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -86,6 +97,22 @@ public abstract class ProxyFacetSupport
 
   private boolean remoteUrlChanged;
 
+  /**
+   * Fetches in progress keyed by remote URL, so that concurrent cache misses for the same content share one
+   * upstream download and store.
+   */
+  private final ConcurrentMap<String, SettableFuture<Void>> inflightFetches = Maps.newConcurrentMap();
+
+  /**
+   * Remote fetches performed for cache misses or stale content.
+   */
+  private Meter fetches;
+
+  /**
+   * Requests which waited on another request's in-flight fetch instead of fetching themselves.
+   */
+  private Meter coalescedFetches;
+
   @Override
   protected void doValidate(final Configuration configuration) throws Exception {
     facet(ConfigurationFacet.class).validateSection(configuration, CONFIG_KEY, Config.class);
@@ -120,6 +147,10 @@ public abstract class ProxyFacetSupport
   protected void doStart() throws Exception {
     httpClient = facet(HttpClientFacet.class);
 
+    MetricRegistry registry = SharedMetricRegistries.getOrCreate("nexus");
+    fetches = registry.meter(metricName("fetches"));
+    coalescedFetches = registry.meter(metricName("coalesced-fetches"));
+
     if (remoteUrlChanged) {
       remoteUrlChanged = false;
 
@@ -137,6 +168,18 @@ public abstract class ProxyFacetSupport
     httpClient = null;
   }
 
+  @Override
+  protected void doDelete() throws Exception {
+    MetricRegistry registry = SharedMetricRegistries.getOrCreate("nexus");
+    registry.remove(metricName("fetches"));
+    registry.remove(metricName("coalesced-fetches"));
+  }
+
+  @VisibleForTesting
+  String metricName(final String metric) {
+    return name(ProxyFacetSupport.class, getRepository().getName(), metric);
+  }
+
   public URI getRemoteUrl() {
     return config.remoteUrl;
   }
@@ -148,25 +191,73 @@ public abstract class ProxyFacetSupport
     Content content = getCachedPayload(context);
 
     if (content == null || isStale(context)) {
-      try {
-        final Content remote = fetch(context, content);
-        if (remote != null) {
-
-          // TODO: Introduce content validation.. perhaps content's type not matching path's implied type.
-
-          store(context, remote);
+      final String url = getUrl(context);
+      final SettableFuture<Void> fetching = SettableFuture.create();
+      final SettableFuture<Void> inflight = inflightFetches.putIfAbsent(url, fetching);
+      if (inflight != null) {
+        coalescedFetches.mark();
+        log.debug("Awaiting in-flight fetch: {}", url);
+        awaitFetch(inflight);
+        return getCachedPayload(context);
+      }
 
-          content = getCachedPayload(context);
-        }
+      try {
+        fetches.mark();
+        content = fetchAndStore(context, content);
+        fetching.set(null);
       }
-      catch (IOException e) {
-        log.warn("Failed to fetch: {}", getUrl(context), e);
+      catch (IOException | RuntimeException e) {
+        fetching.setException(e);
         throw e;
       }
+      finally {
+        inflightFetches.remove(url, fetching);
+      }
     }
     return content;
   }
 
+  /**
+   * Fetches content from the remote and stores it, returning the freshly cached content or the given stale content
+   * if the remote had nothing newer.
+   */
+  @Nullable
+  private Content fetchAndStore(final Context context, @Nullable final Content stale) throws IOException {
+    try {
+      final Content remote = fetch(context, stale);
+      if (remote != null) {
+
+        // TODO: Introduce content validation.. perhaps content's type not matching path's implied type.
+
+        store(context, remote);
+
+        return getCachedPayload(context);
+      }
+      return stale;
+    }
+    catch (IOException e) {
+      log.warn("Failed to fetch: {}", getUrl(context), e);
+      throw e;
+    }
+  }
+
+  /**
+   * Waits for another request's fetch to complete, rethrowing its failure.
+   */
+  private void awaitFetch(final Future<Void> inflight) throws IOException {
+    try {
+      inflight.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted awaiting in-flight fetch");
+    }
+    catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
   /**
    * If we have the content cached locally already, return that - otherwise {@code null}.
    */
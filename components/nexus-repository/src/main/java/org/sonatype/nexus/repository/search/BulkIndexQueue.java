@@ -0,0 +1,365 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.search;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.storage.Component;
+import org.sonatype.sisu.goodies.common.ComponentSupport;
+
+import com.google.common.base.Throwables;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Collects index puts and deletes and hands them to a {@link Flusher} in batches, bounded by number of actions and by
+ * time since the first pending action. Repeated actions on the same item collapse into the latest one. Producers block
+ * while the queue is full.
+ *
+ * While not started, actions are flushed synchronously one at a time.
+ *
+ * @since 3.0
+ */
+class BulkIndexQueue
+    extends ComponentSupport
+{
+  /**
+   * Receives batches of pending actions, one action per item.
+   */
+  interface Flusher
+  {
+    void flush(List<Action> actions);
+  }
+
+  /**
+   * Pending index action; a put when {@link #getComponent()} is not {@code null}, otherwise a delete.
+   */
+  static class Action
+  {
+    private final Repository repository;
+
+    private final String identifier;
+
+    private final Component component;
+
+    Action(final Repository repository, final String identifier, @Nullable final Component component) {
+      this.repository = checkNotNull(repository);
+      this.identifier = checkNotNull(identifier);
+      this.component = component;
+    }
+
+    Repository getRepository() {
+      return repository;
+    }
+
+    String getIdentifier() {
+      return identifier;
+    }
+
+    @Nullable
+    Component getComponent() {
+      return component;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "{" +
+          (component != null ? "put" : "delete") +
+          " repository=" + repository.getName() +
+          ", identifier=" + identifier +
+          '}';
+    }
+  }
+
+  private final Flusher flusher;
+
+  private final int maxBatchSize;
+
+  private final long flushIntervalNanos;
+
+  private final int capacity;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition notEmpty = lock.newCondition();
+
+  private final Condition notFull = lock.newCondition();
+
+  /**
+   * Held while taking and flushing a batch, so a batch taken by the worker is flushed before
+   * {@link #flush(Repository)} returns.
+   */
+  private final Object flushing = new Object();
+
+  /**
+   * Pending actions keyed by repository name and item identifier.
+   */
+  private final LinkedHashMap<Entry<String, String>, Action> pending = new LinkedHashMap<>();
+
+  private long firstPendingAt;
+
+  private Thread worker;
+
+  private volatile boolean running;
+
+  BulkIndexQueue(final Flusher flusher, final int maxBatchSize, final long flushInterval, final TimeUnit unit,
+                 final int capacity)
+  {
+    checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+    checkArgument(capacity >= maxBatchSize, "capacity must be at least maxBatchSize");
+    this.flusher = checkNotNull(flusher);
+    this.maxBatchSize = maxBatchSize;
+    this.flushIntervalNanos = unit.toNanos(flushInterval);
+    this.capacity = capacity;
+  }
+
+  public void start() {
+    lock.lock();
+    try {
+      checkState(worker == null, "Already started");
+      running = true;
+      worker = new Thread(new Runnable()
+      {
+        @Override
+        public void run() {
+          drain();
+        }
+      }, "search-bulk-index");
+      worker.setDaemon(true);
+      worker.start();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stops the worker and flushes any remaining actions in the calling thread.
+   */
+  public void stop() throws InterruptedException {
+    Thread stopping;
+    lock.lock();
+    try {
+      running = false;
+      stopping = worker;
+      worker = null;
+      notEmpty.signalAll();
+      notFull.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+    if (stopping != null) {
+      stopping.join();
+    }
+    List<Action> remaining = take();
+    if (!remaining.isEmpty()) {
+      flush(remaining);
+    }
+  }
+
+  public void put(final Repository repository, final Component component, final String identifier) {
+    offer(new Action(repository, identifier, checkNotNull(component)));
+  }
+
+  public void delete(final Repository repository, final String identifier) {
+    offer(new Action(repository, identifier, null));
+  }
+
+  /**
+   * Drops pending actions of given repository, used when its index is being removed.
+   */
+  public void discard(final Repository repository) {
+    take(repository);
+  }
+
+  /**
+   * Flushes pending actions of given repository in the calling thread, once any batch the worker is flushing is done.
+   * Used before the repository stops, as flushing reads component metadata from its storage.
+   */
+  public void flush(final Repository repository) {
+    synchronized (flushing) {
+      List<Action> actions = take(repository);
+      if (!actions.isEmpty()) {
+        flush(actions);
+      }
+    }
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return pending.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void offer(final Action action) {
+    Entry<String, String> key = new SimpleImmutableEntry<>(action.getRepository().getName(), action.getIdentifier());
+    lock.lock();
+    try {
+      // block while full, unless the action collapses into one already pending
+      while (running && pending.size() >= capacity && !pending.containsKey(key)) {
+        notFull.await();
+      }
+      if (running) {
+        if (pending.isEmpty()) {
+          firstPendingAt = System.nanoTime();
+        }
+        // re-insert so that the latest action on an item is ordered last
+        pending.remove(key);
+        pending.put(key, action);
+        if (pending.size() == 1 || pending.size() >= maxBatchSize) {
+          notEmpty.signal();
+        }
+        return;
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    }
+    finally {
+      lock.unlock();
+    }
+    flush(Collections.singletonList(action));
+  }
+
+  private void drain() {
+    log.debug("Started");
+    while (true) {
+      lock.lock();
+      try {
+        while (running && !isDue()) {
+          if (pending.isEmpty()) {
+            notEmpty.await();
+          }
+          else {
+            notEmpty.awaitNanos(flushIntervalNanos - (System.nanoTime() - firstPendingAt));
+          }
+        }
+        if (!running) {
+          break;
+        }
+      }
+      catch (InterruptedException e) {
+        // fall back to synchronous flushing, what is pending is flushed on stop
+        log.warn("Interrupted, {} actions left pending", pending.size());
+        running = false;
+        notFull.signalAll();
+        break;
+      }
+      finally {
+        lock.unlock();
+      }
+      synchronized (flushing) {
+        // a repository flush may have taken what was due meanwhile
+        List<Action> batch;
+        lock.lock();
+        try {
+          batch = takeBatch();
+        }
+        finally {
+          lock.unlock();
+        }
+        if (!batch.isEmpty()) {
+          flush(batch);
+        }
+      }
+    }
+    log.debug("Stopped");
+  }
+
+  /**
+   * Callers hold the lock.
+   */
+  private boolean isDue() {
+    return pending.size() >= maxBatchSize
+        || (!pending.isEmpty() && System.nanoTime() - firstPendingAt >= flushIntervalNanos);
+  }
+
+  /**
+   * Takes up to {@link #maxBatchSize} oldest actions; callers hold the lock.
+   */
+  private List<Action> takeBatch() {
+    List<Action> batch = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+    Iterator<Action> actions = pending.values().iterator();
+    while (actions.hasNext() && batch.size() < maxBatchSize) {
+      batch.add(actions.next());
+      actions.remove();
+    }
+    // remaining actions are due with the next batch
+    firstPendingAt = pending.isEmpty() ? 0 : System.nanoTime() - flushIntervalNanos;
+    notFull.signalAll();
+    return batch;
+  }
+
+  private List<Action> take(final Repository repository) {
+    lock.lock();
+    try {
+      List<Action> taken = new ArrayList<>();
+      Iterator<Entry<Entry<String, String>, Action>> entries = pending.entrySet().iterator();
+      while (entries.hasNext()) {
+        Entry<Entry<String, String>, Action> entry = entries.next();
+        if (entry.getKey().getKey().equals(repository.getName())) {
+          taken.add(entry.getValue());
+          entries.remove();
+        }
+      }
+      notFull.signalAll();
+      return taken;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private List<Action> take() {
+    lock.lock();
+    try {
+      List<Action> all = new ArrayList<>(pending.values());
+      pending.clear();
+      notFull.signalAll();
+      return all;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void flush(final List<Action> batch) {
+    log.trace("Flushing {} actions", batch.size());
+    try {
+      flusher.flush(batch);
+    }
+    catch (Exception e) {
+      log.warn("Failed to flush {} index actions", batch.size(), e);
+    }
+  }
+}
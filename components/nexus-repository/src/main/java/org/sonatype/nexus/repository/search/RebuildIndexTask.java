@@ -0,0 +1,68 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.search;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.scheduling.Cancelable;
+import org.sonatype.nexus.scheduling.TaskSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Rebuilds the search index of a repository from its storage, swapping in the new index once complete.
+ *
+ * @since 3.0
+ */
+@Named
+public class RebuildIndexTask
+    extends TaskSupport
+    implements Cancelable
+{
+  private final RepositoryManager repositoryManager;
+
+  private final SearchService searchService;
+
+  @Inject
+  public RebuildIndexTask(final RepositoryManager repositoryManager, final SearchService searchService) {
+    this.repositoryManager = checkNotNull(repositoryManager);
+    this.searchService = checkNotNull(searchService);
+  }
+
+  public String getRepositoryName() {
+    return getConfiguration().getString(RebuildIndexTaskDescriptor.REPOSITORY_NAME_FIELD_ID);
+  }
+
+  public int getWorkers() {
+    return getConfiguration().getInteger(RebuildIndexTaskDescriptor.WORKERS_FIELD_ID,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  @Override
+  protected Void execute() throws Exception {
+    Repository repository = repositoryManager.get(getRepositoryName());
+    checkState(repository != null, "Repository not found: %s", getRepositoryName());
+    repository.facet(SearchFacet.class); // fails if repository is not searchable
+    searchService.rebuildIndex(repository, getWorkers());
+    return null;
+  }
+
+  @Override
+  public String getMessage() {
+    return "Rebuilding search index of " + getRepositoryName();
+  }
+}
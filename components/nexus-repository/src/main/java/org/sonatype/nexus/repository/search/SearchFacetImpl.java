@@ -66,6 +66,14 @@ public class SearchFacetImpl
     searchService.createIndex(getRepository());
   }
 
+  /**
+   * Drains queued index updates while storage, which this facet is stopped ahead of, can still be read.
+   */
+  @Override
+  protected void doStop() throws Exception {
+    searchService.flush(getRepository());
+  }
+
   @Override
   protected void doDelete() {
     searchService.deleteIndex(getRepository());
@@ -15,6 +15,7 @@ package org.sonatype.nexus.repository.search;
 import org.sonatype.nexus.common.entity.EntityId;
 import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.storage.Component;
+import org.sonatype.sisu.goodies.lifecycle.Lifecycle;
 
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -26,6 +27,7 @@ import org.elasticsearch.search.SearchHit;
  * @since 3.0
  */
 public interface SearchService
+  extends Lifecycle
 {
 
   /**
@@ -39,7 +41,13 @@ public interface SearchService
   void deleteIndex(Repository repository);
 
   /**
-   * Index component metadata.
+   * Rebuilds the component metadata index of specified repository from storage, using given number of worker threads.
+   * The index is built aside and swapped in once complete, searches keep using the previous index meanwhile.
+   */
+  void rebuildIndex(Repository repository, int workers) throws Exception;
+
+  /**
+   * Index component metadata. Once started, indexing is queued and sent to the index in bulk.
    */
   void put(Repository repository, Component component, String identifier);
 
@@ -49,7 +57,16 @@ public interface SearchService
   void delete(Repository repository, String identifier);
 
   /**
-   * Search component metadata and browse results.
+   * Sends queued index updates of specified repository to the index in the calling thread. Called before the
+   * repository stops, as sending them reads from repository storage.
+   */
+  void flush(Repository repository);
+
+  /**
+   * Search component metadata and browse results. Never returns {@code null}: when there are no indexes to search
+   * yet, or they go away while browsing, the results are empty.
+   *
+   * @throws IllegalArgumentException if the query is invalid
    */
   Iterable<SearchHit> browse(QueryBuilder query);
 
@@ -59,7 +76,9 @@ public interface SearchService
   Iterable<SearchHit> browse(QueryBuilder query, int from, int size);
 
   /**
-   * Search component metadata and browse results (paged).
+   * Search component metadata and browse results (paged). Results are empty when there are no indexes to search.
+   *
+   * @throws IllegalArgumentException if the query is invalid
    */
   SearchResponse search(QueryBuilder query, int from, int size);
 
@@ -18,45 +18,84 @@ import java.net.URL;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.sonatype.nexus.common.property.SystemPropertiesHelper;
+import org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport;
 import org.sonatype.nexus.repository.Format;
 import org.sonatype.nexus.repository.MissingFacetException;
 import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.manager.RepositoryCreatedEvent;
+import org.sonatype.nexus.repository.manager.RepositoryDeletedEvent;
+import org.sonatype.nexus.repository.manager.RepositoryLoadedEvent;
 import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.repository.manager.RepositoryRestoredEvent;
+import org.sonatype.nexus.repository.manager.RepositoryUpdatedEvent;
+import org.sonatype.nexus.repository.search.BulkIndexQueue.Action;
 import org.sonatype.nexus.repository.security.BreadActions;
 import org.sonatype.nexus.repository.security.RepositoryViewPermission;
 import org.sonatype.nexus.repository.storage.Asset;
 import org.sonatype.nexus.repository.storage.Component;
 import org.sonatype.nexus.repository.storage.StorageFacet;
 import org.sonatype.nexus.repository.storage.StorageTx;
+import org.sonatype.nexus.scheduling.CancelableSupport;
 import org.sonatype.nexus.security.SecurityHelper;
-import org.sonatype.sisu.goodies.common.ComponentSupport;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 import com.google.common.base.Charsets;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.ShardSearchFailure;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.indices.IndexMissingException;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.internal.InternalSearchResponse;
 import org.jetbrains.annotations.NotNull;
 
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static org.sonatype.nexus.repository.storage.StorageFacet.P_REPOSITORY_NAME;
@@ -69,7 +108,7 @@ import static org.sonatype.nexus.repository.storage.StorageFacet.P_REPOSITORY_NA
 @Named
 @Singleton
 public class SearchServiceImpl
-    extends ComponentSupport
+    extends StateGuardLifecycleSupport
     implements SearchService
 {
   public static final String TYPE = "component";
@@ -79,6 +118,37 @@ public class SearchServiceImpl
    */
   public static final String MAPPING_JSON = "elasticsearch-mapping.json";
 
+  /**
+   * Maximum number of index actions sent in one bulk request.
+   */
+  private static final int BULK_SIZE = SystemPropertiesHelper.getInteger(
+      SearchServiceImpl.class.getName() + ".bulkSize", 500);
+
+  /**
+   * Maximum milliseconds an index action waits for its bulk request.
+   */
+  private static final int BULK_INTERVAL = SystemPropertiesHelper.getInteger(
+      SearchServiceImpl.class.getName() + ".bulkInterval", 1000);
+
+  /**
+   * Maximum number of pending index actions before producers block.
+   */
+  private static final int BULK_CAPACITY = SystemPropertiesHelper.getInteger(
+      SearchServiceImpl.class.getName() + ".bulkCapacity", 10000);
+
+  /**
+   * Seconds the response of a search is reused for identical searches (same query, page and searchable indexes),
+   * 0 disables the cache.
+   */
+  private static final int RESULT_CACHE_TTL = SystemPropertiesHelper.getInteger(
+      SearchServiceImpl.class.getName() + ".resultCacheTtl", 0);
+
+  /**
+   * Maximum number of cached search responses.
+   */
+  private static final int RESULT_CACHE_SIZE = SystemPropertiesHelper.getInteger(
+      SearchServiceImpl.class.getName() + ".resultCacheSize", 100);
+
   private final Provider<Client> client;
 
   private final RepositoryManager repositoryManager;
@@ -89,109 +159,557 @@ public class SearchServiceImpl
 
   private final Map<String, ComponentMetadataProducer> componentMetadataProducers;
 
+  private final BulkIndexQueue bulkIndexQueue;
+
+  /**
+   * Repository name to the rebuild of its index.
+   */
+  private final ConcurrentMap<String, IndexRebuild> rebuilding = new ConcurrentHashMap<>();
+
+  private final EventBus eventBus;
+
+  /**
+   * Repositories having a search facet, {@code null} until resolved or after a repository event.
+   */
+  private volatile List<Repository> searchableRepositories;
+
+  private long searchableRepositoriesGeneration;
+
+  private final Object searchableRepositoriesLock = new Object();
+
+  /**
+   * Cache of search responses, {@code null} if disabled. Cleared whenever index updates are sent or indexes are
+   * replaced, so cached responses only lag behind the index by its refresh interval.
+   */
+  private final Cache<List<Object>, SearchResponse> searchResults;
+
+  /**
+   * Incremented whenever {@link #searchResults} is cleared, to not cache responses of searches overlapping a clear.
+   */
+  private final AtomicLong searchResultsGeneration = new AtomicLong();
+
   @Inject
   public SearchServiceImpl(final Provider<Client> client,
                            final RepositoryManager repositoryManager,
                            final SecurityHelper securityHelper,
                            final List<IndexSettingsContributor> indexSettingsContributors,
-                           final Map<String, ComponentMetadataProducer> componentMetadataProducers)
+                           final Map<String, ComponentMetadataProducer> componentMetadataProducers,
+                           final EventBus eventBus)
   {
     this.client = checkNotNull(client);
     this.repositoryManager = checkNotNull(repositoryManager);
     this.securityHelper = checkNotNull(securityHelper);
     this.indexSettingsContributors = checkNotNull(indexSettingsContributors);
     this.componentMetadataProducers = checkNotNull(componentMetadataProducers);
+    this.eventBus = checkNotNull(eventBus);
+    this.searchResults = RESULT_CACHE_TTL <= 0 ? null : CacheBuilder.newBuilder()
+        .maximumSize(RESULT_CACHE_SIZE)
+        .expireAfterWrite(RESULT_CACHE_TTL, TimeUnit.SECONDS)
+        .<List<Object>, SearchResponse>build();
+    this.bulkIndexQueue = new BulkIndexQueue(new BulkIndexQueue.Flusher()
+    {
+      @Override
+      public void flush(final List<Action> actions) {
+        bulk(actions);
+      }
+    }, BULK_SIZE, BULK_INTERVAL, TimeUnit.MILLISECONDS, BULK_CAPACITY);
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    bulkIndexQueue.start();
+    eventBus.register(this);
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    eventBus.unregister(this);
+    bulkIndexQueue.stop();
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryCreatedEvent event) {
+    invalidateSearchableRepositories();
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryUpdatedEvent event) {
+    invalidateSearchableRepositories();
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryDeletedEvent event) {
+    invalidateSearchableRepositories();
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryLoadedEvent event) {
+    invalidateSearchableRepositories();
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryRestoredEvent event) {
+    invalidateSearchableRepositories();
   }
 
   @Override
   public void createIndex(final Repository repository) {
     checkNotNull(repository);
     // TODO we should calculate the checksum of index settings and compare it with a value stored in index _meta tags
-    // in case that they not match (settings changed) we should drop the index, recreate it and re-index all components
-    if (!client.get().admin().indices().prepareExists(repository.getName()).execute().actionGet().isExists()) {
-      // determine list of mapping configuration urls
-      List<URL> urls = Lists.newArrayListWithExpectedSize(indexSettingsContributors.size() + 1);
-      urls.add(Resources.getResource(getClass(), MAPPING_JSON)); // core mapping
-      for (IndexSettingsContributor contributor : indexSettingsContributors) {
-        URL url = contributor.getIndexSettings(repository);
-        if (url != null) {
-          urls.add(url);
-        }
-      }
+    // in case that they not match (settings changed) we should rebuild the index, see rebuildIndex
+    String alias = safeIndexName(repository);
+    if (!client.get().admin().indices().prepareExists(alias).execute().actionGet().isExists()) {
+      log.debug("Creating index for {}", repository);
+      String index = createConcreteIndex(repository);
+      client.get().admin().indices().prepareAliases().addAlias(index, alias).execute().actionGet();
+    }
+  }
 
-      try {
-        // merge all mapping configuration
-        String source = "{}";
-        for (URL url : urls) {
-          log.debug("Merging ElasticSearch mapping: {}", url);
-          String contributed = Resources.toString(url, Charsets.UTF_8);
-          log.trace("Contributed ElasticSearch mapping: {}", contributed);
-          source = JsonUtils.merge(source, contributed);
-        }
-        // update runtime configuration
-        log.trace("ElasticSearch mapping: {}", source);
-        log.debug("Creating index for {}", repository);
-        client.get().admin().indices().prepareCreate(safeIndexName(repository))
-            .setSource(source)
-            .execute()
-            .actionGet();
+  /**
+   * Creates a new, uniquely named index with the merged mapping configuration of the repository. Repository indexes
+   * are accessed through an alias named after the repository, so they can be swapped by {@link #rebuildIndex}.
+   */
+  private String createConcreteIndex(final Repository repository) {
+    // determine list of mapping configuration urls
+    List<URL> urls = Lists.newArrayListWithExpectedSize(indexSettingsContributors.size() + 1);
+    urls.add(Resources.getResource(getClass(), MAPPING_JSON)); // core mapping
+    for (IndexSettingsContributor contributor : indexSettingsContributors) {
+      URL url = contributor.getIndexSettings(repository);
+      if (url != null) {
+        urls.add(url);
       }
-      catch (IOException e) {
-        throw Throwables.propagate(e);
+    }
+
+    try {
+      // merge all mapping configuration
+      String source = "{}";
+      for (URL url : urls) {
+        log.debug("Merging ElasticSearch mapping: {}", url);
+        String contributed = Resources.toString(url, Charsets.UTF_8);
+        log.trace("Contributed ElasticSearch mapping: {}", contributed);
+        source = JsonUtils.merge(source, contributed);
       }
+      // update runtime configuration
+      log.trace("ElasticSearch mapping: {}", source);
+      String index = safeIndexName(repository) + "-" + System.currentTimeMillis();
+      log.debug("Creating index {} for {}", index, repository);
+      client.get().admin().indices().prepareCreate(index)
+          .setSource(source)
+          .execute()
+          .actionGet();
+      return index;
     }
+    catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Returns the names of the indexes behind the alias of the repository. Indexes created before aliases were used are
+   * named after the repository itself.
+   */
+  private Set<String> concreteIndexes(final Repository repository) {
+    String alias = safeIndexName(repository);
+    Set<String> indexes = Sets.newHashSet();
+    Iterator<String> aliased = client.get().admin().indices().prepareGetAliases(alias).execute().actionGet()
+        .getAliases().keysIt();
+    while (aliased.hasNext()) {
+      indexes.add(aliased.next());
+    }
+    if (indexes.isEmpty() && client.get().admin().indices().prepareExists(alias).execute().actionGet().isExists()) {
+      indexes.add(alias);
+    }
+    return indexes;
   }
 
   @Override
   public void deleteIndex(final Repository repository) {
     checkNotNull(repository);
-    if (client.get().admin().indices().prepareExists(repository.getName()).execute().actionGet().isExists()) {
-      log.debug("Removing index of {}", repository);
-      client.get().admin().indices().prepareDelete(safeIndexName(repository)).execute().actionGet();
+    bulkIndexQueue.discard(repository);
+    for (String index : concreteIndexes(repository)) {
+      log.debug("Removing index {} of {}", index, repository);
+      client.get().admin().indices().prepareDelete(index).execute().actionGet();
     }
+    invalidateSearchResults();
   }
 
   @Override
-  public void put(final Repository repository, final Component component, final String identifier) {
+  public void rebuildIndex(final Repository repository, final int workers) throws Exception {
     checkNotNull(repository);
-    checkNotNull(component);
-    log.debug("Indexing metadata of {} from {}", component, repository);
+    checkArgument(workers > 0, "workers must be positive");
+    String alias = safeIndexName(repository);
+    String index = createConcreteIndex(repository);
+    log.info("Rebuilding index of {} into {} with {} workers", repository, index, workers);
+
+    boolean swapped = false;
+    ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder()
+        .setNameFormat("search-rebuild-" + repository.getName() + "-%d")
+        .setDaemon(true)
+        .build());
+    IndexRebuild rebuild = new IndexRebuild(repository, index, executor, workers);
     try {
-      Map<String, Object> additional = Maps.newHashMap();
-      additional.put(P_REPOSITORY_NAME, repository.getName());
-      List<Asset> assets;
+      // mirror live index updates into the new index while it is being built
+      checkState(rebuilding.putIfAbsent(repository.getName(), rebuild) == null,
+          "Index of %s is already being rebuilt", repository);
+      rebuild.registerMetrics();
+      try {
+        rebuild.run();
+        rebuild.replayDeletes();
+        client.get().admin().indices().prepareRefresh(index).execute().actionGet();
+        swapIndex(repository, alias, index);
+        swapped = true;
+      }
+      finally {
+        rebuilding.remove(repository.getName(), rebuild);
+        rebuild.unregisterMetrics();
+      }
+    }
+    finally {
+      executor.shutdownNow();
+      if (!swapped) {
+        log.debug("Removing incomplete index {} of {}", index, repository);
+        client.get().admin().indices().prepareDelete(index).execute().actionGet();
+      }
+    }
+  }
+
+  /**
+   * Points the repository alias to the given index and removes the indexes it previously pointed to.
+   */
+  private void swapIndex(final Repository repository, final String alias, final String index) {
+    Set<String> previous = concreteIndexes(repository);
+    if (previous.contains(alias)) {
+      // index predates aliases, it has to go before its name can be used as alias
+      log.info("Replacing unaliased index of {}, searches will briefly miss it", repository);
+      client.get().admin().indices().prepareDelete(alias).execute().actionGet();
+      previous.remove(alias);
+    }
+    IndicesAliasesRequestBuilder aliases = client.get().admin().indices().prepareAliases().addAlias(index, alias);
+    for (String name : previous) {
+      aliases.removeAlias(name, alias);
+    }
+    aliases.execute().actionGet();
+    invalidateSearchResults();
+    for (String name : previous) {
+      log.debug("Removing replaced index {} of {}", name, repository);
+      client.get().admin().indices().prepareDelete(name).execute().actionGet();
+    }
+    log.info("Index of {} now served from {}", repository, index);
+  }
+
+  /**
+   * Scans the components of a repository in the calling thread and indexes them in batches on the executor, with at
+   * most two batches per worker outstanding.
+   *
+   * Live updates are mirrored into the index meanwhile, and are newer than what workers read from their snapshots.
+   * So workers only create documents, leaving those written by live updates alone, and live deletes are recorded to
+   * be replayed once workers are done, as a worker may recreate a document deleted before it got to it. Progress is
+   * published as gauges of the "nexus" metric registry.
+   */
+  private class IndexRebuild
+  {
+    private final Repository repository;
+
+    private final String index;
+
+    private final ExecutorService executor;
+
+    private final Semaphore outstanding;
+
+    private final List<Future<?>> futures = Lists.newArrayList();
+
+    private final AtomicLong indexed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong scanned = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * Identifiers deleted by live updates since the rebuild started.
+     */
+    private final Set<String> deleted = Sets.newConcurrentHashSet();
+
+    private IndexRebuild(final Repository repository,
+                         final String index,
+                         final ExecutorService executor,
+                         final int workers)
+    {
+      this.repository = repository;
+      this.index = index;
+      this.executor = executor;
+      this.outstanding = new Semaphore(workers * 2);
+    }
+
+    private void run() throws Exception {
+      long started = System.nanoTime();
+      long lastReport = started;
       try (StorageTx tx = repository.facet(StorageFacet.class).openTx()) {
-        assets = Lists.newArrayList(tx.browseAssets(component));
+        total.set(tx.countComponents(null, null, Collections.singletonList(repository), null));
+        List<Component> batch = Lists.newArrayListWithCapacity(BULK_SIZE);
+        for (Component component : tx.browseComponents(tx.getBucket())) {
+          CancelableSupport.checkCancellation();
+          batch.add(component);
+          scanned.incrementAndGet();
+          if (batch.size() == BULK_SIZE) {
+            submit(batch);
+            batch = Lists.newArrayListWithCapacity(BULK_SIZE);
+          }
+          long now = System.nanoTime();
+          if (now - lastReport > TimeUnit.SECONDS.toNanos(10)) {
+            report(started, now);
+            lastReport = now;
+          }
+        }
+        if (!batch.isEmpty()) {
+          submit(batch);
+        }
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        }
+        catch (ExecutionException e) {
+          Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+          throw Throwables.propagate(e.getCause());
+        }
       }
-      String json = JsonUtils.merge(componentMetadata(component, assets), JsonUtils.from(additional));
-      client.get().prepareIndex(safeIndexName(repository), TYPE, identifier)
-          .setSource(json).execute();
+      report(started, System.nanoTime());
+      checkState(failed.get() == 0, "Failed to index %s components of %s", failed.get(), repository);
     }
-    catch (IOException e) {
-      throw Throwables.propagate(e);
+
+    private void report(final long started, final long now) {
+      long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(now - started));
+      log.info("Rebuilding index of {}: scanned {}/{}, indexed {}, failed {} ({} components/s)",
+          repository, scanned.get(), total.get(), indexed.get(), failed.get(), indexed.get() / seconds);
+    }
+
+    /**
+     * Records a live put (when {@code deleted} is {@code false}) or delete of the document with given identifier.
+     */
+    private void live(final String identifier, final boolean deleted) {
+      if (deleted) {
+        this.deleted.add(identifier);
+      }
+      else {
+        this.deleted.remove(identifier);
+      }
+    }
+
+    /**
+     * Deletes documents deleted by live updates again, once no worker can recreate them anymore.
+     */
+    private void replayDeletes() {
+      List<String> identifiers = Lists.newArrayList(deleted);
+      if (identifiers.isEmpty()) {
+        return;
+      }
+      log.debug("Replaying {} deletes into {}", identifiers.size(), index);
+      BulkRequestBuilder bulk = client.get().prepareBulk();
+      for (String identifier : identifiers) {
+        bulk.add(client.get().prepareDelete(index, TYPE, identifier));
+      }
+      BulkResponse response = bulk.execute().actionGet();
+      checkState(!response.hasFailures(), "Failed to replay deletes into %s: %s", index,
+          response.buildFailureMessage());
+    }
+
+    private void registerMetrics() {
+      MetricRegistry registry = SharedMetricRegistries.getOrCreate("nexus");
+      registry.register(metricName("total"), gauge(total));
+      registry.register(metricName("scanned"), gauge(scanned));
+      registry.register(metricName("indexed"), gauge(indexed));
+      registry.register(metricName("failed"), gauge(failed));
     }
+
+    private void unregisterMetrics() {
+      MetricRegistry registry = SharedMetricRegistries.getOrCreate("nexus");
+      for (String metric : Arrays.asList("total", "scanned", "indexed", "failed")) {
+        registry.remove(metricName(metric));
+      }
+    }
+
+    private String metricName(final String metric) {
+      return name(SearchServiceImpl.class, repository.getName(), "rebuild", metric);
+    }
+
+    private Gauge<Long> gauge(final AtomicLong value) {
+      return new Gauge<Long>()
+      {
+        @Override
+        public Long getValue() {
+          return value.get();
+        }
+      };
+    }
+
+    private void submit(final List<Component> batch) throws InterruptedException {
+      outstanding.acquire();
+      try {
+        futures.add(executor.submit(new Callable<Void>()
+        {
+          @Override
+          public Void call() throws Exception {
+            try {
+              index(batch);
+              return null;
+            }
+            finally {
+              outstanding.release();
+            }
+          }
+        }));
+      }
+      catch (RejectedExecutionException e) {
+        outstanding.release();
+        throw e;
+      }
+    }
+
+    private void index(final List<Component> batch) throws IOException {
+      SearchFacet searchFacet = repository.facet(SearchFacet.class);
+      BulkRequestBuilder bulk = client.get().prepareBulk();
+      try (StorageTx tx = repository.facet(StorageFacet.class).openTx()) {
+        for (Component component : batch) {
+          // a document already there was written by a live update, which is newer than this snapshot
+          bulk.add(client.get().prepareIndex(index, TYPE, searchFacet.identifier(component).getValue())
+              .setCreate(true)
+              .setSource(json(tx, repository, component)));
+        }
+      }
+      BulkResponse response = bulk.execute().actionGet();
+      int failures = 0;
+      if (response.hasFailures()) {
+        for (BulkItemResponse item : response.getItems()) {
+          if (item.isFailed() && item.getFailure().getStatus() != RestStatus.CONFLICT) {
+            failures++;
+          }
+        }
+        if (failures > 0) {
+          log.warn("Failed to index some components of {}: {}", repository, response.buildFailureMessage());
+        }
+      }
+      indexed.addAndGet(batch.size() - failures);
+      failed.addAndGet(failures);
+    }
+  }
+
+  @Override
+  public void put(final Repository repository, final Component component, final String identifier) {
+    checkNotNull(repository);
+    checkNotNull(component);
+    checkNotNull(identifier);
+    log.debug("Queueing index of metadata of {} from {}", component, repository);
+    bulkIndexQueue.put(repository, component, identifier);
   }
 
   @Override
   public void delete(final Repository repository, final String identifier) {
     checkNotNull(repository);
     checkNotNull(identifier);
-    log.debug("Removing indexed metadata of {} from {}", identifier, repository);
-    client.get().prepareDelete(safeIndexName(repository), TYPE, identifier).execute();
+    log.debug("Queueing removal of indexed metadata of {} from {}", identifier, repository);
+    bulkIndexQueue.delete(repository, identifier);
   }
 
   @Override
-  public Iterable<SearchHit> browse(final QueryBuilder query) {
-    checkNotNull(query);
-    try {
-      if (!client.get().admin().indices().prepareValidateQuery().setQuery(query).execute().actionGet().isValid()) {
-        throw new IllegalArgumentException("Invalid query");
+  public void flush(final Repository repository) {
+    checkNotNull(repository);
+    log.debug("Flushing queued index actions of {}", repository);
+    bulkIndexQueue.flush(repository);
+  }
+
+  /**
+   * Sends a batch of queued index actions as one bulk request. Component metadata is produced here rather than when
+   * queued, reading the assets of each repository in a single transaction.
+   */
+  private void bulk(final List<Action> actions) {
+    BulkRequestBuilder bulk = client.get().prepareBulk();
+
+    Map<Repository, List<Action>> puts = new LinkedHashMap<>();
+    for (Action action : actions) {
+      IndexRebuild rebuild = rebuilding.get(action.getRepository().getName());
+      if (rebuild != null) {
+        rebuild.live(action.getIdentifier(), action.getComponent() == null);
+      }
+      if (action.getComponent() == null) {
+        for (String index : targetIndexes(action.getRepository())) {
+          bulk.add(client.get().prepareDelete(index, TYPE, action.getIdentifier()));
+        }
+      }
+      else {
+        List<Action> repositoryPuts = puts.get(action.getRepository());
+        if (repositoryPuts == null) {
+          puts.put(action.getRepository(), repositoryPuts = Lists.newArrayList());
+        }
+        repositoryPuts.add(action);
       }
     }
-    catch (IndexMissingException e) {
-      // no repositories were created yet, so there is no point in searching
-      return null;
+
+    for (Map.Entry<Repository, List<Action>> entry : puts.entrySet()) {
+      Repository repository = entry.getKey();
+      List<String> indexes = targetIndexes(repository);
+      try (StorageTx tx = repository.facet(StorageFacet.class).openTx()) {
+        for (Action action : entry.getValue()) {
+          // one broken component must not keep the others of the batch out of the index
+          try {
+            String json = json(tx, repository, action.getComponent());
+            for (String index : indexes) {
+              bulk.add(client.get().prepareIndex(index, TYPE, action.getIdentifier()).setSource(json));
+            }
+          }
+          catch (Exception e) {
+            log.warn("Failed to index component {} of {}", action.getIdentifier(), repository, e);
+          }
+        }
+      }
+      catch (Exception e) {
+        log.warn("Failed to index {} components of {}", entry.getValue().size(), repository, e);
+      }
     }
+
+    if (bulk.numberOfActions() > 0) {
+      log.debug("Sending {} index actions", bulk.numberOfActions());
+      BulkResponse response;
+      try {
+        response = bulk.execute().actionGet();
+      }
+      finally {
+        // even a failed bulk request may have applied some of its actions
+        invalidateSearchResults();
+      }
+      if (response.hasFailures()) {
+        log.warn("Failed to index some component metadata: {}", response.buildFailureMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns the repository alias, plus the index being rebuilt for the repository if any.
+   */
+  private List<String> targetIndexes(final Repository repository) {
+    IndexRebuild rebuild = rebuilding.get(repository.getName());
+    if (rebuild == null) {
+      return Collections.singletonList(safeIndexName(repository));
+    }
+    return Arrays.asList(safeIndexName(repository), rebuild.index);
+  }
+
+  private String json(final StorageTx tx, final Repository repository, final Component component) throws IOException {
+    Map<String, Object> additional = Maps.newHashMap();
+    additional.put(P_REPOSITORY_NAME, repository.getName());
+    List<Asset> assets = Lists.newArrayList(tx.browseAssets(component));
+    return JsonUtils.merge(componentMetadata(component, assets), JsonUtils.from(additional));
+  }
+
+  @Override
+  public Iterable<SearchHit> browse(final QueryBuilder query) {
+    checkNotNull(query);
     final String[] searchableIndexes = getSearchableIndexes();
     if (searchableIndexes.length == 0) {
       return Collections.emptyList();
@@ -214,13 +732,18 @@ public class SearchServiceImpl
               return false;
             }
             if (response == null) {
-              response = client.get().prepareSearch(searchableIndexes)
-                  .setTypes(TYPE)
-                  .setQuery(query)
-                  .setScroll(new TimeValue(1, TimeUnit.MINUTES))
-                  .setSize(100)
-                  .execute()
-                  .actionGet();
+              try {
+                response = execute(query, client.get().prepareSearch(searchableIndexes)
+                    .setTypes(TYPE)
+                    .setQuery(query)
+                    .setScroll(new TimeValue(1, TimeUnit.MINUTES))
+                    .setSize(100));
+              }
+              catch (IndexMissingException e) {
+                // indexes went away meanwhile, nothing to browse
+                noMoreHits = true;
+                return false;
+              }
               iterator = Arrays.asList(response.getHits().getHits()).iterator();
               noMoreHits = !iterator.hasNext();
             }
@@ -261,44 +784,134 @@ public class SearchServiceImpl
   @Override
   public SearchResponse search(final QueryBuilder query, final int from, final int size) {
     checkNotNull(query);
+    final String[] searchableIndexes = getSearchableIndexes();
+    if (searchableIndexes.length == 0) {
+      return emptySearchResponse();
+    }
+
+    List<Object> key = null;
+    final long expectedGeneration = searchResultsGeneration.get();
+    if (searchResults != null) {
+      // the searchable indexes depend on the permissions of the subject, so they are part of the key
+      key = Arrays.<Object>asList(query.toString(), from, size, Arrays.asList(searchableIndexes));
+      SearchResponse cached = searchResults.getIfPresent(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    SearchResponse response;
     try {
-      if (!client.get().admin().indices().prepareValidateQuery().setQuery(query).execute().actionGet().isValid()) {
-        throw new IllegalArgumentException("Invalid query");
+      response = execute(query, client.get().prepareSearch(searchableIndexes)
+          .setTypes(TYPE)
+          .setQuery(query)
+          .setFrom(from)
+          .setSize(size));
+    }
+    catch (IndexMissingException e) {
+      // indexes went away meanwhile, so there is no point in searching
+      return emptySearchResponse();
+    }
+    if (key != null && searchResultsGeneration.get() == expectedGeneration) {
+      searchResults.put(key, response);
+      // index changed meanwhile, the response might predate the change
+      if (searchResultsGeneration.get() != expectedGeneration) {
+        searchResults.invalidate(key);
       }
     }
+    return response;
+  }
+
+  private SearchResponse emptySearchResponse() {
+    return new SearchResponse(InternalSearchResponse.empty(), null, 0, 0, 0, new ShardSearchFailure[]{});
+  }
+
+  /**
+   * Executes the search without validating the query first, which would double the round trips of every search.
+   * The query is only validated once the search failed, to report invalid queries as such.
+   */
+  private SearchResponse execute(final QueryBuilder query, final SearchRequestBuilder request) {
+    try {
+      return request.execute().actionGet();
+    }
     catch (IndexMissingException e) {
-      // no repositories were created yet, so there is no point in searching
-      return new SearchResponse(InternalSearchResponse.empty(), null, 0, 0, 0, new ShardSearchFailure[]{});
+      throw e;
     }
-    final String[] searchableIndexes = getSearchableIndexes();
-    if (searchableIndexes.length == 0) {
-      return new SearchResponse(InternalSearchResponse.empty(), null, 0, 0, 0, new ShardSearchFailure[]{});
+    catch (ElasticsearchException e) {
+      if (!isValid(query)) {
+        throw new IllegalArgumentException("Invalid query", e);
+      }
+      throw e;
+    }
+  }
+
+  private boolean isValid(final QueryBuilder query) {
+    try {
+      return client.get().admin().indices().prepareValidateQuery().setQuery(query).execute().actionGet().isValid();
+    }
+    catch (IndexMissingException e) {
+      return true;
     }
-    return client.get().prepareSearch(searchableIndexes)
-        .setTypes(TYPE)
-        .setQuery(query)
-        .setFrom(from)
-        .setSize(size)
-        .execute()
-        .actionGet();
   }
 
   private String[] getSearchableIndexes() {
     List<String> indexes = Lists.newArrayList();
+    for (Repository repository : getSearchableRepositories()) {
+      if (repository.getConfiguration().isOnline()
+          && securityHelper.allPermitted(new RepositoryViewPermission(repository, BreadActions.BROWSE))) {
+        indexes.add(safeIndexName(repository));
+      }
+    }
+    return indexes.toArray(new String[indexes.size()]);
+  }
+
+  /**
+   * Returns the repositories having a search facet, resolved once and kept until the next repository event.
+   */
+  private List<Repository> getSearchableRepositories() {
+    List<Repository> repositories = searchableRepositories;
+    if (repositories != null) {
+      return repositories;
+    }
+
+    long generation;
+    synchronized (searchableRepositoriesLock) {
+      generation = searchableRepositoriesGeneration;
+    }
+    repositories = Lists.newArrayList();
     for (Repository repository : repositoryManager.browse()) {
       try {
         // check if search facet is available so avoid searching repositories without an index
         repository.facet(SearchFacet.class);
-        if (repository.getConfiguration().isOnline()
-            && securityHelper.allPermitted(new RepositoryViewPermission(repository, BreadActions.BROWSE))) {
-          indexes.add(safeIndexName(repository));
-        }
+        repositories.add(repository);
       }
       catch (MissingFacetException e) {
         // no search facet, no search
       }
     }
-    return indexes.toArray(new String[indexes.size()]);
+    repositories = Collections.unmodifiableList(repositories);
+    synchronized (searchableRepositoriesLock) {
+      // do not publish a list resolved while repositories changed
+      if (generation == searchableRepositoriesGeneration) {
+        searchableRepositories = repositories;
+      }
+    }
+    return repositories;
+  }
+
+  private void invalidateSearchableRepositories() {
+    synchronized (searchableRepositoriesLock) {
+      searchableRepositoriesGeneration++;
+      searchableRepositories = null;
+    }
+    invalidateSearchResults();
+  }
+
+  private void invalidateSearchResults() {
+    if (searchResults != null) {
+      searchResultsGeneration.incrementAndGet();
+      searchResults.invalidateAll();
+    }
   }
 
   /**
@@ -15,8 +15,9 @@ package org.sonatype.nexus.repository.security;
 
 import java.util.List;
 
+import org.sonatype.nexus.security.authz.WildcardPermission2;
+
 import com.google.common.base.Joiner;
-import org.apache.shiro.authz.permission.WildcardPermission;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -26,7 +27,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * @since 3.0
  */
 public class RepositoryAdminPermission
-    extends WildcardPermission
+    extends WildcardPermission2
 {
   public static final String SYSTEM = "nexus";
 
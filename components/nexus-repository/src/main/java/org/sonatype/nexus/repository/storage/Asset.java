@@ -122,6 +122,19 @@ public class Asset
     return this;
   }
 
+  /**
+   * Returns a copy of this asset which can be changed without affecting this asset.
+   */
+  Asset copy() {
+    Asset copy = new Asset();
+    copyTo(copy);
+    copy.componentId = componentId;
+    copy.size = size;
+    copy.contentType = contentType;
+    copy.blobRef = blobRef;
+    return copy;
+  }
+
   @Override
   public String toString() {
     return getClass().getSimpleName() + "{" +
@@ -0,0 +1,82 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.blobstore.api.BlobRef;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A blob already written to the blob store, with its size and hashes, waiting to be attached to an asset with
+ * {@link StorageTx#attachBlob(Asset, AssetBlob, String)}.
+ *
+ * @since 3.0
+ */
+public class AssetBlob
+{
+  private final BlobRef blobRef;
+
+  private final long size;
+
+  private final Map<HashAlgorithm, HashCode> hashes;
+
+  private final String contentType;
+
+  public AssetBlob(final BlobRef blobRef,
+                   final long size,
+                   final Map<HashAlgorithm, HashCode> hashes,
+                   @Nullable final String contentType)
+  {
+    this.blobRef = checkNotNull(blobRef);
+    this.size = size;
+    this.hashes = ImmutableMap.copyOf(hashes);
+    this.contentType = contentType;
+  }
+
+  public BlobRef getBlobRef() {
+    return blobRef;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public Map<HashAlgorithm, HashCode> getHashes() {
+    return hashes;
+  }
+
+  /**
+   * Returns the content type declared by the ingested item, if any.
+   */
+  @Nullable
+  public String getContentType() {
+    return contentType;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" +
+        "blobRef=" + blobRef +
+        ", size=" + size +
+        ", contentType='" + contentType + '\'' +
+        '}';
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobRef;
+import org.sonatype.nexus.blobstore.api.BlobReferences;
+import org.sonatype.nexus.repository.MissingFacetException;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.config.ConfigurationFacet;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.scheduling.CancelableSupport;
+import org.sonatype.sisu.goodies.common.ComponentSupport;
+
+import com.google.common.base.Predicate;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link BlobReferences} of the {@link Asset#blobRef() blobs} of all repository assets.
+ *
+ * Blob-ids are collected into a {@link BloomFilter}, keeping memory bounded on stores with tens of millions of
+ * blobs; its false positives only mean some unreferenced blobs are kept.
+ *
+ * @since 3.0
+ */
+@Named
+@Singleton
+public class AssetBlobReferences
+    extends ComponentSupport
+    implements BlobReferences
+{
+  private static final double FALSE_POSITIVE_PROBABILITY = 0.001;
+
+  private final RepositoryManager repositoryManager;
+
+  @Inject
+  public AssetBlobReferences(final RepositoryManager repositoryManager) {
+    this.repositoryManager = checkNotNull(repositoryManager);
+  }
+
+  @Override
+  public Predicate<BlobId> collect(final String blobStoreName, final long expectedBlobs) {
+    checkNotNull(blobStoreName);
+
+    final BloomFilter<CharSequence> referenced = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8),
+        (int) Math.min(Math.max(expectedBlobs, 1000L), Integer.MAX_VALUE), FALSE_POSITIVE_PROBABILITY);
+
+    long count = 0;
+    for (Repository repository : repositoryManager.browse()) {
+      StorageFacet storageFacet;
+      try {
+        storageFacet = repository.facet(StorageFacet.class);
+      }
+      catch (MissingFacetException e) {
+        // no storage, no assets
+        continue;
+      }
+      // blob refs do not name their store, so all blobs of repositories stored in the blob store are referenced
+      if (!blobStoreName.equals(blobStoreName(repository))) {
+        continue;
+      }
+      try (StorageTx tx = storageFacet.openTx()) {
+        for (Asset asset : tx.browseAssets(tx.getBucket())) {
+          BlobRef blobRef = asset.blobRef();
+          if (blobRef != null) {
+            referenced.put(blobRef.getBlob());
+            if (++count % 10000 == 0) {
+              CancelableSupport.checkCancellation();
+            }
+          }
+        }
+      }
+    }
+    log.debug("Collected {} blob references to {}", count, blobStoreName);
+
+    return new Predicate<BlobId>()
+    {
+      @Override
+      public boolean apply(final BlobId blobId) {
+        return referenced.mightContain(blobId.asUniqueString());
+      }
+    };
+  }
+
+  /**
+   * Returns the name of the blob store the assets of given repository are stored in.
+   */
+  private String blobStoreName(final Repository repository) {
+    return repository.facet(ConfigurationFacet.class).readSection(repository.getConfiguration(),
+        StorageFacetImpl.CONFIG_KEY, StorageFacetImpl.Config.class).blobStoreName;
+  }
+}
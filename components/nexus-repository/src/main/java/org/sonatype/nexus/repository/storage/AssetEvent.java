@@ -21,6 +21,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * Asset event.
  *
+ * Posted by {@link StorageFacetImpl} for every asset created, updated or deleted through a {@link StorageTx}, once the
+ * transaction committed; changes rolled back are never posted. Group facets subscribe to the events of their members,
+ * so every committed member change evicts merged Maven metadata of the path and drops remembered group routes.
+ *
  * @since 3.0
  */
 public abstract class AssetEvent
@@ -0,0 +1,147 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.common.entity.EntityId;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Maps;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.common.entity.EntityHelper.id;
+
+/**
+ * Read-through cache of asset snapshots of a single bucket, keyed by a format specific lookup key.
+ *
+ * Kept coherent by {@link #invalidate(Collection, Collection)} being called once changes are committed, which drops
+ * the entries of the changed assets only: updated assets are found by id, deleted assets, which no longer carry their
+ * identity, by name. A generation counter makes sure a lookup racing with a commit never caches the asset as it was
+ * before the commit. Callers get their own copy of the cached asset, so they cannot alter what others are served.
+ *
+ * @since 3.0
+ */
+class AssetLookupCache
+{
+  private final Cache<String, Asset> cache;
+
+  /**
+   * Lookup key of cached assets by asset id.
+   */
+  private final ConcurrentMap<EntityId, String> keysById = Maps.newConcurrentMap();
+
+  /**
+   * Lookup key of cached assets by asset name.
+   */
+  private final ConcurrentMap<String, String> keysByName = Maps.newConcurrentMap();
+
+  private final AtomicLong generation = new AtomicLong();
+
+  AssetLookupCache(final int maximumSize) {
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats()
+        .removalListener(new RemovalListener<String, Asset>()
+        {
+          @Override
+          public void onRemoval(final RemovalNotification<String, Asset> notification) {
+            Asset asset = notification.getValue();
+            // a replacement is cached under the same key, whose mappings were just put
+            if (asset != null && notification.getCause() != RemovalCause.REPLACED) {
+              keysById.remove(id(asset), notification.getKey());
+              keysByName.remove(asset.name(), notification.getKey());
+            }
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Returns a copy of the cached asset for given key, or the one returned by the loader. Missing assets are not
+   * cached.
+   */
+  @Nullable
+  Asset get(final String key, final Supplier<Asset> loader) {
+    checkNotNull(key);
+    checkNotNull(loader);
+    Asset asset = cache.getIfPresent(key);
+    if (asset != null) {
+      return asset.copy();
+    }
+
+    long expected = generation.get();
+    asset = loader.get();
+    if (asset != null && generation.get() == expected) {
+      Asset cached = asset.copy();
+      keysById.put(id(cached), key);
+      keysByName.put(cached.name(), key);
+      cache.put(key, cached);
+      // a commit happened meanwhile, the loaded asset might be stale
+      if (generation.get() != expected) {
+        cache.invalidate(key);
+      }
+    }
+    return asset;
+  }
+
+  /**
+   * Removes updated and deleted assets from cache.
+   */
+  void invalidate(final Collection<Asset> updated, final Collection<Asset> deleted) {
+    generation.incrementAndGet();
+    for (Asset asset : updated) {
+      invalidate(keysById.get(id(asset)));
+    }
+    for (Asset asset : deleted) {
+      invalidate(keysByName.get(asset.name()));
+    }
+  }
+
+  private void invalidate(@Nullable final String key) {
+    if (key != null) {
+      cache.invalidate(key);
+    }
+  }
+
+  void invalidateAll() {
+    generation.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  long size() {
+    return cache.size();
+  }
+
+  CacheStats stats() {
+    return cache.stats();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" +
+        "size=" + cache.size() +
+        ", stats=" + cache.stats() +
+        '}';
+  }
+}
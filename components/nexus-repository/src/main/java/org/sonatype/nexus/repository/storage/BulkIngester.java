@@ -0,0 +1,274 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobRef;
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.common.hash.MultiHashingInputStream;
+import org.sonatype.sisu.goodies.common.ComponentSupport;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Implementation of {@link StorageFacet#ingest}.
+ *
+ * Blobs of the next batch are written while entities of the current batch are committed, so the blob store and the
+ * database are kept busy at the same time.
+ *
+ * @since 3.0
+ */
+class BulkIngester
+    extends ComponentSupport
+{
+  private final BlobStore blobStore;
+
+  private final String repositoryName;
+
+  private final Supplier<StorageTx> txSupplier;
+
+  private final Iterable<HashAlgorithm> hashAlgorithms;
+
+  private final IngestWriter writer;
+
+  private final int batchSize;
+
+  private final int parallelism;
+
+  private long imported;
+
+  private long failed;
+
+  BulkIngester(final BlobStore blobStore,
+               final String repositoryName,
+               final Supplier<StorageTx> txSupplier,
+               final Iterable<HashAlgorithm> hashAlgorithms,
+               final IngestWriter writer,
+               final int batchSize,
+               final int parallelism)
+  {
+    checkArgument(batchSize > 0, "Batch size must be positive");
+    checkArgument(parallelism > 0, "Parallelism must be positive");
+    this.blobStore = checkNotNull(blobStore);
+    this.repositoryName = checkNotNull(repositoryName);
+    this.txSupplier = checkNotNull(txSupplier);
+    this.hashAlgorithms = checkNotNull(hashAlgorithms);
+    this.writer = checkNotNull(writer);
+    this.batchSize = batchSize;
+    this.parallelism = parallelism;
+  }
+
+  long ingest(final Iterator<? extends IngestItem> items) throws IOException {
+    checkNotNull(items);
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+        .setNameFormat("ingest-" + repositoryName + "-%d")
+        .setDaemon(true)
+        .build());
+    List<Future<AssetBlob>> pending = null;
+    try {
+      List<IngestItem> batch = nextBatch(items);
+      pending = storeBlobs(executor, batch);
+      while (!batch.isEmpty()) {
+        List<IngestItem> next = nextBatch(items);
+        List<Future<AssetBlob>> stored = pending;
+        pending = storeBlobs(executor, next);
+
+        List<AssetBlob> blobs = await(batch, stored);
+        writeEntities(batch, blobs);
+        log.debug("Imported {} items into {}, {} failed", imported, repositoryName, failed);
+        batch = next;
+      }
+    }
+    finally {
+      executor.shutdown();
+      if (pending != null) {
+        discard(pending);
+      }
+      executor.shutdownNow();
+    }
+    log.info("Imported {} items into {}, {} failed", imported, repositoryName, failed);
+    return imported;
+  }
+
+  private List<IngestItem> nextBatch(final Iterator<? extends IngestItem> items) {
+    List<IngestItem> batch = new ArrayList<>(batchSize);
+    while (batch.size() < batchSize && items.hasNext()) {
+      batch.add(items.next());
+    }
+    return batch;
+  }
+
+  private List<Future<AssetBlob>> storeBlobs(final ExecutorService executor, final List<IngestItem> batch) {
+    List<Future<AssetBlob>> futures = new ArrayList<>(batch.size());
+    for (final IngestItem item : batch) {
+      futures.add(executor.submit(new Callable<AssetBlob>()
+      {
+        @Override
+        public AssetBlob call() throws Exception {
+          return storeBlob(item);
+        }
+      }));
+    }
+    return futures;
+  }
+
+  private AssetBlob storeBlob(final IngestItem item) throws IOException {
+    Map<String, String> headers = ImmutableMap.of(
+        Bucket.REPO_NAME_HEADER, repositoryName,
+        BlobStore.BLOB_NAME_HEADER, item.getPath(),
+        BlobStore.CREATED_BY_HEADER, "unknown"
+    );
+    try (InputStream inputStream = item.openInputStream()) {
+      MultiHashingInputStream hashingStream = new MultiHashingInputStream(hashAlgorithms, inputStream);
+      Blob blob = blobStore.create(hashingStream, headers);
+      BlobRef blobRef = new BlobRef("NODE", "STORE", blob.getId().asUniqueString());
+      return new AssetBlob(blobRef, hashingStream.count(), hashingStream.hashes(), item.getContentType());
+    }
+  }
+
+  /**
+   * Waits for the blobs of a batch, returning {@code null} for items whose blob could not be stored.
+   */
+  private List<AssetBlob> await(final List<IngestItem> batch, final List<Future<AssetBlob>> futures)
+      throws IOException
+  {
+    List<AssetBlob> blobs = new ArrayList<>(futures.size());
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          blobs.add(futures.get(i).get());
+        }
+        catch (ExecutionException e) {
+          log.warn("Failed to store blob of {}", batch.get(i).getPath(), e.getCause());
+          blobs.add(null);
+          failed++;
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      deleteBlobs(blobs);
+      discard(futures.subList(blobs.size(), futures.size()));
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while storing blobs");
+    }
+    return blobs;
+  }
+
+  private void writeEntities(final List<IngestItem> batch, final List<AssetBlob> blobs) {
+    int written = 0;
+    StorageTx committed = null;
+    try (StorageTx tx = txSupplier.get()) {
+      for (int i = 0; i < batch.size(); i++) {
+        if (blobs.get(i) != null) {
+          writer.write(tx, batch.get(i), blobs.get(i));
+          written++;
+        }
+      }
+      tx.commit();
+      committed = tx;
+    }
+    catch (Exception e) {
+      log.warn("Failed to import batch of {} items into {}, retrying items one by one", batch.size(),
+          repositoryName, e);
+    }
+    if (committed != null) {
+      imported += written;
+      notifyCommitted(committed);
+      return;
+    }
+
+    for (int i = 0; i < batch.size(); i++) {
+      AssetBlob blob = blobs.get(i);
+      if (blob == null) {
+        continue;
+      }
+      committed = null;
+      try (StorageTx tx = txSupplier.get()) {
+        writer.write(tx, batch.get(i), blob);
+        tx.commit();
+        committed = tx;
+      }
+      catch (Exception e) {
+        log.warn("Failed to import {} into {}", batch.get(i).getPath(), repositoryName, e);
+        deleteBlob(blob);
+        failed++;
+      }
+      if (committed != null) {
+        imported++;
+        notifyCommitted(committed);
+      }
+    }
+  }
+
+  private void notifyCommitted(final StorageTx tx) {
+    try {
+      writer.committed(tx);
+    }
+    catch (Exception e) {
+      log.warn("Failed to process committed items of {}", repositoryName, e);
+    }
+  }
+
+  /**
+   * Deletes blobs of futures which will never be attached, waiting for the ones still being written.
+   */
+  private void discard(final List<Future<AssetBlob>> futures) {
+    for (Future<AssetBlob> future : futures) {
+      try {
+        deleteBlob(future.get());
+      }
+      catch (Exception e) {
+        log.trace("Discarded blob not stored", e);
+      }
+    }
+  }
+
+  private void deleteBlobs(final List<AssetBlob> blobs) {
+    for (AssetBlob blob : blobs) {
+      deleteBlob(blob);
+    }
+  }
+
+  private void deleteBlob(@Nullable final AssetBlob blob) {
+    if (blob == null) {
+      return;
+    }
+    try {
+      blobStore.delete(blob.getBlobRef().getBlobId());
+    }
+    catch (Exception e) {
+      log.warn("Unable to delete blob {} of failed import", blob.getBlobRef(), e);
+    }
+  }
+}
@@ -13,6 +13,8 @@
 
 package org.sonatype.nexus.repository.storage;
 
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -20,11 +22,16 @@ import javax.inject.Singleton;
 import org.sonatype.nexus.orient.OClassNameBuilder;
 import org.sonatype.nexus.orient.OIndexNameBuilder;
 
+import com.google.common.collect.ImmutableMap;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
 import com.orientechnologies.orient.core.metadata.schema.OClass;
 import com.orientechnologies.orient.core.metadata.schema.OClass.INDEX_TYPE;
 import com.orientechnologies.orient.core.metadata.schema.OType;
 import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 import static org.sonatype.nexus.repository.storage.StorageFacet.P_BUCKET;
 import static org.sonatype.nexus.repository.storage.StorageFacet.P_GROUP;
@@ -53,9 +60,12 @@ public class ComponentEntityAdapter
       .property(P_VERSION)
       .build();
 
+  private final BucketEntityAdapter bucketEntityAdapter;
+
   @Inject
   public ComponentEntityAdapter(final BucketEntityAdapter bucketEntityAdapter) {
     super(DB_CLASS, bucketEntityAdapter);
+    this.bucketEntityAdapter = bucketEntityAdapter;
   }
 
   @Override
@@ -99,4 +109,29 @@ public class ComponentEntityAdapter
     document.field(P_VERSION, entity.version());
   }
 
+  /**
+   * Browses the components of a bucket with the given group and name, using the leading part of the
+   * bucket/group/name/version index.
+   */
+  Iterable<Component> browseByGroupAndName(final ODatabaseDocumentTx db,
+                                           final Bucket bucket,
+                                           final String group,
+                                           final String name)
+  {
+    checkNotNull(bucket);
+    checkState(bucket.isPersisted());
+    checkNotNull(group);
+    checkNotNull(name);
+
+    Map<String, Object> parameters = ImmutableMap.<String, Object>of(
+        "bucket", bucketEntityAdapter.recordIdentity(bucket),
+        "group", group,
+        "name", name
+    );
+    String query = String.format("select from %s where %s = :bucket and %s = :group and %s = :name",
+        DB_CLASS, P_BUCKET, P_GROUP, P_NAME);
+    Iterable<ODocument> docs = db.command(new OCommandSQL(query)).execute(parameters);
+    return readEntities(docs);
+  }
+
 }
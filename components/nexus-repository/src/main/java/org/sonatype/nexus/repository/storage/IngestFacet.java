@@ -0,0 +1,36 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.sonatype.nexus.repository.Facet;
+
+/**
+ * Bulk import of content into a repository, implemented by formats on top of {@link StorageFacet#ingest}.
+ *
+ * @since 3.0
+ */
+@Facet.Exposed
+public interface IngestFacet
+    extends Facet
+{
+  /**
+   * Imports given items, committing them in transactions of {@code batchSize} items while writing blobs with
+   * {@code parallelism} threads. Items failing to import are logged and skipped.
+   *
+   * @return number of imported items
+   */
+  long ingest(Iterator<? extends IngestItem> items, int batchSize, int parallelism) throws IOException;
+}
@@ -0,0 +1,211 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.scheduling.Cancelable;
+import org.sonatype.nexus.scheduling.CancelableSupport;
+import org.sonatype.nexus.scheduling.TaskSupport;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.UnmodifiableIterator;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Imports the files of a server directory into a repository, using {@link IngestFacet}. The path of each file
+ * relative to the directory becomes its path in the repository.
+ *
+ * @since 3.0
+ */
+@Named
+public class IngestTask
+    extends TaskSupport
+    implements Cancelable
+{
+  private final RepositoryManager repositoryManager;
+
+  @Inject
+  public IngestTask(final RepositoryManager repositoryManager) {
+    this.repositoryManager = checkNotNull(repositoryManager);
+  }
+
+  public String getRepositoryName() {
+    return getConfiguration().getString(IngestTaskDescriptor.REPOSITORY_NAME_FIELD_ID);
+  }
+
+  public String getDirectory() {
+    return getConfiguration().getString(IngestTaskDescriptor.DIRECTORY_FIELD_ID);
+  }
+
+  public int getBatchSize() {
+    return getConfiguration().getInteger(IngestTaskDescriptor.BATCH_SIZE_FIELD_ID, 500);
+  }
+
+  public int getParallelism() {
+    return getConfiguration().getInteger(IngestTaskDescriptor.PARALLELISM_FIELD_ID,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  @Override
+  protected Long execute() throws Exception {
+    Repository repository = repositoryManager.get(getRepositoryName());
+    checkState(repository != null, "Repository not found: %s", getRepositoryName());
+    IngestFacet ingestFacet = repository.facet(IngestFacet.class);
+
+    final Path root = new File(getDirectory()).toPath();
+    checkState(Files.isDirectory(root), "Not a directory: %s", root);
+    log.info("Importing files from {} into {}", root, repository);
+
+    // files are found while importing, so huge directories are never listed in memory as a whole
+    try (final FileIterator files = new FileIterator(root)) {
+      Iterator<IngestItem> items = new UnmodifiableIterator<IngestItem>()
+      {
+        @Override
+        public boolean hasNext() {
+          CancelableSupport.checkCancellation();
+          return files.hasNext();
+        }
+
+        @Override
+        public IngestItem next() {
+          return new FileIngestItem(root, files.next());
+        }
+      };
+      return ingestFacet.ingest(items, getBatchSize(), getParallelism());
+    }
+  }
+
+  @Override
+  public String getMessage() {
+    return "Importing " + getDirectory() + " into " + getRepositoryName();
+  }
+
+  /**
+   * Depth first iterator over the regular files below a directory, keeping only the directories on the current path
+   * open. Links are not followed.
+   */
+  private static class FileIterator
+      extends AbstractIterator<Path>
+      implements Closeable
+  {
+    private final Deque<DirectoryStream<Path>> streams = new ArrayDeque<>();
+
+    private final Deque<Iterator<Path>> iterators = new ArrayDeque<>();
+
+    private FileIterator(final Path root) throws IOException {
+      open(root);
+    }
+
+    private void open(final Path directory) throws IOException {
+      DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+      streams.push(stream);
+      iterators.push(stream.iterator());
+    }
+
+    @Override
+    protected Path computeNext() {
+      try {
+        while (!iterators.isEmpty()) {
+          if (!iterators.peek().hasNext()) {
+            iterators.pop();
+            streams.pop().close();
+            continue;
+          }
+          Path path = iterators.peek().next();
+          if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            open(path);
+          }
+          else if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            return path;
+          }
+        }
+        return endOfData();
+      }
+      catch (IOException | DirectoryIteratorException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      while (!streams.isEmpty()) {
+        streams.pop().close();
+      }
+      iterators.clear();
+    }
+  }
+
+  /**
+   * {@link IngestItem} of a file, with content type left to be detected.
+   */
+  private static class FileIngestItem
+      implements IngestItem
+  {
+    private final Path file;
+
+    private final String path;
+
+    private FileIngestItem(final Path root, final Path file) {
+      this.file = file;
+      StringBuilder path = new StringBuilder();
+      for (Path element : root.relativize(file)) {
+        path.append('/').append(element.toString());
+      }
+      this.path = path.toString();
+    }
+
+    @Override
+    public String getPath() {
+      return path;
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      return Files.newInputStream(file);
+    }
+
+    @Nullable
+    @Override
+    public String getContentType() {
+      return null;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "{" +
+          "file=" + file +
+          '}';
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.formfields.ComboboxFormField;
+import org.sonatype.nexus.formfields.FormField;
+import org.sonatype.nexus.formfields.NumberTextFormField;
+import org.sonatype.nexus.formfields.StringTextFormField;
+import org.sonatype.nexus.scheduling.TaskDescriptorSupport;
+
+/**
+ * Task descriptor for {@link IngestTask}.
+ *
+ * @since 3.0
+ */
+@Named
+@Singleton
+public class IngestTaskDescriptor
+    extends TaskDescriptorSupport<IngestTask>
+{
+  public static final String REPOSITORY_NAME_FIELD_ID = "repositoryName";
+
+  public static final String DIRECTORY_FIELD_ID = "directory";
+
+  public static final String BATCH_SIZE_FIELD_ID = "batchSize";
+
+  public static final String PARALLELISM_FIELD_ID = "parallelism";
+
+  public IngestTaskDescriptor() {
+    super(IngestTask.class, "Import directory into repository",
+        new ComboboxFormField<String>(
+            REPOSITORY_NAME_FIELD_ID,
+            "Repository",
+            "Select the repository to import into",
+            FormField.MANDATORY
+        ).withStoreApi("coreui_Repository.readReferences"),
+        new StringTextFormField(
+            DIRECTORY_FIELD_ID,
+            "Directory",
+            "Server directory to import, file paths relative to it become repository paths",
+            FormField.MANDATORY),
+        new NumberTextFormField(
+            BATCH_SIZE_FIELD_ID,
+            "Batch size",
+            "Number of items committed per transaction, defaults to 500",
+            FormField.OPTIONAL),
+        new NumberTextFormField(
+            PARALLELISM_FIELD_ID,
+            "Blob writer threads",
+            "Number of threads writing blobs, defaults to the number of processors",
+            FormField.OPTIONAL)
+    );
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage;
+
+import java.io.IOException;
+
+/**
+ * Format specific part of {@link StorageFacet#ingest}, creating or updating the component and asset of an item whose
+ * blob is already stored.
+ *
+ * @since 3.0
+ */
+public interface IngestWriter
+{
+  /**
+   * Writes the entities of given item within a batch transaction, usually attaching the blob with
+   * {@link StorageTx#attachBlob(Asset, AssetBlob, String)}. Must not commit the transaction.
+   */
+  void write(StorageTx tx, IngestItem item, AssetBlob blob) throws IOException;
+
+  /**
+   * Called once given transaction has been committed, so work which must not outlive a rollback, like queueing search
+   * index updates of the written components, can be done. Never called for transactions that rolled back, whose items
+   * might be written again in a new transaction.
+   */
+  void committed(StorageTx tx);
+}
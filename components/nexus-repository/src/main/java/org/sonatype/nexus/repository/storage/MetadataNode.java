@@ -12,6 +12,11 @@
  */
 package org.sonatype.nexus.repository.storage;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.annotation.Nullable;
 
 import org.sonatype.nexus.common.collect.NestedAttributesMap;
@@ -148,6 +153,43 @@ public abstract class MetadataNode<T>
     return attributes().child(format());
   }
 
+  /**
+   * Copies the properties of this node into given node, attributes included, sharing only immutable values and the
+   * entity metadata.
+   */
+  void copyTo(final MetadataNode<T> copy) {
+    copy.setEntityMetadata(getEntityMetadata());
+    copy.newEntity = newEntity;
+    copy.bucketId = bucketId;
+    copy.name = name;
+    copy.lastUpdated = lastUpdated;
+    copy.format = format;
+    copy.attributes = attributes == null ? null : new NestedAttributesMap(P_ATTRIBUTES, copyMap(attributes.backing()));
+  }
+
+  private static Map<String, Object> copyMap(final Map<String, Object> map) {
+    Map<String, Object> copy = new LinkedHashMap<>(map.size());
+    for (Map.Entry<String, Object> entry : map.entrySet()) {
+      copy.put(entry.getKey(), copyValue(entry.getValue()));
+    }
+    return copy;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object copyValue(final Object value) {
+    if (value instanceof Map) {
+      return copyMap((Map<String, Object>) value);
+    }
+    if (value instanceof List) {
+      List<Object> copy = new ArrayList<>(((List<Object>) value).size());
+      for (Object element : (List<Object>) value) {
+        copy.add(copyValue(element));
+      }
+      return copy;
+    }
+    return value;
+  }
+
   protected <T> T require(final T value, final String name) {
     checkState(value != null, "Missing property: %s", name);
     return value;
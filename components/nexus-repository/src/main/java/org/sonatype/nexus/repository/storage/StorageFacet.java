@@ -12,6 +12,14 @@
  */
 package org.sonatype.nexus.repository.storage;
 
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobRef;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
 import org.sonatype.nexus.repository.Facet;
 
 /**
@@ -56,4 +64,44 @@ public interface StorageFacet
    * Opens a transaction.
    */
   StorageTx openTx();
+
+  /**
+   * Finds an asset for reading, served from a cache of asset snapshots when the same key was resolved before, so that
+   * repeated lookups need neither a database connection nor a query. The lookup runs in its own transaction on cache
+   * miss. Returned asset is a copy of the cached snapshot, it must not be saved.
+   *
+   * @param key    key identifying the asset within the bucket of this repository, usually its path
+   * @param lookup finds the asset when it is not cached
+   */
+  @Nullable
+  Asset findAsset(String key, AssetLookup lookup);
+
+  /**
+   * Returns the blob referenced by an asset found with {@link #findAsset(String, AssetLookup)}, without opening a
+   * transaction, or {@code null} if the blob does not exist as the asset was deleted meanwhile.
+   */
+  @Nullable
+  Blob getBlob(BlobRef blobRef);
+
+  /**
+   * Imports items in bulk: blobs of each batch are written by {@code parallelism} threads, then the entities of the
+   * batch are written by the writer and committed in one transaction. When a batch fails, its items are retried in a
+   * transaction each, so one bad item only costs itself. Blobs of items that fail are deleted.
+   *
+   * @return number of imported items
+   */
+  long ingest(Iterator<? extends IngestItem> items,
+              Iterable<HashAlgorithm> hashAlgorithms,
+              IngestWriter writer,
+              int batchSize,
+              int parallelism) throws IOException;
+
+  /**
+   * Finds an asset within a transaction, see {@link #findAsset(String, AssetLookup)}.
+   */
+  interface AssetLookup
+  {
+    @Nullable
+    Asset find(StorageTx tx);
+  }
 }
@@ -13,23 +13,35 @@
 
 package org.sonatype.nexus.repository.storage;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.validation.groups.Default;
 
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobRef;
 import org.sonatype.nexus.blobstore.api.BlobStore;
 import org.sonatype.nexus.blobstore.api.BlobStoreManager;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
 import org.sonatype.nexus.common.stateguard.Guarded;
 import org.sonatype.nexus.common.stateguard.StateGuardAspect;
 import org.sonatype.nexus.orient.DatabaseInstance;
 import org.sonatype.nexus.repository.FacetSupport;
+import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.config.Configuration;
 import org.sonatype.nexus.repository.config.ConfigurationFacet;
 import org.sonatype.nexus.repository.types.HostedType;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.cache.CacheStats;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
 import org.hibernate.validator.constraints.NotEmpty;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -67,11 +79,18 @@ public class StorageFacetImpl
     @NotNull(groups = HostedType.ValidationGroup.class)
     public WritePolicy writePolicy;
 
+    /**
+     * Maximum number of cached asset snapshots, 0 disables the asset lookup cache.
+     */
+    @Min(0)
+    public int assetCacheSize = 10000;
+
     @Override
     public String toString() {
       return getClass().getSimpleName() + "{" +
           "blobStoreName='" + blobStoreName + '\'' +
           ", writePolicy=" + writePolicy +
+          ", assetCacheSize=" + assetCacheSize +
           '}';
     }
   }
@@ -80,6 +99,8 @@ public class StorageFacetImpl
 
   private Bucket bucket;
 
+  private volatile AssetLookupCache assetCache;
+
   @Inject
   public StorageFacetImpl(final BlobStoreManager blobStoreManager,
                           final @Named(ComponentDatabase.NAME) Provider<DatabaseInstance> databaseInstanceProvider,
@@ -106,6 +127,8 @@ public class StorageFacetImpl
   protected void doConfigure(final Configuration configuration) throws Exception {
     config = facet(ConfigurationFacet.class).readSection(configuration, CONFIG_KEY, Config.class);
     log.debug("Config: {}", config);
+
+    assetCache = config.assetCacheSize > 0 ? new AssetLookupCache(config.assetCacheSize) : null;
   }
 
   @Override
@@ -138,6 +161,7 @@ public class StorageFacetImpl
   @Override
   protected void doDestroy() throws Exception {
     config = null;
+    assetCache = null;
   }
 
   @Override
@@ -146,6 +170,10 @@ public class StorageFacetImpl
     try (StorageTx tx = openStorageTx()) {
       tx.deleteBucket(tx.getBucket());
     }
+    AssetLookupCache assetCache = this.assetCache;
+    if (assetCache != null) {
+      assetCache.invalidateAll();
+    }
   }
 
   @Override
@@ -154,12 +182,95 @@ public class StorageFacetImpl
     return openStorageTx();
   }
 
+  @Nullable
+  @Override
+  @Guarded(by = STARTED)
+  public Asset findAsset(final String key, final AssetLookup lookup) {
+    checkNotNull(key);
+    checkNotNull(lookup);
+    Supplier<Asset> loader = new Supplier<Asset>()
+    {
+      @Override
+      public Asset get() {
+        try (StorageTx tx = openStorageTx()) {
+          return lookup.find(tx);
+        }
+      }
+    };
+    AssetLookupCache assetCache = this.assetCache;
+    return assetCache == null ? loader.get() : assetCache.get(key, loader);
+  }
+
+  @Nullable
+  @Override
+  @Guarded(by = STARTED)
+  public Blob getBlob(final BlobRef blobRef) {
+    checkNotNull(blobRef);
+    return blobStoreManager.get(config.blobStoreName).get(blobRef.getBlobId());
+  }
+
+  @Override
+  @Guarded(by = STARTED)
+  public long ingest(final Iterator<? extends IngestItem> items,
+                     final Iterable<HashAlgorithm> hashAlgorithms,
+                     final IngestWriter writer,
+                     final int batchSize,
+                     final int parallelism) throws IOException
+  {
+    Supplier<StorageTx> txSupplier = new Supplier<StorageTx>()
+    {
+      @Override
+      public StorageTx get() {
+        return openStorageTx();
+      }
+    };
+    return new BulkIngester(blobStoreManager.get(config.blobStoreName), getRepository().getName(), txSupplier,
+        hashAlgorithms, writer, batchSize, parallelism).ingest(items);
+  }
+
+  /**
+   * Returns the asset lookup cache statistics, {@code null} if disabled.
+   */
+  @Nullable
+  public CacheStats getAssetCacheStats() {
+    AssetLookupCache assetCache = this.assetCache;
+    return assetCache == null ? null : assetCache.stats();
+  }
+
   private StorageTx openStorageTx() {
     BlobStore blobStore = blobStoreManager.get(config.blobStoreName);
     return StateGuardAspect.around(new StorageTxImpl(
         new BlobTx(blobStore), databaseInstanceProvider.get().acquire(), bucket, config.writePolicy,
-        bucketEntityAdapter, componentEntityAdapter, assetEntityAdapter
+        bucketEntityAdapter, componentEntityAdapter, assetEntityAdapter, postCommitHook
     ));
   }
 
+  /**
+   * Invalidates cached asset snapshots and posts {@link AssetEvent}s for committed asset changes.
+   */
+  private final StorageTxHook postCommitHook = new StorageTxHook()
+  {
+    @Override
+    public void postCommit(final Collection<Asset> created,
+                           final Collection<Asset> updated,
+                           final Collection<Asset> deleted)
+    {
+      AssetLookupCache assetCache = StorageFacetImpl.this.assetCache;
+      if (assetCache != null) {
+        assetCache.invalidate(updated, deleted);
+      }
+
+      Repository repository = getRepository();
+      for (Asset asset : created) {
+        getEventBus().post(new AssetCreatedEvent(asset, repository));
+      }
+      for (Asset asset : updated) {
+        getEventBus().post(new AssetUpdatedEvent(asset, repository));
+      }
+      for (Asset asset : deleted) {
+        getEventBus().post(new AssetDeletedEvent(asset, repository));
+      }
+    }
+  };
+
 }
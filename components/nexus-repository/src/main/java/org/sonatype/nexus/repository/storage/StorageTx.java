@@ -87,6 +87,11 @@ public interface StorageTx
    */
   Iterable<Component> browseComponents(Bucket bucket);
 
+  /**
+   * Gets all components owned by the specified bucket with the given group and name.
+   */
+  Iterable<Component> browseComponents(Bucket bucket, String group, String name);
+
   /**
    * Gets an asset by id, owned by the specified bucket, or {@code null} if not found.
    */
@@ -219,6 +224,12 @@ public interface StorageTx
   BlobRef setBlob(InputStream inputStream, Map<String, String> headers, Asset asset,
                   Iterable<HashAlgorithm> hashAlgorithms, String contentType);
 
+  /**
+   * Updates the given asset with a reference to an already stored blob, its hash metadata, size, and content type.
+   * The old blob, if any, will be deleted.
+   */
+  void attachBlob(Asset asset, AssetBlob assetBlob, String contentType);
+
   /**
    * Gets a Blob, or {@code null if not found}.
    */
@@ -0,0 +1,43 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage;
+
+import java.util.Collection;
+
+/**
+ * Receives the assets changed through a {@link StorageTx}, once the transaction has committed.
+ *
+ * @since 3.0
+ */
+public interface StorageTxHook
+{
+  /**
+   * Hook which ignores all changes.
+   */
+  StorageTxHook NOOP = new StorageTxHook()
+  {
+    @Override
+    public void postCommit(final Collection<Asset> created,
+                           final Collection<Asset> updated,
+                           final Collection<Asset> deleted)
+    {
+      // nop
+    }
+  };
+
+  /**
+   * Called after each commit with the assets created, updated and deleted since the previous commit. An asset appears
+   * in at most one of the collections, which are only valid for the duration of the call.
+   */
+  void postCommit(Collection<Asset> created, Collection<Asset> updated, Collection<Asset> deleted);
+}
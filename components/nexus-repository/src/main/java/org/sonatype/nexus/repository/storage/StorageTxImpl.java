@@ -16,6 +16,7 @@ import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -37,6 +38,7 @@ import org.sonatype.sisu.goodies.common.ComponentSupport;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
 import com.orientechnologies.orient.core.tx.OTransaction.TXTYPE;
@@ -77,6 +79,17 @@ public class StorageTxImpl
 
   private final AssetEntityAdapter assetEntityAdapter;
 
+  private final StorageTxHook hook;
+
+  /**
+   * Assets changed since the last commit, reported to the {@link StorageTxHook} once committed.
+   */
+  private final Set<Asset> createdAssets = Sets.newIdentityHashSet();
+
+  private final Set<Asset> updatedAssets = Sets.newIdentityHashSet();
+
+  private final Set<Asset> deletedAssets = Sets.newIdentityHashSet();
+
   public StorageTxImpl(final BlobTx blobTx,
                        final ODatabaseDocumentTx db,
                        final Bucket bucket,
@@ -84,6 +97,19 @@ public class StorageTxImpl
                        final BucketEntityAdapter bucketEntityAdapter,
                        final ComponentEntityAdapter componentEntityAdapter,
                        final AssetEntityAdapter assetEntityAdapter)
+  {
+    this(blobTx, db, bucket, writePolicy, bucketEntityAdapter, componentEntityAdapter, assetEntityAdapter,
+        StorageTxHook.NOOP);
+  }
+
+  public StorageTxImpl(final BlobTx blobTx,
+                       final ODatabaseDocumentTx db,
+                       final Bucket bucket,
+                       final WritePolicy writePolicy,
+                       final BucketEntityAdapter bucketEntityAdapter,
+                       final ComponentEntityAdapter componentEntityAdapter,
+                       final AssetEntityAdapter assetEntityAdapter,
+                       final StorageTxHook hook)
   {
     this.blobTx = checkNotNull(blobTx);
     this.db = checkNotNull(db);
@@ -92,6 +118,7 @@ public class StorageTxImpl
     this.bucketEntityAdapter = checkNotNull(bucketEntityAdapter);
     this.componentEntityAdapter = checkNotNull(componentEntityAdapter);
     this.assetEntityAdapter = checkNotNull(assetEntityAdapter);
+    this.hook = checkNotNull(hook);
 
     db.begin(TXTYPE.OPTIMISTIC);
   }
@@ -122,6 +149,7 @@ public class StorageTxImpl
   public void commit() {
     db.commit();
     blobTx.commit();
+    postCommit();
   }
 
   @Override
@@ -129,6 +157,28 @@ public class StorageTxImpl
   public void rollback() {
     db.rollback();
     blobTx.rollback();
+    clearChanges();
+  }
+
+  private void postCommit() {
+    if (createdAssets.isEmpty() && updatedAssets.isEmpty() && deletedAssets.isEmpty()) {
+      return;
+    }
+    try {
+      hook.postCommit(createdAssets, updatedAssets, deletedAssets);
+    }
+    catch (Exception e) {
+      log.warn("Failed to process committed changes", e);
+    }
+    finally {
+      clearChanges();
+    }
+  }
+
+  private void clearChanges() {
+    createdAssets.clear();
+    updatedAssets.clear();
+    deletedAssets.clear();
   }
 
   @Override
@@ -179,6 +229,12 @@ public class StorageTxImpl
     return componentEntityAdapter.browseByBucket(db, bucket);
   }
 
+  @Override
+  @Guarded(by = OPEN)
+  public Iterable<Component> browseComponents(final Bucket bucket, final String group, final String name) {
+    return componentEntityAdapter.browseByGroupAndName(db, bucket, group, name);
+  }
+
   @Nullable
   @Override
   @Guarded(by = OPEN)
@@ -310,9 +366,13 @@ public class StorageTxImpl
   public void saveAsset(final Asset asset) {
     if (asset.isPersisted()) {
       assetEntityAdapter.edit(db, asset);
+      if (!createdAssets.contains(asset)) {
+        updatedAssets.add(asset);
+      }
     }
     else {
       assetEntityAdapter.add(db, asset);
+      createdAssets.add(asset);
     }
   }
 
@@ -345,12 +405,17 @@ public class StorageTxImpl
       deleteBlob(blobRef, checkWritePolicy);
     }
     assetEntityAdapter.delete(db, asset);
+    if (!createdAssets.remove(asset)) {
+      updatedAssets.remove(asset);
+      deletedAssets.add(asset);
+    }
   }
 
   @Override
   public void deleteBucket(Bucket bucket) {
     checkNotNull(bucket);
 
+    // the whole bucket goes away, so individual asset changes are not reported to the hook
     long count = 0;
 
     // first delete all components and constituent assets
@@ -358,10 +423,12 @@ public class StorageTxImpl
       deleteComponent(component, false);
       count++;
       if (count == DELETE_BATCH_SIZE) {
+        clearChanges();
         commit();
         count = 0;
       }
     }
+    clearChanges();
     commit();
 
     // then delete all standalone assets
@@ -369,10 +436,12 @@ public class StorageTxImpl
       deleteAsset(asset, false);
       count++;
       if (count == DELETE_BATCH_SIZE) {
+        clearChanges();
         commit();
         count = 0;
       }
     }
+    clearChanges();
     commit();
 
     // finally, delete the bucket document
@@ -403,11 +472,36 @@ public class StorageTxImpl
     checkNotNull(hashAlgorithms);
     checkNotNull(contentType);
 
+    replaceBlob(asset);
+
+    // Store new blob while calculating hashes in one pass
+    final MultiHashingInputStream hashingStream = new MultiHashingInputStream(hashAlgorithms, inputStream);
+    final BlobRef newBlobRef = createBlob(hashingStream, headers);
+
+    updateAsset(asset, newBlobRef, hashingStream.count(), contentType, hashingStream.hashes());
+
+    return newBlobRef;
+  }
+
+  @Override
+  @Guarded(by = OPEN)
+  public void attachBlob(final Asset asset, final AssetBlob assetBlob, final String contentType) {
+    checkNotNull(asset);
+    checkNotNull(assetBlob);
+    checkNotNull(contentType);
+
+    replaceBlob(asset);
+    updateAsset(asset, assetBlob.getBlobRef(), assetBlob.getSize(), contentType, assetBlob.getHashes());
+  }
+
+  /**
+   * Checks the write policy allows to set the blob of given asset, and deletes the old blob if necessary.
+   */
+  private void replaceBlob(final Asset asset) {
     if (writePolicy == WritePolicy.DENY) {
       throw new IllegalOperationException("Repository is read only.");
     }
 
-    // Delete old blob if necessary
     BlobRef oldBlobRef = asset.blobRef();
     if (oldBlobRef != null) {
       if (writePolicy == WritePolicy.ALLOW_ONCE) {
@@ -415,23 +509,23 @@ public class StorageTxImpl
       }
       deleteBlob(oldBlobRef, true);
     }
+  }
 
-    // Store new blob while calculating hashes in one pass
-    final MultiHashingInputStream hashingStream = new MultiHashingInputStream(hashAlgorithms, inputStream);
-    final BlobRef newBlobRef = createBlob(hashingStream, headers);
-
-    asset.blobRef(newBlobRef);
-    asset.size(hashingStream.count());
+  private void updateAsset(final Asset asset,
+                           final BlobRef blobRef,
+                           final long size,
+                           final String contentType,
+                           final Map<HashAlgorithm, HashCode> hashes)
+  {
+    asset.blobRef(blobRef);
+    asset.size(size);
     asset.contentType(contentType);
 
     // Set attributes map to contain computed checksum metadata
-    Map<HashAlgorithm, HashCode> hashes = hashingStream.hashes();
     NestedAttributesMap checksums = asset.attributes().child(P_CHECKSUM);
-    for (HashAlgorithm algorithm : hashAlgorithms) {
-      checksums.set(algorithm.name(), hashes.get(algorithm).toString());
+    for (Map.Entry<HashAlgorithm, HashCode> entry : hashes.entrySet()) {
+      checksums.set(entry.getKey().name(), entry.getValue().toString());
     }
-
-    return newBlobRef;
   }
 
   @Nullable
@@ -14,6 +14,7 @@ package org.sonatype.nexus.repository.view;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
@@ -34,7 +35,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * @since 3.0
  */
 public class Content
-    implements Payload
+    implements FileChannelPayload
 {
   /**
    * Key of the "last modified" attribute of type {@link DateTime}.
@@ -78,6 +79,15 @@ public class Content
     return payload.openInputStream();
   }
 
+  @Nullable
+  @Override
+  public FileChannel openFileChannel() throws IOException {
+    if (payload instanceof FileChannelPayload) {
+      return ((FileChannelPayload) payload).openFileChannel();
+    }
+    return null;
+  }
+
   @Override
   public long getSize() {
     return payload.getSize();
@@ -0,0 +1,35 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.view;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import javax.annotation.Nullable;
+
+/**
+ * {@link Payload} which may be backed by a local file, allowing senders to transfer it without copying through
+ * heap buffers.
+ *
+ * @since 3.0
+ */
+public interface FileChannelPayload
+    extends Payload
+{
+  /**
+   * Opens a read-only channel to the payload's backing file, or returns {@code null} if the payload is not
+   * file-backed and must be read via {@link #openInputStream()}. The caller is responsible for closing the channel.
+   */
+  @Nullable
+  FileChannel openFileChannel() throws IOException;
+}
@@ -14,6 +14,7 @@ package org.sonatype.nexus.repository.view.payloads;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.Map;
 import java.util.Set;
 
@@ -21,8 +22,9 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.FileChannelBlob;
 import org.sonatype.nexus.common.hash.HashAlgorithm;
-import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.FileChannelPayload;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
@@ -37,7 +39,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * @since 3.0
  */
 public class BlobPayload
-    implements Payload
+    implements FileChannelPayload
 {
   private final Blob blob;
 
@@ -55,6 +57,15 @@ public class BlobPayload
     return blob.getInputStream();
   }
 
+  @Nullable
+  @Override
+  public FileChannel openFileChannel() throws IOException {
+    if (blob instanceof FileChannelBlob) {
+      return ((FileChannelBlob) blob).openFileChannel();
+    }
+    return null;
+  }
+
   @Override
   public long getSize() {
     return blob.getMetrics().getContentSize();
@@ -0,0 +1,111 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.contentcache
+
+import org.junit.Before
+import org.junit.Test
+import org.sonatype.nexus.repository.Repository
+import org.sonatype.nexus.repository.http.HttpMethods
+import org.sonatype.nexus.repository.http.HttpResponses
+import org.sonatype.nexus.repository.view.Content
+import org.sonatype.nexus.repository.view.Context
+import org.sonatype.nexus.repository.view.PayloadResponse
+import org.sonatype.nexus.repository.view.Request
+import org.sonatype.nexus.repository.view.Response
+import org.sonatype.nexus.repository.view.payloads.BytesPayload
+import org.sonatype.sisu.litmus.testsupport.TestSupport
+
+import static org.mockito.Matchers.any
+import static org.mockito.Matchers.anyLong
+import static org.mockito.Matchers.anyString
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.never
+import static org.mockito.Mockito.verify
+import static org.mockito.Mockito.when
+
+/**
+ * Tests for {@link ContentCacheHandler}.
+ */
+class ContentCacheHandlerTest
+extends TestSupport
+{
+  private ContentCacheHandler underTest
+  private ContentCacheFacet facet
+  private Context context
+  private Request request
+  private Repository repository
+
+  @Before
+  void setUp() {
+    underTest = new ContentCacheHandler()
+    facet = mock(ContentCacheFacet)
+    context = mock(Context)
+    request = mock(Request)
+    repository = mock(Repository)
+    when(context.getRequest()).thenReturn(request)
+    when(context.getRepository()).thenReturn(repository)
+    when(request.getAction()).thenReturn(HttpMethods.GET)
+    when(request.getPath()).thenReturn('/foo')
+    when(repository.facet(ContentCacheFacet)).thenReturn(facet)
+    when(facet.generation()).thenReturn(3L)
+  }
+
+  @Test
+  void 'directly proceed on non GET/HEAD requests'() {
+    when(request.getAction()).thenReturn(HttpMethods.PUT)
+    Response contextResponse = HttpResponses.ok()
+    when(context.proceed()).thenReturn(contextResponse)
+    Response response = underTest.handle(context)
+    assert response == contextResponse
+    verify(repository, never()).facet(any(Class))
+  }
+
+  @Test
+  void 'return cached content'() {
+    Content cached = new Content(new BytesPayload('bar'.bytes, 'text/plain'))
+    when(facet.get('/foo')).thenReturn(cached)
+    Response response = underTest.handle(context)
+    assert response.status.successful
+    assert ((PayloadResponse) response).payload == cached
+    verify(context, never()).proceed()
+  }
+
+  @Test
+  void 'served content gets cached and replaced'() {
+    Content served = new Content(new BytesPayload('bar'.bytes, 'text/plain'))
+    Content cached = new Content(new BytesPayload('bar'.bytes, 'text/plain'))
+    when(context.proceed()).thenReturn(HttpResponses.ok(served))
+    when(facet.put('/foo', served, 3L)).thenReturn(cached)
+    Response response = underTest.handle(context)
+    assert ((PayloadResponse) response).payload == cached
+    verify(facet).put('/foo', served, 3L)
+  }
+
+  @Test
+  void 'non content payload passes through'() {
+    Response contextResponse = HttpResponses.ok(new BytesPayload('bar'.bytes, 'text/plain'))
+    when(context.proceed()).thenReturn(contextResponse)
+    Response response = underTest.handle(context)
+    assert response == contextResponse
+    verify(facet, never()).put(anyString(), any(Content), anyLong())
+  }
+
+  @Test
+  void 'failed response passes through'() {
+    Response contextResponse = HttpResponses.notFound('404')
+    when(context.proceed()).thenReturn(contextResponse)
+    Response response = underTest.handle(context)
+    assert response == contextResponse
+    verify(facet, never()).put(anyString(), any(Content), anyLong())
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.group
+
+import org.sonatype.nexus.repository.Format
+import org.sonatype.nexus.repository.Repository
+import org.sonatype.nexus.repository.config.Configuration
+import org.sonatype.nexus.repository.config.ConfigurationFacet
+import org.sonatype.nexus.repository.manager.RepositoryManager
+import org.sonatype.nexus.repository.manager.RepositoryUpdatedEvent
+import org.sonatype.nexus.repository.storage.Asset
+import org.sonatype.nexus.repository.storage.AssetCreatedEvent
+import org.sonatype.sisu.goodies.eventbus.EventBus
+import org.sonatype.sisu.litmus.testsupport.TestSupport
+
+import org.junit.Before
+import org.junit.Test
+import org.mockito.invocation.InvocationOnMock
+import org.mockito.stubbing.Answer
+
+import static org.mockito.Matchers.any
+import static org.mockito.Matchers.eq
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.times
+import static org.mockito.Mockito.verify
+import static org.mockito.Mockito.when
+
+/**
+ * Tests for {@link GroupFacetImpl} member resolution and routing.
+ */
+class GroupFacetImplTest
+    extends TestSupport
+{
+  private GroupFacetImpl underTest
+  private GroupFacetImpl.Config config
+  private RepositoryManager repositoryManager
+  private Repository group
+  private Repository member
+
+  @Before
+  void setUp() {
+    Format format = mock(Format)
+    group = mock(Repository)
+    when(group.name).thenReturn('group')
+    when(group.format).thenReturn(format)
+    member = mock(Repository)
+    when(member.name).thenReturn('member')
+    when(member.format).thenReturn(format)
+
+    repositoryManager = mock(RepositoryManager)
+    when(repositoryManager.get('member')).thenReturn(member)
+
+    config = new GroupFacetImpl.Config(memberNames: ['member'] as LinkedHashSet)
+    def configurationFacet = mock(ConfigurationFacet)
+    when(configurationFacet.readSection(any(Configuration), eq(GroupFacetImpl.CONFIG_KEY), eq(GroupFacetImpl.Config)))
+        .thenReturn(config)
+    when(group.facet(ConfigurationFacet)).thenReturn(configurationFacet)
+
+    underTest = new GroupFacetImpl(repositoryManager)
+    underTest.installDependencies(mock(EventBus))
+  }
+
+  private void start() {
+    underTest.attach(group)
+    underTest.init()
+    underTest.start()
+  }
+
+  private static AssetCreatedEvent assetCreated(final Repository repository, final String name) {
+    return new AssetCreatedEvent(new Asset().name(name), repository)
+  }
+
+  /**
+   * Given:
+   * - default configuration
+   * Then:
+   * - routes are not remembered
+   */
+  @Test
+  void 'routing is disabled by default'() {
+    assert new GroupFacetImpl.Config().routingCacheSize == 0
+    start()
+    underTest.rememberRoute('/foo', member, underTest.routeGeneration())
+    assert underTest.routeFor('/foo') == null
+  }
+
+  /**
+   * Given:
+   * - routing enabled
+   * - routes remembered for two paths
+   * Then:
+   * - asset event of a member drops the route of its path only
+   */
+  @Test
+  void 'asset event drops route of its path only'() {
+    config.routingCacheSize = 10
+    start()
+    underTest.rememberRoute('/foo', member, underTest.routeGeneration())
+    underTest.rememberRoute('/bar', member, underTest.routeGeneration())
+    underTest.on(assetCreated(member, 'foo'))
+    assert underTest.routeFor('/foo') == null
+    assert underTest.routeFor('/bar') == member
+  }
+
+  /**
+   * Given:
+   * - routing enabled
+   * - asset event of a member between capturing the generation and remembering the route
+   * Then:
+   * - route is not remembered
+   */
+  @Test
+  void 'route found before invalidation is not remembered'() {
+    config.routingCacheSize = 10
+    start()
+    long generation = underTest.routeGeneration()
+    underTest.on(assetCreated(member, 'foo'))
+    underTest.rememberRoute('/foo', member, generation)
+    assert underTest.routeFor('/foo') == null
+  }
+
+  /**
+   * Given:
+   * - member is updated while members are being resolved
+   * Then:
+   * - resolved members are returned but not kept
+   * - members are resolved again on next access
+   */
+  @Test
+  void 'members resolved before invalidation are not kept'() {
+    start()
+    when(repositoryManager.get('member')).thenAnswer(new Answer<Repository>() {
+      @Override
+      Repository answer(final InvocationOnMock invocation) {
+        underTest.on(new RepositoryUpdatedEvent(member))
+        return member
+      }
+    }).thenReturn(member)
+    assert underTest.members() == [member]
+    assert underTest.members() == [member]
+    assert underTest.members() == [member]
+    verify(repositoryManager, times(2)).get('member')
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.group
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicBoolean
+
+import org.apache.shiro.subject.Subject
+import org.apache.shiro.util.ThreadContext
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.mockito.invocation.InvocationOnMock
+import org.mockito.stubbing.Answer
+import org.sonatype.nexus.repository.MissingFacetException
+import org.sonatype.nexus.repository.Repository
+import org.sonatype.nexus.repository.http.HttpResponses
+import org.sonatype.nexus.repository.view.Context
+import org.sonatype.nexus.repository.view.Request
+import org.sonatype.nexus.repository.view.Response
+import org.sonatype.nexus.repository.view.ViewFacet
+import org.sonatype.sisu.litmus.testsupport.TestSupport
+
+import static org.mockito.Matchers.any
+import static org.mockito.Matchers.anyString
+import static org.mockito.Mockito.atLeastOnce
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.never
+import static org.mockito.Mockito.verify
+import static org.mockito.Mockito.when
+
+/**
+ * Tests for {@link GroupHandler} member routing.
+ */
+class GroupHandlerTest
+extends TestSupport
+{
+  private GroupHandler underTest
+  private GroupFacet groupFacet
+  private Context context
+  private Request request
+  private Repository group
+  private Repository first
+  private ViewFacet firstView
+  private Repository second
+  private ViewFacet secondView
+  private ExecutorService executor
+
+  @Before
+  void setUp() {
+    underTest = new GroupHandler()
+    groupFacet = mock(GroupFacet)
+    context = mock(Context)
+    request = mock(Request)
+    group = mock(Repository)
+    first = mock(Repository)
+    firstView = mock(ViewFacet)
+    second = mock(Repository)
+    secondView = mock(ViewFacet)
+    when(context.getRequest()).thenReturn(request)
+    when(context.getRepository()).thenReturn(group)
+    when(request.getPath()).thenReturn('/foo')
+    when(group.facet(GroupFacet)).thenReturn(groupFacet)
+    when(first.getName()).thenReturn('first')
+    when(first.facet(ViewFacet)).thenReturn(firstView)
+    when(second.getName()).thenReturn('second')
+    when(second.facet(ViewFacet)).thenReturn(secondView)
+    when(groupFacet.members()).thenReturn([first, second])
+
+    MissingFacetException firstIsLeaf = new MissingFacetException(first, GroupFacet)
+    MissingFacetException secondIsLeaf = new MissingFacetException(second, GroupFacet)
+    when(first.facet(GroupFacet)).thenThrow(firstIsLeaf)
+    when(second.facet(GroupFacet)).thenThrow(secondIsLeaf)
+
+    Subject subject = mock(Subject)
+    when(subject.associateWith(any(Callable))).thenAnswer(new Answer<Object>() {
+      @Override
+      Object answer(final InvocationOnMock invocation) {
+        return invocation.arguments[0]
+      }
+    })
+    ThreadContext.bind(subject)
+    executor = Executors.newFixedThreadPool(2)
+  }
+
+  @After
+  void tearDown() {
+    executor.shutdownNow()
+    ThreadContext.unbindSubject()
+  }
+
+  /**
+   * Given:
+   * - no remembered route
+   * - second member serves the path
+   * Then:
+   * - members are tried in order
+   * - second member is remembered as route
+   */
+  @Test
+  void 'scan remembers serving member'() {
+    Response ok = HttpResponses.ok()
+    when(firstView.dispatch(request)).thenReturn(HttpResponses.notFound())
+    when(secondView.dispatch(request)).thenReturn(ok)
+    Response response = underTest.doGet(context, new GroupHandler.DispatchedRepositories())
+    assert response == ok
+    verify(firstView).dispatch(request)
+    verify(groupFacet).rememberRoute('/foo', second, 0L)
+  }
+
+  /**
+   * Given:
+   * - routing enabled, which is opt-in as routes take precedence over member order
+   * - second member is remembered as route
+   * - second member serves the path
+   * Then:
+   * - first member is not asked
+   * - route is not forgotten
+   */
+  @Test
+  void 'remembered route skips scan'() {
+    Response ok = HttpResponses.ok()
+    when(groupFacet.routeFor('/foo')).thenReturn(second)
+    when(secondView.dispatch(request)).thenReturn(ok)
+    Response response = underTest.doGet(context, new GroupHandler.DispatchedRepositories())
+    assert response == ok
+    verify(firstView, never()).dispatch(any(Request))
+    verify(groupFacet, never()).forgetRoute(anyString())
+  }
+
+  /**
+   * Given:
+   * - second member is remembered as route
+   * - first member now serves the path, second does not
+   * Then:
+   * - route is forgotten
+   * - members are scanned without asking second member again
+   * - first member is remembered as route
+   */
+  @Test
+  void 'stale route falls back to scan'() {
+    Response ok = HttpResponses.ok()
+    when(groupFacet.routeFor('/foo')).thenReturn(second)
+    when(secondView.dispatch(request)).thenReturn(HttpResponses.notFound())
+    when(firstView.dispatch(request)).thenReturn(ok)
+    Response response = underTest.doGet(context, new GroupHandler.DispatchedRepositories())
+    assert response == ok
+    verify(groupFacet).forgetRoute('/foo')
+    verify(secondView).dispatch(request)
+    verify(groupFacet).rememberRoute('/foo', first, 0L)
+  }
+
+  /**
+   * Given:
+   * - parallel dispatch
+   * - both members serve the path
+   * Then:
+   * - response of first member is returned
+   * - first member is remembered as route
+   */
+  @Test
+  void 'parallel dispatch returns first OK in member order'() {
+    Response firstOk = HttpResponses.ok()
+    when(firstView.dispatch(request)).thenReturn(firstOk)
+    when(secondView.dispatch(request)).thenReturn(HttpResponses.ok())
+    Response response = underTest.getFirstParallel(request, [first, second], new GroupHandler.DispatchedRepositories(),
+        executor, groupFacet)
+    assert response == firstOk
+    verify(groupFacet).rememberRoute('/foo', first, 0L)
+  }
+
+  /**
+   * Given:
+   * - parallel dispatch
+   * - first member fails, second member serves the path
+   * Then:
+   * - response of second member is returned, as the failing member is skipped
+   */
+  @Test
+  void 'parallel dispatch falls through failing member'() {
+    Response ok = HttpResponses.ok()
+    when(firstView.dispatch(request)).thenThrow(new IOException('remote unavailable'))
+    when(secondView.dispatch(request)).thenReturn(ok)
+    Response response = underTest.getFirstParallel(request, [first, second], new GroupHandler.DispatchedRepositories(),
+        executor, groupFacet)
+    assert response == ok
+    verify(groupFacet).rememberRoute('/foo', second, 0L)
+  }
+
+  /**
+   * Given:
+   * - parallel dispatch
+   * - first member fails, second member does not serve the path
+   * Then:
+   * - failure of first member is rethrown
+   */
+  @Test(expected = IOException)
+  void 'parallel dispatch rethrows failure when no member serves'() {
+    when(firstView.dispatch(request)).thenThrow(new IOException('remote unavailable'))
+    when(secondView.dispatch(request)).thenReturn(HttpResponses.notFound())
+    underTest.getFirstParallel(request, [first, second], new GroupHandler.DispatchedRepositories(), executor, null)
+  }
+
+  /**
+   * Given:
+   * - parallel dispatch
+   * - nested group ahead of second member, serving the path
+   * Then:
+   * - nested group is dispatched to in place
+   * - second member is not yet marked as dispatched when nested group is dispatched to
+   * - second member is not marked as dispatched once nested group served the path
+   */
+  @Test
+  void 'parallel dispatch marks members dispatched only once reached'() {
+    Repository nested = mock(Repository)
+    ViewFacet nestedView = mock(ViewFacet)
+    when(nested.getName()).thenReturn('nested')
+    when(nested.facet(GroupFacet)).thenReturn(mock(GroupFacet))
+    when(nested.facet(ViewFacet)).thenReturn(nestedView)
+    when(secondView.dispatch(request)).thenReturn(HttpResponses.ok())
+
+    GroupHandler.DispatchedRepositories dispatched = new GroupHandler.DispatchedRepositories()
+    Response ok = HttpResponses.ok()
+    AtomicBoolean secondDispatchedEarly = new AtomicBoolean(true)
+    when(nestedView.dispatch(request)).thenAnswer(new Answer<Response>() {
+      @Override
+      Response answer(final InvocationOnMock invocation) {
+        secondDispatchedEarly.set(dispatched.contains(second))
+        return ok
+      }
+    })
+
+    Response response = underTest.getFirstParallel(request, [nested, second], dispatched, executor, null)
+    assert response == ok
+    assert !secondDispatchedEarly.get()
+    assert dispatched.contains(nested)
+    assert !dispatched.contains(second)
+  }
+
+  /**
+   * Given:
+   * - parallel dispatch
+   * - first member serves the path
+   * Then:
+   * - outstanding dispatches are cancelled without interrupting them
+   */
+  @Test
+  void 'parallel dispatch cancels without interrupt'() {
+    Response ok = HttpResponses.ok()
+    Future<Response> future = mock(Future)
+    when(future.get()).thenReturn(ok)
+    ExecutorService mockExecutor = mock(ExecutorService)
+    when(mockExecutor.submit(any(Callable))).thenReturn(future)
+    Response response = underTest.getFirstParallel(request, [first, second], new GroupHandler.DispatchedRepositories(),
+        mockExecutor, null)
+    assert response == ok
+    verify(future, atLeastOnce()).cancel(false)
+    verify(future, never()).cancel(true)
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.negativecache
+
+import java.util.concurrent.TimeUnit
+
+import org.sonatype.nexus.repository.http.HttpStatus
+import org.sonatype.nexus.repository.view.Status
+import org.sonatype.sisu.litmus.testsupport.TestSupport
+
+import com.google.common.base.Ticker
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Tests for {@link NegativeCacheIndex}.
+ */
+class NegativeCacheIndexTest
+    extends TestSupport
+{
+  private long now
+
+  private NegativeCacheIndex underTest
+
+  private Status status = Status.failure(HttpStatus.NOT_FOUND, '404')
+
+  @Before
+  void setUp() {
+    underTest = new NegativeCacheIndex(3, 10, TimeUnit.SECONDS, new Ticker() {
+      @Override
+      long read() {
+        return now
+      }
+    })
+  }
+
+  private static PathNegativeCacheKey path(final String path) {
+    return new PathNegativeCacheKey(path)
+  }
+
+  @Test
+  void 'put and get'() {
+    assert underTest.get(path('/a/b')) == null
+    underTest.put(path('/a/b'), status)
+    underTest.put(new ValueNegativeCacheKey('v'), status)
+    assert underTest.get(path('/a/b')) == status
+    assert underTest.get(new ValueNegativeCacheKey('v')) == status
+    assert underTest.get(path('/a/')) == null
+    assert underTest.get(path('/a/b/')) == null
+    assert underTest.size() == 2
+    assert underTest.hitCount == 2
+    assert underTest.missCount == 3
+  }
+
+  @Test
+  void 'entries expire'() {
+    underTest.put(path('/a'), status)
+    now = TimeUnit.SECONDS.toNanos(5)
+    underTest.put(path('/b'), status)
+    now = TimeUnit.SECONDS.toNanos(10)
+    assert underTest.get(path('/a')) == null
+    assert underTest.get(path('/b')) == status
+    underTest.put(path('/c'), status)
+    assert underTest.size() == 2
+    assert underTest.expirationCount == 1
+  }
+
+  @Test
+  void 'oldest entries are evicted'() {
+    underTest.put(path('/a'), status)
+    underTest.put(path('/b'), status)
+    underTest.put(path('/c'), status)
+    underTest.put(path('/a'), status)
+    underTest.put(path('/d'), status)
+    assert underTest.get(path('/b')) == null
+    assert underTest.get(path('/a')) == status
+    assert underTest.get(path('/c')) == status
+    assert underTest.get(path('/d')) == status
+    assert underTest.size() == 3
+    assert underTest.evictionCount == 1
+  }
+
+  @Test
+  void 'subset invalidation'() {
+    underTest = new NegativeCacheIndex(10, 10, TimeUnit.SECONDS, Ticker.systemTicker())
+    underTest.put(path('/a/'), status)
+    underTest.put(path('/a/b/c'), status)
+    underTest.put(path('/a/b/d/e'), status)
+    underTest.put(path('/a/bc'), status)
+    underTest.put(path('/x'), status)
+
+    underTest.invalidateSubset(path('/a/b/'))
+    assert underTest.get(path('/a/b/c')) == null
+    assert underTest.get(path('/a/b/d/e')) == null
+    assert underTest.get(path('/a/bc')) == status
+    assert underTest.get(path('/a/')) == status
+    assert underTest.size() == 3
+
+    underTest.invalidateSubset(path('/a/'))
+    assert underTest.get(path('/a/')) == null
+    assert underTest.get(path('/a/bc')) == null
+    assert underTest.get(path('/x')) == status
+    assert underTest.size() == 1
+
+    // non-directory keys only invalidate themselves
+    underTest.put(path('/x/y'), status)
+    underTest.invalidateSubset(path('/x'))
+    assert underTest.get(path('/x/y')) == status
+    assert underTest.size() == 1
+  }
+
+  @Test
+  void 'invalidate all'() {
+    underTest.put(path('/a'), status)
+    underTest.put(new ValueNegativeCacheKey('v'), status)
+    underTest.invalidateAll()
+    assert underTest.size() == 0
+    assert underTest.get(path('/a')) == null
+    underTest.put(path('/a'), status)
+    assert underTest.get(path('/a')) == status
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.negativecache
+
+import org.sonatype.nexus.repository.Repository
+import org.sonatype.nexus.repository.config.Configuration
+import org.sonatype.nexus.repository.config.ConfigurationFacet
+import org.sonatype.nexus.repository.http.HttpStatus
+import org.sonatype.nexus.repository.view.Status
+import org.sonatype.sisu.goodies.eventbus.EventBus
+import org.sonatype.sisu.litmus.testsupport.TestSupport
+
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.SharedMetricRegistries
+import org.junit.Before
+import org.junit.Test
+
+import static org.mockito.Matchers.any
+import static org.mockito.Matchers.eq
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.when
+
+/**
+ * Tests for the metrics reported by {@link TrieNegativeCacheFacetImpl}.
+ */
+class TrieNegativeCacheFacetImplTest
+    extends TestSupport
+{
+  TrieNegativeCacheFacetImpl underTest
+
+  TrieNegativeCacheFacetImpl.Config config
+
+  MetricRegistry registry = SharedMetricRegistries.getOrCreate('nexus')
+
+  Status status = Status.failure(HttpStatus.NOT_FOUND, '404')
+
+  @Before
+  void setUp() {
+    config = new TrieNegativeCacheFacetImpl.Config(enabled: true, maxEntries: 2)
+    def configurationFacet = mock(ConfigurationFacet)
+    when(configurationFacet.readSection(any(Configuration), eq(TrieNegativeCacheFacetImpl.CONFIG_KEY),
+        eq(TrieNegativeCacheFacetImpl.Config))).thenReturn(config)
+
+    def repository = mock(Repository)
+    when(repository.name).thenReturn('proxy-' + UUID.randomUUID())
+    when(repository.facet(ConfigurationFacet)).thenReturn(configurationFacet)
+
+    underTest = new TrieNegativeCacheFacetImpl()
+    underTest.installDependencies(mock(EventBus))
+    underTest.attach(repository)
+    underTest.init()
+    underTest.start()
+  }
+
+  @Test
+  void 'lookups and evictions are reported'() {
+    underTest.put(key('/a/1'), status)
+    underTest.put(key('/a/2'), status)
+    underTest.put(key('/a/3'), status)
+
+    assert underTest.get(key('/a/3')) == status
+    assert underTest.get(key('/a/2')) == status
+    assert underTest.get(key('/a/1')) == null
+
+    assert registry.meter(underTest.metricName('hits')).count == 2
+    assert registry.meter(underTest.metricName('misses')).count == 1
+    assert gauge('size') == 2
+    assert gauge('evictions') == 1
+    assert gauge('expirations') == 0
+  }
+
+  @Test
+  void 'gauges read zero while disabled'() {
+    underTest.put(key('/a/1'), status)
+    config.enabled = false
+    underTest.stop()
+    underTest.update()
+    underTest.start()
+
+    assert underTest.get(key('/a/1')) == null
+    assert registry.meter(underTest.metricName('misses')).count == 1
+    assert gauge('size') == 0
+  }
+
+  @Test
+  void 'gauges survive a restart'() {
+    underTest.put(key('/a/1'), status)
+    underTest.stop()
+    underTest.start()
+
+    assert gauge('size') == 1
+  }
+
+  @Test
+  void 'metrics are removed on delete'() {
+    def prefix = underTest.metricName('')
+    underTest.get(key('/a/1'))
+    underTest.stop()
+    underTest.delete()
+    underTest.destroy()
+
+    assert registry.names.findAll { it.startsWith(prefix) }.empty
+  }
+
+  private static NegativeCacheKey key(final String path) {
+    return new PathNegativeCacheKey(path)
+  }
+
+  private Number gauge(final String metric) {
+    return (Number) registry.gauges[underTest.metricName(metric)].value
+  }
+}
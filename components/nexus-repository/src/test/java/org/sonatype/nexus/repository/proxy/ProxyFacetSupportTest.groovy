@@ -0,0 +1,198 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.proxy
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import javax.annotation.Nonnull
+
+import org.sonatype.nexus.repository.Repository
+import org.sonatype.nexus.repository.config.Configuration
+import org.sonatype.nexus.repository.config.ConfigurationFacet
+import org.sonatype.nexus.repository.httpclient.HttpClientFacet
+import org.sonatype.nexus.repository.view.Content
+import org.sonatype.nexus.repository.view.Context
+import org.sonatype.nexus.repository.view.payloads.StringPayload
+import org.sonatype.sisu.goodies.eventbus.EventBus
+import org.sonatype.sisu.litmus.testsupport.TestSupport
+
+import com.codahale.metrics.SharedMetricRegistries
+import org.joda.time.DateTime
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import static org.mockito.Matchers.any
+import static org.mockito.Matchers.eq
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.when
+
+/**
+ * Tests for the coalescing of concurrent fetches by {@link ProxyFacetSupport}.
+ */
+class ProxyFacetSupportTest
+    extends TestSupport
+{
+  static final int REQUESTS = 5
+
+  TestProxyFacet underTest
+
+  ExecutorService executor
+
+  @Before
+  void setUp() {
+    def config = new ProxyFacetSupport.Config(remoteUrl: new URI('http://example.com/'), artifactMaxAge: -1)
+    def configurationFacet = mock(ConfigurationFacet)
+    when(configurationFacet.readSection(any(Configuration), eq(ProxyFacetSupport.CONFIG_KEY),
+        eq(ProxyFacetSupport.Config))).thenReturn(config)
+
+    def repository = mock(Repository)
+    when(repository.name).thenReturn('proxy-' + UUID.randomUUID())
+    when(repository.facet(ConfigurationFacet)).thenReturn(configurationFacet)
+    when(repository.facet(HttpClientFacet)).thenReturn(mock(HttpClientFacet))
+
+    underTest = new TestProxyFacet()
+    underTest.installDependencies(mock(EventBus))
+    underTest.attach(repository)
+    underTest.init()
+    underTest.start()
+
+    executor = Executors.newFixedThreadPool(REQUESTS)
+  }
+
+  @After
+  void tearDown() {
+    executor.shutdownNow()
+  }
+
+  @Test
+  void 'concurrent requests for missing content share one fetch'() {
+    List<Future<Content>> requests = (1..REQUESTS).collect { executor.submit(get()) }
+
+    awaitCoalesced(REQUESTS - 1)
+    underTest.release.countDown()
+
+    requests.each { assert it.get(10, TimeUnit.SECONDS).is(underTest.cached) }
+    assert underTest.fetchCalls.get() == 1
+    assert meterCount('fetches') == 1
+    assert meterCount('coalesced-fetches') == REQUESTS - 1
+  }
+
+  @Test
+  void 'failed fetch reaches every waiting request'() {
+    underTest.failure = new IOException('remote down')
+    List<Future<Content>> requests = (1..REQUESTS).collect { executor.submit(get()) }
+
+    awaitCoalesced(REQUESTS - 1)
+    underTest.release.countDown()
+
+    requests.each {
+      try {
+        it.get(10, TimeUnit.SECONDS)
+        assert false: 'Expected fetch failure'
+      }
+      catch (ExecutionException e) {
+        assert e.cause.is(underTest.failure)
+      }
+    }
+    assert underTest.fetchCalls.get() == 1
+    assert underTest.cached == null
+  }
+
+  @Test
+  void 'fetch after a failed fetch is attempted again'() {
+    underTest.failure = new IOException('remote down')
+    underTest.release.countDown()
+    try {
+      underTest.get(mock(Context))
+      assert false: 'Expected fetch failure'
+    }
+    catch (IOException e) {
+      // expected
+    }
+
+    underTest.failure = null
+    assert underTest.get(mock(Context)).is(underTest.cached)
+    assert underTest.fetchCalls.get() == 2
+  }
+
+  private Callable<Content> get() {
+    return { underTest.get(mock(Context)) } as Callable<Content>
+  }
+
+  private void awaitCoalesced(final long count) {
+    long deadline = System.currentTimeMillis() + 10000
+    while (meterCount('coalesced-fetches') < count) {
+      assert System.currentTimeMillis() < deadline: 'Requests were not coalesced'
+      Thread.sleep(10)
+    }
+  }
+
+  private long meterCount(final String metric) {
+    return SharedMetricRegistries.getOrCreate('nexus').meter(underTest.metricName(metric)).count
+  }
+
+  static class TestProxyFacet
+      extends ProxyFacetSupport
+  {
+    final CountDownLatch release = new CountDownLatch(1)
+
+    final AtomicInteger fetchCalls = new AtomicInteger()
+
+    volatile IOException failure
+
+    volatile Content cached
+
+    @Override
+    protected Content getCachedPayload(final Context context) {
+      return cached
+    }
+
+    @Override
+    protected void store(final Context context, final Content content) {
+      cached = content
+    }
+
+    @Override
+    protected Content fetch(final Context context, final Content stale) {
+      fetchCalls.incrementAndGet()
+      release.await(10, TimeUnit.SECONDS)
+      if (failure != null) {
+        throw failure
+      }
+      return new Content(new StringPayload('remote', 'text/plain'))
+    }
+
+    @Override
+    protected DateTime getCachedPayloadLastUpdatedDate(final Context context) {
+      return null
+    }
+
+    @Override
+    protected void indicateUpToDate(final Context context) {
+      // nop
+    }
+
+    @Override
+    protected String getUrl(@Nonnull final Context context) {
+      return 'some/path'
+    }
+  }
+}
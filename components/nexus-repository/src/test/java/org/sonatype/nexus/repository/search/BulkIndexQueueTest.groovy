@@ -0,0 +1,183 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.search
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import org.sonatype.nexus.repository.Repository
+import org.sonatype.nexus.repository.search.BulkIndexQueue.Action
+import org.sonatype.nexus.repository.storage.Component
+import org.sonatype.sisu.litmus.testsupport.TestSupport
+
+import org.junit.Before
+import org.junit.Test
+
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.when
+
+/**
+ * Tests for {@link BulkIndexQueue}.
+ */
+class BulkIndexQueueTest
+    extends TestSupport
+{
+  private List<List<Action>> batches
+
+  private BulkIndexQueue.Flusher flusher
+
+  private Repository repository
+
+  private Component component
+
+  @Before
+  void setUp() {
+    batches = new CopyOnWriteArrayList<>()
+    flusher = new BulkIndexQueue.Flusher() {
+      @Override
+      void flush(final List<Action> actions) {
+        batches.add(new ArrayList<>(actions))
+      }
+    }
+    repository = mock(Repository)
+    when(repository.name).thenReturn('test')
+    component = mock(Component)
+  }
+
+  @Test
+  void 'not started flushes synchronously'() {
+    def underTest = new BulkIndexQueue(flusher, 10, 1, TimeUnit.HOURS, 100)
+    underTest.put(repository, component, 'a')
+    underTest.delete(repository, 'b')
+    assert batches.size() == 2
+    assert batches[0][0].identifier == 'a' && batches[0][0].component == component
+    assert batches[1][0].identifier == 'b' && batches[1][0].component == null
+  }
+
+  @Test
+  void 'repeated actions collapse'() {
+    def underTest = new BulkIndexQueue(flusher, 10, 1, TimeUnit.HOURS, 100)
+    underTest.start()
+    underTest.put(repository, component, 'a')
+    underTest.put(repository, component, 'b')
+    underTest.put(repository, component, 'a')
+    underTest.delete(repository, 'b')
+    assert underTest.size() == 2
+    assert batches.isEmpty()
+    underTest.stop()
+    assert batches.size() == 1
+    assert batches[0]*.identifier == ['a', 'b']
+    assert batches[0][1].component == null
+  }
+
+  @Test
+  void 'flushes when batch is full'() {
+    def underTest = new BulkIndexQueue(flusher, 2, 1, TimeUnit.HOURS, 100)
+    underTest.start()
+    try {
+      underTest.put(repository, component, 'a')
+      underTest.put(repository, component, 'b')
+      waitFor { batches.size() == 1 }
+      assert batches[0]*.identifier == ['a', 'b']
+    }
+    finally {
+      underTest.stop()
+    }
+  }
+
+  @Test
+  void 'flushes after interval'() {
+    def underTest = new BulkIndexQueue(flusher, 10, 50, TimeUnit.MILLISECONDS, 100)
+    underTest.start()
+    try {
+      underTest.put(repository, component, 'a')
+      waitFor { batches.size() == 1 }
+      assert batches[0]*.identifier == ['a']
+    }
+    finally {
+      underTest.stop()
+    }
+  }
+
+  @Test
+  void 'discard drops pending actions of repository'() {
+    def other = mock(Repository)
+    when(other.name).thenReturn('other')
+    def underTest = new BulkIndexQueue(flusher, 10, 1, TimeUnit.HOURS, 100)
+    underTest.start()
+    underTest.put(repository, component, 'a')
+    underTest.put(other, component, 'a')
+    underTest.discard(repository)
+    underTest.stop()
+    assert batches.size() == 1
+    assert batches[0]*.repository == [other]
+  }
+
+  @Test
+  void 'flush of repository sends its pending actions only'() {
+    def other = mock(Repository)
+    when(other.name).thenReturn('other')
+    def underTest = new BulkIndexQueue(flusher, 10, 1, TimeUnit.HOURS, 100)
+    underTest.start()
+    try {
+      underTest.put(repository, component, 'a')
+      underTest.put(other, component, 'b')
+      underTest.flush(repository)
+      assert batches.size() == 1
+      assert batches[0]*.identifier == ['a']
+      assert underTest.size() == 1
+    }
+    finally {
+      underTest.stop()
+    }
+  }
+
+  @Test
+  void 'flush of repository waits for batch being flushed'() {
+    def flushing = new CountDownLatch(1)
+    def release = new CountDownLatch(1)
+    def underTest = new BulkIndexQueue(new BulkIndexQueue.Flusher() {
+      @Override
+      void flush(final List<Action> actions) {
+        flushing.countDown()
+        release.await()
+        batches.add(new ArrayList<>(actions))
+      }
+    }, 1, 1, TimeUnit.HOURS, 100)
+    underTest.start()
+    try {
+      underTest.put(repository, component, 'a')
+      assert flushing.await(5, TimeUnit.SECONDS)
+      def flushed = Executors.newSingleThreadExecutor().submit({ underTest.flush(repository) } as Runnable)
+      Thread.sleep(100)
+      assert !flushed.done
+      release.countDown()
+      flushed.get(5, TimeUnit.SECONDS)
+      assert batches*.identifier.flatten() == ['a']
+    }
+    finally {
+      release.countDown()
+      underTest.stop()
+    }
+  }
+
+  private static void waitFor(final Closure<Boolean> condition) {
+    long deadline = System.currentTimeMillis() + 5000
+    while (!condition.call()) {
+      assert System.currentTimeMillis() < deadline
+      Thread.sleep(10)
+    }
+  }
+}
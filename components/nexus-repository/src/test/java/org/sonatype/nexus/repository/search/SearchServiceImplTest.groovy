@@ -0,0 +1,339 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.search
+
+import javax.inject.Provider
+
+import org.sonatype.nexus.repository.Format
+import org.sonatype.nexus.repository.Repository
+import org.sonatype.nexus.repository.config.Configuration
+import org.sonatype.nexus.repository.manager.RepositoryCreatedEvent
+import org.sonatype.nexus.repository.manager.RepositoryManager
+import org.sonatype.nexus.repository.storage.Bucket
+import org.sonatype.nexus.repository.storage.Component
+import org.sonatype.nexus.repository.storage.StorageFacet
+import org.sonatype.nexus.repository.storage.StorageTx
+import org.sonatype.nexus.security.SecurityHelper
+import org.sonatype.sisu.goodies.eventbus.EventBus
+import org.sonatype.sisu.litmus.testsupport.TestSupport
+
+import com.codahale.metrics.SharedMetricRegistries
+import org.apache.shiro.authz.Permission
+import org.elasticsearch.ElasticsearchException
+import org.elasticsearch.action.ListenableActionFuture
+import org.elasticsearch.action.bulk.BulkItemResponse
+import org.elasticsearch.action.bulk.BulkResponse
+import org.elasticsearch.action.index.IndexRequestBuilder
+import org.elasticsearch.action.search.SearchRequestBuilder
+import org.elasticsearch.action.search.SearchResponse
+import org.elasticsearch.client.Client
+import org.elasticsearch.client.IndicesAdminClient
+import org.elasticsearch.common.collect.ImmutableOpenMap
+import org.elasticsearch.common.unit.TimeValue
+import org.elasticsearch.index.Index
+import org.elasticsearch.index.query.QueryBuilder
+import org.elasticsearch.index.query.QueryBuilders
+import org.elasticsearch.indices.IndexMissingException
+import org.elasticsearch.rest.RestStatus
+import org.junit.Before
+import org.junit.Test
+import org.mockito.ArgumentCaptor
+import org.mockito.InOrder
+import org.mockito.invocation.InvocationOnMock
+import org.mockito.stubbing.Answer
+
+import static com.codahale.metrics.MetricRegistry.name
+import static org.mockito.Matchers.any
+import static org.mockito.Matchers.anyBoolean
+import static org.mockito.Matchers.anyInt
+import static org.mockito.Matchers.anyString
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS
+import static org.mockito.Mockito.inOrder
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.never
+import static org.mockito.Mockito.times
+import static org.mockito.Mockito.verify
+import static org.mockito.Mockito.when
+import static org.sonatype.nexus.repository.search.SearchServiceImpl.TYPE
+
+/**
+ * Tests for {@link SearchServiceImpl}.
+ */
+class SearchServiceImplTest
+    extends TestSupport
+{
+  private SearchServiceImpl underTest
+
+  private Client client
+
+  private IndicesAdminClient indices
+
+  private Repository repository
+
+  private StorageTx tx
+
+  private Component component
+
+  private IndexRequestBuilder indexRequest
+
+  private ListenableActionFuture<SearchResponse> searchFuture
+
+  private RepositoryManager repositoryManager
+
+  private QueryBuilder query = QueryBuilders.matchAllQuery()
+
+  @Before
+  void setUp() {
+    client = mock(Client, RETURNS_DEEP_STUBS)
+    indices = client.admin().indices()
+    when(indices.prepareGetAliases(anyString()).execute().actionGet().getAliases()).thenReturn(ImmutableOpenMap.of())
+    indexRequest = mock(IndexRequestBuilder)
+    when(client.prepareIndex(anyString(), anyString(), anyString())).thenReturn(indexRequest)
+    when(indexRequest.setCreate(anyBoolean())).thenReturn(indexRequest)
+    when(indexRequest.setSource(anyString())).thenReturn(indexRequest)
+    def searchRequest = mock(SearchRequestBuilder)
+    when(client.prepareSearch('test')).thenReturn(searchRequest)
+    when(searchRequest.setTypes(TYPE)).thenReturn(searchRequest)
+    when(searchRequest.setQuery((QueryBuilder) any(QueryBuilder))).thenReturn(searchRequest)
+    when(searchRequest.setScroll((TimeValue) any(TimeValue))).thenReturn(searchRequest)
+    when(searchRequest.setFrom(anyInt())).thenReturn(searchRequest)
+    when(searchRequest.setSize(anyInt())).thenReturn(searchRequest)
+    searchFuture = mock(ListenableActionFuture)
+    when(searchRequest.execute()).thenReturn(searchFuture)
+
+    component = mock(Component)
+    def searchFacet = mock(SearchFacet)
+    when(searchFacet.identifier(component)).thenReturn(new SearchItemId('id-1'))
+    tx = mock(StorageTx)
+    when(tx.browseComponents(any(Bucket))).thenReturn([component])
+    def storageFacet = mock(StorageFacet)
+    when(storageFacet.openTx()).thenReturn(tx)
+    repository = mock(Repository)
+    when(repository.name).thenReturn('test')
+    when(repository.facet(SearchFacet)).thenReturn(searchFacet)
+    when(repository.facet(StorageFacet)).thenReturn(storageFacet)
+    when(repository.format).thenReturn(new Format('test') {})
+    def configuration = mock(Configuration)
+    when(configuration.online).thenReturn(true)
+    when(repository.configuration).thenReturn(configuration)
+    repositoryManager = mock(RepositoryManager)
+    when(repositoryManager.browse()).thenReturn([repository])
+    def securityHelper = mock(SecurityHelper)
+    when(securityHelper.allPermitted((Permission) any(Permission))).thenReturn(true)
+
+    def producer = mock(ComponentMetadataProducer)
+    when(producer.getMetadata(any(Component), any(Iterable))).thenReturn('{}')
+
+    underTest = new SearchServiceImpl(
+        new Provider<Client>() {
+          @Override
+          Client get() {
+            return client
+          }
+        },
+        repositoryManager,
+        securityHelper,
+        [],
+        ['default': producer],
+        mock(EventBus)
+    )
+  }
+
+  private String rebuiltIndex() {
+    ArgumentCaptor<String> index = ArgumentCaptor.forClass(String)
+    verify(indices).prepareCreate(index.capture())
+    return index.value
+  }
+
+  /**
+   * Given:
+   * - component is deleted while its repository is scanned
+   * Then:
+   * - rebuilt document is only created, never overwriting a live update
+   * - live delete is replayed into the new index after the component was indexed, before the alias is swapped
+   */
+  @Test
+  void 'rebuild replays live deletes before swapping alias'() {
+    when(tx.browseComponents(any(Bucket))).thenAnswer(new Answer<Iterable<Component>>() {
+      @Override
+      Iterable<Component> answer(final InvocationOnMock invocation) {
+        underTest.delete(repository, 'id-1')
+        return [component]
+      }
+    })
+
+    underTest.rebuildIndex(repository, 1)
+
+    String index = rebuiltIndex()
+    InOrder order = inOrder(client, indexRequest, indices)
+    order.verify(client).prepareIndex(index, TYPE, 'id-1')
+    order.verify(indexRequest).setCreate(true)
+    order.verify(client).prepareDelete(index, TYPE, 'id-1')
+    order.verify(indices).prepareAliases()
+  }
+
+  /**
+   * Given:
+   * - component is deleted and recreated with the same identifier while its repository is scanned
+   * Then:
+   * - delete is not replayed, leaving the document in place
+   */
+  @Test
+  void 'rebuild does not replay deletes superseded by live puts'() {
+    when(tx.browseComponents(any(Bucket))).thenAnswer(new Answer<Iterable<Component>>() {
+      @Override
+      Iterable<Component> answer(final InvocationOnMock invocation) {
+        underTest.delete(repository, 'id-1')
+        underTest.put(repository, component, 'id-1')
+        return [component]
+      }
+    })
+
+    underTest.rebuildIndex(repository, 1)
+
+    // only the live delete itself went to the new index
+    verify(client, times(1)).prepareDelete(rebuiltIndex(), TYPE, 'id-1')
+    verify(indices).prepareAliases()
+  }
+
+  /**
+   * Given:
+   * - document of a component was already written by a live update
+   * Then:
+   * - rebuild completes, the conflict is not counted as failure
+   */
+  @Test
+  void 'rebuild ignores conflicts with live updates'() {
+    def conflict = mock(BulkItemResponse.Failure)
+    when(conflict.status).thenReturn(RestStatus.CONFLICT)
+    def item = mock(BulkItemResponse)
+    when(item.failed).thenReturn(true)
+    when(item.failure).thenReturn(conflict)
+    def response = mock(BulkResponse)
+    when(response.hasFailures()).thenReturn(true)
+    when(response.items).thenReturn([item] as BulkItemResponse[])
+    when(client.prepareBulk().execute().actionGet()).thenReturn(response)
+
+    underTest.rebuildIndex(repository, 1)
+
+    verify(indices).prepareAliases()
+  }
+
+  /**
+   * Given:
+   * - rebuild in progress
+   * Then:
+   * - progress is published as gauges, which are removed once done
+   */
+  @Test
+  void 'rebuild progress is published as metrics'() {
+    def registry = SharedMetricRegistries.getOrCreate('nexus')
+    String scanned = name(SearchServiceImpl, 'test', 'rebuild', 'scanned')
+    List<Object> seen = []
+    when(tx.browseComponents(any(Bucket))).thenAnswer(new Answer<Iterable<Component>>() {
+      @Override
+      Iterable<Component> answer(final InvocationOnMock invocation) {
+        seen << registry.gauges[scanned]?.value
+        return [component]
+      }
+    })
+
+    underTest.rebuildIndex(repository, 1)
+
+    assert seen == [0L]
+    assert !registry.gauges.containsKey(scanned)
+  }
+
+  /**
+   * Given:
+   * - search succeeds
+   * Then:
+   * - query is not validated, costing a single round trip
+   */
+  @Test
+  void 'search does not validate query up front'() {
+    def response = mock(SearchResponse)
+    when(searchFuture.actionGet()).thenReturn(response)
+
+    assert underTest.search(query, 0, 10).is(response)
+
+    verify(indices, never()).prepareValidateQuery()
+  }
+
+  /**
+   * Given:
+   * - search is rejected
+   * - query is invalid
+   * Then:
+   * - query is reported as invalid
+   */
+  @Test(expected = IllegalArgumentException)
+  void 'search validates query once rejected'() {
+    when(searchFuture.actionGet()).thenThrow(new ElasticsearchException('rejected'))
+    when(indices.prepareValidateQuery().setQuery((QueryBuilder) any(QueryBuilder)).execute().actionGet().valid)
+        .thenReturn(false)
+
+    underTest.search(query, 0, 10)
+  }
+
+  /**
+   * Given:
+   * - search fails
+   * - query is valid
+   * Then:
+   * - search failure is rethrown as is
+   */
+  @Test(expected = ElasticsearchException)
+  void 'search failures of valid queries are rethrown'() {
+    when(searchFuture.actionGet()).thenThrow(new ElasticsearchException('failed'))
+    when(indices.prepareValidateQuery().setQuery((QueryBuilder) any(QueryBuilder)).execute().actionGet().valid)
+        .thenReturn(true)
+
+    underTest.search(query, 0, 10)
+  }
+
+  /**
+   * Given:
+   * - index of the searched repository is missing
+   * Then:
+   * - search and browse return empty results instead of failing
+   */
+  @Test
+  void 'search and browse of missing indexes are empty'() {
+    when(searchFuture.actionGet()).thenThrow(new IndexMissingException(new Index('test')))
+
+    assert underTest.search(query, 0, 10).hits.totalHits == 0
+    assert !underTest.browse(query).iterator().hasNext()
+    verify(indices, never()).prepareValidateQuery()
+  }
+
+  /**
+   * Given:
+   * - several searches
+   * - repository is created between them
+   * Then:
+   * - repositories with search facet are only resolved again after the repository event
+   */
+  @Test
+  void 'searchable repositories are resolved again after repository events'() {
+    when(searchFuture.actionGet()).thenReturn(mock(SearchResponse))
+
+    underTest.search(query, 0, 10)
+    underTest.search(query, 0, 10)
+    verify(repositoryManager, times(1)).browse()
+
+    underTest.on(new RepositoryCreatedEvent(repository))
+    underTest.search(query, 0, 10)
+    verify(repositoryManager, times(2)).browse()
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage
+
+import org.junit.Before
+import org.junit.Test
+import org.sonatype.nexus.blobstore.api.BlobId
+import org.sonatype.nexus.blobstore.api.BlobRef
+import org.sonatype.nexus.repository.MissingFacetException
+import org.sonatype.nexus.repository.Repository
+import org.sonatype.nexus.repository.config.Configuration
+import org.sonatype.nexus.repository.config.ConfigurationFacet
+import org.sonatype.nexus.repository.manager.RepositoryManager
+import org.sonatype.sisu.litmus.testsupport.TestSupport
+
+import com.google.common.base.Predicate
+
+import static org.mockito.Matchers.any
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.never
+import static org.mockito.Mockito.verify
+import static org.mockito.Mockito.when
+
+/**
+ * Tests for {@link AssetBlobReferences}.
+ */
+class AssetBlobReferencesTest
+extends TestSupport
+{
+  private RepositoryManager repositoryManager
+
+  private AssetBlobReferences underTest
+
+  private List<Repository> repositories
+
+  @Before
+  void setUp() {
+    repositories = []
+    repositoryManager = mock(RepositoryManager)
+    when(repositoryManager.browse()).thenReturn(repositories)
+    underTest = new AssetBlobReferences(repositoryManager)
+  }
+
+  private StorageFacet repository(String blobStoreName, String... blobIds) {
+    Repository repository = mock(Repository)
+    Configuration configuration = mock(Configuration)
+    when(repository.getConfiguration()).thenReturn(configuration)
+
+    StorageFacetImpl.Config config = new StorageFacetImpl.Config()
+    config.blobStoreName = blobStoreName
+    ConfigurationFacet configurationFacet = mock(ConfigurationFacet)
+    when(configurationFacet.readSection(configuration, StorageFacetImpl.CONFIG_KEY, StorageFacetImpl.Config))
+        .thenReturn(config)
+    when(repository.facet(ConfigurationFacet)).thenReturn(configurationFacet)
+
+    // blob refs are built the way StorageTxImpl does, without the name of their store
+    List<Asset> assets = blobIds.collect { String blobId ->
+      Asset asset = new Asset()
+      asset.blobRef(new BlobRef('NODE', 'STORE', blobId))
+      return asset
+    }
+    assets << new Asset()
+    StorageTx tx = mock(StorageTx)
+    when(tx.browseAssets(any(Bucket))).thenReturn(assets)
+    StorageFacet storageFacet = mock(StorageFacet)
+    when(storageFacet.openTx()).thenReturn(tx)
+    when(repository.facet(StorageFacet)).thenReturn(storageFacet)
+
+    repositories << repository
+    return storageFacet
+  }
+
+  @Test
+  void 'blobs of repositories stored in the blob store are referenced'() {
+    repository('default', 'a', 'b')
+    repository('default', 'c')
+    Predicate<BlobId> referenced = underTest.collect('default', 10)
+    assert referenced.apply(new BlobId('a'))
+    assert referenced.apply(new BlobId('b'))
+    assert referenced.apply(new BlobId('c'))
+    assert !referenced.apply(new BlobId('unknown'))
+  }
+
+  @Test
+  void 'repositories stored in other blob stores are skipped'() {
+    repository('default', 'a')
+    StorageFacet other = repository('other', 'b')
+    Predicate<BlobId> referenced = underTest.collect('default', 10)
+    assert referenced.apply(new BlobId('a'))
+    assert !referenced.apply(new BlobId('b'))
+    verify(other, never()).openTx()
+  }
+
+  @Test
+  void 'repositories without storage are skipped'() {
+    Repository group = mock(Repository)
+    MissingFacetException noStorage = new MissingFacetException(group, StorageFacet)
+    when(group.facet(StorageFacet)).thenThrow(noStorage)
+    repositories << group
+    repository('default', 'a')
+    assert underTest.collect('default', 10).apply(new BlobId('a'))
+  }
+}
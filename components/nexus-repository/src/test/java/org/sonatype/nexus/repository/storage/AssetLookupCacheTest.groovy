@@ -0,0 +1,141 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage
+
+import org.junit.Before
+import org.junit.Test
+import org.sonatype.nexus.common.collect.NestedAttributesMap
+import org.sonatype.nexus.common.entity.EntityId
+import org.sonatype.nexus.common.entity.EntityMetadata
+import org.sonatype.sisu.litmus.testsupport.TestSupport
+
+import com.google.common.base.Supplier
+
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.when
+
+/**
+ * Tests for {@link AssetLookupCache}.
+ */
+class AssetLookupCacheTest
+extends TestSupport
+{
+  private AssetLookupCache underTest
+
+  private int loads
+
+  @Before
+  void setUp() {
+    underTest = new AssetLookupCache(100)
+    loads = 0
+  }
+
+  private Asset asset(String id) {
+    EntityMetadata metadata = mock(EntityMetadata)
+    when(metadata.getId()).thenReturn(new EntityId(id))
+    Asset asset = new Asset()
+    asset.setEntityMetadata(metadata)
+    asset.name("/asset-${id}".toString())
+    asset.attributes(new NestedAttributesMap(StorageFacet.P_ATTRIBUTES, [:]))
+    return asset
+  }
+
+  private Supplier<Asset> loader(Asset asset) {
+    return new Supplier<Asset>() {
+      @Override
+      Asset get() {
+        loads++
+        return asset
+      }
+    }
+  }
+
+  @Test
+  void 'repeated lookups are served from cache'() {
+    Asset asset = asset('1')
+    assert underTest.get('/a', loader(asset)).name() == '/asset-1'
+    assert underTest.get('/a', loader(asset)).name() == '/asset-1'
+    assert loads == 1
+    assert underTest.stats().hitCount() == 1
+  }
+
+  @Test
+  void 'missing assets are not cached'() {
+    assert underTest.get('/a', loader(null)) == null
+    assert underTest.get('/a', loader(null)) == null
+    assert loads == 2
+    assert underTest.size() == 0
+  }
+
+  @Test
+  void 'updated assets are invalidated'() {
+    Asset a = asset('1')
+    Asset b = asset('2')
+    underTest.get('/a', loader(a))
+    underTest.get('/b', loader(b))
+    underTest.invalidate([asset('1')], [])
+    assert underTest.size() == 1
+    underTest.get('/a', loader(a))
+    underTest.get('/b', loader(b))
+    assert loads == 3
+  }
+
+  @Test
+  void 'deleted assets are invalidated by name'() {
+    underTest.get('/a', loader(asset('1')))
+    underTest.get('/b', loader(asset('2')))
+    Asset deleted = new Asset()
+    deleted.name('/asset-1')
+    underTest.invalidate([], [deleted])
+    assert underTest.size() == 1
+    underTest.get('/b', loader(asset('2')))
+    assert loads == 2
+  }
+
+  @Test
+  void 'callers get their own copy'() {
+    Asset asset = asset('1')
+    asset.attributes().child('format').set('a', 'b')
+    Asset first = underTest.get('/a', loader(asset))
+    first.attributes().child('format').set('a', 'changed')
+    first.name('/changed')
+    Asset second = underTest.get('/a', loader(asset))
+    assert !second.is(first)
+    assert second.name() == '/asset-1'
+    assert second.attributes().child('format').get('a') == 'b'
+    assert loads == 1
+  }
+
+  @Test
+  void 'replacing an entry keeps it invalidatable'() {
+    underTest.get('/a', loader(asset('1')))
+    underTest.invalidate([asset('1')], [])
+    underTest.get('/a', loader(asset('1')))
+    underTest.invalidate([asset('1')], [])
+    assert underTest.size() == 0
+  }
+
+  @Test
+  void 'asset loaded across a commit is not cached'() {
+    Asset asset = asset('1')
+    Supplier<Asset> racing = new Supplier<Asset>() {
+      @Override
+      Asset get() {
+        underTest.invalidate([asset], [])
+        return asset
+      }
+    }
+    assert underTest.get('/a', racing).is(asset)
+    assert underTest.size() == 0
+  }
+}
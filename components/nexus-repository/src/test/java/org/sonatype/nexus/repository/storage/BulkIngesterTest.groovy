@@ -0,0 +1,144 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.storage
+
+import org.junit.Before
+import org.junit.Test
+import org.mockito.ArgumentCaptor
+import org.mockito.invocation.InvocationOnMock
+import org.mockito.stubbing.Answer
+import org.sonatype.nexus.blobstore.api.Blob
+import org.sonatype.nexus.blobstore.api.BlobId
+import org.sonatype.nexus.blobstore.api.BlobStore
+import org.sonatype.nexus.common.hash.HashAlgorithm
+import org.sonatype.sisu.litmus.testsupport.TestSupport
+
+import com.google.common.base.Supplier
+
+import static org.mockito.Matchers.any
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.times
+import static org.mockito.Mockito.verify
+import static org.mockito.Mockito.when
+
+/**
+ * Tests for {@link BulkIngester}.
+ */
+class BulkIngesterTest
+extends TestSupport
+{
+  private BlobStore blobStore
+
+  private List<StorageTx> txs
+
+  private List<String> written
+
+  private Set<String> failing
+
+  private List<StorageTx> committed
+
+  @Before
+  void setUp() {
+    blobStore = mock(BlobStore)
+    when(blobStore.create(any(InputStream), any(Map))).thenAnswer(new Answer<Blob>() {
+      @Override
+      Blob answer(final InvocationOnMock invocation) {
+        String content = ((InputStream) invocation.arguments[0]).text
+        Blob blob = mock(Blob)
+        when(blob.getId()).thenReturn(new BlobId('blob' + content.replace('/', '-')))
+        return blob
+      }
+    })
+    txs = []
+    written = Collections.synchronizedList([])
+    failing = [] as Set
+    committed = []
+  }
+
+  private BulkIngester ingester(int batchSize) {
+    Supplier<StorageTx> txSupplier = new Supplier<StorageTx>() {
+      @Override
+      StorageTx get() {
+        StorageTx tx = mock(StorageTx)
+        txs << tx
+        return tx
+      }
+    }
+    IngestWriter writer = new IngestWriter() {
+      @Override
+      void write(final StorageTx tx, final IngestItem item, final AssetBlob blob) {
+        if (failing.contains(item.path)) {
+          throw new IllegalStateException(item.path)
+        }
+        written << item.path
+      }
+
+      @Override
+      void committed(final StorageTx tx) {
+        committed << tx
+      }
+    }
+    return new BulkIngester(blobStore, 'test', txSupplier, [HashAlgorithm.SHA1], writer, batchSize, 2)
+  }
+
+  private static Iterator<IngestItem> items(String... paths) {
+    return paths.collect { String path ->
+      new IngestItem() {
+        @Override
+        String getPath() {
+          return path
+        }
+
+        @Override
+        InputStream openInputStream() {
+          return new ByteArrayInputStream(path.bytes)
+        }
+
+        @Override
+        String getContentType() {
+          return null
+        }
+      }
+    }.iterator()
+  }
+
+  @Test
+  void 'items are committed in batches'() {
+    assert ingester(2).ingest(items('/a', '/b', '/c', '/d', '/e')) == 5
+    assert written == ['/a', '/b', '/c', '/d', '/e']
+    assert txs.size() == 3
+    txs.each { verify(it).commit() }
+    assert committed == txs
+    verify(blobStore, times(5)).create(any(InputStream), any(Map))
+  }
+
+  @Test
+  void 'failing batch is retried item by item'() {
+    failing << '/b'
+    assert ingester(3).ingest(items('/a', '/b', '/c')) == 2
+    assert written.containsAll(['/a', '/c'])
+    // one failed batch transaction, then one per item
+    assert txs.size() == 4
+    ArgumentCaptor<BlobId> deleted = ArgumentCaptor.forClass(BlobId)
+    verify(blobStore, times(1)).delete(deleted.capture())
+    assert deleted.value.asUniqueString() == 'blob-b'
+    // only the transactions of /a and /c were committed
+    assert committed == [txs[1], txs[3]]
+  }
+
+  @Test
+  void 'nothing to import'() {
+    assert ingester(2).ingest(items()) == 0
+    assert txs.empty
+  }
+}
@@ -14,7 +14,10 @@ package org.sonatype.nexus.repository.storage
 
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx
 import org.junit.Test
+import org.mockito.InOrder
 import org.mockito.Mock
+import org.mockito.invocation.InvocationOnMock
+import org.mockito.stubbing.Answer
 import org.sonatype.nexus.blobstore.api.BlobRef
 import org.sonatype.nexus.common.collect.NestedAttributesMap
 import org.sonatype.nexus.common.hash.HashAlgorithm
@@ -24,6 +27,9 @@ import org.sonatype.sisu.litmus.testsupport.TestSupport
 import static org.hamcrest.MatcherAssert.assertThat
 import static org.mockito.Matchers.any
 import static org.mockito.Matchers.eq
+import static org.mockito.Mockito.doAnswer
+import static org.mockito.Mockito.doThrow
+import static org.mockito.Mockito.inOrder
 import static org.mockito.Mockito.mock
 import static org.mockito.Mockito.never
 import static org.mockito.Mockito.times
@@ -296,4 +302,117 @@ extends TestSupport
     verify(asset, times(1)).blobRef(newBlobRef)
   }
 
+  /**
+   * Hook recording copies of the reported changes, as the reported collections are only valid during the call.
+   */
+  private StorageTxHook recordingHook(final List<List<Collection<Asset>>> commits) {
+    StorageTxHook hook = mock(StorageTxHook)
+    doAnswer(new Answer<Void>() {
+      @Override
+      Void answer(final InvocationOnMock invocation) {
+        commits << invocation.arguments.collect { new ArrayList<Asset>((Collection<Asset>) it) }
+        return null
+      }
+    }).when(hook).postCommit(any(Collection), any(Collection), any(Collection))
+    return hook
+  }
+
+  /**
+   * Given:
+   * - a new asset, an updated asset and a deleted asset
+   * When:
+   * - transaction is committed
+   * Then:
+   * - changes are reported to the hook once, after database and blobs committed
+   */
+  @Test
+  void 'asset changes are reported after commit'() {
+    List<List<Collection<Asset>>> commits = []
+    StorageTxHook hook = recordingHook(commits)
+    def created = mock(Asset)
+    def updated = mock(Asset)
+    when(updated.isPersisted()).thenReturn(true)
+    def deleted = mock(Asset)
+    def underTest = new StorageTxImpl(blobTx, db, bucket, WritePolicy.ALLOW, bucketEntityAdapter, componentEntityAdapter, assetEntityAdapter, hook)
+    underTest.saveAsset(created)
+    underTest.saveAsset(updated)
+    underTest.deleteAsset(deleted)
+    underTest.commit()
+
+    InOrder order = inOrder(db, blobTx, hook)
+    order.verify(db).commit()
+    order.verify(blobTx).commit()
+    order.verify(hook).postCommit(any(Collection), any(Collection), any(Collection))
+    assert commits == [[[created], [updated], [deleted]]]
+  }
+
+  /**
+   * Given:
+   * - a new asset
+   * When:
+   * - transaction is rolled back, then closed
+   * Then:
+   * - changes are not reported to the hook
+   */
+  @Test
+  void 'asset changes are not reported on rollback'() {
+    List<List<Collection<Asset>>> commits = []
+    StorageTxHook hook = recordingHook(commits)
+    def underTest = new StorageTxImpl(blobTx, db, bucket, WritePolicy.ALLOW, bucketEntityAdapter, componentEntityAdapter, assetEntityAdapter, hook)
+    underTest.saveAsset(mock(Asset))
+    underTest.rollback()
+    underTest.close()
+    verify(hook, never()).postCommit(any(Collection), any(Collection), any(Collection))
+    assert commits.isEmpty()
+  }
+
+  /**
+   * Given:
+   * - a new asset
+   * When:
+   * - database commit fails
+   * Then:
+   * - changes are not reported to the hook
+   */
+  @Test
+  void 'asset changes are not reported when commit fails'() {
+    List<List<Collection<Asset>>> commits = []
+    StorageTxHook hook = recordingHook(commits)
+    doThrow(new IllegalStateException('conflict')).when(db).commit()
+    def underTest = new StorageTxImpl(blobTx, db, bucket, WritePolicy.ALLOW, bucketEntityAdapter, componentEntityAdapter, assetEntityAdapter, hook)
+    underTest.saveAsset(mock(Asset))
+    try {
+      underTest.commit()
+      assertThat 'Expected IllegalStateException', false
+    }
+    catch (IllegalStateException e) {}
+    verify(hook, never()).postCommit(any(Collection), any(Collection), any(Collection))
+    assert commits.isEmpty()
+  }
+
+  /**
+   * Given:
+   * - an asset created and deleted again, and a later commit of another asset
+   * When:
+   * - transaction is committed twice
+   * Then:
+   * - the created and deleted asset is not reported
+   * - each commit reports only the changes since the previous one
+   */
+  @Test
+  void 'asset changes are reported per commit'() {
+    List<List<Collection<Asset>>> commits = []
+    StorageTxHook hook = recordingHook(commits)
+    def discarded = mock(Asset)
+    def first = mock(Asset)
+    def second = mock(Asset)
+    def underTest = new StorageTxImpl(blobTx, db, bucket, WritePolicy.ALLOW, bucketEntityAdapter, componentEntityAdapter, assetEntityAdapter, hook)
+    underTest.saveAsset(discarded)
+    underTest.deleteAsset(discarded)
+    underTest.saveAsset(first)
+    underTest.commit()
+    underTest.saveAsset(second)
+    underTest.commit()
+    assert commits == [[[first], [], []], [[second], [], []]]
+  }
 }
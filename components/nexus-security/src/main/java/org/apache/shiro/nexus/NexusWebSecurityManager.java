@@ -18,10 +18,13 @@ import javax.inject.Provider;
 
 import org.sonatype.nexus.security.UserIdMdcHelper;
 import org.sonatype.nexus.security.authc.AuthenticationEvent;
+import org.sonatype.nexus.security.authc.CredentialsVerificationCache;
 import org.sonatype.sisu.goodies.eventbus.EventBus;
 
 import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.Authenticator;
 import org.apache.shiro.subject.Subject;
 import org.apache.shiro.web.mgt.DefaultWebSecurityManager;
 import org.apache.shiro.web.mgt.WebSecurityManager;
@@ -42,9 +45,30 @@ public class NexusWebSecurityManager
 
   private final Provider<EventBus> eventBus;
 
+  private final Provider<CredentialsVerificationCache> verificationCache;
+
   @Inject
-  public NexusWebSecurityManager(final Provider<EventBus> eventBus) {
+  public NexusWebSecurityManager(final Provider<EventBus> eventBus,
+                                 final Provider<CredentialsVerificationCache> verificationCache)
+  {
     this.eventBus = checkNotNull(eventBus);
+    this.verificationCache = checkNotNull(verificationCache);
+  }
+
+  /**
+   * Skip verifying credentials which were verified recently, see {@link CredentialsVerificationCache}.
+   */
+  @Override
+  public AuthenticationInfo authenticate(final AuthenticationToken token) throws AuthenticationException {
+    return verificationCache.get().authenticate(token, new Authenticator()
+    {
+      @Override
+      public AuthenticationInfo authenticate(final AuthenticationToken authenticationToken)
+          throws AuthenticationException
+      {
+        return NexusWebSecurityManager.super.authenticate(authenticationToken);
+      }
+    });
   }
 
   /**
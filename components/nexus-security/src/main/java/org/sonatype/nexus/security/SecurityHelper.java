@@ -15,9 +15,11 @@ package org.sonatype.nexus.security;
 
 import java.util.Arrays;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.sonatype.nexus.security.authz.AuthorizationDecisionCache;
 import org.sonatype.sisu.goodies.common.ComponentSupport;
 
 import org.apache.shiro.SecurityUtils;
@@ -43,6 +45,13 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class SecurityHelper
     extends ComponentSupport
 {
+  private final AuthorizationDecisionCache decisionCache;
+
+  @Inject
+  public SecurityHelper(final AuthorizationDecisionCache decisionCache) {
+    this.decisionCache = checkNotNull(decisionCache);
+  }
+
   /**
    * Returns current security manager.
    */
@@ -68,7 +77,12 @@ public class SecurityHelper
     if (log.isTraceEnabled()) {
       log.trace("Ensuring subject '{}' has permissions: {}", subject.getPrincipal(), Arrays.toString(permissions));
     }
-    subject.checkPermissions(Arrays.asList(permissions));
+    for (Permission permission : permissions) {
+      if (!decisionCache.isPermitted(subject, permission)) {
+        // let the subject raise the exception it would without the cache (unauthenticated vs unauthorized)
+        subject.checkPermission(permission);
+      }
+    }
   }
 
   /**
@@ -92,7 +106,7 @@ public class SecurityHelper
           subject.getPrincipal(), Arrays.toString(permissions));
     }
     for (Permission permission : permissions) {
-      if (subject.isPermitted(permission)) {
+      if (decisionCache.isPermitted(subject, permission)) {
         if (trace) {
           log.trace("Subject '{}' has permission: {}", subject.getPrincipal(), permission);
         }
@@ -127,7 +141,7 @@ public class SecurityHelper
           subject.getPrincipal(), Arrays.toString(permissions));
     }
     for (Permission permission : permissions) {
-      if (!subject.isPermitted(permission)) {
+      if (!decisionCache.isPermitted(subject, permission)) {
         if (trace) {
           log.trace("Subject '{}' missing permission: {}", subject.getPrincipal(), permission);
         }
@@ -0,0 +1,201 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.security.authc;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.security.SecurityConfigurationChanged;
+import org.sonatype.nexus.security.UserPrincipalsExpired;
+import org.sonatype.sisu.goodies.common.ComponentSupport;
+import org.sonatype.sisu.goodies.common.Time;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.Authenticator;
+import org.apache.shiro.authc.UsernamePasswordToken;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Cache of successfully verified credentials.
+ *
+ * Verifying a password means hashing it (SHA-512, 1024 iterations for local users) or asking a remote system, which
+ * dominates the cost of requests from build tools sending the same few credentials over and over. Successful
+ * authentications of {@link UsernamePasswordToken}s and {@link NexusApiKeyAuthenticationToken}s are remembered
+ * for a short time, keyed by a keyed HMAC (HmacSHA256, random per-process key) of the presented principal and
+ * secret, so neither the secret nor a reusable hash of it is kept in memory.
+ *
+ * Failed authentications are never cached. The cache is dropped on {@link UserPrincipalsExpired} (user updated,
+ * deleted or password changed) and {@link SecurityConfigurationChanged}.
+ *
+ * @since 3.0
+ */
+@Named
+@Singleton
+public class CredentialsVerificationCache
+    extends ComponentSupport
+{
+  private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+  private final SecretKeySpec secretKey;
+
+  private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>()
+  {
+    @Override
+    protected Mac initialValue() {
+      try {
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(secretKey);
+        return mac;
+      }
+      catch (GeneralSecurityException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  };
+
+  private final Cache<HashCode, AuthenticationInfo> cache;
+
+  /**
+   * Bumped on every invalidation, authentications started under an older generation are not cached.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  @Inject
+  public CredentialsVerificationCache(final EventBus eventBus,
+                                      @Named("${nexus.security.authc.cache.maxEntries:-1000}") final int maxEntries,
+                                      @Named("${nexus.security.authc.cache.timeToLive:-1m}") final Time timeToLive)
+  {
+    checkArgument(maxEntries > 0);
+    checkNotNull(timeToLive);
+    byte[] key = new byte[32];
+    new SecureRandom().nextBytes(key);
+    this.secretKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(timeToLive.toMillis(), TimeUnit.MILLISECONDS)
+        .build();
+    eventBus.register(this);
+  }
+
+  /**
+   * Returns the cached authentication of the token's credentials, or authenticates them with the given authenticator
+   * and caches the result when successful.
+   */
+  public AuthenticationInfo authenticate(final AuthenticationToken token, final Authenticator authenticator)
+      throws AuthenticationException
+  {
+    checkNotNull(token);
+    checkNotNull(authenticator);
+
+    // computed before authenticating, as realms may replace the principal of the token
+    HashCode key = key(token);
+    if (key == null) {
+      return authenticator.authenticate(token);
+    }
+
+    AuthenticationInfo info = cache.getIfPresent(key);
+    if (info != null) {
+      log.trace("Using cached authentication of: {}", token.getPrincipal());
+      if (token instanceof NexusApiKeyAuthenticationToken) {
+        // same as the realm verifying the key would do
+        ((NexusApiKeyAuthenticationToken) token).setPrincipal(info.getPrincipals().getPrimaryPrincipal());
+      }
+      return info;
+    }
+
+    final long expectedGeneration = generation.get();
+    info = authenticator.authenticate(token);
+    if (info != null && info.getPrincipals() != null && !info.getPrincipals().isEmpty()
+        && generation.get() == expectedGeneration) {
+      cache.put(key, info);
+      // credentials changed meanwhile, the authentication might have been made with the old ones
+      if (generation.get() != expectedGeneration) {
+        cache.invalidate(key);
+      }
+    }
+    return info;
+  }
+
+  /**
+   * Drops all cached authentications.
+   */
+  public void invalidate() {
+    generation.incrementAndGet();
+    cache.invalidateAll();
+    log.trace("Cache invalidated");
+  }
+
+  @VisibleForTesting
+  long size() {
+    return cache.size();
+  }
+
+  @AllowConcurrentEvents
+  @Subscribe
+  public void on(final UserPrincipalsExpired event) {
+    invalidate();
+  }
+
+  @AllowConcurrentEvents
+  @Subscribe
+  public void on(final SecurityConfigurationChanged event) {
+    invalidate();
+  }
+
+  /**
+   * Returns the HMAC of the token type, principal and secret, or {@code null} if the token is not cacheable.
+   */
+  @Nullable
+  private HashCode key(final AuthenticationToken token) {
+    if (!(token instanceof UsernamePasswordToken || token instanceof NexusApiKeyAuthenticationToken)
+        || token.getPrincipal() == null || !(token.getCredentials() instanceof char[])) {
+      return null;
+    }
+    Mac mac = macs.get();
+    mac.update(token.getClass().getName().getBytes(StandardCharsets.UTF_8));
+    mac.update((byte) 0);
+    mac.update(token.getPrincipal().toString().getBytes(StandardCharsets.UTF_8));
+    mac.update((byte) 0);
+    ByteBuffer secret = StandardCharsets.UTF_8.encode(CharBuffer.wrap((char[]) token.getCredentials()));
+    mac.update(secret);
+    if (secret.hasArray()) {
+      // do not leave the encoded secret around
+      Arrays.fill(secret.array(), (byte) 0);
+    }
+    return HashCode.fromBytes(mac.doFinal());
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.security.authz;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.security.SecurityConfigurationChanged;
+import org.sonatype.nexus.security.UserPrincipalsExpired;
+import org.sonatype.sisu.goodies.common.ComponentSupport;
+import org.sonatype.sisu.goodies.common.Time;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.RolePermissionResolver;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.Subject;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Per-principal cache of authorization decisions.
+ *
+ * Resolving a permission walks the role graph of every realm of the subject; for the same principals and permission
+ * the answer only changes when the security configuration does, so decisions are remembered per principal collection
+ * and the whole cache is dropped on {@link AuthorizationConfigurationChanged}, {@link SecurityConfigurationChanged}
+ * and {@link UserPrincipalsExpired}. Entries also expire after a while, as realms backed by external systems (LDAP
+ * for example) do not signal role changes.
+ *
+ * Decisions are also tied to the version of the {@link VersionedRolePermissionResolver}: the events may reach this
+ * cache before the resolver, and a decision made in between from outdated role permissions must not be kept.
+ *
+ * Only {@link WildcardPermission}s are cached, as their equality is defined by their parts; subjects without
+ * principals are never cached.
+ *
+ * @since 3.0
+ */
+@Named
+@Singleton
+public class AuthorizationDecisionCache
+    extends ComponentSupport
+{
+  private final int maxDecisionsPerPrincipal;
+
+  private final Cache<PrincipalCollection, Decisions> cache;
+
+  /**
+   * Bumped on every invalidation, decisions computed under an older generation are ignored.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  private final Provider<RolePermissionResolver> rolePermissionResolver;
+
+  @Inject
+  public AuthorizationDecisionCache(final EventBus eventBus,
+                                    final Provider<RolePermissionResolver> rolePermissionResolver,
+                                    @Named("${nexus.security.authz.cache.maxPrincipals:-1000}") final int maxPrincipals,
+                                    @Named("${nexus.security.authz.cache.maxDecisions:-1000}") final int maxDecisions,
+                                    @Named("${nexus.security.authz.cache.timeToLive:-5m}") final Time timeToLive)
+  {
+    checkArgument(maxPrincipals > 0);
+    checkArgument(maxDecisions > 0);
+    checkNotNull(timeToLive);
+    this.rolePermissionResolver = checkNotNull(rolePermissionResolver);
+    this.maxDecisionsPerPrincipal = maxDecisions;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maxPrincipals)
+        .expireAfterWrite(timeToLive.toMillis(), TimeUnit.MILLISECONDS)
+        .build();
+    eventBus.register(this);
+  }
+
+  /**
+   * Returns {@code true} if the subject has the given permission, answering from the cache when possible.
+   */
+  public boolean isPermitted(final Subject subject, final Permission permission) {
+    checkNotNull(subject);
+    checkNotNull(permission);
+
+    final PrincipalCollection principals = subject.getPrincipals();
+    if (principals == null || principals.isEmpty() || !(permission instanceof WildcardPermission)) {
+      return subject.isPermitted(permission);
+    }
+
+    final long currentGeneration = generation.get();
+    final long currentVersion = rolePermissionsVersion();
+    Decisions decisions = cache.getIfPresent(principals);
+    if (decisions == null || decisions.generation != currentGeneration || decisions.version != currentVersion) {
+      decisions = new Decisions(currentGeneration, currentVersion);
+      cache.put(principals, decisions);
+    }
+
+    Boolean permitted = decisions.permitted.get(permission);
+    if (permitted == null) {
+      permitted = subject.isPermitted(permission);
+      if (decisions.permitted.size() < maxDecisionsPerPrincipal) {
+        decisions.permitted.put(permission, permitted);
+      }
+    }
+    return permitted;
+  }
+
+  private long rolePermissionsVersion() {
+    RolePermissionResolver resolver = rolePermissionResolver.get();
+    return resolver instanceof VersionedRolePermissionResolver
+        ? ((VersionedRolePermissionResolver) resolver).getVersion()
+        : 0L;
+  }
+
+  /**
+   * Drops all cached decisions.
+   */
+  public void invalidate() {
+    generation.incrementAndGet();
+    cache.invalidateAll();
+    log.trace("Cache invalidated");
+  }
+
+  @VisibleForTesting
+  long size() {
+    return cache.size();
+  }
+
+  @AllowConcurrentEvents
+  @Subscribe
+  public void on(final AuthorizationConfigurationChanged event) {
+    invalidate();
+  }
+
+  @AllowConcurrentEvents
+  @Subscribe
+  public void on(final SecurityConfigurationChanged event) {
+    invalidate();
+  }
+
+  @AllowConcurrentEvents
+  @Subscribe
+  public void on(final UserPrincipalsExpired event) {
+    invalidate();
+  }
+
+  /**
+   * Decisions of a principal collection, valid for a single cache generation and role permissions version.
+   */
+  private static class Decisions
+  {
+    private final long generation;
+
+    private final long version;
+
+    private final ConcurrentMap<Permission, Boolean> permitted = Maps.newConcurrentMap();
+
+    private Decisions(final long generation, final long version) {
+      this.generation = generation;
+      this.version = version;
+    }
+  }
+}
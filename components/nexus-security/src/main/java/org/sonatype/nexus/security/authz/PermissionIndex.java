@@ -0,0 +1,185 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.security.authz;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.shiro.authz.Permission;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Compiled set of granted permissions.
+ *
+ * Granted {@link WildcardPermission2}s are arranged in a trie over their parts (domain, format, repository, action
+ * and so on), so checking whether a requested {@link WildcardPermission2} is implied costs a walk as deep as the
+ * requested permission instead of an {@link Permission#implies} call per granted permission. Wildcard parts get
+ * their own branch, so a lookup follows at most the exact and the wildcard child at each level.
+ *
+ * Other permission types, and requests naming several values in one part, fall back to the linear scan.
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @since 3.0
+ */
+public class PermissionIndex
+{
+  private static final String WILDCARD = "*";
+
+  private final Node root = new Node();
+
+  private final List<Permission> permissions;
+
+  private final List<Permission> unindexed;
+
+  private PermissionIndex(final Collection<? extends Permission> granted) {
+    this.permissions = ImmutableList.copyOf(granted);
+    List<Permission> others = Lists.newArrayList();
+    for (Permission permission : permissions) {
+      if (permission instanceof WildcardPermission2) {
+        insert(root, ((WildcardPermission2) permission).parts(), 0);
+      }
+      else {
+        others.add(permission);
+      }
+    }
+    this.unindexed = ImmutableList.copyOf(others);
+  }
+
+  /**
+   * Compiles the given granted permissions.
+   */
+  public static PermissionIndex compile(final Collection<? extends Permission> granted) {
+    return new PermissionIndex(checkNotNull(granted));
+  }
+
+  /**
+   * Returns {@code true} if any granted permission implies the requested one.
+   */
+  public boolean implies(final Permission requested) {
+    checkNotNull(requested);
+    if (requested instanceof WildcardPermission2) {
+      List<Set<String>> parts = ((WildcardPermission2) requested).parts();
+      if (singleValued(parts)) {
+        if (lookup(root, parts, 0)) {
+          return true;
+        }
+        for (Permission permission : unindexed) {
+          if (permission.implies(requested)) {
+            return true;
+          }
+        }
+        return false;
+      }
+    }
+    for (Permission permission : permissions) {
+      if (permission.implies(requested)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean singleValued(final List<Set<String>> parts) {
+    for (Set<String> part : parts) {
+      if (part.size() != 1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds the parts of a granted permission from the given depth on; parts naming several values are added under
+   * each of them.
+   */
+  private static void insert(final Node node, final List<Set<String>> parts, final int depth) {
+    if (!node.impliesRest && restIsWildcard(parts, depth)) {
+      node.impliesRest = true;
+    }
+    if (depth == parts.size()) {
+      node.terminal = true;
+      return;
+    }
+    Set<String> part = parts.get(depth);
+    if (part.contains(WILDCARD)) {
+      if (node.wildcard == null) {
+        node.wildcard = new Node();
+      }
+      insert(node.wildcard, parts, depth + 1);
+    }
+    else {
+      for (String value : part) {
+        Node child = node.children.get(value);
+        if (child == null) {
+          child = new Node();
+          node.children.put(value, child);
+        }
+        insert(child, parts, depth + 1);
+      }
+    }
+  }
+
+  private static boolean restIsWildcard(final List<Set<String>> parts, final int depth) {
+    for (int i = depth; i < parts.size(); i++) {
+      if (!parts.get(i).contains(WILDCARD)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Mirrors {@link org.apache.shiro.authz.permission.WildcardPermission#implies}: a granted permission with fewer
+   * parts implies all longer ones, and extra granted parts must be wildcards.
+   */
+  private static boolean lookup(final Node node, final List<Set<String>> parts, final int depth) {
+    if (node.terminal) {
+      return true;
+    }
+    if (depth == parts.size()) {
+      return node.impliesRest;
+    }
+    Node child = node.children.get(parts.get(depth).iterator().next());
+    if (child != null && lookup(child, parts, depth + 1)) {
+      return true;
+    }
+    return node.wildcard != null && lookup(node.wildcard, parts, depth + 1);
+  }
+
+  /**
+   * Trie node, reached by the values of the parts above it.
+   */
+  private static class Node
+  {
+    private final Map<String, Node> children = Maps.newHashMap();
+
+    private Node wildcard;
+
+    /**
+     * A granted permission ends here, so it implies every request reaching this node.
+     */
+    private boolean terminal;
+
+    /**
+     * A granted permission continues with wildcards only, so it implies requests ending here.
+     */
+    private boolean impliesRest;
+  }
+}
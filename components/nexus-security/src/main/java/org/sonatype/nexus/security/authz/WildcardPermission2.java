@@ -12,23 +12,44 @@
  */
 package org.sonatype.nexus.security.authz;
 
+import java.util.List;
+import java.util.Set;
+
 import org.apache.shiro.authz.permission.WildcardPermission;
 
 /**
  * {@link WildcardPermission} which caches {@link #hashCode} for improved performance.
  *
+ * Its parts are visible to {@link PermissionIndex}, so it can be matched without a linear scan.
+ *
  * @since 3.0
  */
 public class WildcardPermission2
   extends WildcardPermission
 {
-  private final int cachedHash;
+  private int cachedHash;
 
   public WildcardPermission2(final String wildcardString) {
     super(wildcardString);
+  }
+
+  /**
+   * For sub-classes calling {@link #setParts(String)} themselves.
+   */
+  protected WildcardPermission2() {
+    super();
+  }
+
+  @Override
+  protected void setParts(final String wildcardString, final boolean caseSensitive) {
+    super.setParts(wildcardString, caseSensitive);
     this.cachedHash = super.hashCode();
   }
 
+  List<Set<String>> parts() {
+    return getParts();
+  }
+
   @Override
   public int hashCode() {
     return cachedHash;
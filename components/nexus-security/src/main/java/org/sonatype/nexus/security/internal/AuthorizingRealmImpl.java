@@ -16,24 +16,38 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.sonatype.nexus.security.SecurityConfigurationChanged;
 import org.sonatype.nexus.security.SecuritySystem;
+import org.sonatype.nexus.security.authz.AuthorizationConfigurationChanged;
+import org.sonatype.nexus.security.authz.PermissionIndex;
+import org.sonatype.nexus.security.authz.VersionedRolePermissionResolver;
 import org.sonatype.nexus.security.role.RoleIdentifier;
 import org.sonatype.nexus.security.user.RoleMappingUserManager;
 import org.sonatype.nexus.security.user.UserManager;
 import org.sonatype.nexus.security.user.UserNotFoundException;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
 import org.apache.shiro.authc.credential.Sha1CredentialsMatcher;
 import org.apache.shiro.authz.AuthorizationException;
 import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
 import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.authz.permission.RolePermissionResolver;
 import org.apache.shiro.realm.AuthorizingRealm;
 import org.apache.shiro.realm.Realm;
 import org.apache.shiro.subject.PrincipalCollection;
@@ -63,20 +77,113 @@ public class AuthorizingRealmImpl
 
   private final SecuritySystem securitySystem;
 
+  /**
+   * Role-ids to compiled permissions of those roles, rebuilt once per security configuration change. Entries are also
+   * tied to the version of a {@link VersionedRolePermissionResolver}, as it may be invalidated after this realm and
+   * an index compiled in between would be built from its outdated permissions.
+   */
+  private final Cache<Set<String>, CompiledRoles> permissionIndexes = CacheBuilder.newBuilder()
+      .maximumSize(1000)
+      .build();
+
+  private final AtomicLong generation = new AtomicLong();
+
   @Inject
   public AuthorizingRealmImpl(final UserManager userManager,
                               final SecuritySystem securitySystem,
-                              final Map<String, UserManager> userManagerMap)
+                              final Map<String, UserManager> userManagerMap,
+                              final EventBus eventBus)
   {
     this.userManager = userManager;
     this.securitySystem = securitySystem;
     this.userManagerMap = userManagerMap;
+    eventBus.register(this);
     setCredentialsMatcher(new Sha1CredentialsMatcher());
     setName(NAME);
     setAuthenticationCachingEnabled(false); // we authz only, no authc done by this realm
     setAuthorizationCachingEnabled(true);
   }
 
+  @AllowConcurrentEvents
+  @Subscribe
+  public void on(final AuthorizationConfigurationChanged event) {
+    invalidatePermissionIndexes();
+  }
+
+  @AllowConcurrentEvents
+  @Subscribe
+  public void on(final SecurityConfigurationChanged event) {
+    invalidatePermissionIndexes();
+  }
+
+  private void invalidatePermissionIndexes() {
+    generation.incrementAndGet();
+    permissionIndexes.invalidateAll();
+  }
+
+  /**
+   * Checks the permission against the compiled permissions of the subject's roles, instead of resolving and scanning
+   * every role permission per check.
+   */
+  @Override
+  public boolean isPermitted(final PrincipalCollection principals, final Permission permission) {
+    AuthorizationInfo info = getAuthorizationInfo(principals);
+    if (info == null) {
+      return false;
+    }
+    return permissionIndex(info).implies(permission);
+  }
+
+  private PermissionIndex permissionIndex(final AuthorizationInfo info) {
+    Set<String> roles = info.getRoles() == null ? ImmutableSet.<String>of() : ImmutableSet.copyOf(info.getRoles());
+    if (hasDirectPermissions(info)) {
+      // not produced by this realm, so not worth caching
+      return compile(info, roles);
+    }
+    long currentGeneration = generation.get();
+    long currentVersion = rolePermissionsVersion();
+    CompiledRoles compiled = permissionIndexes.getIfPresent(roles);
+    if (compiled == null || compiled.generation != currentGeneration || compiled.version != currentVersion) {
+      compiled = new CompiledRoles(currentGeneration, currentVersion, compile(info, roles));
+      permissionIndexes.put(roles, compiled);
+    }
+    return compiled.index;
+  }
+
+  private long rolePermissionsVersion() {
+    RolePermissionResolver resolver = getRolePermissionResolver();
+    return resolver instanceof VersionedRolePermissionResolver
+        ? ((VersionedRolePermissionResolver) resolver).getVersion()
+        : 0L;
+  }
+
+  private static boolean hasDirectPermissions(final AuthorizationInfo info) {
+    return (info.getObjectPermissions() != null && !info.getObjectPermissions().isEmpty())
+        || (info.getStringPermissions() != null && !info.getStringPermissions().isEmpty());
+  }
+
+  private PermissionIndex compile(final AuthorizationInfo info, final Set<String> roles) {
+    Collection<Permission> permissions = Lists.newArrayList();
+    if (info.getObjectPermissions() != null) {
+      permissions.addAll(info.getObjectPermissions());
+    }
+    if (info.getStringPermissions() != null) {
+      for (String permission : info.getStringPermissions()) {
+        permissions.add(getPermissionResolver().resolvePermission(permission));
+      }
+    }
+    RolePermissionResolver resolver = getRolePermissionResolver();
+    if (resolver != null) {
+      for (String role : roles) {
+        Collection<Permission> rolePermissions = resolver.resolvePermissionsInRole(role);
+        if (rolePermissions != null) {
+          permissions.addAll(rolePermissions);
+        }
+      }
+    }
+    return PermissionIndex.compile(permissions);
+  }
+
   @Override
   public boolean supports(AuthenticationToken token) {
     return false;
@@ -168,4 +275,19 @@ public class AuthorizingRealmImpl
       realmNames.add("default");
     }
   }
+
+  private static class CompiledRoles
+  {
+    private final long generation;
+
+    private final long version;
+
+    private final PermissionIndex index;
+
+    private CompiledRoles(final long generation, final long version, final PermissionIndex index) {
+      this.generation = generation;
+      this.version = version;
+      this.index = index;
+    }
+  }
 }
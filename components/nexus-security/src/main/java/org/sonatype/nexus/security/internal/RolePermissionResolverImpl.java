@@ -18,6 +18,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -26,6 +27,7 @@ import javax.inject.Singleton;
 
 import org.sonatype.nexus.security.SecurityConfigurationChanged;
 import org.sonatype.nexus.security.authz.AuthorizationConfigurationChanged;
+import org.sonatype.nexus.security.authz.VersionedRolePermissionResolver;
 import org.sonatype.nexus.security.config.CPrivilege;
 import org.sonatype.nexus.security.config.CRole;
 import org.sonatype.nexus.security.config.SecurityConfigurationManager;
@@ -52,7 +54,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 @Singleton
 public class RolePermissionResolverImpl
     extends ComponentSupport
-    implements RolePermissionResolver
+    implements VersionedRolePermissionResolver
 {
   private final SecurityConfigurationManager configuration;
 
@@ -68,6 +70,11 @@ public class RolePermissionResolverImpl
    */
   private final Map<String, Collection<Permission>> rolePermissionsCache = new MapMaker().weakValues().makeMap();
 
+  /**
+   * Incremented before and after the caches are cleared, see {@link #getVersion()}.
+   */
+  private final AtomicLong version = new AtomicLong();
+
   @Inject
   public RolePermissionResolverImpl(final SecurityConfigurationManager configuration,
                                     final List<PrivilegeDescriptor> privilegeDescriptors,
@@ -82,11 +89,19 @@ public class RolePermissionResolverImpl
    * Invalidate caches.
    */
   private void invalidate() {
+    // resolutions overlapping the clear must not be cached, here or by callers
+    version.incrementAndGet();
     permissionsCache.clear();
     rolePermissionsCache.clear();
+    version.incrementAndGet();
     log.trace("Cache invalidated");
   }
 
+  @Override
+  public long getVersion() {
+    return version.get();
+  }
+
   @AllowConcurrentEvents
   @Subscribe
   public void on(final AuthorizationConfigurationChanged event) {
@@ -103,6 +118,7 @@ public class RolePermissionResolverImpl
   public Collection<Permission> resolvePermissionsInRole(final String roleString) {
     checkNotNull(roleString);
 
+    final long expectedVersion = version.get();
     final Set<Permission> permissions = Sets.newLinkedHashSet();
     final LinkedList<String> rolesToProcess = Lists.newLinkedList();
     final Set<String> processedRoleIds = Sets.newLinkedHashSet();
@@ -128,7 +144,7 @@ public class RolePermissionResolverImpl
 
           // add the permissions this role has
           for (String privilegeId : role.getPrivileges()) {
-            Permission permission = permission(privilegeId);
+            Permission permission = permission(privilegeId, expectedVersion);
             if (permission != null) {
               permissions.add(permission);
             }
@@ -141,7 +157,7 @@ public class RolePermissionResolverImpl
     }
 
     // cache result of (non-trivial) computation
-    rolePermissionsCache.put(roleString, permissions);
+    cache(rolePermissionsCache, roleString, permissions, expectedVersion);
 
     return permissions;
   }
@@ -163,11 +179,24 @@ public class RolePermissionResolverImpl
     return null;
   }
 
+  /**
+   * Caches the value unless the caches were invalidated since the given version was read, as it might then have been
+   * computed from the previous configuration.
+   */
+  private <V> void cache(final Map<String, V> cache, final String key, final V value, final long expectedVersion) {
+    if (version.get() == expectedVersion) {
+      cache.put(key, value);
+      if (version.get() != expectedVersion) {
+        cache.remove(key);
+      }
+    }
+  }
+
   /**
    * Returns the permission for the given privilege-id or {@code null}.
    */
   @Nullable
-  private Permission permission(final String privilegeId) {
+  private Permission permission(final String privilegeId, final long expectedVersion) {
     assert privilegeId != null;
 
     Permission permission = permissionsCache.get(privilegeId);
@@ -177,7 +206,7 @@ public class RolePermissionResolverImpl
         PrivilegeDescriptor descriptor = descriptor(privilege.getType());
         if (descriptor != null) {
           permission = descriptor.createPermission(privilege);
-          permissionsCache.put(privilegeId, permission);
+          cache(permissionsCache, privilegeId, permission, expectedVersion);
         }
       }
       catch (NoSuchPrivilegeException e) {
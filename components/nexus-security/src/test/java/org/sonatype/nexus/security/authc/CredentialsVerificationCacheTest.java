@@ -0,0 +1,129 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.security.authc;
+
+import org.sonatype.nexus.security.UserPrincipalsExpired;
+import org.sonatype.sisu.goodies.common.Time;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.Authenticator;
+import org.apache.shiro.authc.SimpleAuthenticationInfo;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link CredentialsVerificationCache}.
+ */
+public class CredentialsVerificationCacheTest
+    extends TestSupport
+{
+  @Mock
+  private EventBus eventBus;
+
+  @Mock
+  private Authenticator authenticator;
+
+  private final AuthenticationInfo info = new SimpleAuthenticationInfo("admin", "hash", "realm");
+
+  private CredentialsVerificationCache underTest;
+
+  @Before
+  public void setUp() {
+    underTest = new CredentialsVerificationCache(eventBus, 10, Time.minutes(1));
+    when(authenticator.authenticate(any(AuthenticationToken.class))).thenReturn(info);
+  }
+
+  @Test
+  public void sameCredentialsAreVerifiedOnce() {
+    assertThat(underTest.authenticate(new UsernamePasswordToken("admin", "secret"), authenticator),
+        sameInstance(info));
+    assertThat(underTest.authenticate(new UsernamePasswordToken("admin", "secret"), authenticator),
+        sameInstance(info));
+    verify(authenticator, times(1)).authenticate(any(AuthenticationToken.class));
+  }
+
+  @Test
+  public void differentSecretIsVerified() {
+    underTest.authenticate(new UsernamePasswordToken("admin", "secret"), authenticator);
+    underTest.authenticate(new UsernamePasswordToken("admin", "other"), authenticator);
+    underTest.authenticate(new UsernamePasswordToken("other", "secret"), authenticator);
+    verify(authenticator, times(3)).authenticate(any(AuthenticationToken.class));
+  }
+
+  @Test
+  public void failuresAreNotCached() {
+    UsernamePasswordToken token = new UsernamePasswordToken("admin", "wrong");
+    when(authenticator.authenticate(token)).thenThrow(new AuthenticationException("denied"));
+    for (int i = 0; i < 2; i++) {
+      try {
+        underTest.authenticate(token, authenticator);
+        fail();
+      }
+      catch (AuthenticationException e) {
+        // expected
+      }
+    }
+    verify(authenticator, times(2)).authenticate(token);
+    assertThat(underTest.size(), is(0L));
+  }
+
+  @Test
+  public void apiKeyTokenGetsPrincipalOfCachedAuthentication() {
+    underTest.authenticate(new NexusApiKeyAuthenticationToken("X-ApiKey", "key".toCharArray(), null), authenticator);
+    NexusApiKeyAuthenticationToken token = new NexusApiKeyAuthenticationToken("X-ApiKey", "key".toCharArray(), null);
+    underTest.authenticate(token, authenticator);
+    verify(authenticator, times(1)).authenticate(any(AuthenticationToken.class));
+    assertThat(token.getPrincipal(), is((Object) "admin"));
+  }
+
+  @Test
+  public void userChangesInvalidate() {
+    underTest.authenticate(new UsernamePasswordToken("admin", "secret"), authenticator);
+    underTest.on(new UserPrincipalsExpired("admin", "default"));
+    underTest.authenticate(new UsernamePasswordToken("admin", "secret"), authenticator);
+    verify(authenticator, times(2)).authenticate(any(AuthenticationToken.class));
+  }
+
+  @Test
+  public void authenticationRacingWithInvalidationIsNotCached() {
+    when(authenticator.authenticate(any(AuthenticationToken.class))).thenAnswer(new Answer<AuthenticationInfo>()
+    {
+      @Override
+      public AuthenticationInfo answer(final InvocationOnMock invocation) {
+        // password changed while the old one was being verified
+        underTest.invalidate();
+        return info;
+      }
+    });
+    assertThat(underTest.authenticate(new UsernamePasswordToken("admin", "secret"), authenticator),
+        sameInstance(info));
+    assertThat(underTest.size(), is(0L));
+  }
+}
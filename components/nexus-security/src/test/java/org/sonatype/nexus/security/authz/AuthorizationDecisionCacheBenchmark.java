@@ -0,0 +1,127 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.security.authz;
+
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.sisu.goodies.common.Time;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+
+import com.google.inject.util.Providers;
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.authz.permission.RolePermissionResolver;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.apache.shiro.mgt.DefaultSecurityManager;
+import org.apache.shiro.realm.AuthorizingRealm;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.apache.shiro.subject.Subject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * JMH benchmark of the authorization cost of a repository request, resolving the permission through the realm on
+ * every call versus answering from {@link AuthorizationDecisionCache}.
+ *
+ * The realm has authorization caching disabled and grants {@code permissions} wildcard permissions, approximating
+ * a role graph walk once the weakly referenced permission caches have been cleared.
+ *
+ * Not run as part of the build; launch {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AuthorizationDecisionCacheBenchmark
+{
+  @Param({"false", "true"})
+  public boolean cached;
+
+  @Param({"10", "200"})
+  public int permissions;
+
+  private Subject subject;
+
+  private Permission permission;
+
+  private AuthorizationDecisionCache decisionCache;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final int granted = permissions;
+    AuthorizingRealm realm = new AuthorizingRealm()
+    {
+      @Override
+      protected AuthenticationInfo doGetAuthenticationInfo(final AuthenticationToken token)
+          throws AuthenticationException
+      {
+        return null;
+      }
+
+      @Override
+      protected AuthorizationInfo doGetAuthorizationInfo(final PrincipalCollection principals) {
+        SimpleAuthorizationInfo info = new SimpleAuthorizationInfo();
+        for (int i = 0; i < granted; i++) {
+          info.addObjectPermission(new WildcardPermission("nexus:repository-view:maven2:repository-" + i + ":read"));
+        }
+        return info;
+      }
+    };
+    realm.setName("benchmark");
+    realm.setAuthorizationCachingEnabled(false);
+
+    DefaultSecurityManager securityManager = new DefaultSecurityManager(realm);
+    subject = new Subject.Builder(securityManager)
+        .principals(new SimplePrincipalCollection("anonymous", realm.getName()))
+        .authenticated(true)
+        .buildSubject();
+    // the last granted permission, so the realm has to look at all of them
+    permission = new WildcardPermission("nexus:repository-view:maven2:repository-" + (granted - 1) + ":read");
+    decisionCache = new AuthorizationDecisionCache(mock(EventBus.class),
+        Providers.<RolePermissionResolver>of(null), 1000, 1000, Time.minutes(5));
+  }
+
+  @Benchmark
+  public boolean isPermitted() {
+    if (cached) {
+      return decisionCache.isPermitted(subject, permission);
+    }
+    return subject.isPermitted(permission);
+  }
+
+  public static void main(final String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+        .include(AuthorizationDecisionCacheBenchmark.class.getSimpleName())
+        .forks(1)
+        .warmupIterations(3)
+        .measurementIterations(5)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.security.authz;
+
+import org.sonatype.nexus.security.SecurityConfigurationChanged;
+import org.sonatype.sisu.goodies.common.Time;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.inject.util.Providers;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.AllPermission;
+import org.apache.shiro.authz.permission.RolePermissionResolver;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.apache.shiro.subject.Subject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link AuthorizationDecisionCache}.
+ */
+public class AuthorizationDecisionCacheTest
+    extends TestSupport
+{
+  private static final Permission READ = new WildcardPermission("nexus:repository-view:maven2:central:read");
+
+  private static final Permission EDIT = new WildcardPermission("nexus:repository-view:maven2:central:edit");
+
+  @Mock
+  private EventBus eventBus;
+
+  @Mock
+  private Subject subject;
+
+  @Mock
+  private Subject anonymous;
+
+  @Mock
+  private VersionedRolePermissionResolver rolePermissionResolver;
+
+  private AuthorizationDecisionCache underTest;
+
+  @Before
+  public void setUp() {
+    underTest = new AuthorizationDecisionCache(eventBus,
+        Providers.<RolePermissionResolver>of(rolePermissionResolver), 10, 10, Time.minutes(5));
+    when(subject.getPrincipals()).thenReturn(new SimplePrincipalCollection("admin", "realm"));
+    when(subject.isPermitted(READ)).thenReturn(true);
+    when(subject.isPermitted(EDIT)).thenReturn(false);
+  }
+
+  @Test
+  public void decisionsAreCachedPerPermission() {
+    for (int i = 0; i < 3; i++) {
+      assertThat(underTest.isPermitted(subject, READ), is(true));
+      assertThat(underTest.isPermitted(subject, EDIT), is(false));
+    }
+    verify(subject, times(1)).isPermitted(READ);
+    verify(subject, times(1)).isPermitted(EDIT);
+  }
+
+  @Test
+  public void equalPermissionsShareDecision() {
+    underTest.isPermitted(subject, READ);
+    underTest.isPermitted(subject, new WildcardPermission("nexus:repository-view:maven2:central:read"));
+    verify(subject, times(1)).isPermitted(READ);
+  }
+
+  @Test
+  public void configurationChangeInvalidates() {
+    underTest.isPermitted(subject, READ);
+    underTest.on(new AuthorizationConfigurationChanged());
+    when(subject.isPermitted(READ)).thenReturn(false);
+    assertThat(underTest.isPermitted(subject, READ), is(false));
+
+    underTest.on(new SecurityConfigurationChanged());
+    when(subject.isPermitted(READ)).thenReturn(true);
+    assertThat(underTest.isPermitted(subject, READ), is(true));
+    verify(subject, times(3)).isPermitted(READ);
+  }
+
+  @Test
+  public void decisionsAreDroppedOnceRolePermissionsChange() {
+    // the cache sees the change before the resolver and the decision is made from outdated role permissions
+    underTest.on(new AuthorizationConfigurationChanged());
+    assertThat(underTest.isPermitted(subject, READ), is(true));
+
+    when(rolePermissionResolver.getVersion()).thenReturn(2L);
+    when(subject.isPermitted(READ)).thenReturn(false);
+    assertThat(underTest.isPermitted(subject, READ), is(false));
+    verify(subject, times(2)).isPermitted(READ);
+  }
+
+  @Test
+  public void subjectWithoutPrincipalsIsNotCached() {
+    when(anonymous.isPermitted(READ)).thenReturn(false);
+    underTest.isPermitted(anonymous, READ);
+    underTest.isPermitted(anonymous, READ);
+    verify(anonymous, times(2)).isPermitted(READ);
+    assertThat(underTest.size(), is(0L));
+  }
+
+  @Test
+  public void nonWildcardPermissionIsNotCached() {
+    Permission all = new AllPermission();
+    underTest.isPermitted(subject, all);
+    underTest.isPermitted(subject, all);
+    verify(subject, times(2)).isPermitted(all);
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.security.authz;
+
+import java.util.List;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link PermissionIndex}.
+ */
+public class PermissionIndexTest
+    extends TestSupport
+{
+  private static final List<String> GRANTED = ImmutableList.of(
+      "nexus:repository-view:maven2:central:read,browse",
+      "nexus:repository-view:npm:*:*",
+      "nexus:repository-admin:*:releases:*",
+      "nexus:settings",
+      "nexus:users:*:*"
+  );
+
+  private static final List<String> REQUESTED = ImmutableList.of(
+      "nexus:repository-view:maven2:central:read",
+      "nexus:repository-view:maven2:central:browse",
+      "nexus:repository-view:maven2:central:edit",
+      "nexus:repository-view:maven2:central:read,browse",
+      "nexus:repository-view:maven2:central:read,edit",
+      "nexus:repository-view:maven2:snapshots:read",
+      "nexus:repository-view:npm:registry:read",
+      "nexus:repository-view:npm",
+      "nexus:repository-view:npm:registry",
+      "nexus:repository-view:maven2:central",
+      "nexus:repository-admin:maven2:releases:edit",
+      "nexus:repository-admin:maven2:snapshots:edit",
+      "nexus:settings:read",
+      "nexus:settings",
+      "nexus:users",
+      "nexus:users:read",
+      "nexus:roles:read",
+      "other:repository-view:maven2:central:read"
+  );
+
+  private static List<Permission> permissions(final List<String> strings) {
+    ImmutableList.Builder<Permission> builder = ImmutableList.builder();
+    for (String string : strings) {
+      builder.add(new WildcardPermission2(string));
+    }
+    return builder.build();
+  }
+
+  private static boolean linear(final List<Permission> granted, final Permission requested) {
+    for (Permission permission : granted) {
+      if (permission.implies(requested)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void matchesLinearScan() {
+    List<Permission> granted = permissions(GRANTED);
+    PermissionIndex index = PermissionIndex.compile(granted);
+    for (Permission requested : permissions(REQUESTED)) {
+      assertThat(requested.toString(), index.implies(requested), is(linear(granted, requested)));
+    }
+  }
+
+  @Test
+  public void grantedPermissionsAreImplied() {
+    List<Permission> granted = permissions(GRANTED);
+    PermissionIndex index = PermissionIndex.compile(granted);
+    for (Permission permission : granted) {
+      assertThat(permission.toString(), index.implies(permission), is(true));
+    }
+  }
+
+  @Test
+  public void otherPermissionTypesFallBackToScan() {
+    List<Permission> granted = ImmutableList.<Permission>of(new WildcardPermission("nexus:repository-view:*:*:read"));
+    PermissionIndex index = PermissionIndex.compile(granted);
+    assertThat(index.implies(new WildcardPermission2("nexus:repository-view:maven2:central:read")), is(true));
+    assertThat(index.implies(new WildcardPermission("nexus:repository-view:maven2:central:read")), is(true));
+    assertThat(index.implies(new WildcardPermission2("nexus:repository-view:maven2:central:edit")), is(false));
+  }
+
+  @Test
+  public void emptyIndexImpliesNothing() {
+    PermissionIndex index = PermissionIndex.compile(ImmutableList.<Permission>of());
+    assertThat(index.implies(new WildcardPermission2("nexus:settings:read")), is(false));
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.security.internal;
+
+import java.util.Collections;
+
+import org.sonatype.nexus.security.SecuritySystem;
+import org.sonatype.nexus.security.authz.AuthorizationConfigurationChanged;
+import org.sonatype.nexus.security.config.CPrivilege;
+import org.sonatype.nexus.security.config.CRole;
+import org.sonatype.nexus.security.config.SecurityConfigurationManager;
+import org.sonatype.nexus.security.privilege.PrivilegeDescriptor;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserManager;
+import org.sonatype.sisu.goodies.eventbus.EventBus;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link RolePermissionResolverImpl}.
+ */
+public class RolePermissionResolverImplTest
+    extends TestSupport
+{
+  private static final Permission READ = new WildcardPermission("app:config:read");
+
+  @Mock
+  private SecurityConfigurationManager configuration;
+
+  @Mock
+  private PrivilegeDescriptor descriptor;
+
+  @Mock
+  private EventBus eventBus;
+
+  private CPrivilege privilege;
+
+  private CRole granted;
+
+  private CRole revoked;
+
+  private CRole role;
+
+  private RolePermissionResolverImpl underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    privilege = new CPrivilege();
+    privilege.setId("priv");
+    privilege.setType("test");
+    when(descriptor.getType()).thenReturn("test");
+    when(descriptor.createPermission(any(CPrivilege.class))).thenReturn(READ);
+    when(configuration.readPrivilege("priv")).thenReturn(privilege);
+
+    granted = new CRole();
+    granted.setId("role");
+    granted.addPrivilege("priv");
+    revoked = new CRole();
+    revoked.setId("role");
+    role = granted;
+    when(configuration.readRole("role")).thenAnswer(new Answer<CRole>()
+    {
+      @Override
+      public CRole answer(final InvocationOnMock invocation) {
+        return role;
+      }
+    });
+
+    underTest = new RolePermissionResolverImpl(configuration, Collections.singletonList(descriptor), eventBus);
+  }
+
+  @Test
+  public void permissionsAreCachedUntilInvalidated() throws Exception {
+    assertThat(underTest.resolvePermissionsInRole("role"), contains(READ));
+    long version = underTest.getVersion();
+
+    role = revoked;
+    assertThat(underTest.resolvePermissionsInRole("role"), contains(READ));
+
+    underTest.on(new AuthorizationConfigurationChanged());
+    assertThat(underTest.getVersion(), is(version + 2));
+    assertThat(underTest.resolvePermissionsInRole("role"), emptyIterable());
+  }
+
+  @Test
+  public void permissionsResolvedWhileInvalidatingAreNotCached() throws Exception {
+    when(configuration.readPrivilege("priv")).thenAnswer(new Answer<CPrivilege>()
+    {
+      @Override
+      public CPrivilege answer(final InvocationOnMock invocation) {
+        // privilege is revoked while the role is being resolved
+        role = revoked;
+        underTest.on(new AuthorizationConfigurationChanged());
+        return privilege;
+      }
+    });
+    assertThat(underTest.resolvePermissionsInRole("role"), contains(READ));
+
+    assertThat(underTest.resolvePermissionsInRole("role"), emptyIterable());
+  }
+
+  @Test
+  public void revokedPrivilegeIsNotGrantedByRealmInvalidatedFirst() throws Exception {
+    User user = mock(User.class);
+    when(user.getRoles()).thenReturn(ImmutableSet.of(new RoleIdentifier("default", "role")));
+    UserManager userManager = mock(UserManager.class);
+    when(userManager.getUser("username")).thenReturn(user);
+    AuthorizingRealmImpl realm = new AuthorizingRealmImpl(userManager, mock(SecuritySystem.class),
+        Collections.<String, UserManager>emptyMap(), eventBus);
+    realm.setRolePermissionResolver(underTest);
+    PrincipalCollection principals = new SimplePrincipalCollection("username", AuthorizingRealmImpl.NAME);
+
+    assertThat(realm.isPermitted(principals, READ), is(true));
+
+    // privilege is revoked, the realm sees the change before the resolver does and a check slips in between
+    role = revoked;
+    realm.on(new AuthorizationConfigurationChanged());
+    assertThat(realm.isPermitted(principals, READ), is(true));
+    underTest.on(new AuthorizationConfigurationChanged());
+
+    assertThat(realm.isPermitted(principals, READ), is(false));
+  }
+}
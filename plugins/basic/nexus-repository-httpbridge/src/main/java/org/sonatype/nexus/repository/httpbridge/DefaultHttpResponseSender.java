@@ -15,15 +15,18 @@ package org.sonatype.nexus.repository.httpbridge;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.Map;
 
 import javax.annotation.Nullable;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 
 import org.sonatype.nexus.repository.http.HttpMethods;
+import org.sonatype.nexus.repository.view.FileChannelPayload;
 import org.sonatype.nexus.repository.view.Payload;
 import org.sonatype.nexus.repository.view.PayloadResponse;
 import org.sonatype.nexus.repository.view.Request;
@@ -32,6 +35,7 @@ import org.sonatype.nexus.repository.view.Status;
 import org.sonatype.sisu.goodies.common.ComponentSupport;
 
 import com.google.common.io.ByteStreams;
+import org.eclipse.jetty.server.HttpOutput;
 
 /**
  * Default {@link HttpResponseSender}.
@@ -71,8 +75,10 @@ public class DefaultHttpResponseSender
         }
 
         if (request != null && !HttpMethods.HEAD.equals(request.getAction())) {
-          try (InputStream input = payload.openInputStream(); OutputStream output = httpResponse.getOutputStream()) {
-            ByteStreams.copy(input, output);
+          if (!sendFileChannel(payload, httpResponse)) {
+            try (InputStream input = payload.openInputStream(); OutputStream output = httpResponse.getOutputStream()) {
+              ByteStreams.copy(input, output);
+            }
           }
         }
       }
@@ -81,4 +87,29 @@ public class DefaultHttpResponseSender
       httpResponse.sendError(status.getCode(), status.getMessage());
     }
   }
+
+  /**
+   * Hands file-backed payloads to Jetty as a channel, which it reads into its pooled direct buffers and writes to
+   * the connection without copying the content through heap byte arrays. Other containers only offer the servlet
+   * stream, for which the plain stream copy is just as good.
+   *
+   * @return {@code false} if the payload is not file-backed or the container is not Jetty, in which case the payload
+   * must be copied from its input stream instead
+   */
+  private boolean sendFileChannel(final Payload payload, final HttpServletResponse httpResponse) throws IOException {
+    if (!(payload instanceof FileChannelPayload)) {
+      return false;
+    }
+    ServletOutputStream output = httpResponse.getOutputStream();
+    if (!(output instanceof HttpOutput)) {
+      return false;
+    }
+    try (FileChannel channel = ((FileChannelPayload) payload).openFileChannel()) {
+      if (channel == null) {
+        return false;
+      }
+      ((HttpOutput) output).sendContent(channel);
+      return true;
+    }
+  }
 }
@@ -0,0 +1,99 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.httpbridge;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.sonatype.nexus.repository.view.FileChannelPayload;
+import org.sonatype.nexus.repository.view.PayloadResponse;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Status;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.eclipse.jetty.server.HttpOutput;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link DefaultHttpResponseSender}.
+ */
+public class DefaultHttpResponseSenderTest
+    extends TestSupport
+{
+  @Mock
+  private Request request;
+
+  @Mock
+  private HttpServletResponse httpResponse;
+
+  @Mock
+  private FileChannelPayload payload;
+
+  private FileChannel channel;
+
+  private DefaultHttpResponseSender underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    File file = util.createTempFile("content");
+    Files.write("content", file, Charsets.UTF_8);
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+    when(request.getAction()).thenReturn("GET");
+    when(payload.getSize()).thenReturn(7L);
+    when(payload.openFileChannel()).thenReturn(channel);
+    when(payload.openInputStream()).thenReturn(new ByteArrayInputStream("content".getBytes(Charsets.UTF_8)));
+
+    underTest = new DefaultHttpResponseSender();
+  }
+
+  @Test
+  public void fileBackedPayloadIsHandedToJettyAsChannel() throws Exception {
+    HttpOutput output = mock(HttpOutput.class);
+    when(httpResponse.getOutputStream()).thenReturn(output);
+
+    underTest.send(request, new PayloadResponse(Status.success(200), payload), httpResponse);
+
+    verify(output).sendContent(same(channel));
+    verify(payload, never()).openInputStream();
+  }
+
+  @Test
+  public void otherContainersCopyFromInputStream() throws Exception {
+    ServletOutputStream output = mock(ServletOutputStream.class);
+    when(httpResponse.getOutputStream()).thenReturn(output);
+
+    underTest.send(request, new PayloadResponse(Status.success(200), payload), httpResponse);
+
+    verify(payload, never()).openFileChannel();
+    verify(payload).openInputStream();
+    verify(output).write(any(byte[].class), anyInt(), anyInt());
+  }
+}
@@ -15,6 +15,7 @@ package org.sonatype.nexus.repository.maven.internal;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -29,7 +30,7 @@ import org.sonatype.nexus.blobstore.api.Blob;
 import org.sonatype.nexus.blobstore.api.BlobStore;
 import org.sonatype.nexus.common.collect.NestedAttributesMap;
 import org.sonatype.nexus.common.hash.HashAlgorithm;
-import org.sonatype.nexus.common.io.TempStreamSupplier;
+import org.sonatype.nexus.common.io.PrefixStreamSupplier;
 import org.sonatype.nexus.mime.MimeSupport;
 import org.sonatype.nexus.repository.FacetSupport;
 import org.sonatype.nexus.repository.InvalidContentException;
@@ -41,9 +42,14 @@ import org.sonatype.nexus.repository.maven.internal.policy.VersionPolicy;
 import org.sonatype.nexus.repository.search.SearchFacet;
 import org.sonatype.nexus.repository.search.SearchItemId;
 import org.sonatype.nexus.repository.storage.Asset;
+import org.sonatype.nexus.repository.storage.AssetBlob;
 import org.sonatype.nexus.repository.storage.Bucket;
 import org.sonatype.nexus.repository.storage.Component;
+import org.sonatype.nexus.repository.storage.IngestFacet;
+import org.sonatype.nexus.repository.storage.IngestItem;
+import org.sonatype.nexus.repository.storage.IngestWriter;
 import org.sonatype.nexus.repository.storage.StorageFacet;
+import org.sonatype.nexus.repository.storage.StorageFacet.AssetLookup;
 import org.sonatype.nexus.repository.storage.StorageTx;
 import org.sonatype.nexus.repository.types.HostedType;
 import org.sonatype.nexus.repository.types.ProxyType;
@@ -80,7 +86,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 @Named
 public class MavenFacetImpl
     extends FacetSupport
-    implements MavenFacet
+    implements MavenFacet, IngestFacet
 {
   // artifact shared properties of both, artifact component and artifact asset
 
@@ -90,7 +96,7 @@ public class MavenFacetImpl
 
   private static final String P_VERSION = "version";
 
-  private static final String P_BASE_VERSION = "baseVersion";
+  public static final String P_BASE_VERSION = "baseVersion";
 
   private static final String P_CLASSIFIER = "classifier";
 
@@ -110,6 +116,11 @@ public class MavenFacetImpl
 
   private static final String P_LAST_VERIFIED = "lastVerified";
 
+  /**
+   * Number of leading content bytes buffered in memory for content type detection.
+   */
+  private static final int CONTENT_TYPE_PREFIX_SIZE = 64 * 1024;
+
   private final MimeSupport mimeSupport;
 
   private final Map<String, MavenPathParser> mavenPathParsers;
@@ -183,30 +194,40 @@ public class MavenFacetImpl
   @Nullable
   @Override
   public Content get(final MavenPath path) throws IOException {
-    try (StorageTx tx = getStorage().openTx()) {
-      final Asset asset = findAsset(tx, tx.getBucket(), path);
-      if (asset == null) {
-        return null;
+    final StorageFacet storage = getStorage();
+    final Asset asset = storage.findAsset(getAssetKey(path), new AssetLookup()
+    {
+      @Override
+      public Asset find(final StorageTx tx) {
+        return findAsset(tx, tx.getBucket(), path);
       }
-      final Blob blob = tx.requireBlob(asset.requireBlobRef());
-      final String contentType = asset.contentType();
-
-      final NestedAttributesMap checksumAttributes = asset.attributes().child(StorageFacet.P_CHECKSUM);
-      final Map<HashAlgorithm, HashCode> hashCodes = Maps.newHashMap();
-      for (HashAlgorithm algorithm : HashType.ALGORITHMS) {
-        final HashCode hashCode = HashCode.fromString(checksumAttributes.require(algorithm.name(), String.class));
-        hashCodes.put(algorithm, hashCode);
-      }
-      final NestedAttributesMap attributesMap = asset.formatAttributes();
-      final Date lastModifiedDate = attributesMap.get(P_CONTENT_LAST_MODIFIED, Date.class);
-      final String eTag = attributesMap.get(P_CONTENT_ETAG, String.class);
-      final Content result = new Content(new BlobPayload(blob, contentType));
-      result.getAttributes()
-          .set(Content.CONTENT_LAST_MODIFIED, lastModifiedDate == null ? null : new DateTime(lastModifiedDate));
-      result.getAttributes().set(Content.CONTENT_ETAG, eTag);
-      result.getAttributes().set(Content.CONTENT_HASH_CODES_MAP, hashCodes);
-      return result;
+    });
+    if (asset == null) {
+      return null;
+    }
+    final Blob blob = storage.getBlob(asset.requireBlobRef());
+    if (blob == null) {
+      // asset was deleted since it was found
+      return null;
+    }
+    final String contentType = asset.contentType();
+
+    final NestedAttributesMap checksumAttributes = asset.attributes().child(StorageFacet.P_CHECKSUM);
+    final Map<HashAlgorithm, HashCode> hashCodes = Maps.newHashMap();
+    for (HashAlgorithm algorithm : HashType.ALGORITHMS) {
+      final HashCode hashCode = HashCode.fromString(checksumAttributes.require(algorithm.name(), String.class));
+      hashCodes.put(algorithm, hashCode);
     }
+    final NestedAttributesMap attributesMap = asset.formatAttributes();
+    final Date lastModifiedDate = attributesMap.get(P_CONTENT_LAST_MODIFIED, Date.class);
+    final String eTag = attributesMap.get(P_CONTENT_ETAG, String.class);
+    final Content result = new Content(new BlobPayload(blob, contentType));
+    result.getAttributes()
+        .set(Content.CONTENT_LAST_MODIFIED, lastModifiedDate == null ? null : new DateTime(lastModifiedDate));
+    result.getAttributes().set(Content.CONTENT_ETAG, eTag);
+    result.getAttributes().set(Content.CONTENT_HASH_CODES_MAP, hashCodes);
+    result.getAttributes().set(Asset.class, asset);
+    return result;
   }
 
   @Override
@@ -227,6 +248,28 @@ public class MavenFacetImpl
   private void putArtifact(final MavenPath path, final Payload payload, final StorageTx tx)
       throws IOException, InvalidContentException
   {
+    final Component component = findOrCreateComponent(tx, path);
+    final Asset asset = findOrCreateArtifactAsset(tx, component, path);
+    putAssetPayload(path, tx, asset, payload);
+    tx.saveAsset(asset);
+    getRepository().facet(SearchFacet.class).put(component);
+  }
+
+  private void putFile(final MavenPath path, final Payload payload, final StorageTx tx)
+      throws IOException, InvalidContentException
+  {
+    Asset asset = findOrCreateFileAsset(tx, path);
+    if (asset.blobRef() != null && mavenPathParser.isRepositoryMetadata(path)) {
+      // metadata changes with every deploy, so it is replaced rather than updated, which the write policy of
+      // repositories allowing content to be stored only once would refuse
+      tx.deleteAsset(asset);
+      asset = createFileAsset(tx, path);
+    }
+    putAssetPayload(path, tx, asset, payload);
+    tx.saveAsset(asset);
+  }
+
+  private Component findOrCreateComponent(final StorageTx tx, final MavenPath path) {
     final Coordinates coordinates = checkNotNull(path.getCoordinates());
     Component component = findComponent(tx, tx.getBucket(), path);
     if (component == null) {
@@ -247,7 +290,11 @@ public class MavenFacetImpl
       }
       tx.saveComponent(component);
     }
+    return component;
+  }
 
+  private Asset findOrCreateArtifactAsset(final StorageTx tx, final Component component, final MavenPath path) {
+    final Coordinates coordinates = checkNotNull(path.getCoordinates());
     Asset asset = selectComponentAsset(tx, component, path);
     if (asset == null) {
       asset = tx.createAsset(tx.getBucket(), component);
@@ -268,29 +315,27 @@ public class MavenFacetImpl
 
       // TODO: if subordinate asset (sha1/md5/asc), should we link it somehow to main asset?
     }
-
-    putAssetPayload(path, tx, asset, payload);
-    tx.saveAsset(asset);
-    getRepository().facet(SearchFacet.class).put(component);
+    return asset;
   }
 
-  private void putFile(final MavenPath path, final Payload payload, final StorageTx tx)
-      throws IOException, InvalidContentException
-  {
+  private Asset findOrCreateFileAsset(final StorageTx tx, final MavenPath path) {
     Asset asset = findAsset(tx, tx.getBucket(), path);
     if (asset == null) {
-      asset = tx.createAsset(tx.getBucket(), getRepository().getFormat());
-      asset.name(path.getPath());
-      asset.formatAttributes().set(StorageFacet.P_PATH, path.getPath());
+      asset = createFileAsset(tx, path);
+    }
+    return asset;
+  }
 
-      final NestedAttributesMap assetAttributes = asset.formatAttributes();
-      assetAttributes.set(P_ASSET_KEY, getAssetKey(path));
+  private Asset createFileAsset(final StorageTx tx, final MavenPath path) {
+    final Asset asset = tx.createAsset(tx.getBucket(), getRepository().getFormat());
+    asset.name(path.getPath());
+    asset.formatAttributes().set(StorageFacet.P_PATH, path.getPath());
 
-      // TODO: if subordinate asset (sha1/md5/asc), should we link it somehow to main asset?
-    }
+    final NestedAttributesMap assetAttributes = asset.formatAttributes();
+    assetAttributes.set(P_ASSET_KEY, getAssetKey(path));
 
-    putAssetPayload(path, tx, asset, payload);
-    tx.saveAsset(asset);
+    // TODO: if subordinate asset (sha1/md5/asc), should we link it somehow to main asset?
+    return asset;
   }
 
   private void putAssetPayload(final MavenPath path,
@@ -304,12 +349,12 @@ public class MavenFacetImpl
         BlobStore.CREATED_BY_HEADER, "unknown"
     );
 
+    // content type is sniffed from a buffered prefix, so content is streamed (and hashed) into the blob in one pass
     try (InputStream inputStream = payload.openInputStream()) {
-      try (TempStreamSupplier supplier = new TempStreamSupplier(inputStream)) {
-        final String contentType = determineContentType(path, supplier, payload.getContentType());
-        try (InputStream is = supplier.get()) {
-          tx.setBlob(is, headers, asset, HashType.ALGORITHMS, contentType);
-        }
+      final PrefixStreamSupplier supplier = new PrefixStreamSupplier(inputStream, CONTENT_TYPE_PREFIX_SIZE);
+      final String contentType = determineContentType(path, supplier, payload.getContentType());
+      try (InputStream is = supplier.complete()) {
+        tx.setBlob(is, headers, asset, HashType.ALGORITHMS, contentType);
       }
     }
 
@@ -327,6 +372,68 @@ public class MavenFacetImpl
     }
   }
 
+  @Override
+  public long ingest(final Iterator<? extends IngestItem> items, final int batchSize, final int parallelism)
+      throws IOException
+  {
+    return getStorage().ingest(items, HashType.ALGORITHMS, new IngestWriter()
+    {
+      /**
+       * Components written in the current batch, as queries do not see entities not yet committed. Indexed once the
+       * batch is committed.
+       */
+      private final Map<String, Component> batchComponents = Maps.newHashMap();
+
+      private StorageTx batchTx;
+
+      @Override
+      public void write(final StorageTx tx, final IngestItem item, final AssetBlob blob) throws IOException {
+        if (tx != batchTx) {
+          batchTx = tx;
+          batchComponents.clear();
+        }
+        final MavenPath path = mavenPathParser.parsePath(item.getPath());
+        final String contentType = determineContentType(path, new Supplier<InputStream>()
+        {
+          @Override
+          public InputStream get() {
+            return tx.requireBlob(blob.getBlobRef()).getInputStream();
+          }
+        }, blob.getContentType());
+
+        final Asset asset;
+        if (path.getCoordinates() != null) {
+          final String componentKey = getComponentKey(path.getCoordinates());
+          Component component = batchComponents.get(componentKey);
+          if (component == null) {
+            component = findOrCreateComponent(tx, path);
+            batchComponents.put(componentKey, component);
+          }
+          asset = findOrCreateArtifactAsset(tx, component, path);
+        }
+        else {
+          asset = findOrCreateFileAsset(tx, path);
+        }
+        tx.attachBlob(asset, blob, contentType);
+        asset.formatAttributes().set(P_CONTENT_LAST_MODIFIED, DateTime.now().toDate());
+        tx.saveAsset(asset);
+      }
+
+      @Override
+      public void committed(final StorageTx tx) {
+        if (tx != batchTx) {
+          return;
+        }
+        final SearchFacet searchFacet = getRepository().facet(SearchFacet.class);
+        for (Component component : batchComponents.values()) {
+          searchFacet.put(component);
+        }
+        batchTx = null;
+        batchComponents.clear();
+      }
+    }, batchSize, parallelism);
+  }
+
   @Override
   public boolean delete(final MavenPath... paths) throws IOException {
     boolean result = false;
@@ -35,7 +35,6 @@ import org.sonatype.nexus.repository.manager.RepositoryManager;
 import org.sonatype.nexus.repository.maven.internal.MavenFacet;
 import org.sonatype.nexus.repository.maven.internal.MavenPath;
 import org.sonatype.nexus.repository.maven.internal.MavenPath.HashType;
-import org.sonatype.nexus.repository.maven.internal.maven2.Maven2MetadataMerger.MetadataEnvelope;
 import org.sonatype.nexus.repository.storage.AssetEvent;
 import org.sonatype.nexus.repository.storage.StorageFacet;
 import org.sonatype.nexus.repository.util.TypeTokens;
@@ -45,8 +44,9 @@ import org.sonatype.nexus.repository.view.Response;
 import org.sonatype.nexus.repository.view.payloads.BytesPayload;
 import org.sonatype.nexus.repository.view.payloads.StringPayload;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.hash.HashCode;
@@ -68,8 +68,17 @@ import static com.google.common.base.Preconditions.checkArgument;
 public class Maven2GroupFacet
     extends GroupFacetImpl
 {
+  /**
+   * Maximum number of paths whose merged metadata state is kept.
+   */
+  private static final int MERGED_METADATA_CACHE_SIZE = 1000;
+
   private final Maven2MetadataMerger metadataMerger;
 
+  private final Cache<String, Maven2MergedMetadata> mergeStates = CacheBuilder.newBuilder()
+      .maximumSize(MERGED_METADATA_CACHE_SIZE)
+      .build();
+
   private MavenFacet mavenFacet;
 
   @Inject
@@ -93,60 +102,63 @@ public class Maven2GroupFacet
   }
 
   /**
-   * Merges and caches and returns the merged metadata. Returns {@code null} if no usable response was in passed in
-   * map.
+   * Returns the merged metadata state of the path for the current members.
+   */
+  public Maven2MergedMetadata mergedMetadata(final MavenPath mavenPath) {
+    final List<Repository> members = members();
+    final String path = mavenPath.main().getPath();
+    Maven2MergedMetadata merged = mergeStates.getIfPresent(path);
+    // members are re-resolved whenever membership or a member changes, any other list means the state is outdated
+    if (merged == null || merged.getMembers() != members) {
+      merged = new Maven2MergedMetadata(metadataMerger, members);
+      mergeStates.put(path, merged);
+    }
+    return merged;
+  }
+
+  /**
+   * Applies the responses of members read at the given generation to the merged metadata, then caches and returns
+   * the merged metadata. Returns {@code null} if no member has usable metadata.
    */
   @Nullable
   public Content mergeAndCacheMetadata(final MavenPath mavenPath,
+                                       final Maven2MergedMetadata merged,
+                                       final long generation,
                                        final LinkedHashMap<Repository, Response> responses) throws IOException
   {
     checkArgument(mavenFacet.getMavenPathParser().isRepositoryMetadata(mavenPath),
         "Only metadata can be merged and cached: %s", mavenPath);
     checkArgument(!mavenPath.isSubordinate(), "Only metadata XML can be merged and cached: %s", mavenPath);
-    final LinkedHashMap<Repository, Content> metadataContents = Maps.newLinkedHashMap();
-    for (Map.Entry<Repository, Response> entry : responses.entrySet()) {
-      if (entry.getValue().getStatus().getCode() == HttpStatus.OK) {
-        final Response response = entry.getValue();
-        if (response instanceof PayloadResponse && ((PayloadResponse) response).getPayload() instanceof Content) {
-          metadataContents.put(entry.getKey(), (Content) ((PayloadResponse) response).getPayload());
-        }
-      }
-    }
-
-    if (metadataContents.isEmpty()) {
-      return null;
-    }
-    final Content content = mergeMetadata(mavenPath, metadataContents);
-    if (content == null) {
-      return null;
-    }
-    return cacheMetadata(mavenPath, content);
-  }
-
-  private Content mergeMetadata(final MavenPath mavenPath,
-                                final LinkedHashMap<Repository, Content> metadataContents) throws IOException
-  {
-    if (metadataContents.size() == 1) {
-      return metadataContents.get(metadataContents.keySet().iterator().next());
-    }
     final MetadataXpp3Reader reader = new MetadataXpp3Reader();
-    List<MetadataEnvelope> metadatas = Lists.newArrayList();
-    for (Map.Entry<Repository, Content> entry : metadataContents.entrySet()) {
+    for (Map.Entry<Repository, Response> entry : responses.entrySet()) {
       final String origin = entry.getKey().getName() + " @ " + mavenPath.getPath();
-      try (InputStream inputStream = entry.getValue().openInputStream()) {
-        final Metadata metadata = reader.read(inputStream);
-        metadatas.add(new MetadataEnvelope(origin, metadata));
+      final Response response = entry.getValue();
+      if (response.getStatus().getCode() != HttpStatus.OK && response.getStatus().getCode() != HttpStatus.NOT_FOUND) {
+        // member failed, leave it stale to be read again next time
+        continue;
       }
-      catch (XmlPullParserException e) {
-        // skip it, log it
-        log.info("Unparseable repository metadata: {}", origin, e);
+      Metadata metadata = null;
+      if (response.getStatus().getCode() == HttpStatus.OK
+          && response instanceof PayloadResponse && ((PayloadResponse) response).getPayload() instanceof Content) {
+        try (InputStream inputStream = ((Content) ((PayloadResponse) response).getPayload()).openInputStream()) {
+          metadata = reader.read(inputStream);
+        }
+        catch (XmlPullParserException e) {
+          // skip it, log it
+          log.info("Unparseable repository metadata: {}", origin, e);
+        }
       }
+      merged.update(entry.getKey().getName(), generation, metadata);
     }
 
-    final Metadata mergedMetadata = metadataMerger.merge(metadatas);
+    final Metadata mergedMetadata = merged.merge(mavenPath.getPath());
     if (mergedMetadata == null) {
       return null;
     }
+    return cacheMetadata(mavenPath, toContent(mergedMetadata));
+  }
+
+  private Content toContent(final Metadata mergedMetadata) throws IOException {
     final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
     new MetadataXpp3Writer().write(byteArrayOutputStream, mergedMetadata);
     // Metadata is rather small, so let's do it like this
@@ -182,6 +194,10 @@ public class Maven2GroupFacet
     return mavenFacet.get(mavenPath);
   }
 
+  /**
+   * Evicts merged metadata when metadata of a member is created, updated or deleted. Asset events are posted once the
+   * member's storage transaction committed, so this runs for every committed metadata change, deploys included.
+   */
   @Subscribe
   @AllowConcurrentEvents
   public void onAssetEvent(final AssetEvent event) {
@@ -195,6 +211,10 @@ public class Maven2GroupFacet
           for (HashType hashType : HashType.values()) {
             paths.add(mavenPath.main().hash(hashType));
           }
+          final Maven2MergedMetadata merged = mergeStates.getIfPresent(mavenPath.main().getPath());
+          if (merged != null) {
+            merged.invalidate(event.getRepository().getName());
+          }
           mavenFacet.delete(paths.toArray(new MavenPath[paths.size()]));
         }
         catch (IOException e) {
@@ -54,10 +54,12 @@ public class Maven2GroupMetadataHandler
       return HttpResponses.notFound();
     }
     else {
-      // metadata, merge and cache it and get it
+      // metadata, merge and cache it and get it, reading only members changed since the last merge
+      final Maven2MergedMetadata merged = groupFacet.mergedMetadata(mavenPath);
+      final long generation = merged.getGeneration();
       final LinkedHashMap<Repository, Response> responses =
-          getAll(context.getRequest(), groupFacet.members(), dispatched);
-      content = groupFacet.mergeAndCacheMetadata(mavenPath, responses);
+          getAll(context.getRequest(), merged.staleMembers(), dispatched);
+      content = groupFacet.mergeAndCacheMetadata(mavenPath, merged, generation, responses);
       if (content != null) {
         return HttpResponses.ok(content);
       }
@@ -22,6 +22,8 @@ import org.sonatype.nexus.repository.Format
 import org.sonatype.nexus.repository.RecipeSupport
 import org.sonatype.nexus.repository.Repository
 import org.sonatype.nexus.repository.Type
+import org.sonatype.nexus.repository.contentcache.ContentCacheFacet
+import org.sonatype.nexus.repository.contentcache.ContentCacheHandler
 import org.sonatype.nexus.repository.maven.internal.HostedHandler
 import org.sonatype.nexus.repository.maven.internal.MavenArtifactMatcher
 import org.sonatype.nexus.repository.maven.internal.MavenHeadersHandler
@@ -66,6 +68,9 @@ class Maven2HostedRecipe
   @Inject
   Provider<SearchFacet> searchFacet
 
+  @Inject
+  Provider<ContentCacheFacet> contentCacheFacet
+
   @Inject
   TimingHandler timingHandler
 
@@ -84,6 +89,9 @@ class Maven2HostedRecipe
   @Inject
   MavenHeadersHandler mavenHeadersHandler
 
+  @Inject
+  ContentCacheHandler contentCacheHandler
+
   @Inject
   HostedHandler hostedHandler
 
@@ -104,6 +112,7 @@ class Maven2HostedRecipe
     repository.attach(storageFacet.get())
     repository.attach(searchFacet.get())
     repository.attach(mavenFacet.get())
+    repository.attach(contentCacheFacet.get())
     repository.attach(configure(viewFacet.get()))
   }
 
@@ -117,6 +126,7 @@ class Maven2HostedRecipe
         .handler(partialFetchHandler)
         .handler(versionPolicyHandler)
         .handler(mavenHeadersHandler)
+        .handler(contentCacheHandler)
         .handler(hostedHandler)
         .create())
 
@@ -126,6 +136,7 @@ class Maven2HostedRecipe
         .handler(timingHandler)
         .handler(securityHandler)
         .handler(mavenHeadersHandler)
+        .handler(contentCacheHandler)
         .handler(hostedHandler)
         .create())
 
@@ -0,0 +1,279 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.maven.internal.maven2;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.maven.internal.maven2.Maven2MetadataMerger.MetadataEnvelope;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.eclipse.aether.version.Version;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Maven 2 repository metadata of one path, merged across the members of a group and kept as parsed metadata per
+ * member, so a change of one member is merged by re-reading only that member.
+ *
+ * The versions, which make up the bulk of large metadata, are kept apart in a sorted multiset to which each member's
+ * delta is applied, so merging neither re-parses untouched members nor re-sorts the version list. All other
+ * elements are few and are merged by {@link Maven2MetadataMerger} as usual.
+ *
+ * @since 3.0
+ */
+public class Maven2MergedMetadata
+{
+  private final Maven2MetadataMerger merger;
+
+  private final List<Repository> members;
+
+  /**
+   * Parsed metadata by member name, without versions. Members missing here are stale and must be read again.
+   */
+  private final Map<String, MemberMetadata> memberMetadata = Maps.newHashMap();
+
+  /**
+   * Generation at which each member was last invalidated.
+   */
+  private final Map<String, Long> invalidations = Maps.newHashMap();
+
+  /**
+   * Versions of all members, with the number of members having each.
+   */
+  private final TreeMap<VersionKey, Integer> versions = Maps.newTreeMap();
+
+  private long generation;
+
+  Maven2MergedMetadata(final Maven2MetadataMerger merger, final List<Repository> members) {
+    this.merger = checkNotNull(merger);
+    this.members = ImmutableList.copyOf(checkNotNull(members));
+  }
+
+  /**
+   * The members merged, in group order. This is the list instance the state was created for, so a group re-resolving
+   * its members, which it does whenever membership or a member changes, yields a different instance.
+   */
+  public List<Repository> getMembers() {
+    return members;
+  }
+
+  /**
+   * Returns the current generation, to be passed to {@link #update} with metadata read afterwards.
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Returns the members whose metadata must be read, having never been read or changed since.
+   */
+  public synchronized List<Repository> staleMembers() {
+    List<Repository> stale = Lists.newArrayList();
+    for (Repository member : members) {
+      if (!memberMetadata.containsKey(member.getName())) {
+        stale.add(member);
+      }
+    }
+    return stale;
+  }
+
+  /**
+   * Marks the metadata of the member as changed, removing its versions from the merged versions.
+   */
+  public synchronized void invalidate(final String memberName) {
+    checkNotNull(memberName);
+    invalidations.put(memberName, ++generation);
+    MemberMetadata previous = memberMetadata.remove(memberName);
+    if (previous != null) {
+      removeVersions(previous.versions);
+    }
+  }
+
+  /**
+   * Records the metadata read from a member at the given generation, or {@code null} if the member has none. The
+   * metadata is ignored if the member changed after it was read. The passed in instance is mutated.
+   */
+  public synchronized void update(final String memberName, final long readGeneration,
+                                  @Nullable final Metadata metadata)
+  {
+    checkNotNull(memberName);
+    Long invalidated = invalidations.get(memberName);
+    if (invalidated != null && invalidated > readGeneration) {
+      return;
+    }
+
+    MemberMetadata current = new MemberMetadata(metadata, versionKeys(metadata));
+    MemberMetadata previous = memberMetadata.put(memberName, current);
+    if (previous != null) {
+      removeVersions(previous.versions);
+    }
+    addVersions(current.versions);
+  }
+
+  /**
+   * Merges the metadata of all members read so far. Returns {@code null} if no member has metadata.
+   */
+  @Nullable
+  public synchronized Metadata merge(final String path) {
+    Map<String, MemberMetadata> byOrigin = Maps.newHashMap();
+    List<MetadataEnvelope> envelopes = Lists.newArrayList();
+    for (Repository member : members) {
+      MemberMetadata metadata = memberMetadata.get(member.getName());
+      if (metadata != null && metadata.metadata != null) {
+        String origin = member.getName() + " @ " + path;
+        byOrigin.put(origin, metadata);
+        envelopes.add(new MetadataEnvelope(origin, metadata.metadata));
+      }
+    }
+
+    List<String> rejected = Lists.newArrayList();
+    Metadata result = merger.merge(envelopes, rejected);
+    if (result == null) {
+      return null;
+    }
+
+    TreeMap<VersionKey, Integer> merged = versions;
+    if (!rejected.isEmpty()) {
+      merged = Maps.newTreeMap(versions);
+      for (String origin : rejected) {
+        removeVersions(merged, byOrigin.get(origin).versions);
+      }
+    }
+
+    if (!merged.isEmpty()) {
+      if (result.getVersioning() == null) {
+        result.setVersioning(new Versioning());
+      }
+      Versioning versioning = result.getVersioning();
+      List<String> mergedVersions = versioning.getVersions();
+      mergedVersions.clear();
+      for (VersionKey version : merged.keySet()) {
+        mergedVersions.add(version.version);
+      }
+      // the last in ordered list
+      versioning.setLatest(merged.lastKey().version);
+      // the last non-snapshot in ordered list, may be null
+      String release = null;
+      for (VersionKey version : merged.descendingKeySet()) {
+        if (!version.version.endsWith("SNAPSHOT")) {
+          release = version.version;
+          break;
+        }
+      }
+      versioning.setRelease(release);
+    }
+    return result;
+  }
+
+  /**
+   * Takes the distinct versions out of the metadata.
+   */
+  private Set<VersionKey> versionKeys(@Nullable final Metadata metadata) {
+    if (metadata == null || metadata.getVersioning() == null) {
+      return Collections.emptySet();
+    }
+    Set<VersionKey> keys = Sets.newHashSet();
+    for (String version : metadata.getVersioning().getVersions()) {
+      if (version != null && !Objects.equals(version, "null")) {
+        keys.add(new VersionKey(version, merger.version(version)));
+      }
+    }
+    metadata.getVersioning().setVersions(Lists.<String>newArrayList());
+    return keys;
+  }
+
+  private void addVersions(final Set<VersionKey> keys) {
+    for (VersionKey key : keys) {
+      Integer count = versions.get(key);
+      versions.put(key, count == null ? 1 : count + 1);
+    }
+  }
+
+  private void removeVersions(final Set<VersionKey> keys) {
+    removeVersions(versions, keys);
+  }
+
+  private static void removeVersions(final TreeMap<VersionKey, Integer> versions, final Set<VersionKey> keys) {
+    for (VersionKey key : keys) {
+      Integer count = versions.get(key);
+      if (count == null || count <= 1) {
+        versions.remove(key);
+      }
+      else {
+        versions.put(key, count - 1);
+      }
+    }
+  }
+
+  private static class MemberMetadata
+  {
+    /**
+     * The member's metadata without versions, or {@code null} if it has none.
+     */
+    @Nullable
+    private final Metadata metadata;
+
+    private final Set<VersionKey> versions;
+
+    private MemberMetadata(@Nullable final Metadata metadata, final Set<VersionKey> versions) {
+      this.metadata = metadata;
+      this.versions = versions;
+    }
+  }
+
+  /**
+   * Version string with its parsed version, ordered by version and then by string, as distinct strings may denote
+   * equal versions.
+   */
+  private static class VersionKey
+      implements Comparable<VersionKey>
+  {
+    private final String version;
+
+    private final Version parsed;
+
+    private VersionKey(final String version, final Version parsed) {
+      this.version = version;
+      this.parsed = parsed;
+    }
+
+    @Override
+    public int compareTo(final VersionKey o) {
+      int result = parsed.compareTo(o.parsed);
+      return result != 0 ? result : version.compareTo(o.version);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return o instanceof VersionKey && version.equals(((VersionKey) o).version);
+    }
+
+    @Override
+    public int hashCode() {
+      return version.hashCode();
+    }
+  }
+}
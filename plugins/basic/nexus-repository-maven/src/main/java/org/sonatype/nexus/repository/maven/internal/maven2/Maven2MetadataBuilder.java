@@ -0,0 +1,210 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.maven.internal.maven2;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.repository.maven.internal.MavenPath.Coordinates;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Snapshot;
+import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.eclipse.aether.util.version.GenericVersionScheme;
+import org.eclipse.aether.version.InvalidVersionSpecificationException;
+import org.eclipse.aether.version.Version;
+import org.eclipse.aether.version.VersionScheme;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Maven 2 repository metadata builder, producing the metadata of hosted content from its coordinates.
+ *
+ * @since 3.0
+ */
+public class Maven2MetadataBuilder
+{
+  private static final String SNAPSHOT = "SNAPSHOT";
+
+  private static final DateTimeFormatter LAST_UPDATED_FORMAT = DateTimeFormat.forPattern("yyyyMMddHHmmss")
+      .withZone(DateTimeZone.UTC);
+
+  private final VersionScheme versionScheme = new GenericVersionScheme();
+
+  private final Comparator<String> versionStringComparator = new Comparator<String>()
+  {
+    @Override
+    public int compare(final String o1, final String o2) {
+      return version(o1).compareTo(version(o2));
+    }
+  };
+
+  private Version version(final String version) {
+    try {
+      return versionScheme.parseVersion(version);
+    }
+    catch (InvalidVersionSpecificationException e) {
+      // this never happens, see implementation
+    }
+    return null;
+  }
+
+  /**
+   * Builds the artifact level metadata listing the given (base) versions.
+   */
+  public Metadata artifactMetadata(final String groupId,
+                                   final String artifactId,
+                                   final Collection<String> baseVersions,
+                                   final DateTime lastUpdated)
+  {
+    final List<String> versions = Lists.newArrayList(baseVersions);
+    Collections.sort(versions, versionStringComparator);
+
+    final Metadata metadata = new Metadata();
+    metadata.setModelVersion("1.1.0");
+    metadata.setGroupId(groupId);
+    metadata.setArtifactId(artifactId);
+    final Versioning versioning = new Versioning();
+    versioning.setVersions(versions);
+    if (!versions.isEmpty()) {
+      // the last in ordered list
+      versioning.setLatest(versions.get(versions.size() - 1));
+      // the last non-snapshot in ordered list, may be null
+      for (int i = versions.size() - 1; i >= 0; i--) {
+        if (!versions.get(i).endsWith(SNAPSHOT)) {
+          versioning.setRelease(versions.get(i));
+          break;
+        }
+      }
+    }
+    versioning.setLastUpdated(LAST_UPDATED_FORMAT.print(lastUpdated));
+    metadata.setVersioning(versioning);
+    return metadata;
+  }
+
+  /**
+   * Builds the version level metadata of a snapshot version from the coordinates of its timestamped artifacts.
+   * Returns {@code null} if none of the artifacts is timestamped.
+   */
+  @Nullable
+  public Metadata snapshotMetadata(final String groupId,
+                                   final String artifactId,
+                                   final String baseVersion,
+                                   final Iterable<Coordinates> artifacts,
+                                   final DateTime lastUpdated)
+  {
+    Build latest = null;
+    final Map<String, Build> latestByType = Maps.newTreeMap();
+    for (Coordinates artifact : artifacts) {
+      final Build build = Build.parse(baseVersion, artifact);
+      if (build == null) {
+        continue;
+      }
+      if (latest == null || build.isAfter(latest)) {
+        latest = build;
+      }
+      final String type = artifact.getExtension() + ':' + nullToEmpty(artifact.getClassifier());
+      final Build previous = latestByType.get(type);
+      if (previous == null || build.isAfter(previous)) {
+        latestByType.put(type, build);
+      }
+    }
+    if (latest == null) {
+      return null;
+    }
+
+    final Metadata metadata = new Metadata();
+    metadata.setModelVersion("1.1.0");
+    metadata.setGroupId(groupId);
+    metadata.setArtifactId(artifactId);
+    metadata.setVersion(baseVersion);
+    final Versioning versioning = new Versioning();
+    final Snapshot snapshot = new Snapshot();
+    snapshot.setTimestamp(latest.timestamp);
+    snapshot.setBuildNumber(latest.buildNumber);
+    versioning.setSnapshot(snapshot);
+    for (Build build : latestByType.values()) {
+      final SnapshotVersion snapshotVersion = new SnapshotVersion();
+      snapshotVersion.setExtension(build.coordinates.getExtension());
+      snapshotVersion.setClassifier(build.coordinates.getClassifier());
+      snapshotVersion.setVersion(build.coordinates.getVersion());
+      snapshotVersion.setUpdated(build.timestamp.replace(".", ""));
+      versioning.addSnapshotVersion(snapshotVersion);
+    }
+    versioning.setLastUpdated(LAST_UPDATED_FORMAT.print(lastUpdated));
+    metadata.setVersioning(versioning);
+    return metadata;
+  }
+
+  private static String nullToEmpty(@Nullable final String str) {
+    return str == null ? "" : str;
+  }
+
+  /**
+   * A timestamped snapshot build, like {@code 1.0-20150101.123456-3} of {@code 1.0-SNAPSHOT}.
+   */
+  private static class Build
+  {
+    private final Coordinates coordinates;
+
+    private final String timestamp;
+
+    private final int buildNumber;
+
+    private Build(final Coordinates coordinates, final String timestamp, final int buildNumber) {
+      this.coordinates = checkNotNull(coordinates);
+      this.timestamp = checkNotNull(timestamp);
+      this.buildNumber = buildNumber;
+    }
+
+    private boolean isAfter(final Build other) {
+      if (buildNumber != other.buildNumber) {
+        return buildNumber > other.buildNumber;
+      }
+      return timestamp.compareTo(other.timestamp) > 0;
+    }
+
+    @Nullable
+    private static Build parse(final String baseVersion, final Coordinates coordinates) {
+      final String version = coordinates.getVersion();
+      final int prefixLength = baseVersion.length() - SNAPSHOT.length();
+      if (!baseVersion.endsWith(SNAPSHOT) || version.equals(baseVersion) || version.length() <= prefixLength) {
+        return null;
+      }
+      final String suffix = version.substring(prefixLength);
+      final int separator = suffix.lastIndexOf('-');
+      if (separator == -1) {
+        return null;
+      }
+      try {
+        final int buildNumber = Integer.parseInt(suffix.substring(separator + 1));
+        return new Build(coordinates, suffix.substring(0, separator), buildNumber);
+      }
+      catch (NumberFormatException e) {
+        return null;
+      }
+    }
+  }
+}
@@ -12,6 +12,7 @@
  */
 package org.sonatype.nexus.repository.maven.internal.maven2;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -24,6 +25,7 @@ import javax.annotation.Nullable;
 import org.sonatype.sisu.goodies.common.ComponentSupport;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.artifact.repository.metadata.Plugin;
 import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
@@ -92,7 +94,7 @@ public class Maven2MetadataMerger
   /**
    * Parses out Aether version from a string.
    */
-  private Version version(final String version) {
+  Version version(final String version) {
     try {
       return versionScheme.parseVersion(version);
     }
@@ -129,7 +131,16 @@ public class Maven2MetadataMerger
    */
   @Nullable
   public Metadata merge(final Iterable<MetadataEnvelope> metadatas) {
+    return merge(metadatas, Lists.<String>newArrayList());
+  }
+
+  /**
+   * As {@link #merge(Iterable)}, adding the origin of each metadata left out as bad to {@code rejected}.
+   */
+  @Nullable
+  Metadata merge(final Iterable<MetadataEnvelope> metadatas, final Collection<String> rejected) {
     checkNotNull(metadatas);
+    checkNotNull(rejected);
     Metadata result = null;
     for (MetadataEnvelope metadataEnvelope : metadatas) {
       if (result == null) {
@@ -142,6 +153,7 @@ public class Maven2MetadataMerger
         catch (IllegalArgumentException e) {
           // leave out, log it
           log.warn("Bad metadata {}", metadataEnvelope.getOrigin(), e);
+          rejected.add(metadataEnvelope.getOrigin());
         }
       }
     }
@@ -0,0 +1,252 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.maven.internal.maven2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.common.hash.Hashes;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.repository.maven.internal.MavenFacet;
+import org.sonatype.nexus.repository.maven.internal.MavenFacetImpl;
+import org.sonatype.nexus.repository.maven.internal.MavenPath;
+import org.sonatype.nexus.repository.maven.internal.MavenPath.Coordinates;
+import org.sonatype.nexus.repository.maven.internal.MavenPath.HashType;
+import org.sonatype.nexus.repository.storage.Asset;
+import org.sonatype.nexus.repository.storage.Component;
+import org.sonatype.nexus.repository.storage.StorageFacet;
+import org.sonatype.nexus.repository.storage.StorageTx;
+import org.sonatype.nexus.repository.types.HostedType;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+import org.sonatype.nexus.repository.view.payloads.StringPayload;
+import org.sonatype.nexus.scheduling.Cancelable;
+import org.sonatype.nexus.scheduling.CancelableSupport;
+import org.sonatype.nexus.scheduling.TaskSupport;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer;
+import org.joda.time.DateTime;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Task rebuilding the artifact and snapshot version level {@code maven-metadata.xml} files (and their checksums) of
+ * a hosted Maven 2 repository from the components it contains.
+ *
+ * Components are streamed once to find the distinct groupId and artifactId pairs, then the independent GAs are
+ * rebuilt in parallel by a bounded pool of workers, each looking up the versions of its GA through the
+ * bucket/group/name/version component index. Memory use grows with the number of GAs, while versions and snapshot
+ * builds are only held for the GAs being rebuilt.
+ *
+ * @since 3.0
+ */
+@Named
+public class RebuildMaven2MetadataTask
+    extends TaskSupport
+    implements Cancelable
+{
+  private static final long PROGRESS_INTERVAL_SECONDS = 10;
+
+  private final RepositoryManager repositoryManager;
+
+  private final Maven2MetadataBuilder metadataBuilder = new Maven2MetadataBuilder();
+
+  @Inject
+  public RebuildMaven2MetadataTask(final RepositoryManager repositoryManager) {
+    this.repositoryManager = checkNotNull(repositoryManager);
+  }
+
+  public String getRepositoryName() {
+    return getConfiguration().getString(RebuildMaven2MetadataTaskDescriptor.REPOSITORY_NAME_FIELD_ID);
+  }
+
+  public int getWorkers() {
+    return getConfiguration().getInteger(RebuildMaven2MetadataTaskDescriptor.WORKERS_FIELD_ID,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  @Override
+  protected Long execute() throws Exception {
+    final Repository repository = repositoryManager.get(getRepositoryName());
+    checkState(repository != null, "Repository not found: %s", getRepositoryName());
+    checkState(HostedType.NAME.equals(repository.getType().getValue()),
+        "Repository is not hosted: %s", getRepositoryName());
+    final MavenFacet mavenFacet = repository.facet(MavenFacet.class); // fails if repository is not maven
+    final StorageFacet storageFacet = repository.facet(StorageFacet.class);
+
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    final SetMultimap<String, String> artifacts = collectArtifacts(storageFacet);
+    log.info("Collected {} GAs of repository {} in {}", artifacts.size(), repository.getName(), stopwatch);
+
+    final int workers = Math.max(1, getWorkers());
+    final ExecutorService executor = Executors.newFixedThreadPool(workers,
+        new ThreadFactoryBuilder().setNameFormat("rebuild-maven2-metadata-" + repository.getName() + "-%d")
+            .setDaemon(true).build());
+    final Semaphore permits = new Semaphore(workers * 2);
+    final AtomicLong processed = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final DateTime now = DateTime.now();
+    try {
+      long lastProgress = stopwatch.elapsed(TimeUnit.SECONDS);
+      for (final Entry<String, String> artifact : artifacts.entries()) {
+        CancelableSupport.checkCancellation();
+        permits.acquire();
+        executor.submit(new Runnable()
+        {
+          @Override
+          public void run() {
+            try {
+              rebuildArtifact(mavenFacet, storageFacet, artifact.getKey(), artifact.getValue(), now);
+              processed.incrementAndGet();
+            }
+            catch (Exception e) {
+              failed.incrementAndGet();
+              log.warn("Failed to rebuild metadata of {}:{} in repository {}", artifact.getKey(), artifact.getValue(),
+                  repository.getName(), e);
+            }
+            finally {
+              permits.release();
+            }
+          }
+        });
+        final long elapsed = stopwatch.elapsed(TimeUnit.SECONDS);
+        if (elapsed - lastProgress >= PROGRESS_INTERVAL_SECONDS) {
+          lastProgress = elapsed;
+          log.info("Rebuilt metadata of {}/{} GAs of repository {}", processed.get(), artifacts.size(),
+              repository.getName());
+        }
+      }
+      // all permits returned means all submitted work is done
+      permits.acquire(workers * 2);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    log.info("Rebuilt metadata of {} GAs of repository {} in {} ({} failed)", processed.get(), repository.getName(),
+        stopwatch, failed.get());
+    return processed.get();
+  }
+
+  @Override
+  public String getMessage() {
+    return "Rebuilding Maven metadata of " + getRepositoryName();
+  }
+
+  /**
+   * Streams all components of the repository once, collecting the artifactIds by groupId.
+   */
+  private SetMultimap<String, String> collectArtifacts(final StorageFacet storageFacet) {
+    final SetMultimap<String, String> artifacts = HashMultimap.create();
+    try (StorageTx tx = storageFacet.openTx()) {
+      for (Component component : tx.browseComponents(tx.getBucket())) {
+        if (component.group() != null && component.version() != null) {
+          artifacts.put(component.group(), component.name());
+        }
+      }
+    }
+    return artifacts;
+  }
+
+  private void rebuildArtifact(final MavenFacet mavenFacet,
+                               final StorageFacet storageFacet,
+                               final String groupId,
+                               final String artifactId,
+                               final DateTime now) throws IOException
+  {
+    final Set<String> baseVersions = Sets.newHashSet();
+    final Map<String, List<Coordinates>> snapshots = Maps.newHashMap();
+    try (StorageTx tx = storageFacet.openTx()) {
+      for (Component component : tx.browseComponents(tx.getBucket(), groupId, artifactId)) {
+        if (component.version() == null) {
+          continue;
+        }
+        final String baseVersion = component.formatAttributes().get(MavenFacetImpl.P_BASE_VERSION, String.class);
+        if (baseVersion == null) {
+          baseVersions.add(component.version());
+          continue;
+        }
+        baseVersions.add(baseVersion);
+        List<Coordinates> builds = snapshots.get(baseVersion);
+        if (builds == null) {
+          builds = Lists.newArrayList();
+          snapshots.put(baseVersion, builds);
+        }
+        for (Asset asset : tx.browseAssets(component)) {
+          final MavenPath mavenPath = mavenFacet.getMavenPathParser().parsePath(asset.name());
+          if (!mavenPath.isSubordinate() && mavenPath.getCoordinates() != null) {
+            builds.add(mavenPath.getCoordinates());
+          }
+        }
+      }
+    }
+    if (baseVersions.isEmpty()) {
+      return; // deleted meanwhile
+    }
+
+    final String gaPath = "/" + groupId.replace('.', '/') + "/" + artifactId;
+    putMetadata(mavenFacet, gaPath, metadataBuilder.artifactMetadata(groupId, artifactId, baseVersions, now));
+
+    for (Entry<String, List<Coordinates>> snapshot : snapshots.entrySet()) {
+      final Metadata metadata = metadataBuilder.snapshotMetadata(groupId, artifactId, snapshot.getKey(),
+          snapshot.getValue(), now);
+      if (metadata != null) {
+        putMetadata(mavenFacet, gaPath + "/" + snapshot.getKey(), metadata);
+      }
+    }
+  }
+
+  private void putMetadata(final MavenFacet mavenFacet, final String directory, final Metadata metadata)
+      throws IOException
+  {
+    final MavenPath mavenPath = mavenFacet.getMavenPathParser()
+        .parsePath(directory + "/" + Maven2Format.METADATA_FILENAME);
+    final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    new MetadataXpp3Writer().write(byteArrayOutputStream, metadata);
+    final byte[] byteArray = byteArrayOutputStream.toByteArray();
+    final Map<HashAlgorithm, HashCode> hashCodes = Hashes.hash(HashType.ALGORITHMS,
+        new ByteArrayInputStream(byteArray));
+    mavenFacet.put(mavenPath, new BytesPayload(byteArray, Maven2Format.METADATA_CONTENT_TYPE));
+    for (HashType hashType : HashType.values()) {
+      final HashCode hashCode = hashCodes.get(hashType.getHashAlgorithm());
+      if (hashCode != null) {
+        mavenFacet.put(mavenPath.hash(hashType),
+            new StringPayload(hashCode.toString(), Maven2Format.CHECKSUM_CONTENT_TYPE));
+      }
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.maven.internal.maven2;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.formfields.ComboboxFormField;
+import org.sonatype.nexus.formfields.FormField;
+import org.sonatype.nexus.formfields.NumberTextFormField;
+import org.sonatype.nexus.scheduling.TaskDescriptorSupport;
+
+/**
+ * Task descriptor for {@link RebuildMaven2MetadataTask}.
+ *
+ * @since 3.0
+ */
+@Named
+@Singleton
+public class RebuildMaven2MetadataTaskDescriptor
+    extends TaskDescriptorSupport<RebuildMaven2MetadataTask>
+{
+  public static final String REPOSITORY_NAME_FIELD_ID = "repositoryName";
+
+  public static final String WORKERS_FIELD_ID = "workers";
+
+  public RebuildMaven2MetadataTaskDescriptor() {
+    super(RebuildMaven2MetadataTask.class, "Rebuild Maven repository metadata",
+        new ComboboxFormField<String>(
+            REPOSITORY_NAME_FIELD_ID,
+            "Repository",
+            "Select the hosted Maven repository to rebuild the metadata of",
+            FormField.MANDATORY
+        ).withStoreApi("coreui_Repository.readReferences"),
+        new NumberTextFormField(
+            WORKERS_FIELD_ID,
+            "Worker threads",
+            "Number of threads rebuilding metadata, defaults to the number of processors",
+            FormField.OPTIONAL)
+    );
+  }
+}
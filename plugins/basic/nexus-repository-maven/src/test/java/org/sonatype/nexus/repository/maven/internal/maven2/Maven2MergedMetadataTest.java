@@ -0,0 +1,129 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.maven.internal.maven2;
+
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.when;
+
+/**
+ * UT for {@link Maven2MergedMetadata}
+ *
+ * @since 3.0
+ */
+public class Maven2MergedMetadataTest
+    extends TestSupport
+{
+  private static final String PATH = "/group/artifact/maven-metadata.xml";
+
+  @Mock
+  private Repository hosted;
+
+  @Mock
+  private Repository proxy;
+
+  private Maven2MergedMetadata merged;
+
+  @Before
+  public void setUp() {
+    when(hosted.getName()).thenReturn("hosted");
+    when(proxy.getName()).thenReturn("proxy");
+    merged = new Maven2MergedMetadata(new Maven2MetadataMerger(), ImmutableList.of(hosted, proxy));
+  }
+
+  private Metadata a(final String... versions) {
+    final Metadata m = new Metadata();
+    m.setGroupId("group");
+    m.setArtifactId("artifact");
+    m.setVersioning(new Versioning());
+    for (String version : versions) {
+      m.getVersioning().addVersion(version);
+    }
+    return m;
+  }
+
+  @Test
+  public void mergesMembersReadSoFar() {
+    assertThat(merged.staleMembers(), contains(hosted, proxy));
+    assertThat(merged.merge(PATH), nullValue());
+
+    long generation = merged.getGeneration();
+    merged.update("hosted", generation, a("1.0", "1.2-SNAPSHOT"));
+    merged.update("proxy", generation, a("1.1", "1.0"));
+
+    assertThat(merged.staleMembers(), empty());
+    final Metadata result = merged.merge(PATH);
+    assertThat(result.getGroupId(), equalTo("group"));
+    assertThat(result.getArtifactId(), equalTo("artifact"));
+    assertThat(result.getVersioning().getVersions(), contains("1.0", "1.1", "1.2-SNAPSHOT"));
+    assertThat(result.getVersioning().getLatest(), equalTo("1.2-SNAPSHOT"));
+    assertThat(result.getVersioning().getRelease(), equalTo("1.1"));
+  }
+
+  @Test
+  public void appliesChangedMemberOnly() {
+    long generation = merged.getGeneration();
+    merged.update("hosted", generation, a("1.0", "2.0"));
+    merged.update("proxy", generation, a("1.0", "1.5"));
+
+    merged.invalidate("hosted");
+    assertThat(merged.staleMembers(), contains(hosted));
+
+    // 2.0 was removed from hosted, 1.0 is still provided by proxy
+    merged.update("hosted", merged.getGeneration(), a("3.0"));
+
+    final Metadata result = merged.merge(PATH);
+    assertThat(result.getVersioning().getVersions(), contains("1.0", "1.5", "3.0"));
+    assertThat(result.getVersioning().getLatest(), equalTo("3.0"));
+    assertThat(result.getVersioning().getRelease(), equalTo("3.0"));
+
+    merged.invalidate("proxy");
+    merged.update("proxy", merged.getGeneration(), null);
+    assertThat(merged.merge(PATH).getVersioning().getVersions(), contains("3.0"));
+  }
+
+  @Test
+  public void ignoresMetadataReadBeforeChange() {
+    long generation = merged.getGeneration();
+    merged.invalidate("hosted");
+    merged.update("hosted", generation, a("1.0"));
+
+    assertThat(merged.staleMembers(), contains(hosted, proxy));
+    assertThat(merged.merge(PATH), nullValue());
+  }
+
+  @Test
+  public void leavesOutVersionsOfMismatchingMembers() {
+    final Metadata other = a("9.0");
+    other.setArtifactId("other");
+
+    long generation = merged.getGeneration();
+    merged.update("hosted", generation, a("1.0"));
+    merged.update("proxy", generation, other);
+
+    assertThat(merged.merge(PATH).getVersioning().getVersions(), contains("1.0"));
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.maven.internal.maven2;
+
+import java.util.List;
+
+import org.sonatype.nexus.repository.maven.internal.MavenPath.Coordinates;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * UT for {@link Maven2MetadataBuilder}
+ *
+ * @since 3.0
+ */
+public class Maven2MetadataBuilderTest
+    extends TestSupport
+{
+  private static final DateTime NOW = new DateTime(2015, 3, 1, 12, 30, 45, DateTimeZone.UTC);
+
+  private final Maven2MavenPathParser pathParser = new Maven2MavenPathParser();
+
+  private final Maven2MetadataBuilder underTest = new Maven2MetadataBuilder();
+
+  private List<Coordinates> coordinates(final String... paths) {
+    final List<Coordinates> result = Lists.newArrayList();
+    for (String path : paths) {
+      result.add(pathParser.parsePath(path).getCoordinates());
+    }
+    return result;
+  }
+
+  @Test
+  public void artifactMetadata() {
+    final Metadata metadata = underTest.artifactMetadata("group", "artifact",
+        ImmutableList.of("1.10", "1.2", "2.0-SNAPSHOT", "1.9"), NOW);
+    assertThat(metadata.getGroupId(), equalTo("group"));
+    assertThat(metadata.getArtifactId(), equalTo("artifact"));
+    assertThat(metadata.getVersion(), nullValue());
+    assertThat(metadata.getVersioning().getVersions(), contains("1.2", "1.9", "1.10", "2.0-SNAPSHOT"));
+    assertThat(metadata.getVersioning().getLatest(), equalTo("2.0-SNAPSHOT"));
+    assertThat(metadata.getVersioning().getRelease(), equalTo("1.10"));
+    assertThat(metadata.getVersioning().getLastUpdated(), equalTo("20150301123045"));
+  }
+
+  @Test
+  public void artifactMetadataWithSnapshotsOnly() {
+    final Metadata metadata = underTest.artifactMetadata("group", "artifact", ImmutableList.of("1.0-SNAPSHOT"), NOW);
+    assertThat(metadata.getVersioning().getLatest(), equalTo("1.0-SNAPSHOT"));
+    assertThat(metadata.getVersioning().getRelease(), nullValue());
+  }
+
+  @Test
+  public void snapshotMetadata() {
+    final Metadata metadata = underTest.snapshotMetadata("group", "artifact", "1.0-SNAPSHOT",
+        coordinates(
+            "/group/artifact/1.0-SNAPSHOT/artifact-1.0-20150101.101010-1.jar",
+            "/group/artifact/1.0-SNAPSHOT/artifact-1.0-20150101.101010-1.pom",
+            "/group/artifact/1.0-SNAPSHOT/artifact-1.0-20150101.101010-1-sources.jar",
+            "/group/artifact/1.0-SNAPSHOT/artifact-1.0-20150102.101010-2.jar",
+            "/group/artifact/1.0-SNAPSHOT/artifact-1.0-20150102.101010-2.pom"
+        ), NOW);
+    assertThat(metadata.getVersion(), equalTo("1.0-SNAPSHOT"));
+    assertThat(metadata.getVersioning().getSnapshot().getTimestamp(), equalTo("20150102.101010"));
+    assertThat(metadata.getVersioning().getSnapshot().getBuildNumber(), equalTo(2));
+    final List<SnapshotVersion> snapshotVersions = metadata.getVersioning().getSnapshotVersions();
+    assertThat(snapshotVersions, hasSize(3));
+    for (SnapshotVersion snapshotVersion : snapshotVersions) {
+      if ("sources".equals(snapshotVersion.getClassifier())) {
+        assertThat(snapshotVersion.getVersion(), equalTo("1.0-20150101.101010-1"));
+        assertThat(snapshotVersion.getUpdated(), equalTo("20150101101010"));
+      }
+      else {
+        assertThat(snapshotVersion.getVersion(), equalTo("1.0-20150102.101010-2"));
+        assertThat(snapshotVersion.getUpdated(), equalTo("20150102101010"));
+      }
+    }
+  }
+
+  @Test
+  public void snapshotMetadataWithoutTimestampedBuilds() {
+    final Metadata metadata = underTest.snapshotMetadata("group", "artifact", "1.0-SNAPSHOT",
+        coordinates("/group/artifact/1.0-SNAPSHOT/artifact-1.0-SNAPSHOT.jar"), NOW);
+    assertThat(metadata, nullValue());
+  }
+}
@@ -27,6 +27,7 @@ import org.sonatype.nexus.common.stateguard.Guarded;
 import org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport;
 import org.sonatype.nexus.orient.DatabaseInstance;
 import org.sonatype.nexus.security.UserPrincipalsHelper;
+import org.sonatype.nexus.security.authc.CredentialsVerificationCache;
 import org.sonatype.nexus.security.user.UserNotFoundException;
 
 import com.google.common.base.Charsets;
@@ -53,15 +54,19 @@ public class NugetApiKeyStoreImpl
 
   private final UserPrincipalsHelper principalsHelper;
 
+  private final CredentialsVerificationCache verificationCache;
+
   private final Random random = new Random();
 
   @Inject
   public NugetApiKeyStoreImpl(final @Named("security") Provider<DatabaseInstance> databaseInstance,
-                              final NugetApiKeyEntityAdapter entityAdapter, final UserPrincipalsHelper principalsHelper)
+                              final NugetApiKeyEntityAdapter entityAdapter, final UserPrincipalsHelper principalsHelper,
+                              final CredentialsVerificationCache verificationCache)
   {
     this.databaseInstance = checkNotNull(databaseInstance);
     this.entityAdapter = checkNotNull(entityAdapter);
     this.principalsHelper = checkNotNull(principalsHelper);
+    this.verificationCache = checkNotNull(verificationCache);
   }
 
   @Override
@@ -123,6 +128,8 @@ public class NugetApiKeyStoreImpl
         entityAdapter.delete(db, nugetApiKeyEntity);
       }
     }
+    // the deleted key must not keep authenticating until its cached verification expires
+    verificationCache.invalidate();
   }
 
   @Override
@@ -144,6 +151,9 @@ public class NugetApiKeyStoreImpl
       for (NugetApiKeyEntity entity : delete) {
         entityAdapter.delete(db, entity);
       }
+      if (!delete.isEmpty()) {
+        verificationCache.invalidate();
+      }
     }
   }
 
@@ -22,11 +22,13 @@ import org.junit.Rule
 import org.junit.Test
 import org.sonatype.nexus.orient.DatabaseInstanceRule
 import org.sonatype.nexus.security.UserPrincipalsHelper
+import org.sonatype.nexus.security.authc.CredentialsVerificationCache
 import org.sonatype.sisu.litmus.testsupport.TestSupport
 
 import static MatcherAssert.assertThat
 import static org.hamcrest.Matchers.equalTo
 import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.verify
 
 /**
  * Tests {@link NugetApiKeyStoreImpl}
@@ -39,12 +41,16 @@ class NugetApiKeyStoreImplTest
 
   private NugetApiKeyStoreImpl underTest
 
+  private CredentialsVerificationCache verificationCache
+
   @Before
   void setup() {
+    verificationCache = mock(CredentialsVerificationCache.class)
     underTest = new NugetApiKeyStoreImpl(
         Providers.of(database.instance),
         new NugetApiKeyEntityAdapter(),
-        mock(UserPrincipalsHelper.class)
+        mock(UserPrincipalsHelper.class),
+        verificationCache
     )
     underTest.start()
   }
@@ -75,6 +81,7 @@ class NugetApiKeyStoreImplTest
 
     char[] key = underTest.getApiKey(p)
     assertThat(key, equalTo(null))
+    verify(verificationCache).invalidate()
   }
 
   @Test
@@ -14,6 +14,7 @@ package org.sonatype.nexus.repository.raw.internal;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -23,7 +24,7 @@ import javax.inject.Inject;
 import org.sonatype.nexus.blobstore.api.Blob;
 import org.sonatype.nexus.blobstore.api.BlobStore;
 import org.sonatype.nexus.common.hash.HashAlgorithm;
-import org.sonatype.nexus.common.io.TempStreamSupplier;
+import org.sonatype.nexus.common.io.PrefixStreamSupplier;
 import org.sonatype.nexus.mime.MimeSupport;
 import org.sonatype.nexus.repository.FacetSupport;
 import org.sonatype.nexus.repository.config.Configuration;
@@ -33,9 +34,14 @@ import org.sonatype.nexus.repository.raw.RawContent;
 import org.sonatype.nexus.repository.search.SearchFacet;
 import org.sonatype.nexus.repository.search.SearchItemId;
 import org.sonatype.nexus.repository.storage.Asset;
+import org.sonatype.nexus.repository.storage.AssetBlob;
 import org.sonatype.nexus.repository.storage.Bucket;
 import org.sonatype.nexus.repository.storage.Component;
+import org.sonatype.nexus.repository.storage.IngestFacet;
+import org.sonatype.nexus.repository.storage.IngestItem;
+import org.sonatype.nexus.repository.storage.IngestWriter;
 import org.sonatype.nexus.repository.storage.StorageFacet;
+import org.sonatype.nexus.repository.storage.StorageFacet.AssetLookup;
 import org.sonatype.nexus.repository.storage.StorageTx;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -56,10 +62,15 @@ import static org.sonatype.nexus.repository.storage.StorageFacet.P_PATH;
  */
 public class RawContentFacetImpl
     extends FacetSupport
-    implements RawContentFacet
+    implements RawContentFacet, IngestFacet
 {
   private final static List<HashAlgorithm> hashAlgorithms = Lists.newArrayList(MD5, SHA1);
 
+  /**
+   * Number of leading content bytes buffered in memory for content type detection.
+   */
+  private static final int CONTENT_TYPE_PREFIX_SIZE = 64 * 1024;
+
   private final MimeSupport mimeSupport;
 
   @VisibleForTesting
@@ -105,37 +116,37 @@ public class RawContentFacetImpl
   @Nullable
   @Override
   public RawContent get(final String path) {
-    try (StorageTx tx = getStorage().openTx()) {
-      final Component component = getComponent(tx, path, tx.getBucket());
-      if (component == null) {
-        return null;
+    final StorageFacet storage = getStorage();
+    final Asset asset = storage.findAsset(path, new AssetLookup()
+    {
+      @Override
+      public Asset find(final StorageTx tx) {
+        final Component component = getComponent(tx, path, tx.getBucket());
+        return component == null ? null : tx.firstAsset(component);
       }
+    });
+    if (asset == null) {
+      return null;
+    }
 
-      final Asset asset = tx.firstAsset(component);
-      final Blob blob = tx.requireBlob(asset.requireBlobRef());
-
-      return marshall(asset, blob);
+    final Blob blob = storage.getBlob(asset.requireBlobRef());
+    if (blob == null) {
+      // asset was deleted since it was found
+      return null;
     }
+
+    return marshall(asset, blob);
   }
 
   @Override
   public void put(final String path, final RawContent content) throws IOException, InvalidContentException {
     try (StorageTx tx = getStorage().openTx()) {
-      final Bucket bucket = tx.getBucket();
-      Component component = getComponent(tx, path, bucket);
+      Component component = getComponent(tx, path, tx.getBucket());
       Asset asset;
       if (component == null) {
         // CREATE
-        component = tx.createComponent(bucket, getRepository().getFormat())
-            .group(getGroup(path))
-            .name(getName(path));
-
-        // Set attributes map to contain "raw" format-specific metadata (in this case, path)
-        component.formatAttributes().set(P_PATH, path);
-        tx.saveComponent(component);
-
-        asset = tx.createAsset(bucket, component);
-        asset.name(component.name());
+        component = createComponent(tx, path);
+        asset = createAsset(tx, component);
       }
       else {
         // UPDATE
@@ -146,9 +157,14 @@ public class RawContentFacetImpl
       final ImmutableMap<String, String> headers = ImmutableMap
           .of(BlobStore.BLOB_NAME_HEADER, path, BlobStore.CREATED_BY_HEADER, "unknown");
 
-      try (TempStreamSupplier supplier = new TempStreamSupplier(content.openInputStream())) {
-        try (InputStream is1 = supplier.get(); InputStream is2 = supplier.get()) {
-          tx.setBlob(is1, headers, asset, hashAlgorithms, determineContentType(path, is2, content.getContentType()));
+      try (InputStream inputStream = content.openInputStream()) {
+        PrefixStreamSupplier supplier = new PrefixStreamSupplier(inputStream, CONTENT_TYPE_PREFIX_SIZE);
+        String contentType;
+        try (InputStream prefix = supplier.get()) {
+          contentType = determineContentType(path, prefix, content.getContentType());
+        }
+        try (InputStream is = supplier.complete()) {
+          tx.setBlob(is, headers, asset, hashAlgorithms, contentType);
         }
       }
 
@@ -159,6 +175,77 @@ public class RawContentFacetImpl
     }
   }
 
+  private Component createComponent(final StorageTx tx, final String path) {
+    final Component component = tx.createComponent(tx.getBucket(), getRepository().getFormat())
+        .group(getGroup(path))
+        .name(getName(path));
+
+    // Set attributes map to contain "raw" format-specific metadata (in this case, path)
+    component.formatAttributes().set(P_PATH, path);
+    tx.saveComponent(component);
+    return component;
+  }
+
+  private Asset createAsset(final StorageTx tx, final Component component) {
+    final Asset asset = tx.createAsset(tx.getBucket(), component);
+    asset.name(component.name());
+    return asset;
+  }
+
+  @Override
+  public long ingest(final Iterator<? extends IngestItem> items, final int batchSize, final int parallelism)
+      throws IOException
+  {
+    return getStorage().ingest(items, hashAlgorithms, new IngestWriter()
+    {
+      /**
+       * Components written in the current batch, indexed once the batch is committed.
+       */
+      private final List<Component> batchComponents = Lists.newArrayList();
+
+      private StorageTx batchTx;
+
+      @Override
+      public void write(final StorageTx tx, final IngestItem item, final AssetBlob blob) throws IOException {
+        if (tx != batchTx) {
+          batchTx = tx;
+          batchComponents.clear();
+        }
+        final String path = item.getPath();
+        final String contentType;
+        try (InputStream is = tx.requireBlob(blob.getBlobRef()).getInputStream()) {
+          contentType = determineContentType(path, is, blob.getContentType());
+        }
+
+        Component component = getComponent(tx, path, tx.getBucket());
+        Asset asset;
+        if (component == null) {
+          component = createComponent(tx, path);
+          asset = createAsset(tx, component);
+        }
+        else {
+          asset = tx.firstAsset(component);
+        }
+        tx.attachBlob(asset, blob, contentType);
+        tx.saveAsset(asset);
+        batchComponents.add(component);
+      }
+
+      @Override
+      public void committed(final StorageTx tx) {
+        if (tx != batchTx) {
+          return;
+        }
+        final SearchFacet searchFacet = getRepository().facet(SearchFacet.class);
+        for (Component component : batchComponents) {
+          searchFacet.put(component);
+        }
+        batchTx = null;
+        batchComponents.clear();
+      }
+    }, batchSize, parallelism);
+  }
+
   /**
    * Determines or confirms the content type for the content, or throws {@link InvalidContentException} if it cannot.
    */
@@ -0,0 +1,153 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.repository.raw.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobRef;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.mime.MimeSupport;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.search.SearchFacet;
+import org.sonatype.nexus.repository.storage.Asset;
+import org.sonatype.nexus.repository.storage.AssetBlob;
+import org.sonatype.nexus.repository.storage.Bucket;
+import org.sonatype.nexus.repository.storage.Component;
+import org.sonatype.nexus.repository.storage.IngestItem;
+import org.sonatype.nexus.repository.storage.IngestWriter;
+import org.sonatype.nexus.repository.storage.StorageFacet;
+import org.sonatype.nexus.repository.storage.StorageTx;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * UT for the {@link IngestWriter} of {@link RawContentFacetImpl}.
+ *
+ * @since 3.0
+ */
+public class RawContentFacetImplIngestTest
+    extends TestSupport
+{
+  @Mock
+  private MimeSupport mimeSupport;
+
+  @Mock
+  private Repository repository;
+
+  @Mock
+  private StorageFacet storageFacet;
+
+  @Mock
+  private SearchFacet searchFacet;
+
+  private IngestWriter writer;
+
+  @Before
+  public void setUp() throws Exception {
+    when(repository.facet(StorageFacet.class)).thenReturn(storageFacet);
+    when(repository.facet(SearchFacet.class)).thenReturn(searchFacet);
+
+    RawContentFacetImpl underTest = new RawContentFacetImpl(mimeSupport);
+    underTest.attach(repository);
+
+    underTest.ingest(Collections.<IngestItem>emptyIterator(), 10, 1);
+    ArgumentCaptor<IngestWriter> captor = ArgumentCaptor.forClass(IngestWriter.class);
+    verify(storageFacet).ingest(any(Iterator.class), any(Iterable.class), captor.capture(), eq(10), eq(1));
+    writer = captor.getValue();
+  }
+
+  private StorageTx tx(final Component component) {
+    StorageTx tx = mock(StorageTx.class);
+    Blob blob = mock(Blob.class);
+    when(blob.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+    when(tx.requireBlob(any(BlobRef.class))).thenReturn(blob);
+    when(tx.findComponentWithProperty(anyString(), anyString(), any(Bucket.class))).thenReturn(component);
+    when(tx.firstAsset(component)).thenReturn(mock(Asset.class));
+    return tx;
+  }
+
+  private static IngestItem item(final String path) {
+    return new IngestItem()
+    {
+      @Override
+      public String getPath() {
+        return path;
+      }
+
+      @Override
+      public InputStream openInputStream() {
+        return new ByteArrayInputStream(new byte[0]);
+      }
+
+      @Override
+      public String getContentType() {
+        return "text/plain";
+      }
+    };
+  }
+
+  private static AssetBlob blob() {
+    return new AssetBlob(new BlobRef("NODE", "STORE", "blob"), 0L, ImmutableMap.<HashAlgorithm, HashCode>of(),
+        "text/plain");
+  }
+
+  @Test
+  public void componentIndexedOnceCommitted() throws Exception {
+    Component component = mock(Component.class);
+    StorageTx tx = tx(component);
+    writer.write(tx, item("/a.txt"), blob());
+    verify(searchFacet, never()).put(any(Component.class));
+    writer.committed(tx);
+    verify(searchFacet).put(component);
+  }
+
+  @Test
+  public void componentOfRolledBackBatchNotIndexed() throws Exception {
+    Component rolledBack = mock(Component.class);
+    writer.write(tx(rolledBack), item("/a.txt"), blob());
+
+    // items of a failed batch are written again one transaction each
+    Component retried = mock(Component.class);
+    StorageTx tx = tx(retried);
+    writer.write(tx, item("/a.txt"), blob());
+    writer.committed(tx);
+    verify(searchFacet).put(retried);
+    verify(searchFacet, never()).put(rolledBack);
+  }
+
+  @Test
+  public void commitOfOtherTransactionIgnored() throws Exception {
+    Component component = mock(Component.class);
+    writer.write(tx(component), item("/a.txt"), blob());
+    writer.committed(mock(StorageTx.class));
+    verify(searchFacet, never()).put(any(Component.class));
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.ldap.internal.connector;
+
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.sonatype.nexus.ldap.internal.connector.dao.LdapDAOException;
+import org.sonatype.nexus.ldap.internal.connector.dao.LdapUser;
+import org.sonatype.nexus.ldap.internal.connector.dao.NoLdapUserRolesFoundException;
+import org.sonatype.nexus.ldap.internal.connector.dao.NoSuchLdapGroupException;
+import org.sonatype.nexus.ldap.internal.connector.dao.NoSuchLdapUserException;
+import org.sonatype.sisu.goodies.common.Time;
+
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+import org.apache.shiro.realm.ldap.LdapContextFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link LdapConnector} caching user lookups and group membership per user.
+ *
+ * Entries are served as they are until {@code refreshAfter}, then served while being reloaded in the background
+ * until {@code timeToLive}, after which they are loaded synchronously. While the {@link FailoverLdapConnector} is
+ * in its retry window expired entries are still served (and refreshed in the background) instead of failing or
+ * waiting on an unhealthy directory.
+ *
+ * Lookups of unknown users are not cached. The whole cache goes away with the connector on configuration change.
+ *
+ * @since 3.0
+ */
+public class CachingLdapConnector
+    implements LdapConnector
+{
+  private static final Logger log = LoggerFactory.getLogger(CachingLdapConnector.class);
+
+  private final FailoverLdapConnector delegate;
+
+  private final Executor refreshExecutor;
+
+  private final LdapCacheMetrics metrics;
+
+  private final long timeToLiveMillis;
+
+  private final long refreshAfterMillis;
+
+  private final RefreshAheadCache<LdapUser> users;
+
+  private final RefreshAheadCache<Set<String>> userRoles;
+
+  public CachingLdapConnector(final FailoverLdapConnector delegate,
+                              final Executor refreshExecutor,
+                              final LdapCacheMetrics metrics,
+                              final Time timeToLive,
+                              final Time refreshAfter,
+                              final int maxEntries)
+  {
+    this.delegate = checkNotNull(delegate);
+    this.refreshExecutor = checkNotNull(refreshExecutor);
+    this.metrics = checkNotNull(metrics);
+    this.timeToLiveMillis = timeToLive.toMillis();
+    this.refreshAfterMillis = refreshAfter.toMillis();
+    checkArgument(refreshAfterMillis <= timeToLiveMillis, "Refresh must happen before entries expire");
+    checkArgument(maxEntries > 0);
+
+    this.users = new RefreshAheadCache<LdapUser>(maxEntries)
+    {
+      @Override
+      LdapUser load(final String username) throws Exception {
+        return CachingLdapConnector.this.delegate.getUser(username);
+      }
+    };
+    this.userRoles = new RefreshAheadCache<Set<String>>(maxEntries)
+    {
+      @Override
+      Set<String> load(final String userId) throws Exception {
+        return CachingLdapConnector.this.delegate.getUserRoles(userId);
+      }
+    };
+  }
+
+  @Override
+  public String getIdentifier() {
+    return delegate.getIdentifier();
+  }
+
+  @Override
+  public Set<String> getUserRoles(final String userId) throws LdapDAOException, NoLdapUserRolesFoundException {
+    try {
+      return userRoles.get(userId);
+    }
+    catch (LdapDAOException | NoLdapUserRolesFoundException | RuntimeException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new LdapDAOException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public SortedSet<LdapUser> getAllUsers() throws LdapDAOException {
+    return delegate.getAllUsers();
+  }
+
+  @Override
+  public SortedSet<LdapUser> getUsers(final int userCount) throws LdapDAOException {
+    return delegate.getUsers(userCount);
+  }
+
+  @Override
+  public LdapUser getUser(final String username) throws NoSuchLdapUserException, LdapDAOException {
+    try {
+      return users.get(username);
+    }
+    catch (LdapDAOException | NoSuchLdapUserException | RuntimeException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new LdapDAOException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public SortedSet<LdapUser> searchUsers(final String username, final Set<String> roleIds)
+      throws LdapDAOException
+  {
+    return delegate.searchUsers(username, roleIds);
+  }
+
+  @Override
+  public SortedSet<String> getAllGroups() throws LdapDAOException {
+    return delegate.getAllGroups();
+  }
+
+  @Override
+  public String getGroupName(final String groupId) throws LdapDAOException, NoSuchLdapGroupException {
+    return delegate.getGroupName(groupId);
+  }
+
+  @Override
+  public LdapContextFactory getLdapContextFactory() throws LdapDAOException {
+    return delegate.getLdapContextFactory();
+  }
+
+  /**
+   * Per-user cache refreshing its entries ahead of their expiry.
+   */
+  private abstract class RefreshAheadCache<V>
+  {
+    private final Cache<String, Entry<V>> entries;
+
+    private final Set<String> refreshing = Sets.newConcurrentHashSet();
+
+    RefreshAheadCache(final int maxEntries) {
+      this.entries = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+    }
+
+    abstract V load(String key) throws Exception;
+
+    V get(final String key) throws Exception {
+      Entry<V> entry = entries.getIfPresent(key);
+      if (entry != null) {
+        long age = System.currentTimeMillis() - entry.loaded;
+        if (age < refreshAfterMillis) {
+          metrics.hit();
+          return entry.value;
+        }
+        if (age < timeToLiveMillis) {
+          metrics.hit();
+          refresh(key);
+          return entry.value;
+        }
+        if (delegate.isInRetryWindow()) {
+          metrics.staleHit();
+          refresh(key);
+          return entry.value;
+        }
+      }
+
+      metrics.miss();
+      try {
+        return loadAndCache(key);
+      }
+      catch (LdapDAOException e) {
+        if (entry != null && delegate.isInRetryWindow()) {
+          log.debug("Serving stale entry of {} while {} is failing", key, delegate.getIdentifier(), e);
+          metrics.staleHit();
+          return entry.value;
+        }
+        throw e;
+      }
+    }
+
+    private V loadAndCache(final String key) throws Exception {
+      V value;
+      Timer.Context context = metrics.time();
+      try {
+        value = load(key);
+      }
+      finally {
+        context.stop();
+      }
+      entries.put(key, new Entry<V>(value, System.currentTimeMillis()));
+      return value;
+    }
+
+    private void refresh(final String key) {
+      if (!refreshing.add(key)) {
+        return; // already being refreshed
+      }
+      try {
+        refreshExecutor.execute(new Runnable()
+        {
+          @Override
+          public void run() {
+            try {
+              loadAndCache(key);
+            }
+            catch (LdapDAOException e) {
+              // keep the entry, the directory might just be unavailable
+              log.debug("Failed to refresh {} from {}", key, delegate.getIdentifier(), e);
+            }
+            catch (Exception e) {
+              // user or its roles are gone
+              entries.invalidate(key);
+            }
+            finally {
+              refreshing.remove(key);
+            }
+          }
+        });
+      }
+      catch (RejectedExecutionException e) {
+        refreshing.remove(key);
+      }
+    }
+  }
+
+  private static class Entry<V>
+  {
+    private final V value;
+
+    private final long loaded;
+
+    private Entry(final V value, final long loaded) {
+      this.value = checkNotNull(value);
+      this.loaded = loaded;
+    }
+  }
+}
@@ -96,6 +96,14 @@ public class FailoverLdapConnector
     return false;
   }
 
+  /**
+   * Returns {@code true} while the original connector failed recently and is waiting for its retry delay.
+   */
+  public boolean isInRetryWindow() {
+    long failedTime = connectionFailedTime;
+    return failedTime != 0 && failedTime + retryDelay >= System.currentTimeMillis();
+  }
+
   public SortedSet<String> getAllGroups()
       throws LdapDAOException
   {
@@ -0,0 +1,73 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.ldap.internal.connector;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Metrics of the {@link CachingLdapConnector}s: cache hits, misses, stale entries served and latency of the LDAP
+ * calls made on a miss or refresh.
+ *
+ * @since 3.0
+ */
+public class LdapCacheMetrics
+{
+  private final Meter hits;
+
+  private final Meter misses;
+
+  private final Meter staleHits;
+
+  private final Timer latency;
+
+  public LdapCacheMetrics(final MetricRegistry registry) {
+    checkNotNull(registry);
+    this.hits = registry.meter(name(CachingLdapConnector.class, "hits"));
+    this.misses = registry.meter(name(CachingLdapConnector.class, "misses"));
+    this.staleHits = registry.meter(name(CachingLdapConnector.class, "stale-hits"));
+    this.latency = registry.timer(name(CachingLdapConnector.class, "ldap-latency"));
+
+    String hitRatio = name(CachingLdapConnector.class, "hit-ratio");
+    registry.remove(hitRatio);
+    registry.register(hitRatio, new RatioGauge()
+    {
+      @Override
+      protected Ratio getRatio() {
+        double hitRate = hits.getFiveMinuteRate() + staleHits.getFiveMinuteRate();
+        return Ratio.of(hitRate, hitRate + misses.getFiveMinuteRate());
+      }
+    });
+  }
+
+  void hit() {
+    hits.mark();
+  }
+
+  void miss() {
+    misses.mark();
+  }
+
+  void staleHit() {
+    staleHits.mark();
+  }
+
+  Timer.Context time() {
+    return latency.time();
+  }
+}
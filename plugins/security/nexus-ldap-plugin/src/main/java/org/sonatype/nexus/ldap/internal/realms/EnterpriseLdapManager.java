@@ -17,6 +17,8 @@ import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -27,8 +29,10 @@ import com.sonatype.nexus.ssl.model.TrustStoreKey;
 import com.sonatype.nexus.ssl.plugin.TrustStore;
 
 import org.sonatype.nexus.events.NexusStoppedEvent;
+import org.sonatype.nexus.ldap.internal.connector.CachingLdapConnector;
 import org.sonatype.nexus.ldap.internal.connector.DefaultLdapConnector;
 import org.sonatype.nexus.ldap.internal.connector.FailoverLdapConnector;
+import org.sonatype.nexus.ldap.internal.connector.LdapCacheMetrics;
 import org.sonatype.nexus.ldap.internal.connector.LdapConnector;
 import org.sonatype.nexus.ldap.internal.connector.dao.LdapAuthConfiguration;
 import org.sonatype.nexus.ldap.internal.connector.dao.LdapDAOException;
@@ -45,11 +49,14 @@ import org.sonatype.nexus.ldap.internal.persist.entity.Connection.Protocol;
 import org.sonatype.nexus.ldap.internal.persist.entity.LdapConfiguration;
 import org.sonatype.nexus.ldap.internal.ssl.SSLLdapContextFactory;
 import org.sonatype.sisu.goodies.common.ComponentSupport;
+import org.sonatype.sisu.goodies.common.Time;
 import org.sonatype.sisu.goodies.eventbus.EventBus;
 
+import com.codahale.metrics.SharedMetricRegistries;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.realm.ldap.LdapContextFactory;
 import org.codehaus.plexus.util.StringUtils;
@@ -77,6 +84,16 @@ public class EnterpriseLdapManager
 
   private final TrustStore trustStore;
 
+  private final Time cacheTimeToLive;
+
+  private final Time cacheRefreshAfter;
+
+  private final int cacheMaxEntries;
+
+  private final LdapCacheMetrics cacheMetrics;
+
+  private final ExecutorService cacheRefreshExecutor;
+
   private List<LdapConnector> ldapConnectors = new ArrayList<LdapConnector>();
 
   @Inject
@@ -85,7 +102,11 @@ public class EnterpriseLdapManager
                                final LdapGroupDAO ldapGroupManager,
                                final EventBus eventBus,
                                final LdapConfigurationManager ldapConfigurationManager,
-                               final TrustStore trustStore)
+                               final TrustStore trustStore,
+                               @Named("${nexus.ldap.cache.timeToLive:-5m}") final Time cacheTimeToLive,
+                               @Named("${nexus.ldap.cache.refreshAfter:-4m}") final Time cacheRefreshAfter,
+                               @Named("${nexus.ldap.cache.maxEntries:-10000}") final int cacheMaxEntries,
+                               @Named("${nexus.ldap.cache.refreshThreads:-2}") final int cacheRefreshThreads)
   {
     this.ldapAuthenticator = checkNotNull(ldapAuthenticator);
     this.ldapUserManager = checkNotNull(ldapUserManager);
@@ -93,6 +114,12 @@ public class EnterpriseLdapManager
     this.eventBus = checkNotNull(eventBus);
     this.ldapConfigurationManager = checkNotNull(ldapConfigurationManager);
     this.trustStore = checkNotNull(trustStore);
+    this.cacheTimeToLive = checkNotNull(cacheTimeToLive);
+    this.cacheRefreshAfter = checkNotNull(cacheRefreshAfter);
+    this.cacheMaxEntries = cacheMaxEntries;
+    this.cacheMetrics = new LdapCacheMetrics(SharedMetricRegistries.getOrCreate("nexus"));
+    this.cacheRefreshExecutor = Executors.newFixedThreadPool(cacheRefreshThreads,
+        new ThreadFactoryBuilder().setNameFormat("ldap-cache-refresh-%d").setDaemon(true).build());
 
     this.eventBus.register(this);
   }
@@ -319,11 +346,19 @@ public class EnterpriseLdapManager
                   getLdapAuthConfiguration(ldapServer));
         }
 
-        ldapConnectors.add(new FailoverLdapConnector(
+        FailoverLdapConnector failoverLdapConnector = new FailoverLdapConnector(
             originalLdapConnector,
             backupLdapConnector,
             ldapServer.getConnection().getConnectionRetryDelay(),
-            ldapServer.getConnection().getMaxIncidentsCount()));
+            ldapServer.getConnection().getMaxIncidentsCount());
+
+        ldapConnectors.add(new CachingLdapConnector(
+            failoverLdapConnector,
+            cacheRefreshExecutor,
+            cacheMetrics,
+            cacheTimeToLive,
+            cacheRefreshAfter,
+            cacheMaxEntries));
 
       }
     }
@@ -378,12 +413,13 @@ public class EnterpriseLdapManager
   @AllowConcurrentEvents
   @Subscribe
   public void onEvent(final LdapClearCacheEvent evt) {
-    // clear the connectors
+    // clear the connectors, and their caches with them
     ldapConnectors.clear();
   }
 
   @Subscribe
   public void on(final NexusStoppedEvent event) {
     eventBus.unregister(this);
+    cacheRefreshExecutor.shutdownNow();
   }
 }
@@ -0,0 +1,115 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2008-2015 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.ldap.internal.connector;
+
+import org.sonatype.nexus.ldap.internal.connector.dao.LdapDAOException;
+import org.sonatype.nexus.ldap.internal.connector.dao.LdapUser;
+import org.sonatype.nexus.ldap.internal.connector.dao.NoSuchLdapUserException;
+import org.sonatype.sisu.goodies.common.Time;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link CachingLdapConnector}
+ */
+public class CachingLdapConnectorTest
+    extends TestSupport
+{
+  @Mock
+  private LdapConnector original;
+
+  private FailoverLdapConnector failover;
+
+  private LdapCacheMetrics metrics;
+
+  private LdapUser user;
+
+  @Before
+  public void setUp() {
+    failover = new FailoverLdapConnector(original, null, 10, 3);
+    metrics = new LdapCacheMetrics(new MetricRegistry());
+    user = user("jdoe");
+  }
+
+  private static LdapUser user(final String username) {
+    LdapUser user = new LdapUser();
+    user.setUsername(username);
+    return user;
+  }
+
+  private CachingLdapConnector connector(final Time timeToLive, final Time refreshAfter) {
+    return new CachingLdapConnector(failover, MoreExecutors.directExecutor(), metrics, timeToLive, refreshAfter, 10);
+  }
+
+  @Test
+  public void usersAreCached() throws Exception {
+    when(original.getUser("jdoe")).thenReturn(user);
+    CachingLdapConnector underTest = connector(Time.minutes(5), Time.minutes(4));
+
+    assertThat(underTest.getUser("jdoe"), sameInstance(user));
+    assertThat(underTest.getUser("jdoe"), sameInstance(user));
+    verify(original, times(1)).getUser("jdoe");
+  }
+
+  @Test
+  public void entriesAreRefreshedAhead() throws Exception {
+    LdapUser refreshed = user("jdoe");
+    when(original.getUser("jdoe")).thenReturn(user, refreshed);
+    CachingLdapConnector underTest = connector(Time.minutes(5), Time.millis(0));
+
+    assertThat(underTest.getUser("jdoe"), sameInstance(user));
+    // served from cache, while refreshed in the background
+    assertThat(underTest.getUser("jdoe"), sameInstance(user));
+    assertThat(underTest.getUser("jdoe"), sameInstance(refreshed));
+  }
+
+  @Test
+  public void staleEntriesAreServedWhileFailing() throws Exception {
+    when(original.getUser("jdoe")).thenReturn(user).thenThrow(new LdapDAOException("down"));
+    CachingLdapConnector underTest = connector(Time.millis(0), Time.millis(0));
+
+    assertThat(underTest.getUser("jdoe"), sameInstance(user));
+    assertThat(underTest.getUser("jdoe"), sameInstance(user));
+    assertThat(failover.isInRetryWindow(), is(true));
+  }
+
+  @Test
+  public void unknownUsersAreNotCached() throws Exception {
+    when(original.getUser("nobody")).thenThrow(new NoSuchLdapUserException("nobody"));
+    CachingLdapConnector underTest = connector(Time.minutes(5), Time.minutes(4));
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        underTest.getUser("nobody");
+        fail();
+      }
+      catch (NoSuchLdapUserException e) {
+        // expected
+      }
+    }
+    verify(original, times(2)).getUser("nobody");
+  }
+}